@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+/**
+ * Sizes the journal group commit window from the observed commit latency and arrival rate of the entries.
+ *
+ * <p>The commit latency is the time taken by the fsync of the journal when the data is synced before acknowledging
+ * the entries, or the time taken by the write of the journal otherwise. Both the commit latency and the interval
+ * between two entries are tracked as exponentially weighted moving averages.
+ *
+ * <p>Waiting for more entries only pays off if at least one entry is expected to arrive during a commit: the window
+ * is then set to the commit latency, since the entries arriving during a commit would have to wait for it anyway.
+ * Otherwise, the window drops to the configured minimum. Only with a minimum of 0, which is the default, are the
+ * entries committed as soon as the queue is empty. The window is always kept within the configured bounds.
+ */
+class AdaptiveGroupCommit {
+
+    // Weight of a new sample in the moving averages
+    private static final double ALPHA = 0.1;
+
+    private final long minWaitNanos;
+    private final long maxWaitNanos;
+
+    // Updated by the thread that commits the entries
+    private volatile double commitLatencyNanos = 0;
+
+    // Only accessed by the journal thread
+    private double arrivalIntervalNanos = 0;
+    private long lastArrivalNanos = Long.MIN_VALUE;
+
+    private volatile long groupWaitNanos;
+    private volatile double expectedGroupSize = 1;
+
+    AdaptiveGroupCommit(long minWaitNanos, long maxWaitNanos) {
+        this.minWaitNanos = minWaitNanos;
+        this.maxWaitNanos = Math.max(minWaitNanos, maxWaitNanos);
+        this.groupWaitNanos = minWaitNanos;
+    }
+
+    /**
+     * Record the arrival of an entry in the journal queue.
+     */
+    void onArrival(long enqueueTimeNanos) {
+        if (lastArrivalNanos != Long.MIN_VALUE) {
+            // The entries are not dequeued in strict enqueue time order when there are multiple producers
+            long interval = Math.max(0, enqueueTimeNanos - lastArrivalNanos);
+            arrivalIntervalNanos = arrivalIntervalNanos == 0
+                    ? interval : ALPHA * interval + (1 - ALPHA) * arrivalIntervalNanos;
+        }
+        lastArrivalNanos = Math.max(lastArrivalNanos, enqueueTimeNanos);
+        update();
+    }
+
+    /**
+     * Record the latency of a commit.
+     */
+    void onCommit(long latencyNanos) {
+        double latency = commitLatencyNanos;
+        commitLatencyNanos = latency == 0 ? latencyNanos : ALPHA * latencyNanos + (1 - ALPHA) * latency;
+    }
+
+    private void update() {
+        double latency = commitLatencyNanos;
+        double interval = arrivalIntervalNanos;
+
+        long wait;
+        if (latency > 0 && latency >= interval) {
+            wait = Math.min(Math.max((long) latency, minWaitNanos), maxWaitNanos);
+        } else {
+            wait = minWaitNanos;
+        }
+
+        groupWaitNanos = wait;
+        expectedGroupSize = interval > 0 ? 1 + wait / interval : 1;
+    }
+
+    /**
+     * @return the maximum time an entry should wait to be grouped with the next ones
+     */
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    /**
+     * @return the number of entries expected to be grouped in a commit with the current window
+     */
+    double getExpectedGroupSize() {
+        return expectedGroupSize;
+    }
+
+    double getCommitLatencyNanos() {
+        return commitLatencyNanos;
+    }
+}
@@ -117,6 +117,10 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_GROUP_WAIT = "JOURNAL_GROUP_WAIT_USEC";
+    String JOURNAL_GROUP_SIZE = "JOURNAL_GROUP_SIZE";
+    String JOURNAL_SYNC_LATENCY_AVG = "JOURNAL_SYNC_LATENCY_AVG_USEC";
+    String JOURNAL_LEDGERS = "JOURNAL_LEDGERS";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
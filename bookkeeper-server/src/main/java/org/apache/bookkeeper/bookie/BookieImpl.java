@@ -21,6 +21,7 @@
 
 package org.apache.bookkeeper.bookie;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_INDEX_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_LEDGER_SCOPE;
@@ -32,7 +33,9 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -72,6 +75,7 @@ import org.apache.bookkeeper.net.DNS;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.BookKeeperConstants;
@@ -98,6 +102,7 @@ public class BookieImpl implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    private final JournalLoadBalancer journalLoadBalancer;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -437,6 +442,11 @@ public class BookieImpl implements Bookie {
             journals.add(Journal.newJournal(i, journalDirectories.get(i),
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
         }
+        if (conf.getJournalLoadBalancingEnabled() && journals.size() > 1) {
+            journalLoadBalancer = new JournalLoadBalancer(journals, statsLogger.scope(JOURNAL_SCOPE));
+        } else {
+            journalLoadBalancer = null;
+        }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
         CheckpointSource checkpointSource = new CheckpointSourceList(journals);
@@ -484,6 +494,9 @@ public class BookieImpl implements Bookie {
             @Override
             public void ledgerDeleted(long ledgerId) {
                 masterKeyCache.remove(ledgerId);
+                if (journalLoadBalancer != null) {
+                    journalLoadBalancer.ledgerDeleted(ledgerId);
+                }
             }
         };
 
@@ -937,6 +950,9 @@ public class BookieImpl implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
+        if (journalLoadBalancer != null) {
+            return journalLoadBalancer.getJournal(ledgerId);
+        }
         return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
     }
 
@@ -964,19 +980,7 @@ public class BookieImpl implements Bookie {
 
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
-        if (masterKeyCache.get(ledgerId) == null) {
-            // Force the load into masterKey cache
-            byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
-            if (oldValue == null) {
-                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
-                try {
-                    getJournal(ledgerId).logAddEntry(
-                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
-                } finally {
-                    ReferenceCountUtil.release(masterKeyEntry);
-                }
-            }
-        }
+        logMasterKeyIfNeeded(ledgerId, masterKey);
 
         if (!writeDataToJournal) {
             cb.writeComplete(0, ledgerId, entryId, null, ctx);
@@ -992,6 +996,22 @@ public class BookieImpl implements Bookie {
         getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
+    private void logMasterKeyIfNeeded(long ledgerId, byte[] masterKey) throws InterruptedException {
+        if (masterKeyCache.get(ledgerId) == null) {
+            // Force the load into masterKey cache
+            byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
+            if (oldValue == null) {
+                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
+                try {
+                    getJournal(ledgerId).logAddEntry(
+                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
+                } finally {
+                    ReferenceCountUtil.release(masterKeyEntry);
+                }
+            }
+        }
+    }
+
     /**
      * Add entry to a ledger, even if the ledger has previous been fenced. This should only
      * happen in bookie recovery or ledger recovery cases, where entries are being replicates
@@ -1121,6 +1141,78 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Add a batch of entries to a ledger. All the entries must belong to the same ledger.
+     *
+     * <p>The entries are added to the ledger storage in order, and then journaled together, so that they are
+     * persisted by the same journal write. The callback is triggered for each entry. If an exception is thrown,
+     * the callback is not triggered, but some of the entries may have been added to the ledger storage.
+     */
+    public void addEntries(List<ByteBuf> entries, boolean ackBeforeSync, boolean recoveryAdd,
+                           WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            checkArgument(!entries.isEmpty(), "No entries to add");
+            LedgerDescriptor handle = getLedgerForEntry(entries.get(0), masterKey);
+            long ledgerId = handle.getLedgerId();
+            for (ByteBuf entry : entries) {
+                checkArgument(entry.getLong(entry.readerIndex()) == ledgerId,
+                        "Entries of different ledgers in the same batch");
+            }
+
+            synchronized (handle) {
+                if (!recoveryAdd && handle.isFenced()) {
+                    throw BookieException
+                            .create(BookieException.Code.LedgerFencedException);
+                }
+                long[] entryIds = new long[entries.size()];
+                long batchSize = 0;
+                for (int i = 0; i < entryIds.length; i++) {
+                    ByteBuf entry = entries.get(i);
+                    batchSize += entry.readableBytes();
+                    entryIds[i] = handle.addEntry(entry);
+                }
+                bookieStats.getWriteBytes().addCount(batchSize);
+
+                logMasterKeyIfNeeded(ledgerId, masterKey);
+
+                if (!writeDataToJournal) {
+                    for (long entryId : entryIds) {
+                        cb.writeComplete(0, ledgerId, entryId, null, ctx);
+                    }
+                    if (ctx instanceof BookieRequestHandler) {
+                        ((BookieRequestHandler) ctx).flushPendingResponse();
+                    }
+                } else {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Adding {} entries to ledger {}", entryIds.length, ledgerId);
+                    }
+                    getJournal(ledgerId).logAddEntries(entries, ackBeforeSync, cb, ctx);
+                }
+            }
+            success = true;
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            OpStatsLogger addEntryStats = recoveryAdd
+                    ? bookieStats.getRecoveryAddEntryStats() : bookieStats.getAddEntryStats();
+            for (ByteBuf entry : entries) {
+                if (success) {
+                    addEntryStats.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entry.readableBytes());
+                } else {
+                    addEntryStats.registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerFailedValue(entry.readableBytes());
+                }
+                ReferenceCountUtil.release(entry);
+            }
+        }
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
@@ -1162,6 +1254,70 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Read an entry to be sent over the network, either as a {@link ByteBuf}, or as a {@link FileRegion} of the
+     * entry log for the entries of at least {@code minRegionSize} bytes that are not cached.
+     */
+    public ReferenceCounted readEntryForTransfer(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        long entrySize = 0;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading {}@{} for transfer", entryId, ledgerId);
+            }
+            ReferenceCounted entry = handle.readEntryForTransfer(entryId, minRegionSize);
+            entrySize = entry instanceof FileRegion
+                    ? ((FileRegion) entry).count() : ((ByteBuf) entry).readableBytes();
+            bookieStats.getReadBytes().addCount(entrySize);
+            success = true;
+            return entry;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (success) {
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerSuccessfulValue(entrySize);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(entrySize);
+            }
+        }
+    }
+
+    /**
+     * Read a sequence of consecutive entries of a ledger, stopping at the first entry that cannot be read.
+     */
+    public List<ByteBuf> readEntries(long ledgerId, long firstEntryId, int maxCount)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        List<ByteBuf> entries = null;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading {} entries from {}@{}", maxCount, firstEntryId, ledgerId);
+            }
+            entries = handle.readEntries(firstEntryId, maxCount);
+            return entries;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (entries != null) {
+                // Account each entry with its share of the batch read latency
+                long entryNanos = elapsedNanos / entries.size();
+                for (ByteBuf entry : entries) {
+                    int entrySize = entry.readableBytes();
+                    bookieStats.getReadBytes().addCount(entrySize);
+                    bookieStats.getReadEntryStats().registerSuccessfulEvent(entryNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getReadBytesStats().registerSuccessfulValue(entrySize);
+                }
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(0);
+            }
+        }
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
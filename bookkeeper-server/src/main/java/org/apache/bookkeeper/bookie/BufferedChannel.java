@@ -96,6 +96,21 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         this.doRegularFlushes = unpersistedBytesBound > 0;
     }
 
+    /**
+     * Create a channel that writes through a buffer provided by the caller, e.g. to satisfy alignment constraints.
+     */
+    protected BufferedChannel(FileChannel fc, ByteBuf writeBuffer, int readCapacity, long unpersistedBytesBound)
+            throws IOException {
+        super(fc, readCapacity);
+        this.writeCapacity = writeBuffer.capacity();
+        this.position = fc.position();
+        this.writeBufferStartPosition.set(position);
+        this.writeBuffer = writeBuffer;
+        this.unpersistedBytes = new AtomicLong(0);
+        this.unpersistedBytesBound = unpersistedBytesBound;
+        this.doRegularFlushes = unpersistedBytesBound > 0;
+    }
+
     @Override
     public synchronized void close() throws IOException {
         if (closed) {
@@ -22,6 +22,7 @@
 package org.apache.bookkeeper.bookie;
 
 import java.io.IOException;
+import java.util.Collections;
 /**
  * Interface that identifies LedgerStorage implementations using EntryLogger and running periodic entries compaction.
  */
@@ -51,4 +52,14 @@ public interface CompactableLedgerStorage extends LedgerStorage {
      * @throws IOException
      */
     void flushEntriesLocationsIndex() throws IOException;
+
+    /**
+     * Get the ledgers read from the entry logs since the last call, whose entry logs sorted compaction
+     * rewrites first. Storages which do not track their reads return no ledgers.
+     *
+     * @return the ledgers read from the entry logs
+     */
+    default Iterable<Long> drainRecentlyReadLedgers() {
+        return Collections.emptyList();
+    }
 }
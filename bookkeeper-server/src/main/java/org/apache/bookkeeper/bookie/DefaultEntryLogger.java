@@ -31,7 +31,11 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
 import java.io.File;
@@ -44,6 +48,8 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -53,6 +59,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -60,6 +67,10 @@ import java.util.regex.Pattern;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.nativeio.AsyncFileReader;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -281,6 +292,10 @@ public class DefaultEntryLogger implements EntryLogger {
     static final long LEDGERS_MAP_ENTRY_ID = -2L;
 
     static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
+
+    // Size of the first read issued for an asynchronous entry read. It covers the entry size header and,
+    // for most entries, the whole entry. Bigger entries need a second read once the size is known.
+    static final int ASYNC_READ_INITIAL_SIZE = 4096;
     static final long MB = 1024 * 1024;
 
     private final int maxSaneEntrySize;
@@ -289,6 +304,13 @@ public class DefaultEntryLogger implements EntryLogger {
 
     final ServerConfiguration conf;
 
+    // Native asynchronous read engine, null when asynchronous reads are disabled or not available
+    private final AsyncFileReader asyncReader;
+    private final NativeIO nativeIO;
+    private final ConcurrentMap<Long, AsyncLogFile> logid2AsyncFile = new ConcurrentHashMap<>();
+    // File channels of the entry logs used for the zero-copy transfers of the entries
+    private final ConcurrentMap<Long, TransferLogFile> logid2TransferFile = new ConcurrentHashMap<>();
+
     /**
      * Entry Log Listener.
      */
@@ -358,6 +380,24 @@ public class DefaultEntryLogger implements EntryLogger {
             this.entryLogManager = new EntryLogManagerForSingleEntryLog(conf, ledgerDirsManager, entryLoggerAllocator,
                     listeners, recentlyCreatedEntryLogsStatus);
         }
+
+        AsyncFileReader reader = null;
+        NativeIO nio = null;
+        if (conf.isEntryLogAsyncReadEnabled()) {
+            try {
+                nio = new NativeIOImpl();
+                reader = AsyncFileReader.create(conf.getEntryLogAsyncReadQueueDepth(),
+                        conf.isEntryLogAsyncReadIoUringEnabled());
+                LOG.info("Using {} for asynchronous entry log reads, queue depth: {}",
+                        reader.getEngine(), reader.getQueueDepth());
+            } catch (Throwable t) {
+                LOG.warn("Asynchronous entry log reads are not available, falling back to synchronous reads: {}",
+                        t.getMessage());
+                reader = null;
+            }
+        }
+        this.asyncReader = reader;
+        this.nativeIO = nio;
     }
 
     EntryLogManager getEntryLogManager() {
@@ -443,6 +483,16 @@ public class DefaultEntryLogger implements EntryLogger {
                 LOG.warn("Exception while closing channel for log file:" + logId);
             }
         }
+        AsyncLogFile asyncFile = logid2AsyncFile.remove(logId);
+        if (null != asyncFile) {
+            // The descriptor is closed once the reads still in flight on it are completed
+            asyncFile.release();
+        }
+        TransferLogFile transferFile = logid2TransferFile.remove(logId);
+        if (null != transferFile) {
+            // The channel is closed once the transfers still in flight on it are completed
+            transferFile.release();
+        }
     }
 
     public BufferedReadChannel getFromChannels(long logId) {
@@ -857,6 +907,11 @@ public class DefaultEntryLogger implements EntryLogger {
             throw new IOException("Bad entry read from log file id: " + entryLogId, e);
         }
 
+        return readEntryData(ledgerId, entryId, entryLogId, pos, fc, entrySize);
+    }
+
+    private ByteBuf readEntryData(long ledgerId, long entryId, long entryLogId, long pos, BufferedReadChannel fc,
+                                  int entrySize) throws IOException {
         ByteBuf data = allocator.buffer(entrySize, entrySize);
         int rc = readFromLogChannel(entryLogId, fc, data, pos);
         if (rc != entrySize) {
@@ -871,6 +926,290 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    /**
+     * Read an entry to be sent over the network.
+     *
+     * <p>The header of the entry is read and validated through the buffered channels. Entries of at least
+     * {@code minRegionSize} bytes are returned as a region of a new channel on the entry log file, which remains
+     * readable if the entry log is deleted before the transfer completes. Entries of the log currently being
+     * written might still be in the write buffer, so they are always read in memory.
+     */
+    @Override
+    public ReferenceCounted readEntryForTransfer(long ledgerId, long entryId, long entryLocation, int minRegionSize)
+            throws IOException, Bookie.NoEntryException {
+        long entryLogId = logIdForOffset(entryLocation);
+        if (entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+            return readEntry(ledgerId, entryId, entryLocation);
+        }
+
+        long pos = posForOffset(entryLocation);
+        BufferedReadChannel fc;
+        int entrySize;
+        try {
+            fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            entrySize = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+        } catch (EntryLookupException e) {
+            throw new IOException("Bad entry read from log file id: " + entryLogId, e);
+        }
+
+        if (entrySize < minRegionSize) {
+            return readEntryData(ledgerId, entryId, entryLogId, pos, fc, entrySize);
+        }
+
+        TransferLogFile transferFile;
+        try {
+            transferFile = acquireTransferLogFile(entryLogId);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            throw new IOException("Bad entry read from log file id: " + entryLogId,
+                    new EntryLookupException.MissingLogFileException(ledgerId, entryId, entryLogId, pos));
+        }
+
+        try {
+            long fileSize = transferFile.channel.size();
+            if (pos + entrySize > fileSize) {
+                throw new IOException("Bad entry read from log file id: " + entryLogId,
+                        new EntryLookupException("Short read for " + ledgerId + "@"
+                                + entryId + " in " + entryLogId + "@"
+                                + pos + "(" + (fileSize - pos) + "!=" + entrySize + ")"));
+            }
+        } catch (IOException e) {
+            transferFile.release();
+            throw e;
+        }
+        return new LogFileRegion(transferFile, pos, entrySize);
+    }
+
+    /**
+     * Get the file channel of an entry log, with a reference held for the duration of a transfer.
+     */
+    private TransferLogFile acquireTransferLogFile(long entryLogId) throws IOException {
+        while (true) {
+            TransferLogFile file = logid2TransferFile.get(entryLogId);
+            if (file == null) {
+                TransferLogFile newFile = new TransferLogFile(
+                        FileChannel.open(findFile(entryLogId).toPath(), StandardOpenOption.READ));
+                file = logid2TransferFile.putIfAbsent(entryLogId, newFile);
+                if (file == null) {
+                    file = newFile;
+                } else {
+                    newFile.release();
+                }
+            }
+            try {
+                file.retain();
+                return file;
+            } catch (IllegalReferenceCountException e) {
+                // The log was removed concurrently, drop the stale channel
+                logid2TransferFile.remove(entryLogId, file);
+            }
+        }
+    }
+
+    /**
+     * File channel of an entry log used for zero-copy transfers. The channel is only used with positional
+     * transfers, so it's shared by all of them. The map holds one reference, and each region in flight holds
+     * another one.
+     */
+    @VisibleForTesting
+    static final class TransferLogFile extends AbstractReferenceCounted {
+        final FileChannel channel;
+
+        TransferLogFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        protected void deallocate() {
+            IOUtils.close(LOG, channel);
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * Region of an entry log, which releases its reference to the shared channel instead of closing it.
+     */
+    @VisibleForTesting
+    static final class LogFileRegion extends DefaultFileRegion {
+        final TransferLogFile file;
+
+        LogFileRegion(TransferLogFile file, long position, long count) {
+            super(file.channel, position, count);
+            this.file = file;
+        }
+
+        @Override
+        protected void deallocate() {
+            file.release();
+        }
+    }
+
+    /**
+     * Read an entry through the native asynchronous read engine, without blocking the calling thread.
+     *
+     * <p>The first read fetches {@link #ASYNC_READ_INITIAL_SIZE} bytes starting at the entry size header,
+     * which usually covers the whole entry. If the entry is bigger, a second read fetches it once the size
+     * is known. Entries of the log currently being written might still be in the write buffer, so they
+     * are read synchronously through the buffered channels.
+     *
+     * <p>The entry logs are opened without O_DIRECT, so with the kernel AIO engine the reads are done
+     * synchronously by the I/O thread when they are submitted. Only the io_uring engine overlaps them.
+     */
+    @Override
+    public CompletableFuture<ByteBuf> readEntryAsync(long ledgerId, long entryId, long entryLocation) {
+        long entryLogId = logIdForOffset(entryLocation);
+        if (asyncReader == null || entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+            return EntryLogger.super.readEntryAsync(ledgerId, entryId, entryLocation);
+        }
+
+        long pos = posForOffset(entryLocation);
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        AsyncLogFile file;
+        try {
+            file = acquireAsyncLogFile(entryLogId);
+        } catch (FileNotFoundException e) {
+            future.completeExceptionally(new IOException("Bad entry read from log file id: " + entryLogId,
+                    new EntryLookupException.MissingLogFileException(ledgerId, entryId, entryLogId, pos)));
+            return future;
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        ByteBuf buf = allocator.directBuffer(ASYNC_READ_INITIAL_SIZE, ASYNC_READ_INITIAL_SIZE);
+        if (!buf.hasMemoryAddress()) {
+            buf.release();
+            file.release();
+            return EntryLogger.super.readEntryAsync(ledgerId, entryId, entryLocation);
+        }
+
+        asyncReader.read(file.fd, buf.memoryAddress(), ASYNC_READ_INITIAL_SIZE, pos - 4)
+                .whenComplete((bytesRead, exception) -> {
+            if (exception != null) {
+                buf.release();
+                file.release();
+                future.completeExceptionally(
+                        new IOException("Failed to read from log file id: " + entryLogId, exception));
+                return;
+            }
+
+            int entrySize;
+            try {
+                if (bytesRead < 4 + MIN_SANE_ENTRY_SIZE) {
+                    throw new EntryLookupException.MissingEntryException(ledgerId, entryId, entryLogId, pos - 4);
+                }
+                buf.writerIndex(bytesRead);
+                entrySize = buf.getInt(0);
+                validateEntry(ledgerId, entryId, entryLogId, pos, buf);
+            } catch (EntryLookupException | IOException e) {
+                buf.release();
+                file.release();
+                future.completeExceptionally(new IOException("Bad entry read from log file id: " + entryLogId, e));
+                return;
+            }
+
+            if (4 + entrySize <= bytesRead) {
+                // The whole entry was read in one go
+                buf.setIndex(4, 4 + entrySize);
+                file.release();
+                future.complete(buf);
+                return;
+            }
+
+            buf.release();
+            ByteBuf data = allocator.directBuffer(entrySize, entrySize);
+            if (!data.hasMemoryAddress()) {
+                // The native engine can only read into a buffer with a memory address
+                data.release();
+                file.release();
+                try {
+                    future.complete(readEntry(ledgerId, entryId, entryLocation));
+                } catch (IOException | Bookie.NoEntryException e) {
+                    future.completeExceptionally(e);
+                }
+                return;
+            }
+            asyncReader.read(file.fd, data.memoryAddress(), entrySize, pos)
+                    .whenComplete((dataRead, dataException) -> {
+                file.release();
+                if (dataException != null) {
+                    data.release();
+                    future.completeExceptionally(
+                            new IOException("Failed to read from log file id: " + entryLogId, dataException));
+                } else if (dataRead != entrySize) {
+                    data.release();
+                    future.completeExceptionally(new IOException("Bad entry read from log file id: " + entryLogId,
+                            new EntryLookupException("Short read for " + ledgerId + "@"
+                                    + entryId + " in " + entryLogId + "@"
+                                    + pos + "(" + dataRead + "!=" + entrySize + ")")));
+                } else {
+                    data.writerIndex(entrySize);
+                    future.complete(data);
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Get the native file descriptor of an entry log, with a reference held for the duration of a read.
+     */
+    private AsyncLogFile acquireAsyncLogFile(long entryLogId) throws IOException {
+        while (true) {
+            AsyncLogFile file = logid2AsyncFile.get(entryLogId);
+            if (file == null) {
+                File logFile = findFile(entryLogId);
+                AsyncLogFile newFile = new AsyncLogFile(
+                        nativeIO.open(logFile.getPath(), NativeIO.O_RDONLY, 0));
+                file = logid2AsyncFile.putIfAbsent(entryLogId, newFile);
+                if (file == null) {
+                    file = newFile;
+                } else {
+                    newFile.release();
+                }
+            }
+            try {
+                file.retain();
+                return file;
+            } catch (IllegalReferenceCountException e) {
+                // The log was removed concurrently, drop the stale descriptor
+                logid2AsyncFile.remove(entryLogId, file);
+            }
+        }
+    }
+
+    /**
+     * Native file descriptor of an entry log used for asynchronous reads.
+     * The map holds one reference, and each read in flight holds another one.
+     */
+    private final class AsyncLogFile extends AbstractReferenceCounted {
+        final int fd;
+
+        AsyncLogFile(int fd) {
+            this.fd = fd;
+        }
+
+        @Override
+        protected void deallocate() {
+            try {
+                nativeIO.close(fd);
+            } catch (NativeIOException e) {
+                LOG.warn("Failed to close entry log file descriptor {}", fd, e);
+            }
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -1216,6 +1555,15 @@ public class DefaultEntryLogger implements EntryLogger {
                 IOUtils.close(LOG, compactionLogChannel);
             }
         }
+        if (asyncReader != null) {
+            // wait for the reads in flight before closing their file descriptors
+            asyncReader.close();
+            logid2AsyncFile.values().forEach(AsyncLogFile::release);
+            logid2AsyncFile.clear();
+        }
+        // The channels are closed once the transfers still in flight on them are completed
+        logid2TransferFile.values().forEach(TransferLogFile::release);
+        logid2TransferFile.clear();
         // shutdown the pre-allocation thread
         entryLoggerAllocator.stop();
     }
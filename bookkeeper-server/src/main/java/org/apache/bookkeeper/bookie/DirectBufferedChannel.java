@@ -0,0 +1,284 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * A {@link BufferedChannel} that writes to the file with O_DIRECT, bypassing the page cache.
+ *
+ * <p>Direct I/O requires the memory address, the file offset and the size of each write to be aligned, so the
+ * buffer always starts at an aligned position of the file. On flush, the buffer is written up to the next
+ * alignment, padded with zeros, and the last partial block is kept at the beginning of the buffer, to be written
+ * again with the data that follows it. The bytes after the end of the data are zeros, like the preallocated
+ * space of the journal.
+ */
+class DirectBufferedChannel extends BufferedChannel {
+
+    static final int ALIGNMENT = 4096;
+
+    private final NativeIO nativeIO;
+    private final AlignedBufferPool bufferPool;
+    private final String filename;
+    private int fd;
+
+    // Position up to which the data was written to the file
+    private volatile long flushedPosition;
+
+    /**
+     * Pool of aligned direct buffers, so that the write buffers are not reallocated at each journal roll.
+     */
+    static class AlignedBufferPool implements AutoCloseable {
+        private final ByteBufAllocator allocator;
+        private final int bufferSize;
+        private final ArrayBlockingQueue<ByteBuf> pool;
+        private volatile boolean closed = false;
+
+        AlignedBufferPool(ByteBufAllocator allocator, int bufferSize, int maxPoolSize) {
+            this.allocator = allocator;
+            this.bufferSize = alignUp(bufferSize);
+            this.pool = new ArrayBlockingQueue<>(maxPoolSize);
+        }
+
+        int getBufferSize() {
+            return bufferSize;
+        }
+
+        /**
+         * @return an aligned buffer, which the channel releases when it is closed
+         */
+        ByteBuf acquire() {
+            ByteBuf buffer = pool.poll();
+            if (buffer == null) {
+                buffer = allocateAligned();
+            }
+            // The pool keeps its own reference, to be able to reuse the buffer once the channel released it
+            return buffer.clear().retain();
+        }
+
+        void release(ByteBuf buffer) {
+            if (closed || buffer.refCnt() != 1 || !pool.offer(buffer)) {
+                buffer.release();
+            }
+        }
+
+        private ByteBuf allocateAligned() {
+            ByteBuf buf = allocator.directBuffer(bufferSize + ALIGNMENT, bufferSize + ALIGNMENT);
+            long address = buf.memoryAddress();
+            int alignOffset = (int) ((ALIGNMENT - (address & (ALIGNMENT - 1))) & (ALIGNMENT - 1));
+            return buf.slice(alignOffset, bufferSize).clear();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            ByteBuf buffer;
+            while ((buffer = pool.poll()) != null) {
+                buffer.release();
+            }
+        }
+    }
+
+    static int alignUp(long size) {
+        return (int) ((size + ALIGNMENT - 1) & ~(ALIGNMENT - 1));
+    }
+
+    private static long alignDown(long position) {
+        return position & ~(ALIGNMENT - 1);
+    }
+
+    /**
+     * Open a direct channel on the file of {@code fc}, to write from the current position of {@code fc}, which
+     * must be aligned. All the writes to the file should then go through the channel.
+     */
+    static DirectBufferedChannel open(NativeIO nativeIO, AlignedBufferPool bufferPool, File file, FileChannel fc)
+            throws IOException {
+        String filename = file.getAbsolutePath();
+        int fd;
+        try {
+            fd = nativeIO.open(filename, NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        ByteBuf buffer = bufferPool.acquire();
+        try {
+            return new DirectBufferedChannel(nativeIO, bufferPool, filename, fd, fc, buffer);
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            bufferPool.release(buffer);
+            closeQuietly(nativeIO, fd);
+            throw e;
+        }
+    }
+
+    private DirectBufferedChannel(NativeIO nativeIO, AlignedBufferPool bufferPool, String filename, int fd,
+                                  FileChannel fc, ByteBuf buffer) throws IOException {
+        super(fc, buffer, ALIGNMENT, 0L);
+        this.nativeIO = nativeIO;
+        this.bufferPool = bufferPool;
+        this.filename = filename;
+        this.fd = fd;
+
+        // Reading the beginning of an unaligned first block would go through the page cache
+        if (position != alignDown(position)) {
+            throw new IOException(exMsg("Direct writes must start at an aligned position")
+                    .kv("file", filename).kv("position", position).toString());
+        }
+        flushedPosition = position;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        long startPosition = writeBufferStartPosition.get();
+        int length = writeBuffer.writerIndex();
+        if (startPosition + length == flushedPosition) {
+            return;
+        }
+
+        int alignedLength = alignUp(length);
+        writeBuffer.setZero(length, alignedLength - length);
+        try {
+            int written = nativeIO.pwrite(fd, writeBuffer.memoryAddress(), alignedLength, startPosition);
+            if (written != alignedLength) {
+                throw new IOException(exMsg("Incomplete write")
+                        .kv("file", filename)
+                        .kv("offset", startPosition)
+                        .kv("writeSize", alignedLength)
+                        .kv("bytesWritten", written)
+                        .toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                    .kv("file", filename)
+                    .kv("offset", startPosition)
+                    .kv("writeSize", alignedLength)
+                    .kv("errno", ne.getErrno())
+                    .toString(), ne);
+        }
+        flushedPosition = startPosition + length;
+
+        // Keep the last partial block, which is rewritten by the next flush
+        int tailStart = (int) alignDown(length);
+        if (tailStart > 0) {
+            int tail = length - tailStart;
+            if (tail > 0) {
+                writeBuffer.setBytes(0, writeBuffer, tailStart, tail);
+            }
+            writeBuffer.writerIndex(tail);
+            writeBufferStartPosition.set(startPosition + tailStart);
+        }
+    }
+
+    @Override
+    public long forceWrite(boolean forceMetadata) throws IOException {
+        // The data written with O_DIRECT is not in the page cache, though the device cache and the file
+        // metadata still need to be synced
+        long positionForceWrite = flushedPosition;
+        fileChannel.force(forceMetadata);
+        return positionForceWrite;
+    }
+
+    /**
+     * Allocate space in the file without writing to it.
+     *
+     * @return false if the filesystem does not support it
+     */
+    boolean preallocate(long offset, long length) {
+        try {
+            return nativeIO.fallocate(fd, 0, offset, length) == 0;
+        } catch (NativeIOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Extend the file up to {@code end} by writing zeros to its last block, for the filesystems on which
+     * {@link #preallocate(long, long)} is not supported. Nothing is written if the block is before the end of the
+     * data already written, which is then rewritten by the next flush.
+     */
+    synchronized void extendWithZeros(long end) throws IOException {
+        long blockStart = alignDown(end - 1);
+        if (blockStart < alignDown(flushedPosition + ALIGNMENT - 1)) {
+            return;
+        }
+
+        ByteBuf zeros = bufferPool.acquire();
+        try {
+            zeros.setZero(0, ALIGNMENT);
+            int written = nativeIO.pwrite(fd, zeros.memoryAddress(), ALIGNMENT, blockStart);
+            if (written != ALIGNMENT) {
+                throw new IOException(exMsg("Incomplete write")
+                        .kv("file", filename)
+                        .kv("offset", blockStart)
+                        .kv("writeSize", ALIGNMENT)
+                        .kv("bytesWritten", written)
+                        .toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                    .kv("file", filename)
+                    .kv("offset", blockStart)
+                    .kv("writeSize", ALIGNMENT)
+                    .kv("errno", ne.getErrno())
+                    .toString(), ne);
+        } finally {
+            zeros.release();
+            bufferPool.release(zeros);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (fd < 0) {
+            return;
+        }
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+        } finally {
+            fd = -1;
+            super.close();
+            bufferPool.release(writeBuffer);
+        }
+    }
+
+    private static void closeQuietly(NativeIO nativeIO, int fd) {
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException e) {
+            // Ignore
+        }
+    }
+}
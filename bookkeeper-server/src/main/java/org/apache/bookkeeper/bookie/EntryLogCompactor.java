@@ -22,11 +22,14 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.ldb.ArrayGroupSort;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +38,13 @@ import org.slf4j.LoggerFactory;
  * This is the basic entry log compactor to compact entry logs.
  * The compaction is done by scanning the old entry log file, copy the active ledgers to the
  * current entry logger and remove the old entry log when the scan is over.
+ *
+ * <p>With sorted compaction, the entries of the active ledgers are buffered and copied sorted
+ * by ledger and entry id, so that the entries of a ledger end up next to each other. The entries
+ * are only sorted within each run that fits in the sorted compaction buffer, and the runs are
+ * added to the current entry log, where they are interleaved with the entries flushed from the
+ * write cache and those copied by the other compaction threads. A ledger is contiguous within a
+ * run, not across the whole entry log.
  */
 public class EntryLogCompactor extends AbstractLogCompactor {
     private static final Logger LOG = LoggerFactory.getLogger(EntryLogCompactor.class);
@@ -43,14 +53,28 @@ public class EntryLogCompactor extends AbstractLogCompactor {
     final EntryLogger entryLogger;
     final CompactableLedgerStorage ledgerStorage;
     private final int maxOutstandingRequests;
+    private final boolean useSortedCompaction;
+    private final int sortedCompactionBufferSize;
 
     public EntryLogCompactor(
             ServerConfiguration conf,
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, new Throttler(conf));
+    }
+
+    public EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            Throttler throttler) {
+        super(conf, logRemover, throttler);
         this.maxOutstandingRequests = conf.getCompactionMaxOutstandingRequests();
+        this.useSortedCompaction = conf.getUseSortedCompaction();
+        this.sortedCompactionBufferSize = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(0L, conf.getSortedCompactionBufferSize()));
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
     }
@@ -58,8 +82,15 @@ public class EntryLogCompactor extends AbstractLogCompactor {
     @Override
     public boolean compact(EntryLogMetadata entryLogMeta) {
         try {
-            entryLogger.scanEntryLog(entryLogMeta.getEntryLogId(),
-                scannerFactory.newScanner(entryLogMeta));
+            if (useSortedCompaction && sortedCompactionBufferSize > 0) {
+                try (CompactionScannerFactory.SortingScanner scanner = scannerFactory.newSortingScanner(entryLogMeta)) {
+                    entryLogger.scanEntryLog(entryLogMeta.getEntryLogId(), scanner);
+                    scanner.copySortedEntries();
+                }
+            } else {
+                entryLogger.scanEntryLog(entryLogMeta.getEntryLogId(),
+                    scannerFactory.newScanner(entryLogMeta));
+            }
             scannerFactory.flush();
             LOG.info("Removing entry log {} after compaction", entryLogMeta.getEntryLogId());
             logRemovalListener.removeEntryLog(entryLogMeta.getEntryLogId());
@@ -92,18 +123,90 @@ public class EntryLogCompactor extends AbstractLogCompactor {
 
                 @Override
                 public void process(final long ledgerId, long offset, ByteBuf entry) throws IOException {
-                    throttler.acquire(entry.readableBytes());
+                    copyEntry(ledgerId, entry);
+                }
+            };
+        }
 
-                    if (offsets.size() > maxOutstandingRequests) {
-                        flush();
+        SortingScanner newSortingScanner(final EntryLogMetadata meta) {
+            return new SortingScanner(meta);
+        }
+
+        void copyEntry(long ledgerId, ByteBuf entry) throws IOException {
+            throttler.acquire(entry.readableBytes());
+
+            if (offsets.size() > maxOutstandingRequests) {
+                flush();
+            }
+            long entryId = entry.getLong(entry.readerIndex() + 8);
+
+            long newoffset = entryLogger.addEntry(ledgerId, entry);
+            offsets.add(new EntryLocation(ledgerId, entryId, newoffset));
+        }
+
+        /**
+         * A scanner buffering the entries of the active ledgers, to copy them sorted by ledger and
+         * entry id each time the buffer is full.
+         */
+        class SortingScanner implements EntryLogScanner, AutoCloseable {
+            private final EntryLogMetadata meta;
+            private final ByteBuf buffer = ByteBufAllocator.DEFAULT.buffer(
+                    Math.min(sortedCompactionBufferSize, 1024 * 1024), sortedCompactionBufferSize);
+            // groups of (ledgerId, entryId, offset in the buffer, length)
+            private long[] sortedEntries = new long[4 * 1024];
+            private int sortedEntriesIdx = 0;
+
+            SortingScanner(EntryLogMetadata meta) {
+                this.meta = meta;
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return meta.containsLedger(ledgerId);
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                int length = entry.readableBytes();
+                if (length > buffer.maxWritableBytes()) {
+                    copySortedEntries();
+                    if (length > buffer.maxWritableBytes()) {
+                        // larger than the buffer, nothing to sort it with
+                        copyEntry(ledgerId, entry);
+                        return;
                     }
-                    long entryId = entry.getLong(entry.readerIndex() + 8);
+                }
 
-                    long newoffset = entryLogger.addEntry(ledgerId, entry);
-                    offsets.add(new EntryLocation(ledgerId, entryId, newoffset));
+                if (sortedEntriesIdx == sortedEntries.length) {
+                    sortedEntries = Arrays.copyOf(sortedEntries, sortedEntries.length * 2);
+                }
+                sortedEntries[sortedEntriesIdx] = ledgerId;
+                sortedEntries[sortedEntriesIdx + 1] = entry.getLong(entry.readerIndex() + 8);
+                sortedEntries[sortedEntriesIdx + 2] = buffer.writerIndex();
+                sortedEntries[sortedEntriesIdx + 3] = length;
+                sortedEntriesIdx += 4;
+                buffer.writeBytes(entry, entry.readerIndex(), length);
+            }
 
+            /**
+             * Copy the buffered entries sorted by ledger and entry id.
+             */
+            void copySortedEntries() throws IOException {
+                ArrayGroupSort.sort(sortedEntries, 0, sortedEntriesIdx);
+                for (int i = 0; i < sortedEntriesIdx; i += 4) {
+                    long ledgerId = sortedEntries[i];
+                    int entryOffset = (int) sortedEntries[i + 2];
+                    int length = (int) sortedEntries[i + 3];
+                    copyEntry(ledgerId, buffer.slice(entryOffset, length));
                 }
-            };
+                sortedEntriesIdx = 0;
+                buffer.clear();
+            }
+
+            @Override
+            public void close() {
+                buffer.release();
+            }
         }
 
         void flush() throws IOException {
@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Index of the entry logs by usage, the ratio of their remaining size to their size.
+ *
+ * <p>It is kept up to date as the metadata of the entry logs changes, so that the entry logs to
+ * compact are found without going through the metadata of all the entry logs.
+ */
+class EntryLogUsageIndex {
+
+    /**
+     * The usage of an entry log.
+     */
+    static final class Usage {
+        private static final Comparator<Usage> BY_USAGE =
+                Comparator.comparingDouble((Usage u) -> u.usage).thenComparingLong(u -> u.entryLogId);
+
+        final long entryLogId;
+        final double usage;
+        final int bucketIndex;
+        final long totalSize;
+        final long remainingSize;
+
+        Usage(long entryLogId, double usage, int bucketIndex, long totalSize, long remainingSize) {
+            this.entryLogId = entryLogId;
+            this.usage = usage;
+            this.bucketIndex = bucketIndex;
+            this.totalSize = totalSize;
+            this.remainingSize = remainingSize;
+        }
+    }
+
+    private final int numBuckets;
+    private final int[] usageBuckets;
+    private final NavigableSet<Usage> byUsage = new TreeSet<>(Usage.BY_USAGE);
+    private final Map<Long, Usage> byEntryLogId = new HashMap<>();
+    private long totalRemainingSize = 0;
+
+    EntryLogUsageIndex(int numBuckets) {
+        this.numBuckets = numBuckets;
+        this.usageBuckets = new int[numBuckets];
+    }
+
+    /**
+     * Calculate the index of the bucket for the usage between 0 and 1.
+     *
+     * @param numBuckets Number of reporting buckets.
+     * @param usage 0.0 - 1.0 value representing the usage of the entry log.
+     * @return index based on the number of buckets The last bucket will have the 1.0 if added.
+     */
+    private static int calculateUsageIndex(int numBuckets, double usage) {
+        return Math.min(
+                numBuckets - 1,
+                (int) Math.floor(usage * numBuckets));
+    }
+
+    /**
+     * Add an entry log to the index or update its usage.
+     */
+    synchronized void put(long entryLogId, double usage, long totalSize, long remainingSize) {
+        Usage newUsage = new Usage(entryLogId, usage, calculateUsageIndex(numBuckets, usage),
+                totalSize, remainingSize);
+        Usage oldUsage = byEntryLogId.put(entryLogId, newUsage);
+        if (oldUsage != null) {
+            byUsage.remove(oldUsage);
+            usageBuckets[oldUsage.bucketIndex]--;
+            totalRemainingSize -= oldUsage.remainingSize;
+        }
+        byUsage.add(newUsage);
+        usageBuckets[newUsage.bucketIndex]++;
+        totalRemainingSize += newUsage.remainingSize;
+    }
+
+    /**
+     * Remove an entry log from the index.
+     */
+    synchronized void remove(long entryLogId) {
+        Usage oldUsage = byEntryLogId.remove(entryLogId);
+        if (oldUsage != null) {
+            byUsage.remove(oldUsage);
+            usageBuckets[oldUsage.bucketIndex]--;
+            totalRemainingSize -= oldUsage.remainingSize;
+        }
+    }
+
+    /**
+     * Get the remaining size of all the entry logs.
+     */
+    synchronized long getTotalRemainingSize() {
+        return totalRemainingSize;
+    }
+
+    /**
+     * Get the number of entry logs in each usage bucket.
+     */
+    synchronized int[] getUsageBuckets() {
+        return usageBuckets.clone();
+    }
+
+    /**
+     * Get the entry logs whose usage is below a threshold, from the lowest usage.
+     */
+    synchronized List<Usage> getEntryLogsBelow(double threshold) {
+        NavigableSet<Usage> below = byUsage.headSet(
+                new Usage(Long.MIN_VALUE, threshold, 0, 0L, 0L), false);
+        return new ArrayList<>(below);
+    }
+}
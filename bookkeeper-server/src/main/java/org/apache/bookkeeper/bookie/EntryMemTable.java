@@ -119,12 +119,22 @@ public class EntryMemTable implements AutoCloseable{
     */
     public EntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
                          final StatsLogger statsLogger) {
+        this(conf, source, statsLogger, true);
+    }
+
+    /**
+     * Constructor for the mem tables which do not keep the entries in the skip list.
+     *
+     * @param useSkipList whether to allocate the skip list and its arena
+     */
+    EntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
+                  final StatsLogger statsLogger, boolean useSkipList) {
         this.checkpointSource = source;
-        this.kvmap = newSkipList();
+        this.kvmap = useSkipList ? newSkipList() : EntrySkipList.EMPTY_VALUE;
         this.snapshot = EntrySkipList.EMPTY_VALUE;
         this.conf = conf;
         this.size = new AtomicLong(0);
-        this.allocator = new SkipListArena(conf);
+        this.allocator = useSkipList ? new SkipListArena(conf) : null;
         this.previousFlushSucceeded = new AtomicBoolean(true);
         // skip list size limit
         this.skipListSizeLimit = conf.getSkipListSizeLimit();
@@ -317,8 +327,7 @@ public class EntryMemTable implements AutoCloseable{
 
             this.lock.readLock().lock();
             try {
-                EntryKeyValue toAdd = cloneWithAllocator(ledgerId, entryId, entry);
-                size = internalAdd(toAdd);
+                size = put(ledgerId, entryId, entry);
                 if (size == 0) {
                     skipListSemaphore.release(len);
                 }
@@ -338,6 +347,16 @@ public class EntryMemTable implements AutoCloseable{
         }
     }
 
+    /**
+     * Add an entry to the current mem table. Callers should ensure they already have the read lock taken.
+     *
+     * @return the size of the entry, or 0 if the entry was already there.
+     */
+    long put(long ledgerId, long entryId, final ByteBuffer entry) throws IOException {
+        EntryKeyValue toAdd = cloneWithAllocator(ledgerId, entryId, entry);
+        return internalAdd(toAdd);
+    }
+
     /**
     * Internal version of add() that doesn't clone KVs with the
     * allocator, and doesn't take the lock.
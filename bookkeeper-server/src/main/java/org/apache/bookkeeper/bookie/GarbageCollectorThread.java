@@ -29,26 +29,37 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
 import org.apache.bookkeeper.bookie.GarbageCollector.GarbageCleaner;
 import org.apache.bookkeeper.bookie.stats.GarbageCollectorStats;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap;
+import org.apache.bookkeeper.bookie.storage.ldb.PersistentLedgerEntryLogIndex;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.commons.lang3.mutable.MutableBoolean;
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,9 +71,18 @@ public class GarbageCollectorThread implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(GarbageCollectorThread.class);
     private static final int SECOND = 1000;
     private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final int NUM_USAGE_BUCKETS = 10;
 
     // Maps entry log files to the set of ledgers that comprise the file and the size usage per ledger
     private EntryLogMetadataMap entryLogMetaMap;
+    // Entry log files of entryLogMetaMap sorted by usage, to find the files to compact
+    private final EntryLogUsageIndex usageIndex = new EntryLogUsageIndex(NUM_USAGE_BUCKETS);
+    // Entry log files of entryLogMetaMap holding entries of each ledger, to update them when ledgers are deleted
+    private final LedgerEntryLogIndex ledgerEntryLogIndex;
+    // Ledgers deleted since the last garbage collection of the entry logs, or whose entry logs failed to be updated
+    private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
+    // Whether all the entry logs have been checked for ledgers which do not exist any more since the start
+    private boolean checkedAllEntryLogs = false;
 
     private final ScheduledExecutorService gcExecutor;
     Future<?> scheduledFuture = null;
@@ -91,6 +111,12 @@ public class GarbageCollectorThread implements Runnable {
     // Entry Logger Handle
     final EntryLogger entryLogger;
     AbstractLogCompactor compactor;
+    // one compactor per compaction thread, the first one is run by the gc thread itself
+    final AbstractLogCompactor[] compactors;
+    // runs the compactors but the first one, null with a single compaction thread
+    private final ExecutorService compactionExecutor;
+    // shared by the compactors to limit compaction to the configured rate
+    final AbstractLogCompactor.Throttler compactionThrottler;
 
     // Stats loggers for garbage collection operations
     private final GarbageCollectorStats gcStats;
@@ -100,9 +126,9 @@ public class GarbageCollectorThread implements Runnable {
 
     final CompactableLedgerStorage ledgerStorage;
 
-    // flag to ensure gc thread will not be interrupted during compaction
-    // to reduce the risk getting entry log corrupted
-    final AtomicBoolean compacting = new AtomicBoolean(false);
+    // number of entry logs being compacted, to ensure gc thread will not be interrupted
+    // during compaction to reduce the risk getting entry log corrupted. -1 once shut down
+    final AtomicInteger compacting = new AtomicInteger(0);
 
     // use to get the compacting status
     final AtomicBoolean minorCompacting = new AtomicBoolean(false);
@@ -167,6 +193,28 @@ public class GarbageCollectorThread implements Runnable {
         this.ledgerDirsManager = ledgerDirsManager;
         this.entryLogger = entryLogger;
         this.entryLogMetaMap = createEntryLogMetadataMap();
+        this.ledgerEntryLogIndex = createLedgerEntryLogIndex();
+        try {
+            // The persistent index is only built the first time, then it's kept along with the metadata
+            boolean buildLedgerEntryLogIndex = ledgerEntryLogIndex.isEmpty();
+            MutableBoolean indexFailed = new MutableBoolean(false);
+            this.entryLogMetaMap.forEach((entryLogId, meta) -> {
+                updateUsageIndex(meta);
+                if (buildLedgerEntryLogIndex && indexFailed.isFalse()) {
+                    try {
+                        ledgerEntryLogIndex.addEntryLog(meta);
+                    } catch (EntryLogMetadataMapException e) {
+                        indexFailed.setTrue();
+                        LOG.error("Failed to add entry log {} to the ledger index", entryLogId, e);
+                    }
+                }
+            });
+            if (indexFailed.isTrue()) {
+                throw new IOException("Failed to build the ledger to entry log index");
+            }
+        } catch (EntryLogMetadataMapException e) {
+            throw new IOException("Failed to load entry-log metadata", e);
+        }
         this.ledgerStorage = ledgerStorage;
         this.gcWaitTime = conf.getGcWaitTime();
 
@@ -187,6 +235,7 @@ public class GarbageCollectorThread implements Runnable {
                 }
                 gcStats.getDeletedLedgerCounter().inc();
                 ledgerStorage.deleteLedger(ledgerId);
+                deletedLedgers.add(ledgerId);
             } catch (IOException e) {
                 LOG.error("Exception when deleting the ledger index file on the Bookie: ", e);
             }
@@ -216,11 +265,30 @@ public class GarbageCollectorThread implements Runnable {
                 }
             }
         };
-        if (conf.getUseTransactionalCompaction()) {
-            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
-        } else {
-            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+        int numCompactionThreads = Math.max(1, conf.getNumCompactionThreads());
+        if (numCompactionThreads > 1 && conf.getUseTransactionalCompaction()
+                && entryLogger instanceof DefaultEntryLogger) {
+            // the entry logger writes a single compaction log at a time
+            LOG.warn("Transactional compaction of {} uses a single compaction thread instead of {}",
+                    entryLogger.getClass().getSimpleName(), numCompactionThreads);
+            numCompactionThreads = 1;
+        }
+        this.compactionThrottler = new AbstractLogCompactor.Throttler(conf);
+        this.compactors = new AbstractLogCompactor[numCompactionThreads];
+        for (int i = 0; i < numCompactionThreads; i++) {
+            if (conf.getUseTransactionalCompaction()) {
+                compactors[i] = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                        compactionThrottler);
+            } else {
+                compactors[i] = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                        compactionThrottler);
+            }
         }
+        this.compactor = compactors[0];
+        this.compactionExecutor = numCompactionThreads > 1
+                ? Executors.newFixedThreadPool(numCompactionThreads - 1,
+                        new DefaultThreadFactory("GarbageCollectorThread-compaction"))
+                : null;
 
         this.throttler = new AbstractLogCompactor.Throttler(conf);
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
@@ -290,6 +358,23 @@ public class GarbageCollectorThread implements Runnable {
         }
     }
 
+    private LedgerEntryLogIndex createLedgerEntryLogIndex() throws IOException {
+        // Keep the index next to the metadata, so that it's in memory only if the metadata is
+        if (conf.isGcEntryLogMetadataCacheEnabled()) {
+            String baseDir = Strings.isNullOrEmpty(conf.getGcEntryLogMetadataCachePath())
+                ? this.ledgerDirsManager.getAllLedgerDirs().get(0).getPath() : conf.getGcEntryLogMetadataCachePath();
+            try {
+                return new PersistentLedgerEntryLogIndex(baseDir, conf);
+            } catch (IOException e) {
+                LOG.error("Failed to initialize persistent ledger to entry log index, clean up {}",
+                    baseDir + "/" + PersistentLedgerEntryLogIndex.LEDGER_ENTRYLOG_INDEX, e);
+                throw e;
+            }
+        } else {
+            return new InMemoryLedgerEntryLogIndex();
+        }
+    }
+
     public void enableForceGC() {
         if (forceGarbageCollection.compareAndSet(false, true)) {
             LOG.info("Forced garbage collection triggered by thread: {}", Thread.currentThread().getName());
@@ -424,7 +509,7 @@ public class GarbageCollectorThread implements Runnable {
             extractMetaFromEntryLogs();
 
             // gc entry logs
-            doGcEntryLogs();
+            doGcEntryLogs(force);
 
             if (suspendMajor) {
                 LOG.info("Disk almost full, suspend major compaction to slow down filling disk.");
@@ -488,54 +573,148 @@ public class GarbageCollectorThread implements Runnable {
 
     /**
      * Garbage collect those entry loggers which are not associated with any active ledgers.
+     *
+     * <p>The entry logs of the ledgers deleted since the last pass are found from the ledger to
+     * entry log index. All the entry logs are checked on the first pass and on forced passes, to
+     * catch the ledgers which were deleted otherwise.
+     *
+     * @param checkAllEntryLogs whether to check all the entry logs
      */
-    private void doGcEntryLogs() throws EntryLogMetadataMapException {
-        // Get a cumulative count, don't update until complete
-        AtomicLong totalEntryLogSizeAcc = new AtomicLong(0L);
-
-        // Loop through all of the entry logs and remove the non-active ledgers.
-        entryLogMetaMap.forEach((entryLogId, meta) -> {
-            try {
-                boolean modified = removeIfLedgerNotExists(meta);
-                if (meta.isEmpty()) {
-                    // This means the entry log is not associated with any active
-                    // ledgers anymore.
-                    // We can remove this entry log file now.
-                    LOG.info("Deleting entryLogId {} as it has no active ledgers!", entryLogId);
-                    if (removeEntryLog(entryLogId)) {
-                        gcStats.getReclaimedSpaceViaDeletes().addCount(meta.getTotalSize());
+    @VisibleForTesting
+    void doGcEntryLogs(boolean checkAllEntryLogs) throws EntryLogMetadataMapException {
+        if (checkAllEntryLogs || !checkedAllEntryLogs) {
+            // Loop through all of the entry logs and remove the non-active ledgers. The ledgers that fail to be
+            // removed are added back to the deleted ledgers.
+            deletedLedgers.clear();
+            entryLogMetaMap.forEach((entryLogId, meta) -> gcEntryLog(meta, ledgerId -> true));
+            checkedAllEntryLogs = true;
+        } else if (!deletedLedgers.isEmpty()) {
+            // Loop through the entry logs of the deleted ledgers only, in order. The ledgers that fail to be
+            // removed from an entry log are added back to the deleted ledgers, to be retried on the next pass.
+            ConcurrentLongHashSet ledgersToRemove = ConcurrentLongHashSet.newBuilder().build();
+            Set<Long> entryLogIds = new TreeSet<>();
+            for (long ledgerId : deletedLedgers.items()) {
+                deletedLedgers.remove(ledgerId);
+                ledgersToRemove.add(ledgerId);
+                try {
+                    ledgerEntryLogIndex.forEachEntryLog(ledgerId, entryLogIds::add);
+                } catch (EntryLogMetadataMapException e) {
+                    LOG.warn("Failed to get the entry logs of deleted ledger {}", ledgerId, e);
+                    deletedLedgers.add(ledgerId);
+                }
+            }
+            for (long entryLogId : entryLogIds) {
+                entryLogMetaMap.forKey(entryLogId, (logId, meta) -> {
+                    if (meta != null) {
+                        gcEntryLog(meta, ledgersToRemove::contains);
                     } else {
-                        gcStats.getReclaimFailedToDelete().inc();
+                        // The entry log was removed, but not its ledgers from the index
+                        removeFromLedgerEntryLogIndex(ledgersToRemove, entryLogId);
                     }
-                } else if (modified) {
-                    // update entryLogMetaMap only when the meta modified.
-                    entryLogMetaMap.put(meta.getEntryLogId(), meta);
+                });
+            }
+        }
+
+        this.totalEntryLogSize = usageIndex.getTotalRemainingSize();
+        this.numActiveEntryLogs = entryLogMetaMap.size();
+    }
+
+    /**
+     * Remove the non-active ledgers from an entry log, and the entry log if it is not associated
+     * with any active ledger anymore.
+     *
+     * <p>The ledgers which could not be checked or removed are added to the deleted ledgers, so
+     * that their entry logs are updated again on the next pass.
+     *
+     * @param meta the metadata of the entry log
+     * @param mayBeDeleted the ledgers to check
+     */
+    private void gcEntryLog(EntryLogMetadata meta, LongPredicate mayBeDeleted) {
+        long entryLogId = meta.getEntryLogId();
+        ConcurrentLongHashSet removedLedgers = ConcurrentLongHashSet.newBuilder().build();
+        try {
+            boolean modified = removeIfLedgerNotExists(meta, mayBeDeleted, removedLedgers, deletedLedgers);
+            if (meta.isEmpty()) {
+                // This means the entry log is not associated with any active
+                // ledgers anymore.
+                // We can remove this entry log file now.
+                LOG.info("Deleting entryLogId {} as it has no active ledgers!", entryLogId);
+                if (removeEntryLog(entryLogId)) {
+                    gcStats.getReclaimedSpaceViaDeletes().addCount(meta.getTotalSize());
+                } else {
+                    gcStats.getReclaimFailedToDelete().inc();
+                    retryLedgers(removedLedgers);
+                    return;
                 }
+            } else if (modified) {
+                // update entryLogMetaMap only when the meta modified.
+                entryLogMetaMap.put(entryLogId, meta);
+                updateUsageIndex(meta);
+            }
+            // The ledgers are only removed from the index once the metadata is updated, so that a failed update
+            // is retried on the entry logs still holding the ledgers
+            removeFromLedgerEntryLogIndex(removedLedgers, entryLogId);
+        } catch (EntryLogMetadataMapException e) {
+            // Ignore and continue because ledger will not be cleaned up
+            // from entry-logger in this pass and will be taken care in next
+            // schedule task
+            LOG.warn("Failed to remove ledger from entry-log metadata {}", entryLogId, e);
+            retryLedgers(removedLedgers);
+        }
+    }
+
+    private void retryLedgers(ConcurrentLongHashSet ledgers) {
+        ledgers.forEach(deletedLedgers::add);
+    }
+
+    private void removeFromLedgerEntryLogIndex(ConcurrentLongHashSet ledgers, long entryLogId) {
+        ledgers.forEach(ledgerId -> {
+            try {
+                ledgerEntryLogIndex.remove(ledgerId, entryLogId);
             } catch (EntryLogMetadataMapException e) {
-                // Ignore and continue because ledger will not be cleaned up
-                // from entry-logger in this pass and will be taken care in next
-                // schedule task
-                LOG.warn("Failed to remove ledger from entry-log metadata {}", entryLogId, e);
+                // The index may keep a ledger in an entry log it is not in anymore
+                LOG.warn("Failed to remove ledger {} of entry log {} from the index", ledgerId, entryLogId, e);
             }
-           totalEntryLogSizeAcc.getAndAdd(meta.getRemainingSize());
         });
-
-        this.totalEntryLogSize = totalEntryLogSizeAcc.get();
-        this.numActiveEntryLogs = entryLogMetaMap.size();
     }
 
     private boolean removeIfLedgerNotExists(EntryLogMetadata meta) throws EntryLogMetadataMapException {
+        return removeIfLedgerNotExists(meta, ledgerId -> true, null, null);
+    }
+
+    /**
+     * Remove the ledgers which do not exist anymore from the metadata of an entry log.
+     *
+     * @param meta the metadata of the entry log
+     * @param mayBeDeleted the ledgers to check
+     * @param removedLedgers if not null, the removed ledgers are added to it
+     * @param failedLedgers if not null, the ledgers which could not be checked are added to it
+     * @return whether the metadata was modified
+     */
+    private boolean removeIfLedgerNotExists(EntryLogMetadata meta, LongPredicate mayBeDeleted,
+                                            ConcurrentLongHashSet removedLedgers,
+                                            ConcurrentLongHashSet failedLedgers)
+            throws EntryLogMetadataMapException {
         MutableBoolean modified = new MutableBoolean(false);
         meta.removeLedgerIf((entryLogLedger) -> {
+            if (!mayBeDeleted.test(entryLogLedger)) {
+                return false;
+            }
             // Remove the entry log ledger from the set if it isn't active.
             try {
                 boolean exist = ledgerStorage.ledgerExists(entryLogLedger);
                 if (!exist) {
                     modified.setTrue();
+                    if (removedLedgers != null) {
+                        removedLedgers.add(entryLogLedger);
+                    }
                 }
                 return !exist;
             } catch (IOException e) {
                 LOG.error("Error reading from ledger storage", e);
+                if (failedLedgers != null) {
+                    failedLedgers.add(entryLogLedger);
+                }
                 return false;
             }
         });
@@ -547,84 +726,168 @@ public class GarbageCollectorThread implements Runnable {
      * Compact entry logs if necessary.
      *
      * <p>
-     * Compaction will be executed from low unused space to high unused space.
-     * Those entry log files whose remaining size percentage is higher than threshold
-     * would not be compacted.
+     * Compaction will be executed from the entry log files reclaiming the most space for
+     * the bytes they have to read and rewrite to those reclaiming the least, which also goes
+     * from low unused space to high unused space. Those entry log files whose remaining size
+     * percentage is higher than threshold would not be compacted. The entry log files are
+     * compacted by as many threads as there are compactors.
      * </p>
      */
     @VisibleForTesting
     void doCompactEntryLogs(double threshold, long maxTimeMillis) throws EntryLogMetadataMapException {
         LOG.info("Do compaction to compact those files lower than {}", threshold);
 
-        final int numBuckets = 10;
-        int[] entryLogUsageBuckets = new int[numBuckets];
-        int[] compactedBuckets = new int[numBuckets];
-
-        ArrayList<LinkedList<Long>> compactableBuckets = new ArrayList<>(numBuckets);
-        for (int i = 0; i < numBuckets; i++) {
-            compactableBuckets.add(new LinkedList<>());
-        }
+        // The usage of the entry logs is reported prior to running compaction
+        int[] entryLogUsageBuckets = usageIndex.getUsageBuckets();
+        AtomicIntegerArray compactedBuckets = new AtomicIntegerArray(NUM_USAGE_BUCKETS);
 
         long start = System.currentTimeMillis();
-        MutableLong end = new MutableLong(start);
-        MutableLong timeDiff = new MutableLong(0);
-
-        entryLogMetaMap.forEach((entryLogId, meta) -> {
-            double usage = meta.getUsage();
-            if (conf.isUseTargetEntryLogSizeForGc() && usage < 1.0d) {
-                usage = (double) meta.getRemainingSize() / Math.max(meta.getTotalSize(), conf.getEntryLogSizeLimit());
-            }
-            int bucketIndex = calculateUsageIndex(numBuckets, usage);
-            entryLogUsageBuckets[bucketIndex]++;
-
-            if (timeDiff.getValue() < maxTimeMillis) {
-                end.setValue(System.currentTimeMillis());
-                timeDiff.setValue(end.getValue() - start);
-            }
-            if ((usage >= threshold
-                || (maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis)
-                || !running)) {
-                // We allow the usage limit calculation to continue so that we get an accurate
-                // report of where the usage was prior to running compaction.
-                return;
+        // Sorted compaction rewrites first the entry logs of the ledgers read from the entry logs
+        Set<Long> recentlyReadEntryLogIds = new HashSet<>();
+        Comparator<CompactionCandidate> order = CompactionCandidate.BY_RECLAIMED_SPACE_PER_WORK;
+        if (conf.getUseSortedCompaction()) {
+            for (long ledgerId : ledgerStorage.drainRecentlyReadLedgers()) {
+                ledgerEntryLogIndex.forEachEntryLog(ledgerId, recentlyReadEntryLogIds::add);
             }
-
-            compactableBuckets.get(bucketIndex).add(meta.getEntryLogId());
-        });
+            order = CompactionCandidate.RECENTLY_READ_FIRST.thenComparing(order);
+        }
+        List<CompactionCandidate> candidates = new ArrayList<>();
+        for (EntryLogUsageIndex.Usage usage : usageIndex.getEntryLogsBelow(threshold)) {
+            candidates.add(new CompactionCandidate(usage.entryLogId, usage.bucketIndex,
+                    usage.totalSize, usage.remainingSize, recentlyReadEntryLogIds.contains(usage.entryLogId)));
+        }
 
         LOG.info(
                 "Compaction: entry log usage buckets before compaction [10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}",
                 entryLogUsageBuckets);
 
-        final int maxBucket = calculateUsageIndex(numBuckets, threshold);
-        int totalEntryLogIds = 0;
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            totalEntryLogIds += compactableBuckets.get(currBucket).size();
-        }
-        long lastPrintTimestamp = 0;
-        AtomicInteger processedEntryLogCnt = new AtomicInteger(0);
-
-        stopCompaction:
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            LinkedList<Long> entryLogIds = compactableBuckets.get(currBucket);
-            while (!entryLogIds.isEmpty()) {
-                if (timeDiff.getValue() < maxTimeMillis) {
-                    end.setValue(System.currentTimeMillis());
-                    timeDiff.setValue(end.getValue() - start);
+        candidates.sort(order);
+        CompactionRun run = new CompactionRun(candidates, compactedBuckets, threshold, start, maxTimeMillis);
+
+        List<Future<?>> workers = new ArrayList<>(compactors.length - 1);
+        for (int i = 1; i < compactors.length && candidates.size() > i && running; i++) {
+            AbstractLogCompactor workerCompactor = compactors[i];
+            try {
+                workers.add(compactionExecutor.submit(() -> {
+                    run.compactEntryLogs(workerCompactor);
+                    return null;
+                }));
+            } catch (RejectedExecutionException e) {
+                // the gc thread was shut down meanwhile
+                LOG.debug("Compaction thread not started due to gc not running");
+                break;
+            }
+        }
+        EntryLogMetadataMapException failure = null;
+        try {
+            run.compactEntryLogs(compactors[0]);
+        } catch (EntryLogMetadataMapException e) {
+            failure = e;
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (CancellationException e) {
+                // the worker didn't start before the gc thread was shut down
+            } catch (ExecutionException e) {
+                if (failure == null && e.getCause() instanceof EntryLogMetadataMapException) {
+                    failure = (EntryLogMetadataMapException) e.getCause();
+                } else {
+                    LOG.error("Compaction thread failed due to unexpected error", e.getCause());
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while waiting for the compaction threads");
+                break;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        long timeDiff = System.currentTimeMillis() - start;
+        if (LOG.isDebugEnabled()) {
+            if (!running) {
+                LOG.debug("Compaction exited due to gc not running");
+            }
+            if (maxTimeMillis > 0 && timeDiff > maxTimeMillis) {
+                LOG.debug("Compaction ran for {}ms but was limited by {}ms", timeDiff, maxTimeMillis);
+            }
+        }
+        LOG.info(
+                "Compaction: entry log usage buckets[10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}, compacted {}",
+                entryLogUsageBuckets, compactedBuckets);
+    }
+
+    /**
+     * An entry log to compact.
+     */
+    private static final class CompactionCandidate {
+        // Entry logs reclaiming more space for the bytes read from the entry log and rewritten
+        // go first, then those reclaiming more space
+        static final Comparator<CompactionCandidate> BY_RECLAIMED_SPACE_PER_WORK =
+                Comparator.comparingDouble((CompactionCandidate c) -> c.reclaimedSpacePerWork).reversed()
+                        .thenComparing(Comparator.comparingLong((CompactionCandidate c) -> c.reclaimedSpace)
+                                .reversed());
+        // Entry logs with entries of ledgers read recently go first
+        static final Comparator<CompactionCandidate> RECENTLY_READ_FIRST =
+                Comparator.comparing((CompactionCandidate c) -> !c.recentlyRead);
+
+        final long entryLogId;
+        final int bucketIndex;
+        final long reclaimedSpace;
+        final double reclaimedSpacePerWork;
+        final boolean recentlyRead;
+
+        CompactionCandidate(long entryLogId, int bucketIndex, long totalSize, long remainingSize,
+                            boolean recentlyRead) {
+            this.entryLogId = entryLogId;
+            this.bucketIndex = bucketIndex;
+            this.recentlyRead = recentlyRead;
+            this.reclaimedSpace = totalSize - remainingSize;
+            // compaction reads the whole entry log and rewrites the remaining entries
+            this.reclaimedSpacePerWork = (double) reclaimedSpace / Math.max(1L, totalSize + remainingSize);
+        }
+    }
+
+    /**
+     * The entry logs to compact in a compaction, taken in order by the compaction threads.
+     */
+    private final class CompactionRun {
+        private final List<CompactionCandidate> candidates;
+        private final AtomicInteger nextCandidate = new AtomicInteger(0);
+        private final AtomicIntegerArray compactedBuckets;
+        private final double threshold;
+        private final long start;
+        private final long maxTimeMillis;
+        private final AtomicLong lastPrintTimestamp = new AtomicLong(0);
+
+        CompactionRun(List<CompactionCandidate> candidates, AtomicIntegerArray compactedBuckets,
+                      double threshold, long start, long maxTimeMillis) {
+            this.candidates = candidates;
+            this.compactedBuckets = compactedBuckets;
+            this.threshold = threshold;
+            this.start = start;
+            this.maxTimeMillis = maxTimeMillis;
+        }
 
-                if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || !running) {
-                    // We allow the usage limit calculation to continue so that we get an accurate
-                    // report of where the usage was prior to running compaction.
-                    break stopCompaction;
+        void compactEntryLogs(AbstractLogCompactor logCompactor) throws EntryLogMetadataMapException {
+            while (running) {
+                long now = System.currentTimeMillis();
+                if (maxTimeMillis > 0 && now - start >= maxTimeMillis) {
+                    return;
+                }
+                int index = nextCandidate.getAndIncrement();
+                if (index >= candidates.size()) {
+                    return;
                 }
 
-                final int bucketIndex = currBucket;
-                final long logId = entryLogIds.remove();
-                if (System.currentTimeMillis() - lastPrintTimestamp >= MINUTE) {
-                    lastPrintTimestamp = System.currentTimeMillis();
+                CompactionCandidate candidate = candidates.get(index);
+                final long logId = candidate.entryLogId;
+                long lastPrint = lastPrintTimestamp.get();
+                if (now - lastPrint >= MINUTE && lastPrintTimestamp.compareAndSet(lastPrint, now)) {
                     LOG.info("Compaction progress {} / {}, current compaction entryLogId: {}",
-                        processedEntryLogCnt.get(), totalEntryLogIds, logId);
+                        index, candidates.size(), logId);
                 }
                 entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
                     if (meta == null) {
@@ -639,38 +902,23 @@ public class GarbageCollectorThread implements Runnable {
                     }
 
                     long priorRemainingSize = meta.getRemainingSize();
-                    compactEntryLog(meta);
+                    compactEntryLog(logCompactor, meta);
                     gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
-                    compactedBuckets[bucketIndex]++;
-                    processedEntryLogCnt.getAndIncrement();
+                    compactedBuckets.incrementAndGet(candidate.bucketIndex);
                 });
             }
         }
-
-        if (LOG.isDebugEnabled()) {
-            if (!running) {
-                LOG.debug("Compaction exited due to gc not running");
-            }
-            if (maxTimeMillis > 0 && timeDiff.getValue() > maxTimeMillis) {
-                LOG.debug("Compaction ran for {}ms but was limited by {}ms", timeDiff, maxTimeMillis);
-            }
-        }
-        LOG.info(
-                "Compaction: entry log usage buckets[10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}, compacted {}",
-                entryLogUsageBuckets, compactedBuckets);
     }
 
     /**
-     * Calculate the index for the batch based on the usage between 0 and 1.
-     *
-     * @param numBuckets Number of reporting buckets.
-     * @param usage 0.0 - 1.0 value representing the usage of the entry log.
-     * @return index based on the number of buckets The last bucket will have the 1.0 if added.
+     * Update the usage of an entry log in the usage index, after its metadata is put in the map.
      */
-    int calculateUsageIndex(int numBuckets, double usage) {
-        return Math.min(
-                numBuckets - 1,
-                (int) Math.floor(usage * numBuckets));
+    private void updateUsageIndex(EntryLogMetadata meta) {
+        double usage = meta.getUsage();
+        if (conf.isUseTargetEntryLogSizeForGc() && usage < 1.0d) {
+            usage = (double) meta.getRemainingSize() / Math.max(meta.getTotalSize(), conf.getEntryLogSizeLimit());
+        }
+        usageIndex.put(meta.getEntryLogId(), usage, meta.getTotalSize(), meta.getRemainingSize());
     }
 
     /**
@@ -687,19 +935,32 @@ public class GarbageCollectorThread implements Runnable {
         LOG.info("Shutting down GarbageCollectorThread");
 
         throttler.cancelledAcquire();
-        compactor.throttler.cancelledAcquire();
-        while (!compacting.compareAndSet(false, true)) {
-            // Wait till the thread stops compacting
+        compactionThrottler.cancelledAcquire();
+        while (!compacting.compareAndSet(0, -1)) {
+            // Wait till the threads stop compacting
             Thread.sleep(100);
         }
 
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+        if (compactionExecutor != null) {
+            // Cancel the compaction threads that didn't start, a compaction waits for them
+            for (Runnable worker : compactionExecutor.shutdownNow()) {
+                if (worker instanceof Future) {
+                    ((Future<?>) worker).cancel(false);
+                }
+            }
+        }
         try {
             entryLogMetaMap.close();
         } catch (Exception e) {
             LOG.warn("Failed to close entryLog metadata-map", e);
         }
+        try {
+            ledgerEntryLogIndex.close();
+        } catch (Exception e) {
+            LOG.warn("Failed to close ledger to entry log index", e);
+        }
     }
 
     /**
@@ -713,7 +974,13 @@ public class GarbageCollectorThread implements Runnable {
         // remove entry log file successfully
         if (entryLogger.removeEntryLog(entryLogId)) {
             LOG.info("Removing entry log metadata for {}", entryLogId);
+            entryLogMetaMap.forKey(entryLogId, (logId, meta) -> {
+                if (meta != null) {
+                    ledgerEntryLogIndex.removeEntryLog(meta);
+                }
+            });
             entryLogMetaMap.remove(entryLogId);
+            usageIndex.remove(entryLogId);
             return true;
         }
 
@@ -726,25 +993,38 @@ public class GarbageCollectorThread implements Runnable {
      * @param entryLogMeta
      */
     protected void compactEntryLog(EntryLogMetadata entryLogMeta) {
+        compactEntryLog(compactor, entryLogMeta);
+    }
+
+    /**
+     * Compact an entry log with the compactor of a compaction thread.
+     *
+     * @param logCompactor
+     * @param entryLogMeta
+     */
+    protected void compactEntryLog(AbstractLogCompactor logCompactor, EntryLogMetadata entryLogMeta) {
         // Similar with Sync Thread
-        // try to mark compacting flag to make sure it would not be interrupted
+        // try to count the compaction in to make sure it would not be interrupted
         // by shutdown during compaction. otherwise it will receive
         // ClosedByInterruptException which may cause index file & entry logger
         // closed and corrupted.
-        if (!compacting.compareAndSet(false, true)) {
-            // set compacting flag failed, means compacting is true now
-            // indicates that compaction is in progress for this EntryLogId.
-            return;
-        }
+        int numCompacting;
+        do {
+            numCompacting = compacting.get();
+            if (numCompacting < 0) {
+                // the gc thread is shut down
+                return;
+            }
+        } while (!compacting.compareAndSet(numCompacting, numCompacting + 1));
 
         try {
             // Do the actual compaction
-            compactor.compact(entryLogMeta);
+            logCompactor.compact(entryLogMeta);
         } catch (Exception e) {
             LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
         } finally {
             // Mark compaction done
-            compacting.set(false);
+            compacting.decrementAndGet();
         }
     }
 
@@ -784,7 +1064,10 @@ public class GarbageCollectorThread implements Runnable {
                         gcStats.getReclaimFailedToDelete().inc();
                     }
                 } else {
+                    // Index the ledgers first, so that the index never misses an entry log of the metadata map
+                    ledgerEntryLogIndex.addEntryLog(entryLogMeta);
                     entryLogMetaMap.put(entryLogId, entryLogMeta);
+                    updateUsageIndex(entryLogMeta);
                 }
             } catch (IOException | RuntimeException e) {
                 LOG.warn("Premature exception when processing " + entryLogId
@@ -0,0 +1,120 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * In-memory index of the entry logs of each ledger, used along with the {@link InMemoryEntryLogMetadataMap}.
+ *
+ * <p>The index takes about as much memory as the ledgers maps of the entry log metadata it is built from,
+ * which are in memory as well.
+ */
+public class InMemoryLedgerEntryLogIndex implements LedgerEntryLogIndex {
+
+    private final ConcurrentLongHashMap<EntryLogIds> entryLogsByLedger =
+            ConcurrentLongHashMap.<EntryLogIds>newBuilder().autoShrink(true).build();
+
+    /**
+     * The entry logs of a ledger, in a growable array since most ledgers are in a few entry logs.
+     */
+    private static class EntryLogIds {
+        long[] ids = new long[2];
+        int size = 0;
+
+        int indexOf(long entryLogId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == entryLogId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void add(long entryLogId) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = entryLogId;
+        }
+
+        void removeAt(int index) {
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+    }
+
+    @Override
+    public synchronized void addEntryLog(EntryLogMetadata meta) {
+        long entryLogId = meta.getEntryLogId();
+        meta.getLedgersMap().forEach((ledgerId, size) -> {
+            EntryLogIds entryLogIds = entryLogsByLedger.computeIfAbsent(ledgerId, key -> new EntryLogIds());
+            if (entryLogIds.indexOf(entryLogId) < 0) {
+                entryLogIds.add(entryLogId);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void removeEntryLog(EntryLogMetadata meta) {
+        long entryLogId = meta.getEntryLogId();
+        meta.getLedgersMap().forEach((ledgerId, size) -> remove(ledgerId, entryLogId));
+    }
+
+    @Override
+    public synchronized void remove(long ledgerId, long entryLogId) {
+        EntryLogIds entryLogIds = entryLogsByLedger.get(ledgerId);
+        if (entryLogIds == null) {
+            return;
+        }
+        int index = entryLogIds.indexOf(entryLogId);
+        if (index < 0) {
+            return;
+        }
+        entryLogIds.removeAt(index);
+        if (entryLogIds.size == 0) {
+            entryLogsByLedger.remove(ledgerId);
+        }
+    }
+
+    @Override
+    public synchronized void forEachEntryLog(long ledgerId, LongConsumer action) {
+        EntryLogIds entryLogIds = entryLogsByLedger.get(ledgerId);
+        if (entryLogIds != null) {
+            for (int i = 0; i < entryLogIds.size; i++) {
+                action.accept(entryLogIds.ids[i]);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entryLogsByLedger.isEmpty();
+    }
+
+    @Override
+    public void close() throws IOException {
+        entryLogsByLedger.clear();
+    }
+}
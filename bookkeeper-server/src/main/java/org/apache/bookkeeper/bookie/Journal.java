@@ -51,6 +51,8 @@ import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
 import org.apache.bookkeeper.common.collections.RecyclableArrayList;
 import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -92,6 +94,13 @@ public class Journal implements CheckpointSource {
                 int capacity) -> new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, fc, capacity);
 
         BufferedChannel create(FileChannel fc, int capacity) throws IOException;
+
+        /**
+         * Create the channel to write a journal file.
+         */
+        default BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+            return create(fc, capacity);
+        }
     }
 
 
@@ -541,8 +550,14 @@ public class Journal implements CheckpointSource {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
                 lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
+                long fsyncLatencyNanos = MathUtils.elapsedNanos(fsyncStartTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncLatencyNanos, TimeUnit.NANOSECONDS);
+                double avg = syncLatencyAvgNanos;
+                syncLatencyAvgNanos = avg == 0
+                        ? fsyncLatencyNanos : SYNC_LATENCY_ALPHA * fsyncLatencyNanos + (1 - SYNC_LATENCY_ALPHA) * avg;
+                if (adaptiveGroupCommit != null && syncData) {
+                    adaptiveGroupCommit.onCommit(fsyncLatencyNanos);
+                }
                 lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
@@ -609,8 +624,18 @@ public class Journal implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // sets the time to wait for grouping from the observed commit latency, unless null
+    private final AdaptiveGroupCommit adaptiveGroupCommit;
+
+    // Moving average of the sync latency, updated by the force write thread
+    private static final double SYNC_LATENCY_ALPHA = 0.1;
+    private volatile double syncLatencyAvgNanos = 0;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
+    // write the journal files with O_DIRECT, with buffers from this pool, unless null
+    private final NativeIO nativeIO;
+    private final DirectBufferedChannel.AlignedBufferPool directWriteBuffers;
+    private volatile boolean directWrites;
     private final int journalFormatVersionToWrite;
     private final int journalAlignmentSize;
     // control PageCache flush interval when syncData disabled to reduce disk io util
@@ -695,8 +720,26 @@ public class Journal implements CheckpointSource {
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        if (conf.getJournalAdaptiveGroupCommitEnabled() && maxGroupWaitInNanos > 0) {
+            this.adaptiveGroupCommit = new AdaptiveGroupCommit(
+                    TimeUnit.MICROSECONDS.toNanos(conf.getJournalAdaptiveGroupCommitMinWaitMicros()),
+                    maxGroupWaitInNanos);
+        } else {
+            this.adaptiveGroupCommit = null;
+        }
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
+        if (conf.getJournalDirectIOEnabled()) {
+            this.nativeIO = new NativeIOImpl();
+            // The buffers of the previous journal file can still be in use, until it is closed after the roll
+            this.directWriteBuffers = new DirectBufferedChannel.AlignedBufferPool(allocator,
+                    journalWriteBufferSize, 2);
+            this.directWrites = true;
+        } else {
+            this.nativeIO = null;
+            this.directWriteBuffers = null;
+            this.directWrites = false;
+        }
         // read last log mark
         if (conf.getJournalDirs().length == 1) {
             lastMarkFileName = LAST_MARK_DEFAULT_NAME;
@@ -717,7 +760,11 @@ public class Journal implements CheckpointSource {
 
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
-                () -> memoryLimitController.currentUsage());
+                () -> memoryLimitController.currentUsage(),
+                () -> TimeUnit.NANOSECONDS.toMicros(
+                        adaptiveGroupCommit != null ? adaptiveGroupCommit.getGroupWaitNanos() : maxGroupWaitInNanos),
+                () -> adaptiveGroupCommit != null ? (long) adaptiveGroupCommit.getExpectedGroupSize() : 0L,
+                () -> TimeUnit.NANOSECONDS.toMicros((long) syncLatencyAvgNanos));
     }
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
@@ -915,6 +962,40 @@ public class Journal implements CheckpointSource {
                 callbackTime));
     }
 
+    /**
+     * record the add entry operations of a batch in journal.
+     *
+     * <p>The entries are queued at once, so that they are written and synced together. The callback is
+     * triggered for each entry.
+     */
+    public void logAddEntries(List<ByteBuf> entries, boolean ackBeforeSync, WriteCallback cb, Object ctx)
+            throws InterruptedException {
+        QueueEntry[] queueEntries = new QueueEntry[entries.size()];
+        long batchSize = 0;
+        for (ByteBuf entry : entries) {
+            batchSize += entry.readableBytes();
+        }
+
+        memoryLimitController.reserveMemory(batchSize);
+
+        long enqueueTime = MathUtils.nowInNano();
+        for (int i = 0; i < queueEntries.length; i++) {
+            ByteBuf entry = entries.get(i);
+            long ledgerId = entry.getLong(entry.readerIndex() + 0);
+            long entryId = entry.getLong(entry.readerIndex() + 8);
+            // Retain entry until it gets written to journal
+            entry.retain();
+            queueEntries[i] = QueueEntry.create(
+                    entry, ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime,
+                    journalStats.getJournalAddEntryStats(),
+                    callbackTime);
+        }
+
+        journalStats.getJournalQueueSize().addCount(queueEntries.length);
+
+        queue.putAll(queueEntries, 0, queueEntries.length);
+    }
+
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
@@ -934,10 +1015,19 @@ public class Journal implements CheckpointSource {
         return queue.size();
     }
 
+    /**
+     * Get the moving average of the latency of the syncs of the journal.
+     *
+     * @return the average sync latency in nanoseconds, or 0 if the journal was not synced yet.
+     */
+    public long getAverageSyncLatencyNanos() {
+        return (long) syncLatencyAvgNanos;
+    }
+
     @VisibleForTesting
     JournalChannel newLogFile(long logId, Long replaceLogId) throws IOException {
         return new JournalChannel(journalDirectory, logId, journalPreAllocSize, journalWriteBufferSize,
-                journalAlignmentSize, removePagesFromCache,
+                journalAlignmentSize, removePagesFromCache && !directWrites,
                 journalFormatVersionToWrite, getBufferedChannelBuilder(),
                 conf, fileChannelProvider, replaceLogId);
     }
@@ -999,6 +1089,10 @@ public class Journal implements CheckpointSource {
             int localQueueEntriesLen = 0;
             QueueEntry qe = null;
             while (true) {
+                long groupWaitNanos = adaptiveGroupCommit != null
+                        ? adaptiveGroupCommit.getGroupWaitNanos() : maxGroupWaitInNanos;
+                boolean flushWhenEmpty = flushWhenQueueEmpty || groupWaitNanos <= 0;
+
                 // new journal file to write
                 if (null == logFile) {
                     logId = logId + 1;
@@ -1035,9 +1129,9 @@ public class Journal implements CheckpointSource {
                     } else {
                         // There are already some entries pending. We must adjust
                         // the waiting time to the remaining groupWait time
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushWhenEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
 
@@ -1057,12 +1151,12 @@ public class Journal implements CheckpointSource {
                     boolean shouldFlush = false;
                     // We should issue a forceWrite if any of the three conditions below holds good
                     // 1. If the oldest pending entry has been pending for longer than the max wait time
-                    if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                            .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                    if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                            .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                         groupWhenTimeout = true;
-                    } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                    } else if (groupWaitNanos > 0 && groupWhenTimeout
                         && (qe == null // no entry to group
-                            || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                            || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                         // when group timeout, it would be better to look forward, as there might be lots of
                         // entries already timeout
                         // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1079,7 +1173,7 @@ public class Journal implements CheckpointSource {
                         groupWhenTimeout = false;
                         shouldFlush = true;
                         journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                    } else if (qe == null && flushWhenQueueEmpty) {
+                    } else if (qe == null && flushWhenEmpty) {
                         // We should get here only if we flushWhenQueueEmpty is true else we would wait
                         // for timeout that would put is past the maxWait threshold
                         // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1115,8 +1209,12 @@ public class Journal implements CheckpointSource {
                         writeHandlers.clear();
 
                         lastFlushPosition = bc.position();
+                        long flushLatencyNanos = journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS);
                         journalStats.getJournalFlushStats().registerSuccessfulEvent(
-                                journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                                flushLatencyNanos, TimeUnit.NANOSECONDS);
+                        if (adaptiveGroupCommit != null && !syncData) {
+                            adaptiveGroupCommit.onCommit(flushLatencyNanos);
+                        }
 
                         // Trace the lifetime of entries through persistence
                         if (LOG.isDebugEnabled()) {
@@ -1176,6 +1274,9 @@ public class Journal implements CheckpointSource {
                 journalStats.getJournalQueueSize().dec();
                 journalStats.getJournalQueueStats()
                         .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                if (adaptiveGroupCommit != null) {
+                    adaptiveGroupCommit.onArrival(qe.enqueueTime);
+                }
 
                 if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
                         && (journalFormatVersionToWrite < JournalChannel.V6)) {
@@ -1236,7 +1337,29 @@ public class Journal implements CheckpointSource {
     }
 
     public BufferedChannelBuilder getBufferedChannelBuilder() {
-        return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        if (!directWrites) {
+            return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        }
+
+        return new BufferedChannelBuilder() {
+            @Override
+            public BufferedChannel create(FileChannel fc, int capacity) throws IOException {
+                return new BufferedChannel(allocator, fc, capacity);
+            }
+
+            @Override
+            public BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+                try {
+                    return DirectBufferedChannel.open(nativeIO, directWriteBuffers, file, fc);
+                } catch (IOException | LinkageError e) {
+                    // e.g. the native library is not available or the filesystem does not support O_DIRECT
+                    LOG.warn("Failed to open journal {} with direct I/O, falling back to buffered writes: {}",
+                            file, e.getMessage());
+                    directWrites = false;
+                    return create(fc, capacity);
+                }
+            }
+        };
     }
 
     /**
@@ -1257,6 +1380,9 @@ public class Journal implements CheckpointSource {
             running = false;
             this.interruptThread();
             this.joinThread();
+            if (directWriteBuffers != null) {
+                directWriteBuffers.close();
+            }
             LOG.info("Finished Shutting down Journal thread");
         } catch (IOException | InterruptedException ie) {
             Thread.currentThread().interrupt();
@@ -23,6 +23,7 @@ package org.apache.bookkeeper.bookie;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import io.netty.buffer.Unpooled;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -185,11 +186,11 @@ class JournalChannel implements Closeable {
             }
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(bcBuilder, writeBufferSize, fn);
         } else if (reuseFile) { // Open an existing journal to write, it needs fileChannelProvider support reuse file.
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(bcBuilder, writeBufferSize, fn);
         } else {  // open an existing file to read.
             fc = channel.getFileChannel();
             bc = null; // readonly
@@ -248,7 +249,7 @@ class JournalChannel implements Closeable {
     }
 
     private void writeHeader(Journal.BufferedChannelBuilder bcBuilder,
-                             int writeBufferSize) throws IOException {
+                             int writeBufferSize, File fn) throws IOException {
         int headerSize = (V4 == formatVersion) ? VERSION_HEADER_SIZE : HEADER_SIZE;
         ByteBuffer bb = ByteBuffer.allocate(headerSize);
         ZeroBuffer.put(bb);
@@ -256,12 +257,14 @@ class JournalChannel implements Closeable {
         bb.put(magicWord);
         bb.putInt(formatVersion);
         bb.clear();
-        fc.write(bb);
 
-        bc = bcBuilder.create(fc, writeBufferSize);
+        // Write the header through the channel too, so that a direct channel is never mixed with page cache writes
+        bc = bcBuilder.create(fn, fc, writeBufferSize);
+        bc.write(Unpooled.wrappedBuffer(bb));
+        bc.flush();
         forceWrite(true);
         nextPrealloc = this.preAllocSize;
-        fc.write(zeros, nextPrealloc - journalAlignSize);
+        preAlloc();
     }
 
     public static void renameJournalFile(File source, File target) throws IOException {
@@ -285,9 +288,22 @@ class JournalChannel implements Closeable {
     void preAllocIfNeeded(long size) throws IOException {
         if (bc.position() + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
-            zeros.clear();
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            preAlloc();
+        }
+    }
+
+    private void preAlloc() throws IOException {
+        if (bc instanceof DirectBufferedChannel) {
+            // Writing the zeros through the page cache would mix buffered and direct writes on the same file, so
+            // if the filesystem doesn't support fallocate, the last block is written through the direct channel
+            DirectBufferedChannel directChannel = (DirectBufferedChannel) bc;
+            if (!directChannel.preallocate(nextPrealloc - preAllocSize, preAllocSize)) {
+                directChannel.extendWithZeros(nextPrealloc);
+            }
+            return;
         }
+        zeros.clear();
+        fc.write(zeros, nextPrealloc - journalAlignSize);
     }
 
     int read(ByteBuffer dst)
@@ -0,0 +1,252 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_LEDGERS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Assigns the ledgers to the least loaded journal.
+ *
+ * <p>The load of a journal is estimated as the time for a new entry to be synced: the number of entries waiting
+ * in its queue, plus the new entry, times the average sync latency of the journal. A ledger is assigned when its
+ * first entry is journaled, and keeps using the same journal afterwards, so that forcing the ledger syncs all its
+ * entries, and so that its entries are replayed in order.
+ *
+ * <p>The assignment of a ledger that was not used for a long time is dropped, so that the ledger can be moved to
+ * another journal when it's written again. Each sweep of the idle assignments queues a marker behind the entries
+ * of every journal, and an assignment is only dropped once its journal completed a marker queued after the last
+ * entry of the ledger, so that all the entries of the ledger were synced by then.
+ */
+@StatsDoc(
+    name = JOURNAL_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Journal load balancing stats"
+)
+class JournalLoadBalancer {
+
+    static final long IDLE_ASSIGNMENT_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    // Granularity of the last access time, to avoid updating it on every entry
+    private static final long ACCESS_UPDATE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long EXPIRED = Long.MIN_VALUE;
+
+    private static final long NO_MARKER = Long.MIN_VALUE;
+
+    // The markers are force ledger requests, which complete once the entries queued before them are synced
+    private static final long MARKER_LEDGER_ID = -1L;
+
+    private final List<Journal> journals;
+    private final Ticker ticker;
+    private final ConcurrentLongHashMap<Assignment> assignments = ConcurrentLongHashMap.<Assignment>newBuilder()
+            .expectedItems(4096)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+    private final AtomicLongArray assignedLedgers;
+    private final AtomicLong lastSweepNanos;
+    // Time at which the last completed marker of each journal was queued
+    private final AtomicLongArray syncedMarkerNanos;
+
+    @StatsDoc(
+        name = JOURNAL_LEDGERS,
+        help = "The number of ledgers assigned to the journal"
+    )
+    private final Gauge<Long>[] journalLedgersStats;
+
+    private static final class Assignment {
+        final int journalIndex;
+        final AtomicLong lastAccessNanos;
+
+        Assignment(int journalIndex, long nowNanos) {
+            this.journalIndex = journalIndex;
+            this.lastAccessNanos = new AtomicLong(nowNanos);
+        }
+    }
+
+    JournalLoadBalancer(List<Journal> journals, StatsLogger journalStatsLogger) {
+        this(journals, journalStatsLogger, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    @SuppressWarnings("unchecked")
+    JournalLoadBalancer(List<Journal> journals, StatsLogger journalStatsLogger, Ticker ticker) {
+        this.journals = journals;
+        this.ticker = ticker;
+        this.assignedLedgers = new AtomicLongArray(journals.size());
+        this.lastSweepNanos = new AtomicLong(ticker.read());
+        this.syncedMarkerNanos = new AtomicLongArray(journals.size());
+        for (int i = 0; i < journals.size(); i++) {
+            syncedMarkerNanos.set(i, NO_MARKER);
+        }
+
+        this.journalLedgersStats = new Gauge[journals.size()];
+        for (int i = 0; i < journals.size(); i++) {
+            final int journalIndex = i;
+            journalLedgersStats[i] = new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return assignedLedgers.get(journalIndex);
+                }
+            };
+            journalStatsLogger.scopeLabel("journalIndex", String.valueOf(i))
+                    .registerGauge(JOURNAL_LEDGERS, journalLedgersStats[i]);
+        }
+    }
+
+    /**
+     * Get the journal of a ledger, assigning it to the least loaded journal if it has none.
+     */
+    Journal getJournal(long ledgerId) {
+        long now = ticker.read();
+        while (true) {
+            Assignment assignment = assignments.get(ledgerId);
+            if (assignment == null) {
+                Assignment newAssignment = new Assignment(selectJournal(ledgerId), now);
+                assignment = assignments.putIfAbsent(ledgerId, newAssignment);
+                if (assignment == null) {
+                    assignedLedgers.incrementAndGet(newAssignment.journalIndex);
+                    maybeSweep(now);
+                    return journals.get(newAssignment.journalIndex);
+                }
+            }
+
+            long lastAccess = assignment.lastAccessNanos.get();
+            if (lastAccess == EXPIRED) {
+                // Dropped by a sweep in the meantime
+                assignments.remove(ledgerId, assignment);
+                continue;
+            }
+            if (now - lastAccess > ACCESS_UPDATE_NANOS
+                    && !assignment.lastAccessNanos.compareAndSet(lastAccess, now)
+                    && assignment.lastAccessNanos.get() == EXPIRED) {
+                assignments.remove(ledgerId, assignment);
+                continue;
+            }
+            return journals.get(assignment.journalIndex);
+        }
+    }
+
+    /**
+     * Select the journal with the lowest load. The journals are scanned from the one the ledger id hashes to,
+     * so that the ledgers are spread as before when the journals are equally loaded.
+     */
+    private int selectJournal(long ledgerId) {
+        int numJournals = journals.size();
+        int start = MathUtils.signSafeMod(ledgerId, numJournals);
+        int selected = start;
+        double minLoad = Double.MAX_VALUE;
+        for (int i = 0; i < numJournals; i++) {
+            int journalIndex = (start + i) % numJournals;
+            double load = getLoad(journals.get(journalIndex));
+            if (load < minLoad) {
+                minLoad = load;
+                selected = journalIndex;
+            }
+        }
+        return selected;
+    }
+
+    private static double getLoad(Journal journal) {
+        // Count a sync as at least 1 microsecond, so that the queue depth still matters before the first sync
+        long syncLatencyNanos = Math.max(journal.getAverageSyncLatencyNanos(), 1000L);
+        return (journal.getJournalQueueLength() + 1.0) * syncLatencyNanos;
+    }
+
+    private void maybeSweep(long now) {
+        long lastSweep = lastSweepNanos.get();
+        if (now - lastSweep < IDLE_ASSIGNMENT_NANOS / 2 || !lastSweepNanos.compareAndSet(lastSweep, now)) {
+            return;
+        }
+
+        assignments.removeIf((ledgerId, assignment) -> {
+            long lastAccess = assignment.lastAccessNanos.get();
+            if (lastAccess != EXPIRED && now - lastAccess > IDLE_ASSIGNMENT_NANOS
+                    && isSyncedAfter(assignment.journalIndex, lastAccess)
+                    && assignment.lastAccessNanos.compareAndSet(lastAccess, EXPIRED)) {
+                assignedLedgers.decrementAndGet(assignment.journalIndex);
+                return true;
+            }
+            return false;
+        });
+
+        for (int i = 0; i < journals.size(); i++) {
+            queueMarker(i, now);
+        }
+    }
+
+    /**
+     * Whether the journal completed a marker queued after the entries of a ledger last accessed at the given time.
+     * The last access time is only updated every {@link #ACCESS_UPDATE_NANOS}, so the last entry of the ledger can
+     * be up to that much later.
+     */
+    private boolean isSyncedAfter(int journalIndex, long lastAccess) {
+        long syncedMarker = syncedMarkerNanos.get(journalIndex);
+        return syncedMarker != NO_MARKER && syncedMarker - lastAccess > ACCESS_UPDATE_NANOS;
+    }
+
+    private void queueMarker(int journalIndex, long now) {
+        try {
+            journals.get(journalIndex).forceLedger(MARKER_LEDGER_ID, (rc, ledgerId, entryId, addr, ctx) -> {
+                if (rc == BKException.Code.OK) {
+                    syncedMarkerNanos.accumulateAndGet(journalIndex, now,
+                            (current, marker) -> current == NO_MARKER || marker - current > 0 ? marker : current);
+                }
+            }, null);
+        } catch (IllegalStateException e) {
+            // The journal queue is full, the marker is queued on the next sweep
+        }
+    }
+
+    /**
+     * Drop the assignment of a deleted ledger.
+     */
+    void ledgerDeleted(long ledgerId) {
+        Assignment assignment = assignments.remove(ledgerId);
+        if (assignment != null && assignment.lastAccessNanos.getAndSet(EXPIRED) != EXPIRED) {
+            assignedLedgers.decrementAndGet(assignment.journalIndex);
+        }
+    }
+
+    long getAssignedLedgers(int journalIndex) {
+        return assignedLedgers.get(journalIndex);
+    }
+}
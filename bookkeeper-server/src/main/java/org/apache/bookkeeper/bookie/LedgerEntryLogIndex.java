@@ -0,0 +1,78 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.Closeable;
+import java.util.function.LongConsumer;
+import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
+
+/**
+ * Index of the entry logs holding entries of each ledger, the reverse of the ledgers map of the
+ * entry log metadata.
+ *
+ * <p>It lets the metadata of the entry logs of the deleted ledgers be updated without going
+ * through the metadata of all the entry logs. The index may keep a ledger in an entry log it
+ * was removed from, so its users must check the entry log metadata, but it never misses one.
+ */
+public interface LedgerEntryLogIndex extends Closeable {
+
+    /**
+     * Add the ledgers of an entry log.
+     *
+     * @param meta the metadata of the entry log
+     * @throws EntryLogMetadataMapException
+     */
+    void addEntryLog(EntryLogMetadata meta) throws EntryLogMetadataMapException;
+
+    /**
+     * Remove the ledgers of an entry log.
+     *
+     * @param meta the metadata of the entry log
+     * @throws EntryLogMetadataMapException
+     */
+    void removeEntryLog(EntryLogMetadata meta) throws EntryLogMetadataMapException;
+
+    /**
+     * Remove a ledger from an entry log.
+     *
+     * @param ledgerId
+     * @param entryLogId
+     * @throws EntryLogMetadataMapException
+     */
+    void remove(long ledgerId, long entryLogId) throws EntryLogMetadataMapException;
+
+    /**
+     * Performs the given action for each entry log with entries of a ledger.
+     *
+     * @param ledgerId
+     * @param action
+     * @throws EntryLogMetadataMapException
+     */
+    void forEachEntryLog(long ledgerId, LongConsumer action) throws EntryLogMetadataMapException;
+
+    /**
+     * Returns true if there are no ledgers in the index.
+     *
+     * @return
+     * @throws EntryLogMetadataMapException
+     */
+    boolean isEmpty() throws EntryLogMetadataMapException;
+}
@@ -24,6 +24,8 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCounted;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -144,6 +146,43 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Read an entry to be sent over the network.
+     *
+     * <p>Implementations can return the entries of at least {@code minRegionSize} bytes that are not cached as a
+     * {@link FileRegion} of the file holding them, so that they are transferred to the socket without being copied
+     * in memory.
+     *
+     * @return the entry, as a {@link ByteBuf} or as a {@link FileRegion}
+     */
+    default ReferenceCounted getEntryForTransfer(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
+        return getEntry(ledgerId, entryId);
+    }
+
+    /**
+     * Read a sequence of consecutive entries of a ledger, starting from {@code firstEntryId}.
+     *
+     * <p>The read stops at the first entry that cannot be read, so the result holds the first entry and at most
+     * {@code maxCount} entries. Implementations can batch the index lookups and the reads of the entries that
+     * are not cached.
+     *
+     * @throws IOException if the first entry cannot be read
+     */
+    default List<ByteBuf> getEntries(long ledgerId, long firstEntryId, int maxCount)
+            throws IOException, BookieException {
+        List<ByteBuf> entries = new ArrayList<>(maxCount);
+        entries.add(getEntry(ledgerId, firstEntryId));
+        for (int i = 1; i < maxCount; i++) {
+            try {
+                entries.add(getEntry(ledgerId, firstEntryId + i));
+            } catch (IOException | BookieException e) {
+                break;
+            }
+        }
+        return entries;
+    }
+
     /**
      * Get last add confirmed.
      *
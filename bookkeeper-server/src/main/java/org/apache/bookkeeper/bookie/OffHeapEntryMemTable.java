@@ -0,0 +1,621 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.LongStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.Bookie.NoLedgerException;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.storage.ldb.ArrayGroupSort;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * An EntryMemTable that keeps the entries off heap.
+ *
+ * <p>The entries are copied in direct chunks taken from the bookie allocator and are indexed by
+ * (ledgerId, entryId) in primitive hash maps, so the heap used by the mem table does not grow
+ * with the entries it holds. The entries of a snapshot are sorted by (ledgerId, entryId) when it
+ * is flushed, and its chunks are released once the flush succeeded.
+ *
+ * <p>When entry log per ledger is enabled, the entries of each ledger are flushed by
+ * an OrderedExecutor, as in EntryMemTableWithParallelFlusher.
+ */
+@Slf4j
+class OffHeapEntryMemTable extends EntryMemTable {
+
+    /**
+     * Entries of the mem table, in direct chunks.
+     */
+    static class EntryTable {
+        static final EntryTable EMPTY_VALUE = new EntryTable(Checkpoint.MAX, null, 0);
+
+        final Checkpoint cp;
+        private final ByteBufAllocator allocator;
+        private final int chunkSize;
+
+        // (ledgerId, entryId) -> (location, length), the location being the chunk index and the
+        // offset in the chunk
+        private final ConcurrentLongLongPairHashMap index = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
+
+        // ledgerId -> first and last entryId, to find the entries of a ledger without walking the whole index
+        private final ConcurrentLongLongHashMap firstEntryMap = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
+
+        private final ConcurrentLongLongHashMap lastEntryMap = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
+
+        // Chunks are only added, the volatile array publishes them to the readers
+        private volatile ByteBuf[] chunks = new ByteBuf[0];
+        private int numChunks = 0;
+        private int currentChunk = -1;
+        private int currentChunkOffset = 0;
+
+        EntryTable(Checkpoint cp, ByteBufAllocator allocator, int chunkSize) {
+            this.cp = cp;
+            this.allocator = allocator;
+            this.chunkSize = chunkSize;
+        }
+
+        int compareTo(final Checkpoint cp) {
+            return this.cp.compareTo(cp);
+        }
+
+        boolean isEmpty() {
+            return index.isEmpty();
+        }
+
+        long count() {
+            return index.size();
+        }
+
+        /**
+         * Copy an entry in the chunks and index it.
+         *
+         * @return false if the entry was already there.
+         */
+        boolean put(long ledgerId, long entryId, ByteBuffer entry) {
+            // Check the index first, so that the space of a duplicate entry is not taken in the chunks
+            if (index.containsKey(ledgerId, entryId)) {
+                return false;
+            }
+
+            int length = entry.remaining();
+            long location = allocate(length);
+            chunks[chunkIndex(location)].setBytes(chunkOffset(location), entry);
+
+            if (!index.putIfAbsent(ledgerId, entryId, location, length)) {
+                // The same entry was added concurrently
+                free(location, length);
+                return false;
+            }
+
+            // Update first entryId for ledger
+            while (true) {
+                long currentFirstEntryId = firstEntryMap.get(ledgerId);
+                if (currentFirstEntryId >= 0 && currentFirstEntryId < entryId) {
+                    break;
+                }
+
+                if (firstEntryMap.compareAndSet(ledgerId, currentFirstEntryId, entryId)) {
+                    break;
+                }
+            }
+
+            // Update last entryId for ledger, the same way as the write cache of the db ledger storage
+            while (true) {
+                long currentLastEntryId = lastEntryMap.get(ledgerId);
+                if (currentLastEntryId > entryId) {
+                    break;
+                }
+
+                if (lastEntryMap.compareAndSet(ledgerId, currentLastEntryId, entryId)) {
+                    break;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reserve the space of an entry in the chunks.
+         */
+        private synchronized long allocate(int length) {
+            if (length > chunkSize) {
+                // Entries larger than a chunk get a chunk of their own
+                return location(addChunk(length), 0);
+            }
+            if (currentChunk < 0 || chunkSize - currentChunkOffset < length) {
+                currentChunk = addChunk(chunkSize);
+                currentChunkOffset = 0;
+            }
+            long location = location(currentChunk, currentChunkOffset);
+            currentChunkOffset += length;
+            return location;
+        }
+
+        /**
+         * Give back the space of an entry which was not indexed.
+         *
+         * <p>The space can only be given back if nothing was allocated after it, otherwise it is
+         * lost until the table is released.
+         */
+        private synchronized void free(long location, int length) {
+            int chunkIndex = chunkIndex(location);
+            if (chunkIndex == currentChunk) {
+                if (chunkOffset(location) + length == currentChunkOffset) {
+                    currentChunkOffset -= length;
+                }
+            } else if (chunkIndex == numChunks - 1) {
+                // The chunk of its own of a large entry
+                chunks[chunkIndex].release();
+                chunks[chunkIndex] = null;
+                numChunks--;
+            }
+        }
+
+        private int addChunk(int size) {
+            ByteBuf[] newChunks = chunks;
+            if (numChunks == newChunks.length) {
+                newChunks = Arrays.copyOf(newChunks, Math.max(16, numChunks * 2));
+            }
+            newChunks[numChunks] = allocator.directBuffer(size, size);
+            chunks = newChunks;
+            return numChunks++;
+        }
+
+        /**
+         * Get a copy of an entry.
+         *
+         * @return the entry kv or null if none found.
+         */
+        EntryKeyValue get(long ledgerId, long entryId) {
+            LongPair value = index.get(ledgerId, entryId);
+            if (value == null) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) value.second];
+            chunks[chunkIndex(value.first)].getBytes(chunkOffset(value.first), bytes);
+            return new EntryKeyValue(ledgerId, entryId, bytes);
+        }
+
+        /**
+         * Get a copy of the last entry of a ledger.
+         *
+         * @return the entry kv or null if none found.
+         */
+        EntryKeyValue getLast(long ledgerId) {
+            long lastEntryId = lastEntryMap.get(ledgerId);
+            if (lastEntryId < 0) {
+                return null;
+            }
+            return get(ledgerId, lastEntryId);
+        }
+
+        /**
+         * Get an entry without copying it, the entry is valid until the table is released.
+         */
+        ByteBuf getValue(long location, int length) {
+            return chunks[chunkIndex(location)].slice(chunkOffset(location), length);
+        }
+
+        boolean contains(long ledgerId, long entryId) {
+            return index.containsKey(ledgerId, entryId);
+        }
+
+        /**
+         * @return the first entryId of a ledger, or -1 if the ledger has no entry.
+         */
+        long getFirstEntryId(long ledgerId) {
+            return firstEntryMap.get(ledgerId);
+        }
+
+        /**
+         * @return the last entryId of a ledger, or -1 if the ledger has no entry.
+         */
+        long getLastEntryId(long ledgerId) {
+            return lastEntryMap.get(ledgerId);
+        }
+
+        synchronized void release() {
+            if (numChunks == 0) {
+                return;
+            }
+            ByteBuf[] chunks = this.chunks;
+            for (int i = 0; i < numChunks; i++) {
+                chunks[i].release();
+            }
+            this.chunks = new ByteBuf[0];
+            this.numChunks = 0;
+            this.currentChunk = -1;
+        }
+
+        private static long location(int chunkIndex, int chunkOffset) {
+            return ((long) chunkIndex << 32) | chunkOffset;
+        }
+
+        private static int chunkIndex(long location) {
+            return (int) (location >>> 32);
+        }
+
+        private static int chunkOffset(long location) {
+            return (int) location;
+        }
+    }
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final ByteBufAllocator byteBufAllocator;
+    private final int chunkSize;
+    private final OrderedExecutor flushExecutor;
+
+    volatile EntryTable table;
+
+    // Snapshot of the table. Made for flusher.
+    volatile EntryTable tableSnapshot;
+
+    // Entries of the snapshot being flushed, as groups of (ledgerId, entryId, location, length)
+    private long[] sortedEntries = new long[0];
+    private int sortedEntriesIdx;
+
+    public OffHeapEntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
+                                final StatsLogger statsLogger, final ByteBufAllocator byteBufAllocator) {
+        super(conf, source, statsLogger, false);
+        this.byteBufAllocator = byteBufAllocator;
+        this.chunkSize = conf.getSkipListArenaChunkSize();
+        this.table = newTable();
+        this.tableSnapshot = EntryTable.EMPTY_VALUE;
+        if (conf.isEntryLogPerLedgerEnabled()) {
+            this.flushExecutor = OrderedExecutor.newBuilder().numThreads(conf.getNumOfMemtableFlushThreads())
+                    .name("MemtableFlushThreads").build();
+        } else {
+            this.flushExecutor = null;
+        }
+    }
+
+    private EntryTable newTable() {
+        return new EntryTable(checkpointSource.newCheckpoint(), byteBufAllocator, chunkSize);
+    }
+
+    @Override
+    void dump() {
+        log.info("{} entries in the mem table, {} entries in the snapshot",
+                table.count(), tableSnapshot.count());
+    }
+
+    @Override
+    Checkpoint snapshot(Checkpoint oldCp) throws IOException {
+        Checkpoint cp = null;
+        // No-op if snapshot currently has entries
+        if (this.tableSnapshot.isEmpty() && this.table.compareTo(oldCp) < 0) {
+            final long startTimeNanos = MathUtils.nowInNano();
+            this.lock.writeLock().lock();
+            try {
+                if (this.tableSnapshot.isEmpty() && !this.table.isEmpty()
+                        && this.table.compareTo(oldCp) < 0) {
+                    this.tableSnapshot = this.table;
+                    this.table = newTable();
+                    // get the checkpoint of the memtable.
+                    cp = this.table.cp;
+                    // Reset size to not include any entries
+                    this.size.set(0);
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+
+            if (null != cp) {
+                memTableStats.getSnapshotStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                memTableStats.getSnapshotStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+        return cp;
+    }
+
+    /**
+     * Flush the snapshot in (ledgerId, entryId) order and clear it iff its data is before checkpoint.
+     */
+    @Override
+    long flushSnapshot(final SkipListFlusher flusher, Checkpoint checkpoint) throws IOException {
+        long size = 0;
+        if (this.tableSnapshot.compareTo(checkpoint) < 0) {
+            synchronized (this) {
+                EntryTable entries = this.tableSnapshot;
+                if (entries.compareTo(checkpoint) < 0) {
+                    int numEntries = sortEntries(entries);
+                    if (flushExecutor == null) {
+                        size = flushEntries(flusher, entries, 0, numEntries);
+                    } else {
+                        size = flushEntriesInParallel(flusher, entries, numEntries);
+                    }
+                    memTableStats.getFlushBytesCounter().addCount(size);
+                    clearSnapshot(entries);
+                }
+            }
+        }
+
+        skipListSemaphore.release((int) size);
+        return size;
+    }
+
+    /**
+     * Sort the entries of a table by (ledgerId, entryId).
+     *
+     * @return the number of items of {@link #sortedEntries} holding the entries.
+     */
+    private int sortEntries(EntryTable entries) {
+        int arrayLen = (int) entries.count() * 4;
+        if (sortedEntries.length < arrayLen) {
+            sortedEntries = new long[arrayLen * 2];
+        }
+
+        sortedEntriesIdx = 0;
+        entries.index.forEach((ledgerId, entryId, location, length) -> {
+            sortedEntries[sortedEntriesIdx] = ledgerId;
+            sortedEntries[sortedEntriesIdx + 1] = entryId;
+            sortedEntries[sortedEntriesIdx + 2] = location;
+            sortedEntries[sortedEntriesIdx + 3] = length;
+            sortedEntriesIdx += 4;
+        });
+
+        // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
+        ArrayGroupSort.sort(sortedEntries, 0, sortedEntriesIdx);
+        return sortedEntriesIdx;
+    }
+
+    /**
+     * Flush the sorted entries between two items of {@link #sortedEntries}.
+     */
+    private long flushEntries(final SkipListFlusher flusher, EntryTable entries, int from, int to)
+            throws IOException {
+        long size = 0;
+        long ledgerGC = -1;
+        for (int i = from; i < to; i += 4) {
+            long ledgerId = sortedEntries[i];
+            long entryId = sortedEntries[i + 1];
+            long location = sortedEntries[i + 2];
+            int length = (int) sortedEntries[i + 3];
+            size += length;
+            if (ledgerGC != ledgerId) {
+                try {
+                    flusher.process(ledgerId, entryId, entries.getValue(location, length));
+                } catch (NoLedgerException exception) {
+                    ledgerGC = ledgerId;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Flush the sorted entries with the flushExecutor, with ledgerId as the orderingKey.
+     */
+    private long flushEntriesInParallel(final SkipListFlusher flusher, EntryTable entries, int numEntries)
+            throws IOException {
+        AtomicLong flushedSize = new AtomicLong();
+        Phaser pendingNumOfLedgerFlushes = new Phaser(1);
+        AtomicReference<Exception> exceptionWhileFlushingParallelly = new AtomicReference<Exception>();
+
+        int from = 0;
+        while (from < numEntries) {
+            long ledgerId = sortedEntries[from];
+            int to = from + 4;
+            while (to < numEntries && sortedEntries[to] == ledgerId) {
+                to += 4;
+            }
+            final int thisLedgerFrom = from;
+            final int thisLedgerTo = to;
+            pendingNumOfLedgerFlushes.register();
+            flushExecutor.executeOrdered(ledgerId, () -> {
+                try {
+                    flushedSize.addAndGet(flushEntries(flusher, entries, thisLedgerFrom, thisLedgerTo));
+                    pendingNumOfLedgerFlushes.arriveAndDeregister();
+                } catch (Exception exc) {
+                    log.error("Got Exception while trying to flush process entries: ", exc);
+                    exceptionWhileFlushingParallelly.set(exc);
+                    pendingNumOfLedgerFlushes.forceTermination();
+                }
+            });
+            from = to;
+        }
+
+        boolean phaserTerminatedAbruptly = false;
+        try {
+            phaserTerminatedAbruptly = (pendingNumOfLedgerFlushes.arriveAndAwaitAdvance() < 0);
+        } catch (IllegalStateException ise) {
+            log.error("Got IllegalStateException while awaiting on Phaser", ise);
+            throw new IOException("Got IllegalStateException while awaiting on Phaser", ise);
+        }
+        if (phaserTerminatedAbruptly) {
+            log.error("Phaser is terminated while awaiting flushExecutor to complete the entry flushes",
+                    exceptionWhileFlushingParallelly.get());
+            throw new IOException("Failed to complete the flushSnapshotByParallelizing",
+                    exceptionWhileFlushingParallelly.get());
+        }
+        return flushedSize.get();
+    }
+
+    /**
+     * The passed snapshot was successfully persisted; it can be let go and its chunks released.
+     */
+    void clearSnapshot(final EntryTable entries) {
+        // Caller makes sure that entries not empty
+        assert !entries.isEmpty();
+        this.lock.writeLock().lock();
+        try {
+            assert this.tableSnapshot == entries;
+            this.tableSnapshot = EntryTable.EMPTY_VALUE;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        // Readers copy the entries under the read lock, so none of them reads the chunks anymore
+        entries.release();
+    }
+
+    @Override
+    long put(long ledgerId, long entryId, final ByteBuffer entry) throws IOException {
+        int length = entry.remaining();
+        if (!table.put(ledgerId, entryId, entry)) {
+            return 0;
+        }
+        size.addAndGet(length);
+        return length;
+    }
+
+    @Override
+    public EntryKeyValue getEntry(long ledgerId, long entryId) throws IOException {
+        EntryKeyValue value = null;
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean success = false;
+        this.lock.readLock().lock();
+        try {
+            value = this.table.get(ledgerId, entryId);
+            if (value == null) {
+                value = this.tableSnapshot.get(ledgerId, entryId);
+            }
+            success = true;
+        } finally {
+            this.lock.readLock().unlock();
+            if (success) {
+                memTableStats.getGetEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                memTableStats.getGetEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public EntryKeyValue getLastEntry(long ledgerId) throws IOException {
+        EntryKeyValue value = null;
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean success = false;
+        this.lock.readLock().lock();
+        try {
+            value = this.table.getLast(ledgerId);
+            if (value == null) {
+                value = this.tableSnapshot.getLast(ledgerId);
+            }
+            success = true;
+        } finally {
+            this.lock.readLock().unlock();
+            if (success) {
+                memTableStats.getGetEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                memTableStats.getGetEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    boolean isEmpty() {
+        return size.get() == 0 && tableSnapshot.isEmpty();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            if (!flushExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                // The chunks may still be read by a flush, leave them to the allocator
+                log.warn("Timed out waiting for the flush of the mem table, its chunks are not released");
+                return;
+            }
+        }
+        // Wait for a flush in progress on the caller thread
+        synchronized (this) {
+            this.lock.writeLock().lock();
+            try {
+                table.release();
+                tableSnapshot.release();
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /*
+     * Unlike the skip list, the index is not ordered, so the entries between the first and the last
+     * entry of the ledger are looked up in the index. It is only used by the getListOfEntriesOfLedger
+     * requests.
+     */
+    @Override
+    PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) {
+        LongStream.Builder entries = LongStream.builder();
+        this.lock.readLock().lock();
+        try {
+            EntryTable table = this.table;
+            EntryTable tableSnapshot = this.tableSnapshot;
+            long firstEntryId = minEntryId(table.getFirstEntryId(ledgerId), tableSnapshot.getFirstEntryId(ledgerId));
+            long lastEntryId = Math.max(table.getLastEntryId(ledgerId), tableSnapshot.getLastEntryId(ledgerId));
+            if (firstEntryId >= 0) {
+                for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                    if (table.contains(ledgerId, entryId) || tableSnapshot.contains(ledgerId, entryId)) {
+                        entries.add(entryId);
+                    }
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return entries.build().iterator();
+    }
+
+    private static long minEntryId(long entryId1, long entryId2) {
+        if (entryId1 < 0) {
+            return entryId2;
+        } else if (entryId2 < 0) {
+            return entryId1;
+        }
+        return Math.min(entryId1, entryId2);
+    }
+}
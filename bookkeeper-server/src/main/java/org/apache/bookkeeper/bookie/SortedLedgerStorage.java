@@ -59,6 +59,7 @@ public class SortedLedgerStorage
     private StateManager stateManager;
     private ServerConfiguration conf;
     private StatsLogger statsLogger;
+    private ByteBufAllocator allocator;
     private final InterleavedLedgerStorage interleavedLedgerStorage;
 
     public SortedLedgerStorage() {
@@ -80,6 +81,7 @@ public class SortedLedgerStorage
             throws IOException {
         this.conf = conf;
         this.statsLogger = statsLogger;
+        this.allocator = allocator;
 
         interleavedLedgerStorage.initializeWithEntryLogListener(
             conf,
@@ -112,7 +114,9 @@ public class SortedLedgerStorage
     public void setCheckpointSource(CheckpointSource checkpointSource) {
         interleavedLedgerStorage.setCheckpointSource(checkpointSource);
 
-        if (conf.isEntryLogPerLedgerEnabled()) {
+        if (conf.isSkipListOffHeapEnabled()) {
+            this.memTable = new OffHeapEntryMemTable(conf, checkpointSource, statsLogger, allocator);
+        } else if (conf.isEntryLogPerLedgerEnabled()) {
             this.memTable = new EntryMemTableWithParallelFlusher(conf, checkpointSource, statsLogger);
         } else {
             this.memTable = new EntryMemTable(conf, checkpointSource, statsLogger);
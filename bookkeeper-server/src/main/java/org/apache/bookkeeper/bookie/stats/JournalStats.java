@@ -31,6 +31,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_W
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_ENQUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_GROUPING_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_MAX;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_USED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE;
@@ -41,6 +43,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_L
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_SIZE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC_LATENCY_AVG;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_BYTES;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -172,9 +175,30 @@ public class JournalStats {
             help = "The actual amount of memory in bytes currently used by the bookie journal"
     )
     private final Gauge<Long> journalMemoryUsedStats;
+    @StatsDoc(
+            name = JOURNAL_GROUP_WAIT,
+            help = "The maximum time in microseconds a journal entry currently waits to be grouped with others"
+    )
+    private final Gauge<Long> journalGroupWaitStats;
+    @StatsDoc(
+            name = JOURNAL_GROUP_SIZE,
+            help = "The number of journal entries expected to be grouped in a commit by the adaptive group commit"
+    )
+    private final Gauge<Long> journalGroupSizeStats;
+    @StatsDoc(
+            name = JOURNAL_SYNC_LATENCY_AVG,
+            help = "The moving average of the journal sync latency in microseconds"
+    )
+    private final Gauge<Long> journalSyncLatencyAvgStats;
 
     public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
                         Supplier<Long> currentJournalMemoryBytes) {
+        this(statsLogger, maxJournalMemoryBytes, currentJournalMemoryBytes, () -> 0L, () -> 0L, () -> 0L);
+    }
+
+    public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
+                        Supplier<Long> currentJournalMemoryBytes, Supplier<Long> groupWaitMicros,
+                        Supplier<Long> groupSize, Supplier<Long> syncLatencyAvgMicros) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
         journalForceLedgerStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_LEDGER);
         journalSyncStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_SYNC);
@@ -221,6 +245,45 @@ public class JournalStats {
             }
         };
         statsLogger.registerGauge(JOURNAL_MEMORY_USED, journalMemoryUsedStats);
+
+        journalGroupWaitStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return groupWaitMicros.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_GROUP_WAIT, journalGroupWaitStats);
+
+        journalGroupSizeStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return groupSize.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_GROUP_SIZE, journalGroupSizeStats);
+
+        journalSyncLatencyAvgStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return syncLatencyAvgMicros.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_SYNC_LATENCY_AVG, journalSyncLatencyAvgStats);
     }
 
     @VisibleForTesting
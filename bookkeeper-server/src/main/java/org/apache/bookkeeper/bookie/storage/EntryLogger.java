@@ -21,8 +21,11 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCounted;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
 import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
 import org.apache.bookkeeper.bookie.EntryLogMetadata;
@@ -67,6 +70,42 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read an entry from an entrylog location to be sent over the network, and verify
+     * that it matches the expected ledger and entry ID.
+     * Entries of at least {@code minRegionSize} bytes can be returned as a {@link FileRegion}
+     * of the entry log, which is transferred to the socket without being copied in memory.
+     * @param ledgerId the ledgerID to match
+     * @param entryId the entryID to match
+     * @param entryLocation the location from which to read the entry
+     * @param minRegionSize the minimum size of the entries to return as a region
+     * @return the entry, as a {@link ByteBuf} or as a {@link FileRegion}
+     */
+    default ReferenceCounted readEntryForTransfer(long ledgerId, long entryId, long entryLocation,
+                                                  int minRegionSize) throws IOException, NoEntryException {
+        return readEntry(ledgerId, entryId, entryLocation);
+    }
+
+    /**
+     * Asynchronously read an entry from an entrylog location, and verify that it
+     * matches the expected ledger and entry ID.
+     * Implementations which are not able to read without blocking execute the read
+     * on the calling thread.
+     * @param ledgerId the ledgerID to match
+     * @param entryId the entryID to match
+     * @param entryLocation the location from which to read the entry
+     * @return a future completed with the entry
+     */
+    default CompletableFuture<ByteBuf> readEntryAsync(long ledgerId, long entryId, long entryLocation) {
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        try {
+            future.complete(readEntry(ledgerId, entryId, entryLocation));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
@@ -0,0 +1,203 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Detects the sequential reads on each ledger and sizes the read-ahead window accordingly.
+ *
+ * <p>The first read cache miss on a ledger does not trigger any read-ahead. When the next miss is for the entry that
+ * immediately follows, the ledger is being read sequentially and a read-ahead window is scheduled, starting with a few
+ * entries and doubling on every sequential step, up to the configured max window. A miss anywhere else means the
+ * ledger is read randomly, so the window is dropped and no read-ahead is done until the reads are sequential again.
+ *
+ * <p>Once a window has been pre-fetched, reading its first entry from the cache schedules the next window, so that
+ * a sequential reader always finds one window ready ahead of it.
+ */
+class AdaptiveReadAhead {
+
+    private static final int INITIAL_WINDOW = 4;
+
+    private static final long STALE_STATE_TIME_NANOS = TimeUnit.MINUTES.toNanos(
+            TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES);
+
+    /**
+     * Range of entries to pre-fetch for a ledger.
+     */
+    static class ReadAheadRequest {
+        final long firstEntryId;
+        final int maxEntries;
+
+        ReadAheadRequest(long firstEntryId, int maxEntries) {
+            this.firstEntryId = firstEntryId;
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    private static class LedgerState {
+        // First entry that was neither read nor scheduled to be pre-fetched
+        long nextEntryId = -1;
+        // First entry of the last scheduled window, -1 if there is none. When it's read, the next window gets
+        // scheduled
+        long windowStartEntryId = -1;
+        int window = 0;
+        long lastAccessNanos;
+    }
+
+    private final int maxWindow;
+
+    private final ConcurrentLongHashMap<LedgerState> ledgers = ConcurrentLongHashMap.<LedgerState>newBuilder()
+            .expectedItems(4096)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+
+    AdaptiveReadAhead(int maxWindow) {
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * Record a read cache miss.
+     *
+     * @return the entries to pre-fetch after the missing one, or null if the ledger is not read sequentially
+     */
+    ReadAheadRequest onCacheMiss(long ledgerId, long entryId) {
+        LedgerState state = ledgers.computeIfAbsent(ledgerId, k -> new LedgerState());
+        synchronized (state) {
+            state.lastAccessNanos = System.nanoTime();
+
+            if (state.windowStartEntryId >= 0 && entryId >= state.windowStartEntryId
+                    && entryId < state.nextEntryId) {
+                // The entry is part of a window that is still being pre-fetched, or that was evicted before being read
+                return null;
+            }
+
+            if (entryId != state.nextEntryId) {
+                // Random access, stop the read-ahead until the reads are sequential again
+                state.window = 0;
+                state.windowStartEntryId = -1;
+                state.nextEntryId = entryId + 1;
+                return null;
+            }
+
+            return scheduleNextWindow(state, entryId + 1);
+        }
+    }
+
+    /**
+     * Record the read cache misses of a batched read, which were all read from the entry logs at once.
+     *
+     * @return the entries to pre-fetch after the last missing one, or null if the ledger is not read sequentially
+     */
+    ReadAheadRequest onBatchCacheMiss(long ledgerId, long firstEntryId, long lastEntryId) {
+        LedgerState state = ledgers.computeIfAbsent(ledgerId, k -> new LedgerState());
+        synchronized (state) {
+            state.lastAccessNanos = System.nanoTime();
+
+            boolean inWindow = state.windowStartEntryId >= 0 && firstEntryId >= state.windowStartEntryId
+                    && firstEntryId < state.nextEntryId;
+            if (inWindow && lastEntryId < state.nextEntryId) {
+                return null;
+            }
+
+            if (!inWindow && firstEntryId != state.nextEntryId) {
+                state.window = 0;
+                state.windowStartEntryId = -1;
+                state.nextEntryId = lastEntryId + 1;
+                return null;
+            }
+
+            return scheduleNextWindow(state, lastEntryId + 1);
+        }
+    }
+
+    /**
+     * Record a read cache hit.
+     *
+     * @return the entries to pre-fetch, if the reader just started consuming the last pre-fetched window
+     */
+    ReadAheadRequest onCacheHit(long ledgerId, long entryId) {
+        LedgerState state = ledgers.get(ledgerId);
+        if (state == null) {
+            return null;
+        }
+
+        synchronized (state) {
+            state.lastAccessNanos = System.nanoTime();
+            if (entryId != state.windowStartEntryId) {
+                return null;
+            }
+
+            return scheduleNextWindow(state, state.nextEntryId);
+        }
+    }
+
+    /**
+     * Record the completion of a read-ahead, which might have stopped before the end of the window, for example when
+     * reaching the end of the entry log.
+     */
+    void onReadAheadCompleted(long ledgerId, long firstEntryId, int maxEntries, int readEntries) {
+        if (readEntries >= maxEntries) {
+            return;
+        }
+
+        LedgerState state = ledgers.get(ledgerId);
+        if (state == null) {
+            return;
+        }
+
+        synchronized (state) {
+            if (state.windowStartEntryId == firstEntryId) {
+                // Let the next miss, on the first entry that was not pre-fetched, continue the sequence
+                state.nextEntryId = firstEntryId + readEntries;
+                state.windowStartEntryId = -1;
+            }
+        }
+    }
+
+    private ReadAheadRequest scheduleNextWindow(LedgerState state, long firstEntryId) {
+        state.window = state.window == 0 ? Math.min(INITIAL_WINDOW, maxWindow) : Math.min(state.window * 2, maxWindow);
+        if (state.window <= 0) {
+            return null;
+        }
+
+        state.windowStartEntryId = firstEntryId;
+        state.nextEntryId = firstEntryId + state.window;
+        return new ReadAheadRequest(firstEntryId, state.window);
+    }
+
+    void removeLedger(long ledgerId) {
+        ledgers.remove(ledgerId);
+    }
+
+    /**
+     * Drop the state of the ledgers that were not read recently.
+     */
+    void removeStaleLedgers() {
+        long now = System.nanoTime();
+        ledgers.removeIf((ledgerId, state) -> {
+            synchronized (state) {
+                return now - state.lastAccessNanos > STALE_STATE_TIME_NANOS;
+            }
+        });
+    }
+}
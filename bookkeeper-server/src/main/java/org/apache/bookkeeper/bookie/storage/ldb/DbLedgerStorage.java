@@ -29,6 +29,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.PlatformDependent;
 import java.io.File;
@@ -93,6 +94,11 @@ public class DbLedgerStorage implements LedgerStorage {
         "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
+    static final String WRITE_CACHE_SEGMENTS = "dbStorage_writeCacheSegments";
+    static final String READ_CACHE_POLICY = "dbStorage_readCachePolicy";
+    static final String READ_CACHE_PROBATION_PERCENT = "dbStorage_readCacheProbationPercent";
+    static final String READ_CACHE_ADMISSION_FREQUENCY = "dbStorage_readCacheAdmissionFrequency";
+    static final String READ_CACHE_TAILING_READ_MAX_DISTANCE = "dbStorage_readCacheTailingReadMaxDistance";
 
     private static final int MB = 1024 * 1024;
 
@@ -103,6 +109,11 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     static final String READ_AHEAD_CACHE_BATCH_BYTES_SIZE = "dbStorage_readAheadCacheBatchBytesSize";
+    static final String READ_AHEAD_ADAPTIVE_ENABLED = "dbStorage_readAheadAdaptiveEnabled";
+    static final String READ_AHEAD_ADAPTIVE_MAX_WINDOW = "dbStorage_readAheadAdaptiveMaxWindow";
+    static final String READ_AHEAD_ASYNC_THREADS = "dbStorage_readAheadAsyncThreads";
+    static final String LOCATION_INDEX_HOT_CACHE_MAX_SIZE_MB = "dbStorage_locationIndexHotCacheMaxSizeMb";
+    static final String READ_ENTRIES_TIMEOUT_MILLIS = "dbStorage_readEntriesTimeoutMs";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
     // the default value is -1. this feature(limit of read ahead bytes) is disabled
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE = -1;
@@ -361,6 +372,18 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public ReferenceCounted getEntryForTransfer(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntryForTransfer(ledgerId, entryId, minRegionSize);
+    }
+
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long firstEntryId, int maxCount)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntries(ledgerId, firstEntryId, maxCount);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -52,6 +52,10 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_MISSES = "write-cache-misses";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String READ_CACHE_TAILING_HITS = "read-cache-tailing-hits";
+    private static final String READ_CACHE_TAILING_MISSES = "read-cache-tailing-misses";
+    private static final String READ_CACHE_CATCHUP_HITS = "read-cache-catchup-hits";
+    private static final String READ_CACHE_CATCHUP_MISSES = "read-cache-catchup-misses";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
@@ -66,6 +70,8 @@ class DbLedgerStorageStats {
     // throttled-write-requests is deprecated, use new metric: throttled-write
     private static final String THROTTLED_WRITE = "throttled-write";
     private static final String REJECTED_WRITE_REQUESTS = "rejected-write-requests";
+    private static final String WRITE_CACHE_BLOCKED_TIME = "write-cache-blocked-time";
+    private static final String WRITE_CACHE_SEGMENTS_IN_FLIGHT = "write-cache-segments-in-flight";
     private static final String WRITE_CACHE_SIZE = "write-cache-size";
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
@@ -119,6 +125,30 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final Counter readCacheMissCounter;
+    @StatsDoc(
+        name = READ_CACHE_TAILING_HITS,
+        help = "number of read cache hits for entries close to the last add confirmed of the ledger",
+        parent = READ_CACHE_HITS
+    )
+    private final Counter readCacheTailingHitCounter;
+    @StatsDoc(
+        name = READ_CACHE_TAILING_MISSES,
+        help = "number of read cache misses for entries close to the last add confirmed of the ledger",
+        parent = READ_CACHE_MISSES
+    )
+    private final Counter readCacheTailingMissCounter;
+    @StatsDoc(
+        name = READ_CACHE_CATCHUP_HITS,
+        help = "number of read cache hits for entries far behind the last add confirmed of the ledger",
+        parent = READ_CACHE_HITS
+    )
+    private final Counter readCacheCatchUpHitCounter;
+    @StatsDoc(
+        name = READ_CACHE_CATCHUP_MISSES,
+        help = "number of read cache misses for entries far behind the last add confirmed of the ledger",
+        parent = READ_CACHE_MISSES
+    )
+    private final Counter readCacheCatchUpMissCounter;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -174,6 +204,12 @@ class DbLedgerStorageStats {
         help = "The number of requests rejected due to write cache is full"
     )
     private final Counter rejectedWriteRequests;
+    @StatsDoc(
+        name = WRITE_CACHE_BLOCKED_TIME,
+        help = "Time spent by the adds waiting for a free write cache segment",
+        parent = ADD_ENTRY
+    )
+    private final Counter writeCacheBlockedTime;
 
     @StatsDoc(
         name = WRITE_CACHE_SIZE,
@@ -185,6 +221,11 @@ class DbLedgerStorageStats {
         help = "Current number of entries in write cache"
     )
     private final Gauge<Long> writeCacheCountGauge;
+    @StatsDoc(
+        name = WRITE_CACHE_SEGMENTS_IN_FLIGHT,
+        help = "Current number of sealed write cache segments waiting to be flushed"
+    )
+    private final Gauge<Long> writeCacheSegmentsInFlightGauge;
     @StatsDoc(
         name = READ_CACHE_SIZE,
         help = "Current number of bytes in read cache"
@@ -199,6 +240,7 @@ class DbLedgerStorageStats {
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
+                         Supplier<Long> writeCacheSegmentsInFlightSupplier,
                          Supplier<Long> readCacheSizeSupplier,
                          Supplier<Long> readCacheCountSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
@@ -207,6 +249,10 @@ class DbLedgerStorageStats {
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
         readCacheMissCounter = stats.getCounter(READ_CACHE_MISSES);
+        readCacheTailingHitCounter = stats.getCounter(READ_CACHE_TAILING_HITS);
+        readCacheTailingMissCounter = stats.getCounter(READ_CACHE_TAILING_MISSES);
+        readCacheCatchUpHitCounter = stats.getCounter(READ_CACHE_CATCHUP_HITS);
+        readCacheCatchUpMissCounter = stats.getCounter(READ_CACHE_CATCHUP_MISSES);
         writeCacheHitCounter = stats.getCounter(WRITE_CACHE_HITS);
         writeCacheMissCounter = stats.getCounter(WRITE_CACHE_MISSES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
@@ -221,6 +267,7 @@ class DbLedgerStorageStats {
         throttledWriteRequests = stats.getThreadScopedCounter(THROTTLED_WRITE_REQUESTS);
         throttledWriteStats = stats.getOpStatsLogger(THROTTLED_WRITE);
         rejectedWriteRequests = stats.getThreadScopedCounter(REJECTED_WRITE_REQUESTS);
+        writeCacheBlockedTime = stats.getThreadScopedCounter(WRITE_CACHE_BLOCKED_TIME);
 
         writeCacheSizeGauge = new Gauge<Long>() {
             @Override
@@ -246,6 +293,18 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(WRITE_CACHE_COUNT, writeCacheCountGauge);
+        writeCacheSegmentsInFlightGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return writeCacheSegmentsInFlightSupplier.get();
+            }
+        };
+        stats.registerGauge(WRITE_CACHE_SEGMENTS_IN_FLIGHT, writeCacheSegmentsInFlightGauge);
         readCacheSizeGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -21,8 +21,11 @@
 package org.apache.bookkeeper.bookie.storage.ldb;
 
 import com.google.common.collect.Iterables;
+import io.netty.buffer.ByteBufAllocator;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -42,17 +45,30 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>Optionally, the locations of the recently written ledgers are also kept in a {@link HotLocationIndex}, which
+ * is looked up before the key-value storage.
  */
 public class EntryLocationIndex implements Closeable {
 
     private final KeyValueStorage locationsDb;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
     private final EntryLocationIndexStats stats;
+    private final HotLocationIndex hotLocations;
     private boolean isCompacting;
 
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, null, 0);
+    }
+
+    /**
+     * @param hotLocationsMaxSize memory budget of the in-memory tier of the index, disabled if 0
+     */
+    public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, ByteBufAllocator allocator, long hotLocationsMaxSize) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
+        hotLocations = hotLocationsMaxSize > 0 ? new HotLocationIndex(allocator, hotLocationsMaxSize) : null;
 
         this.stats = new EntryLocationIndexStats(
             stats,
@@ -62,15 +78,25 @@ public class EntryLocationIndex implements Closeable {
                 } catch (IOException e) {
                     return -1L;
                 }
-            });
+            },
+            () -> hotLocations != null ? hotLocations.size() : 0L,
+            () -> hotLocations != null ? hotLocations.ledgersCount() : 0L);
     }
 
     @Override
     public void close() throws IOException {
         locationsDb.close();
+        if (hotLocations != null) {
+            hotLocations.close();
+        }
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        long hotLocation = getHotLocation(ledgerId, entryId);
+        if (hotLocation != 0) {
+            return hotLocation;
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -98,6 +124,120 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Lookup the locations of a set of entries of a ledger with a single batched lookup in the index.
+     *
+     * @return the locations, in the same order as the entry ids, with 0 for the entries that were not found
+     */
+    public long[] getLocations(long ledgerId, long[] entryIds) throws IOException {
+        long[] locations = new long[entryIds.length];
+        List<byte[]> keys = new ArrayList<>(entryIds.length);
+        for (int i = 0; i < entryIds.length; i++) {
+            locations[i] = getHotLocation(ledgerId, entryIds[i]);
+            if (locations[i] == 0) {
+                keys.add(newKey(ledgerId, entryIds[i]));
+            }
+        }
+
+        if (keys.isEmpty()) {
+            return locations;
+        }
+
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean operationSuccess = false;
+        try {
+            List<byte[]> values = locationsDb.multiGet(keys);
+            int keyIdx = 0;
+            for (int i = 0; i < entryIds.length; i++) {
+                if (locations[i] == 0) {
+                    byte[] value = values.get(keyIdx++);
+                    locations[i] = value != null ? ArrayUtil.getLong(value, 0) : 0;
+                }
+            }
+            operationSuccess = true;
+            return locations;
+        } finally {
+            registerBatchLookup(startTimeNanos, keys.size(), operationSuccess);
+        }
+    }
+
+    /**
+     * Lookup the locations of a sequence of consecutive entries of a ledger with a single scan of the index.
+     *
+     * <p>The lookup stops at the first entry which is not in the index.
+     *
+     * @param locations array where to store the locations, starting with the one of {@code firstEntryId}. Its
+     *                  length is the maximum number of entries to lookup.
+     * @return the number of consecutive entries found
+     */
+    public int getLocationsRange(long ledgerId, long firstEntryId, long[] locations) throws IOException {
+        int count = 0;
+        while (count < locations.length) {
+            long location = getHotLocation(ledgerId, firstEntryId + count);
+            if (location == 0) {
+                break;
+            }
+            locations[count++] = location;
+        }
+
+        if (count == locations.length) {
+            return count;
+        }
+
+        int maxCount = locations.length - count;
+        byte[] firstKey = newKey(ledgerId, firstEntryId + count);
+        byte[] lastKey = newKey(ledgerId, firstEntryId + locations.length);
+
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean operationSuccess = false;
+        try {
+            List<Entry<byte[], byte[]>> entries = locationsDb.getRange(firstKey, lastKey, maxCount);
+            for (Entry<byte[], byte[]> entry : entries) {
+                if (ArrayUtil.getLong(entry.getKey(), 8) != firstEntryId + count) {
+                    // Gap in the sequence of entries
+                    break;
+                }
+                locations[count++] = ArrayUtil.getLong(entry.getValue(), 0);
+            }
+            operationSuccess = true;
+            return count;
+        } finally {
+            registerBatchLookup(startTimeNanos, maxCount, operationSuccess);
+        }
+    }
+
+    private long getHotLocation(long ledgerId, long entryId) {
+        if (hotLocations == null) {
+            return 0;
+        }
+
+        long location = hotLocations.getLocation(ledgerId, entryId);
+        if (location != 0) {
+            stats.getHotLocationHits().inc();
+        } else {
+            stats.getHotLocationMisses().inc();
+        }
+        return location;
+    }
+
+    private static byte[] newKey(long ledgerId, long entryId) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, entryId);
+        return key;
+    }
+
+    private void registerBatchLookup(long startTimeNanos, int keysCount, boolean success) {
+        long elapsedNanos = MathUtils.elapsedNanos(startTimeNanos);
+        if (success) {
+            stats.getLookupEntryLocationBatchStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            stats.getLookupEntryLocationBatchSizeStats().registerSuccessfulValue(keysCount);
+        } else {
+            stats.getLookupEntryLocationBatchStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            stats.getLookupEntryLocationBatchSizeStats().registerFailedValue(keysCount);
+        }
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
@@ -150,6 +290,13 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
+        putLocation(batch, ledgerId, entryId, location);
+        if (hotLocations != null) {
+            hotLocations.addLocation(ledgerId, entryId, location);
+        }
+    }
+
+    private void putLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
 
@@ -177,7 +324,11 @@ public class EntryLocationIndex implements Closeable {
                 log.debug("Update location - ledger: {} -- entry: {}", e.ledger, e.entry);
             }
 
-            addLocation(batch, e.ledger, e.entry, e.location);
+            putLocation(batch, e.ledger, e.entry, e.location);
+            if (hotLocations != null) {
+                // Relocated entries only need to be tracked if their ledger is still hot
+                hotLocations.updateLocation(e.ledger, e.entry, e.location);
+            }
         }
 
         batch.flush();
@@ -188,6 +339,9 @@ public class EntryLocationIndex implements Closeable {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
         deletedLedgers.add(ledgerId);
+        if (hotLocations != null) {
+            hotLocations.removeLedger(ledgerId);
+        }
     }
 
     public String getEntryLocationDBPath() {
@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -42,6 +43,12 @@ class EntryLocationIndexStats {
 
     private static final String ENTRIES_COUNT = "entries-count";
     private static final String LOOKUP_ENTRY_LOCATION = "lookup-entry-location";
+    private static final String LOOKUP_ENTRY_LOCATION_BATCH = "lookup-entry-location-batch";
+    private static final String LOOKUP_ENTRY_LOCATION_BATCH_SIZE = "lookup-entry-location-batch-size";
+    private static final String HOT_LOCATION_HITS = "hot-location-hits";
+    private static final String HOT_LOCATION_MISSES = "hot-location-misses";
+    private static final String HOT_LOCATION_SIZE = "hot-location-size";
+    private static final String HOT_LOCATION_LEDGERS = "hot-location-ledgers";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
@@ -55,8 +62,46 @@ class EntryLocationIndexStats {
     )
     private final OpStatsLogger lookupEntryLocationStats;
 
+    @StatsDoc(
+            name = LOOKUP_ENTRY_LOCATION_BATCH,
+            help = "operation stats of looking up the locations of multiple entries at once"
+    )
+    private final OpStatsLogger lookupEntryLocationBatchStats;
+
+    @StatsDoc(
+            name = LOOKUP_ENTRY_LOCATION_BATCH_SIZE,
+            help = "number of entries looked up in each batched location lookup"
+    )
+    private final OpStatsLogger lookupEntryLocationBatchSizeStats;
+
+    @StatsDoc(
+            name = HOT_LOCATION_HITS,
+            help = "number of entry locations found in the in-memory tier of the index"
+    )
+    private final Counter hotLocationHits;
+
+    @StatsDoc(
+            name = HOT_LOCATION_MISSES,
+            help = "number of entry locations not found in the in-memory tier of the index"
+    )
+    private final Counter hotLocationMisses;
+
+    @StatsDoc(
+        name = HOT_LOCATION_SIZE,
+        help = "Current memory used by the in-memory tier of the index"
+    )
+    private final Gauge<Long> hotLocationSizeGauge;
+
+    @StatsDoc(
+        name = HOT_LOCATION_LEDGERS,
+        help = "Current number of ledgers tracked by the in-memory tier of the index"
+    )
+    private final Gauge<Long> hotLocationLedgersGauge;
+
     EntryLocationIndexStats(StatsLogger statsLogger,
-                            Supplier<Long> entriesCountSupplier) {
+                            Supplier<Long> entriesCountSupplier,
+                            Supplier<Long> hotLocationSizeSupplier,
+                            Supplier<Long> hotLocationLedgersSupplier) {
         entriesCountGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -70,6 +115,34 @@ class EntryLocationIndexStats {
         };
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
         lookupEntryLocationStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION);
+        lookupEntryLocationBatchStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION_BATCH);
+        lookupEntryLocationBatchSizeStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION_BATCH_SIZE);
+        hotLocationHits = statsLogger.getCounter(HOT_LOCATION_HITS);
+        hotLocationMisses = statsLogger.getCounter(HOT_LOCATION_MISSES);
+        hotLocationSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return hotLocationSizeSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(HOT_LOCATION_SIZE, hotLocationSizeGauge);
+        hotLocationLedgersGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return hotLocationLedgersSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(HOT_LOCATION_LEDGERS, hotLocationLedgersGauge);
     }
 
 }
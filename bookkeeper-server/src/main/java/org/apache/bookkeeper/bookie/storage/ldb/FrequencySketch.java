@@ -0,0 +1,138 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Probabilistic estimator of the access frequency of the entries, used by the {@link TinyLfuReadCache} to decide
+ * which entries are worth keeping.
+ *
+ * <p>This is a Count-Min sketch with 4-bit counters, as described in the TinyLFU paper. Each entry key is mapped to 4
+ * counters, and the estimated frequency is the minimum among them. To keep the estimation fresh, all the counters are
+ * halved once the number of recorded accesses reaches the sketch width, which is in the order of the number of
+ * entries that fit in the cache. Aging this often also keeps the counters sparse, so that a long scan of distinct
+ * entries does not inflate the estimation of the entries it touches.
+ *
+ * <p>The sketch is updated concurrently by the read threads without locking. Concurrent resets can lose a few
+ * increments, which is acceptable since the frequency is only an estimate.
+ *
+ * <p>The layout of the table, the hash seeds and the aging are derived from the FrequencySketch of Caffeine
+ * (https://github.com/ben-manes/caffeine), Copyright 2015 Ben Manes, licensed under the Apache License 2.0.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    static final int MAX_FREQUENCY = 15;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    FrequencySketch(long expectedItems) {
+        int width = (int) Math.min(1 << 24, Math.max(1024, Long.highestOneBit(expectedItems - 1) << 1));
+        this.table = new AtomicLongArray(width);
+        this.tableMask = width - 1;
+        this.sampleSize = width;
+    }
+
+    /**
+     * @return the estimated number of accesses to the entry, capped to 15
+     */
+    int frequency(long ledgerId, long entryId) {
+        int hash = spread(ledgerId, entryId);
+        int start = (hash & 3) << 2;
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record one access to the entry.
+     */
+    void increment(long ledgerId, long entryId) {
+        int hash = spread(ledgerId, entryId);
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && size.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        while (true) {
+            long value = table.get(index);
+            if ((value & mask) == mask) {
+                // Counter already saturated
+                return false;
+            }
+
+            if (table.compareAndSet(index, value, value + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Age all the counters, so that entries that were popular in the past are eventually forgotten.
+     */
+    private void reset() {
+        int currentSize = size.get();
+        if (currentSize < sampleSize || !size.compareAndSet(currentSize, currentSize / 2)) {
+            // Another thread is already taking care of it
+            return;
+        }
+
+        for (int i = 0; i < table.length(); i++) {
+            long value = table.get(i);
+            table.compareAndSet(i, value, (value >>> 1) & RESET_MASK);
+        }
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(long ledgerId, long entryId) {
+        long hash = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * In-memory tier of the entry location index for the ledgers that were recently written.
+ *
+ * <p>The locations of each ledger are kept off-heap, starting from the first entry that was added after the ledger
+ * started being tracked, in blocks of {@link #BLOCK_SIZE} consecutive entries. Each block stores the base location
+ * on 8 bytes, followed by the delta of each entry location from the base on 4 bytes. Since the entries of a ledger
+ * are flushed in order, the entries of a block are usually in the same entry log, close to each other. An entry
+ * whose delta does not fit is not kept, and its lookup falls back to the persistent index. A block of 32 entries
+ * takes 136 bytes, instead of 256 bytes with a full location per entry.
+ *
+ * <p>Lookups are constant time. When the memory used goes over the configured budget, ledgers are dropped with the
+ * clock algorithm: the tracked ledgers are kept in a ring in insertion order, and a ledger that was accessed since
+ * the clock hand last passed it gets a second chance, so the eviction does not need to scan all the ledgers.
+ */
+class HotLocationIndex implements Closeable {
+
+    static final int BLOCK_SIZE = 32;
+    private static final int BLOCK_BYTES = 8 + 4 * BLOCK_SIZE;
+    private static final int INITIAL_BLOCKS = 4;
+
+    // Slot values with a special meaning. A valid delta is never 0, since the base is set 1 byte before the first
+    // location of the block.
+    private static final int MISSING = 0;
+    private static final int OVERFLOW = Integer.MIN_VALUE;
+
+    private final ByteBufAllocator allocator;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+
+    private final ConcurrentLongHashMap<LedgerLocations> ledgers = ConcurrentLongHashMap.<LedgerLocations>newBuilder()
+            .expectedItems(4096)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+
+    // Ring of the clock algorithm, guarded by its own monitor. It can still hold ledgers that were removed, which
+    // are skipped by the clock hand.
+    private final ArrayDeque<LedgerLocations> clock = new ArrayDeque<>();
+
+    private final class LedgerLocations {
+        private final StampedLock lock = new StampedLock();
+        private final long ledgerId;
+        private final long firstEntryId;
+        private ByteBuf blocks;
+        // Set on each access, and cleared when the clock hand passes
+        private volatile boolean referenced;
+        private volatile boolean removed;
+
+        LedgerLocations(long ledgerId, long firstEntryId) {
+            this.ledgerId = ledgerId;
+            this.firstEntryId = firstEntryId;
+            this.blocks = allocator.directBuffer(INITIAL_BLOCKS * BLOCK_BYTES, INITIAL_BLOCKS * BLOCK_BYTES);
+            this.blocks.setZero(0, blocks.capacity());
+            size.addAndGet(blocks.capacity());
+        }
+
+        long get(long entryId) {
+            if (!referenced) {
+                referenced = true;
+            }
+            long idx = entryId - firstEntryId;
+            long stamp = lock.readLock();
+            try {
+                if (blocks == null || idx < 0 || idx >= (long) (blocks.capacity() / BLOCK_BYTES) * BLOCK_SIZE) {
+                    return 0;
+                }
+
+                int blockOffset = (int) (idx / BLOCK_SIZE) * BLOCK_BYTES;
+                int delta = blocks.getInt(blockOffset + 8 + 4 * (int) (idx % BLOCK_SIZE));
+                if (delta == MISSING || delta == OVERFLOW) {
+                    return 0;
+                }
+                return blocks.getLong(blockOffset) + delta;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * @return false if the entry cannot be tracked in this ledger
+         */
+        boolean put(long entryId, long location) {
+            if (!referenced) {
+                referenced = true;
+            }
+            long idx = entryId - firstEntryId;
+            if (idx < 0) {
+                return true;
+            }
+
+            long stamp = lock.writeLock();
+            try {
+                if (blocks == null) {
+                    return false;
+                }
+
+                long requiredBytes = (idx / BLOCK_SIZE + 1) * BLOCK_BYTES;
+                if (requiredBytes > blocks.capacity() && !grow(requiredBytes)) {
+                    return false;
+                }
+
+                int blockOffset = (int) (idx / BLOCK_SIZE) * BLOCK_BYTES;
+                long base = blocks.getLong(blockOffset);
+                if (base == 0) {
+                    base = location - 1;
+                    blocks.setLong(blockOffset, base);
+                }
+
+                long delta = location - base;
+                int slotOffset = blockOffset + 8 + 4 * (int) (idx % BLOCK_SIZE);
+                if (delta > Integer.MIN_VALUE && delta <= Integer.MAX_VALUE && delta != MISSING) {
+                    blocks.setInt(slotOffset, (int) delta);
+                } else {
+                    blocks.setInt(slotOffset, OVERFLOW);
+                }
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private boolean grow(long requiredBytes) {
+            long newCapacity = blocks.capacity();
+            while (newCapacity < requiredBytes) {
+                newCapacity *= 2;
+            }
+            if (newCapacity > maxSize / 4 || newCapacity > Integer.MAX_VALUE) {
+                // A single ledger would take most of the budget, most likely after a big gap in the entry ids
+                return false;
+            }
+
+            ByteBuf newBlocks = allocator.directBuffer((int) newCapacity, (int) newCapacity);
+            newBlocks.setBytes(0, blocks, 0, blocks.capacity());
+            newBlocks.setZero(blocks.capacity(), (int) newCapacity - blocks.capacity());
+            size.addAndGet(newCapacity - blocks.capacity());
+            blocks.release();
+            blocks = newBlocks;
+            return true;
+        }
+
+        void release() {
+            removed = true;
+            long stamp = lock.writeLock();
+            try {
+                if (blocks != null) {
+                    size.addAndGet(-blocks.capacity());
+                    blocks.release();
+                    blocks = null;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    HotLocationIndex(ByteBufAllocator allocator, long maxSize) {
+        this.allocator = allocator;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the location of an entry.
+     *
+     * @return the location, or 0 if it's not known by this tier
+     */
+    long getLocation(long ledgerId, long entryId) {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        return locations != null ? locations.get(entryId) : 0;
+    }
+
+    /**
+     * Record the location of an entry that was written, or relocated.
+     */
+    void addLocation(long ledgerId, long entryId, long location) {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        if (locations == null) {
+            LedgerLocations newLocations = new LedgerLocations(ledgerId, entryId);
+            locations = ledgers.putIfAbsent(ledgerId, newLocations);
+            if (locations == null) {
+                locations = newLocations;
+                addToClock(newLocations);
+            } else {
+                newLocations.release();
+            }
+        }
+
+        if (!locations.put(entryId, location)) {
+            removeLedger(ledgerId);
+        }
+
+        if (size.get() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Update the location of an entry that was relocated, only if its ledger is already tracked.
+     */
+    void updateLocation(long ledgerId, long entryId, long location) {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        if (locations != null && !locations.put(entryId, location)) {
+            removeLedger(ledgerId);
+        }
+    }
+
+    void removeLedger(long ledgerId) {
+        LedgerLocations locations = ledgers.remove(ledgerId);
+        if (locations != null) {
+            locations.release();
+        }
+    }
+
+    private void addToClock(LedgerLocations locations) {
+        synchronized (clock) {
+            // Drop the removed ledgers once they make up half of the ring, so that the cost is amortized
+            if (clock.size() >= 64 && clock.size() > 2 * ledgers.size()) {
+                clock.removeIf(l -> l.removed);
+            }
+            clock.addLast(locations);
+        }
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    long ledgersCount() {
+        return ledgers.size();
+    }
+
+    /**
+     * Drop ledgers with the clock algorithm until the memory used is back under 90% of the budget, so that the
+     * eviction is amortized over many additions.
+     */
+    private void evict() {
+        long targetSize = maxSize / 10 * 9;
+        synchronized (clock) {
+            // Limit the second chances to one turn of the ring, in case the ledgers keep being accessed meanwhile
+            int secondChances = clock.size();
+            while (size.get() > targetSize) {
+                LedgerLocations locations = clock.pollFirst();
+                if (locations == null) {
+                    return;
+                }
+                if (locations.removed) {
+                    continue;
+                }
+                if (locations.referenced && secondChances-- > 0) {
+                    // Second chance
+                    locations.referenced = false;
+                    clock.addLast(locations);
+                    continue;
+                }
+                if (ledgers.remove(locations.ledgerId, locations)) {
+                    locations.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        ledgers.forEach((ledgerId, locations) -> locations.release());
+        ledgers.clear();
+        synchronized (clock) {
+            clock.clear();
+        }
+    }
+}
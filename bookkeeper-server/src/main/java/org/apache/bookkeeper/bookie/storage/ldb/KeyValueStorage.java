@@ -22,6 +22,9 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 
 /**
@@ -55,6 +58,49 @@ public interface KeyValueStorage extends Closeable {
      */
     int get(byte[] key, byte[] value) throws IOException;
 
+    /**
+     * Get the values associated with a set of keys with a single lookup.
+     *
+     * <p>The default implementation looks up the keys one by one, while implementations can batch the lookups
+     * and serve them in parallel.
+     *
+     * @param keys
+     *            the keys to lookup
+     * @return the values, in the same order as the keys, with null for the keys that were not found
+     */
+    default List<byte[]> multiGet(List<byte[]> keys) throws IOException {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
+    /**
+     * Get the entries whose keys are within a specified range, in key order.
+     *
+     * @param firstKey
+     *            the first key in the range (included)
+     * @param lastKey
+     *            the last key in the range (not included)
+     * @param maxCount
+     *            the maximum number of entries to return
+     * @return the entries found in the range
+     */
+    default List<Entry<byte[], byte[]>> getRange(byte[] firstKey, byte[] lastKey, int maxCount) throws IOException {
+        List<Entry<byte[], byte[]>> entries = new ArrayList<>();
+        try (CloseableIterator<byte[]> iterator = keys(firstKey, lastKey)) {
+            while (entries.size() < maxCount && iterator.hasNext()) {
+                byte[] key = iterator.next();
+                byte[] value = get(key);
+                if (value != null) {
+                    entries.add(new SimpleEntry<>(key, value));
+                }
+            }
+        }
+        return entries;
+    }
+
     /**
      * Get the entry whose key is the biggest and it's lesser than the supplied key.
      *
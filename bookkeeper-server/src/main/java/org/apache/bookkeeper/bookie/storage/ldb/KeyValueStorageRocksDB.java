@@ -333,6 +333,31 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         }
     }
 
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) throws IOException {
+        try {
+            return db.multiGetAsList(optionCache, keys);
+        } catch (RocksDBException e) {
+            throw new IOException("Error in RocksDB multiGet", e);
+        }
+    }
+
+    @Override
+    @SuppressFBWarnings("RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE")
+    public List<Entry<byte[], byte[]>> getRange(byte[] firstKey, byte[] lastKey, int maxCount) throws IOException {
+        List<Entry<byte[], byte[]>> entries = new ArrayList<>();
+        try (Slice upperBound = new Slice(lastKey);
+                 ReadOptions option = new ReadOptions(optionCache).setIterateUpperBound(upperBound);
+                 RocksIterator iterator = db.newIterator(option)) {
+            iterator.seek(firstKey);
+            while (entries.size() < maxCount && iterator.isValid()) {
+                entries.add(new EntryWrapper(iterator.key(), iterator.value()));
+                iterator.next();
+            }
+        }
+        return entries;
+    }
+
     @Override
     @SuppressFBWarnings("RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE")
     public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
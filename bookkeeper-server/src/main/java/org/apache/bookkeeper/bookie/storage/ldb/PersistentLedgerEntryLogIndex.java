@@ -0,0 +1,162 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.LedgerEntryLogIndex;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Persistent index of the entry logs of each ledger, used along with the {@link PersistentEntryLogMetadataMap}
+ * so that neither is kept in memory.
+ *
+ * <p>Each (ledgerId, entryLogId) pair is stored as a key in rocksDB, so that the entry logs of a ledger are
+ * found with a range scan.
+ */
+@Slf4j
+public class PersistentLedgerEntryLogIndex implements LedgerEntryLogIndex {
+
+    public static final String LEDGER_ENTRYLOG_INDEX = "ledger-entrylog-index";
+
+    private static final byte[] EMPTY_VALUE = new byte[0];
+
+    private final KeyValueStorage indexDB;
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+
+    public PersistentLedgerEntryLogIndex(String indexPath, ServerConfiguration conf) throws IOException {
+        log.info("Loading persistent ledger to entry log index from {}/{}", indexPath, LEDGER_ENTRYLOG_INDEX);
+        File dir = new File(indexPath);
+        if (!dir.mkdirs() && !dir.exists()) {
+            String err = "Unable to create directory " + dir;
+            log.error(err);
+            throw new IOException(err);
+        }
+        indexDB = KeyValueStorageRocksDB.factory.newKeyValueStorage(indexPath, LEDGER_ENTRYLOG_INDEX,
+                DbConfigType.Default, conf);
+    }
+
+    @Override
+    public void addEntryLog(EntryLogMetadata meta) throws EntryLogMetadataMapException {
+        throwIfClosed();
+        long entryLogId = meta.getEntryLogId();
+        try (Batch batch = indexDB.newBatch()) {
+            LongPairWrapper key = LongPairWrapper.get(0, 0);
+            try {
+                for (long ledgerId : meta.getLedgersMap().keys()) {
+                    key.set(ledgerId, entryLogId);
+                    batch.put(key.array, EMPTY_VALUE);
+                }
+            } finally {
+                key.recycle();
+            }
+            batch.flush();
+        } catch (IOException e) {
+            throw new EntryLogMetadataMapException(e);
+        }
+    }
+
+    @Override
+    public void removeEntryLog(EntryLogMetadata meta) throws EntryLogMetadataMapException {
+        throwIfClosed();
+        long entryLogId = meta.getEntryLogId();
+        try (Batch batch = indexDB.newBatch()) {
+            LongPairWrapper key = LongPairWrapper.get(0, 0);
+            try {
+                for (long ledgerId : meta.getLedgersMap().keys()) {
+                    key.set(ledgerId, entryLogId);
+                    batch.remove(key.array);
+                }
+            } finally {
+                key.recycle();
+            }
+            batch.flush();
+        } catch (IOException e) {
+            throw new EntryLogMetadataMapException(e);
+        }
+    }
+
+    @Override
+    public void remove(long ledgerId, long entryLogId) throws EntryLogMetadataMapException {
+        throwIfClosed();
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryLogId);
+        try {
+            indexDB.delete(key.array);
+        } catch (IOException e) {
+            throw new EntryLogMetadataMapException(e);
+        } finally {
+            key.recycle();
+        }
+    }
+
+    @Override
+    public void forEachEntryLog(long ledgerId, LongConsumer action) throws EntryLogMetadataMapException {
+        throwIfClosed();
+        LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, 0);
+        LongPairWrapper lastKey = LongPairWrapper.get(ledgerId + 1, 0);
+        try (CloseableIterator<byte[]> iterator = indexDB.keys(firstKey.array, lastKey.array)) {
+            while (iterator.hasNext()) {
+                action.accept(ArrayUtil.getLong(iterator.next(), 8));
+            }
+        } catch (IOException e) {
+            log.error("Failed to get the entry logs of ledger {}: {}", ledgerId, e.getMessage(), e);
+            throw new EntryLogMetadataMapException(e);
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() throws EntryLogMetadataMapException {
+        throwIfClosed();
+        try (CloseableIterator<byte[]> iterator = indexDB.keys()) {
+            return !iterator.hasNext();
+        } catch (IOException e) {
+            throw new EntryLogMetadataMapException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed.compareAndSet(false, true)) {
+            indexDB.close();
+        } else {
+            log.warn("Attempted to close already closed PersistentLedgerEntryLogIndex");
+        }
+    }
+
+    private void throwIfClosed() throws EntryLogMetadataMapException {
+        if (isClosed.get()) {
+            final String msg = "Attempted to use PersistentLedgerEntryLogIndex after it was closed";
+            log.error(msg);
+            throw new EntryLogMetadataMapException(new IOException(msg));
+        }
+    }
+}
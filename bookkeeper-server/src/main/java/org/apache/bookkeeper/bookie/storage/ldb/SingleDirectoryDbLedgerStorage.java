@@ -32,20 +32,28 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
 import org.apache.bookkeeper.bookie.Bookie;
@@ -66,6 +74,7 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerEntryPage;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.ldb.AdaptiveReadAhead.ReadAheadRequest;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.common.util.Watcher;
@@ -78,6 +87,7 @@ import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang.mutable.MutableLong;
 import org.slf4j.Logger;
@@ -99,26 +109,43 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final GarbageCollectorThread gcThread;
 
-    // Write cache where all new entries are inserted into
-    protected volatile WriteCache writeCache;
+    // Ring of write cache segments. New entries are always inserted in the active segment, while the segments that
+    // were previously active are sealed and flushed in background, in the same order in which they were filled.
+    protected final WriteCache[] writeCaches;
 
-    // Write cache that is used to swap with writeCache during flushes
-    protected volatile WriteCache writeCacheBeingFlushed;
+    // Index of the segment where all new entries are inserted into
+    protected volatile int activeWriteCacheIdx = 0;
+
+    // Index of the oldest sealed segment that is waiting to be flushed. Only accessed while holding the flushMutex
+    private int oldestSealedWriteCacheIdx = 0;
+
+    // Number of sealed segments that are waiting to be flushed
+    private final AtomicInteger sealedWriteCaches = new AtomicInteger(0);
 
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
 
+    // Ledgers read from the entry logs since the last compaction, null unless compaction sorts the entries
+    private final ConcurrentLongHashSet recentlyReadLedgers;
+
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
     protected final ReentrantLock flushMutex = new ReentrantLock();
 
     protected final AtomicBoolean hasFlushBeenTriggered = new AtomicBoolean(false);
-    private final AtomicBoolean isFlushOngoing = new AtomicBoolean(false);
 
     private static String dbStoragerExecutorName = "db-storage";
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
             new DefaultThreadFactory(dbStoragerExecutorName));
 
+    // Executor used to fill the read cache in background, null when the read-ahead is done by the read thread
+    private final ExecutorService readAheadExecutor;
+    private final int maxPendingReadAheads;
+    private final AtomicInteger pendingReadAheads = new AtomicInteger(0);
+
+    // Per-ledger sequential reads detection, null when the read-ahead always uses the full batch size
+    private final AdaptiveReadAhead adaptiveReadAhead;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -132,14 +159,34 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final long writeCacheMaxSize;
     private final long readCacheMaxSize;
     private final int readAheadCacheBatchSize;
+    // Max number of entries of a read-ahead, which is larger for the sequential reads with the adaptive read-ahead
+    private final int maxReadAheadEntries;
     private final long readAheadCacheBatchBytesSize;
 
     private final long maxThrottleTimeNanos;
+    private final long readEntriesTimeoutNanos;
 
     private final DbLedgerStorageStats dbLedgerStorageStats;
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final long DEFAULT_READ_ENTRIES_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final int DEFAULT_WRITE_CACHE_SEGMENTS = 2;
+
+    private static final String READ_CACHE_POLICY_FIFO = "fifo";
+    private static final String READ_CACHE_POLICY_TINY_LFU = "tinylfu";
+
+    private static final long DEFAULT_TAILING_READ_MAX_DISTANCE = 1000;
+
+    private static final int MAX_PENDING_READ_AHEADS_PER_THREAD = 64;
+
+    // Minimum region size passed to doGetEntry when the entries are always read in memory
+    private static final int NO_REGION = -1;
+
+    // Reads of entries within this distance from the last add confirmed of the ledger are accounted as tailing reads
+    private final long tailingReadMaxDistance;
+
     private final long maxReadAheadBytesSize;
 
     private final Counter flushExecutorTime;
@@ -173,27 +220,70 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("indexDir", indexBaseDir);
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        int writeCacheSegments = conf.getInt(DbLedgerStorage.WRITE_CACHE_SEGMENTS, DEFAULT_WRITE_CACHE_SEGMENTS);
+        checkArgument(writeCacheSegments >= 2, "The write cache needs at least 2 segments");
+        this.writeCaches = new WriteCache[writeCacheSegments];
+        for (int i = 0; i < writeCacheSegments; i++) {
+            writeCaches[i] = new WriteCache(allocator, writeCacheMaxSize / writeCacheSegments);
+        }
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
         this.readAheadCacheBatchBytesSize = readAheadCacheBatchBytesSize;
+        this.recentlyReadLedgers = conf.getUseSortedCompaction()
+                ? ConcurrentLongHashSet.newBuilder().build() : null;
 
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
 
+        if (conf.getBoolean(DbLedgerStorage.READ_AHEAD_ADAPTIVE_ENABLED, false)) {
+            maxReadAheadEntries = conf.getInt(DbLedgerStorage.READ_AHEAD_ADAPTIVE_MAX_WINDOW, 1024);
+            adaptiveReadAhead = new AdaptiveReadAhead(maxReadAheadEntries);
+        } else {
+            maxReadAheadEntries = readAheadCacheBatchSize;
+            adaptiveReadAhead = null;
+        }
+
+        int readAheadThreads = conf.getInt(DbLedgerStorage.READ_AHEAD_ASYNC_THREADS, 0);
+        if (readAheadThreads > 0) {
+            readAheadExecutor = Executors.newFixedThreadPool(readAheadThreads,
+                    new DefaultThreadFactory("db-storage-readahead"));
+            maxPendingReadAheads = readAheadThreads * MAX_PENDING_READ_AHEADS_PER_THREAD;
+        } else {
+            readAheadExecutor = null;
+            maxPendingReadAheads = 0;
+        }
+
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
-
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        readEntriesTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(
+                DbLedgerStorage.READ_ENTRIES_TIMEOUT_MILLIS, DEFAULT_READ_ENTRIES_TIMEOUT_MILLIS));
+
+        String readCachePolicy = conf.getString(DbLedgerStorage.READ_CACHE_POLICY, READ_CACHE_POLICY_FIFO);
+        if (READ_CACHE_POLICY_TINY_LFU.equalsIgnoreCase(readCachePolicy)) {
+            readCache = TinyLfuReadCache.create(allocator, readCacheMaxSize,
+                    conf.getInt(DbLedgerStorage.READ_CACHE_PROBATION_PERCENT,
+                            TinyLfuReadCache.DEFAULT_PROBATION_PERCENT),
+                    conf.getInt(DbLedgerStorage.READ_CACHE_ADMISSION_FREQUENCY,
+                            TinyLfuReadCache.DEFAULT_ADMISSION_FREQUENCY));
+        } else if (READ_CACHE_POLICY_FIFO.equalsIgnoreCase(readCachePolicy)) {
+            readCache = new ReadCache(allocator, readCacheMaxSize);
+        } else {
+            throw new IllegalArgumentException("Unknown read cache policy: " + readCachePolicy);
+        }
+        tailingReadMaxDistance = conf.getLong(DbLedgerStorage.READ_CACHE_TAILING_READ_MAX_DISTANCE,
+                DEFAULT_TAILING_READ_MAX_DISTANCE);
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+        // The memory budget of the in-memory location index is shared across all the directories
+        long hotLocationsMaxSize = conf.getLong(DbLedgerStorage.LOCATION_INDEX_HOT_CACHE_MAX_SIZE_MB, 0)
+                * 1024 * 1024 / conf.getLedgerDirs().length;
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger, allocator,
+                hotLocationsMaxSize);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -209,8 +299,21 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
             ledgerIndexDirStatsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
+            () -> {
+                long size = 0;
+                for (WriteCache wc : writeCaches) {
+                    size += wc.size();
+                }
+                return size;
+            },
+            () -> {
+                long count = 0;
+                for (WriteCache wc : writeCaches) {
+                    count += wc.count();
+                }
+                return count;
+            },
+            () -> (long) sealedWriteCaches.get(),
             () -> readCache.size(),
             () -> readCache.count()
         );
@@ -259,6 +362,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             return isStale;
         });
+
+        if (adaptiveReadAhead != null) {
+            adaptiveReadAhead.removeStaleLedgers();
+        }
     }
 
     @Override
@@ -339,6 +446,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+
+            if (readAheadExecutor != null) {
+                readAheadExecutor.shutdownNow();
+                readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
             entryLogger.close();
 
             cleanupExecutor.shutdown();
@@ -347,8 +459,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             ledgerIndex.close();
             entryLocationIndex.close();
 
-            writeCache.close();
-            writeCacheBeingFlushed.close();
+            for (WriteCache wc : writeCaches) {
+                wc.close();
+            }
             readCache.close();
             executor.shutdown();
 
@@ -377,25 +490,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return false;
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
-        }
-
-        boolean inCache = localWriteCache.hasEntry(ledgerId, entryId)
-             || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
+        boolean inCache = writeCachesHaveEntry(ledgerId, entryId)
              || readCache.hasEntry(ledgerId, entryId);
 
         if (inCache) {
@@ -475,26 +570,29 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         // First we try to do an optimistic locking to get access to the current write cache.
-        // This is based on the fact that the write cache is only being rotated (swapped) every 1 minute. During the
-        // rest of the time, we can have multiple thread using the optimistic lock here without interfering.
+        // This is based on the fact that the write cache is only being rotated when a segment is full or during a
+        // checkpoint. During the rest of the time, we can have multiple thread using the optimistic lock here without
+        // interfering.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
         boolean inserted = false;
 
-        inserted = writeCache.put(ledgerId, entryId, entry);
+        WriteCache activeWriteCache = writeCaches[activeWriteCacheIdx];
+        inserted = activeWriteCache.put(ledgerId, entryId, entry);
         if (!writeCacheRotationLock.validate(stamp)) {
             // The write cache was rotated while we were inserting. We need to acquire the proper read lock and repeat
             // the operation because we might have inserted in a write cache that was already being flushed and cleared,
             // without being sure about this last entry being flushed or not.
             stamp = writeCacheRotationLock.readLock();
             try {
-                inserted = writeCache.put(ledgerId, entryId, entry);
+                activeWriteCache = writeCaches[activeWriteCacheIdx];
+                inserted = activeWriteCache.put(ledgerId, entryId, entry);
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
         }
 
         if (!inserted) {
-            triggerFlushAndAddEntry(ledgerId, entryId, entry);
+            rotateAndAddEntry(activeWriteCache, ledgerId, entryId, entry);
         }
 
         // after successfully insert the entry, update LAC and notify the watchers
@@ -504,49 +602,67 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entryId;
     }
 
+    private void rotateAndAddEntry(WriteCache fullWriteCache, long ledgerId, long entryId, ByteBuf entry)
+            throws IOException, BookieException {
+        // The active write cache segment is full. Seal it and move on to the next free segment, so that the adds can
+        // keep going while the sealed segment is being flushed in background
+        if (rotateWriteCache(fullWriteCache)) {
+            triggerFlush();
+        }
+
+        long stamp = writeCacheRotationLock.readLock();
+        try {
+            if (writeCaches[activeWriteCacheIdx].put(ledgerId, entryId, entry)) {
+                return;
+            }
+        } finally {
+            writeCacheRotationLock.unlockRead(stamp);
+        }
+
+        triggerFlushAndAddEntry(ledgerId, entryId, entry);
+    }
+
     private void triggerFlushAndAddEntry(long ledgerId, long entryId, ByteBuf entry)
             throws IOException, BookieException {
         long throttledStartTime = MathUtils.nowInNano();
         dbLedgerStorageStats.getThrottledWriteRequests().inc();
         long absoluteTimeoutNanos = System.nanoTime() + maxThrottleTimeNanos;
 
-        while (System.nanoTime() < absoluteTimeoutNanos) {
-            // Write cache is full, we need to trigger a flush so that it gets rotated
-            // If the flush has already been triggered or flush has already switched the
-            // cache, we don't need to trigger another flush
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                // Trigger an early flush in background
-                log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                        }
-                    });
-            }
+        try {
+            while (System.nanoTime() < absoluteTimeoutNanos) {
+                // All the write cache segments are full, we need to wait for the flush of the oldest segment to
+                // complete, so that it can be reused
+                triggerFlush();
 
-            long stamp = writeCacheRotationLock.readLock();
-            try {
-                if (writeCache.put(ledgerId, entryId, entry)) {
-                    // We succeeded in putting the entry in write cache in the
-                    recordSuccessfulEvent(dbLedgerStorageStats.getThrottledWriteStats(), throttledStartTime);
-                    return;
+                WriteCache activeWriteCache;
+                long stamp = writeCacheRotationLock.readLock();
+                try {
+                    activeWriteCache = writeCaches[activeWriteCacheIdx];
+                    if (activeWriteCache.put(ledgerId, entryId, entry)) {
+                        // We succeeded in putting the entry in write cache in the
+                        recordSuccessfulEvent(dbLedgerStorageStats.getThrottledWriteStats(), throttledStartTime);
+                        return;
+                    }
+                } finally {
+                    writeCacheRotationLock.unlockRead(stamp);
                 }
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
 
-            // Wait some time and try again
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IOException("Interrupted when adding entry " + ledgerId + "@" + entryId);
+                if (rotateWriteCache(activeWriteCache)) {
+                    // A segment was freed, retry immediately
+                    continue;
+                }
+
+                // Wait some time and try again
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted when adding entry " + ledgerId + "@" + entryId);
+                }
             }
+        } finally {
+            dbLedgerStorageStats.getWriteCacheBlockedTime().addLatency(
+                    MathUtils.elapsedNanos(throttledStartTime), TimeUnit.NANOSECONDS);
         }
 
         // Timeout expired and we weren't able to insert in write cache
@@ -555,11 +671,52 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         throw new OperationRejectedException();
     }
 
+    /**
+     * Trigger a flush in background, unless it was already triggered. The flush writes the sealed write cache
+     * segments and the active one, so that the checkpoint can be reported as complete.
+     */
+    private void triggerFlush() {
+        if (sealedWriteCaches.get() > 0 && hasFlushBeenTriggered.compareAndSet(false, true)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Write cache segment is full, triggering flush");
+            }
+            executor.execute(() -> {
+                    long startTime = System.nanoTime();
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        log.error("Error during flush", e);
+                    } finally {
+                        flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    }
+                });
+        }
+    }
+
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException {
         long startTime = MathUtils.nowInNano();
         try {
-            ByteBuf entry = doGetEntry(ledgerId, entryId);
+            ByteBuf entry = (ByteBuf) doGetEntry(ledgerId, entryId, NO_REGION);
+            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            return entry;
+        } catch (IOException e) {
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            throw e;
+        }
+    }
+
+    /**
+     * Read an entry to be sent over the network. The entries that are not cached are returned as a region of the
+     * entry log when they are big enough, and are neither added to the read cache nor trigger a read-ahead, since
+     * the point is to not copy them in memory.
+     */
+    @Override
+    public ReferenceCounted getEntryForTransfer(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            ReferenceCounted entry = doGetEntry(ledgerId, entryId, minRegionSize);
             recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
             return entry;
         } catch (IOException e) {
@@ -568,7 +725,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
-    private ByteBuf doGetEntry(long ledgerId, long entryId) throws IOException, BookieException {
+    private ReferenceCounted doGetEntry(long ledgerId, long entryId, int minRegionSize)
+            throws IOException, BookieException {
         if (log.isDebugEnabled()) {
             log.debug("Get Entry: {}@{}", ledgerId, entryId);
         }
@@ -577,32 +735,69 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
+        ByteBuf entry = getFromCaches(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        // Read from main storage
+        long entryLocation;
+        long locationIndexStartNano = MathUtils.nowInNano();
+        try {
+            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            if (entryLocation == 0) {
+                // Only a negative result while in limbo equates to unknown
+                throwIfLimbo(ledgerId);
+
+                throw new NoEntryException(ledgerId, entryId);
             }
+        } finally {
+            dbLedgerStorageStats.getReadFromLocationIndexTime().addLatency(
+                    MathUtils.elapsedNanos(locationIndexStartNano), TimeUnit.NANOSECONDS);
         }
 
-        // First try to read from the write cache of recent entries
-        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
+        long readEntryStartNano = MathUtils.nowInNano();
+        try {
+            if (minRegionSize != NO_REGION) {
+                ReferenceCounted data = entryLogger.readEntryForTransfer(ledgerId, entryId, entryLocation,
+                        minRegionSize);
+                if (!(data instanceof ByteBuf)) {
+                    return data;
+                }
+                entry = (ByteBuf) data;
+            } else {
+                entry = entryLogger.readEntry(ledgerId, entryId, entryLocation);
+            }
+        } finally {
+            dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                    MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
         }
 
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+        readCache.put(ledgerId, entryId, entry);
+        recordEntryLogRead(ledgerId);
+
+        // Try to read more entries
+        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+        if (adaptiveReadAhead == null) {
+            triggerReadAhead(ledgerId, entryId + 1, readAheadCacheBatchSize, nextEntryLocation);
+        } else {
+            ReadAheadRequest request = adaptiveReadAhead.onCacheMiss(ledgerId, entryId);
+            if (request != null) {
+                triggerReadAhead(ledgerId, request.firstEntryId, request.maxEntries, nextEntryLocation);
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Look for an entry in the write cache segments and then in the read cache.
+     *
+     * @return the entry, or null if it needs to be read from the entry logs
+     */
+    private ByteBuf getFromCaches(long ledgerId, long entryId) {
+        // First try to read from the write cache segments, since recent entries could be found in any of them
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getWriteCacheHitCounter().inc();
             return entry;
@@ -611,69 +806,285 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         dbLedgerStorageStats.getWriteCacheMissCounter().inc();
 
         // Try reading from read-ahead cache
+        boolean tailingRead = isTailingRead(ledgerId, entryId);
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            if (tailingRead) {
+                dbLedgerStorageStats.getReadCacheTailingHitCounter().inc();
+            } else {
+                dbLedgerStorageStats.getReadCacheCatchUpHitCounter().inc();
+            }
+
+            if (adaptiveReadAhead != null) {
+                ReadAheadRequest request = adaptiveReadAhead.onCacheHit(ledgerId, entryId);
+                if (request != null) {
+                    // The reader is consuming the last pre-fetched window, the location of the next one is unknown
+                    triggerReadAhead(ledgerId, request.firstEntryId, request.maxEntries, 0L);
+                }
+            }
             return entry;
         }
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
+        if (tailingRead) {
+            dbLedgerStorageStats.getReadCacheTailingMissCounter().inc();
+        } else {
+            dbLedgerStorageStats.getReadCacheCatchUpMissCounter().inc();
+        }
+        return null;
+    }
 
-        // Read from main storage
-        long entryLocation;
-        long locationIndexStartNano = MathUtils.nowInNano();
-        try {
-            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
-            if (entryLocation == 0) {
-                // Only a negative result while in limbo equates to unknown
-                throwIfLimbo(ledgerId);
+    /**
+     * Read a sequence of consecutive entries of a ledger.
+     *
+     * <p>The entries that are not cached have their locations looked up with a single batched lookup in the
+     * index, and then they are all read from the entry logs at once, so that the entry logger can serve them in
+     * parallel.
+     */
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long firstEntryId, int maxCount)
+            throws IOException, BookieException {
+        if (firstEntryId == BookieProtocol.LAST_ADD_CONFIRMED || maxCount <= 1) {
+            return Lists.newArrayList(getEntry(ledgerId, firstEntryId));
+        }
 
-                throw new NoEntryException(ledgerId, entryId);
+        long startTime = MathUtils.nowInNano();
+        ByteBuf[] entries = new ByteBuf[maxCount];
+        long[] missedEntryIds = new long[maxCount];
+        int missedCount = 0;
+        for (int i = 0; i < maxCount; i++) {
+            long entryId = firstEntryId + i;
+            entries[i] = getFromCaches(ledgerId, entryId);
+            if (entries[i] == null) {
+                missedEntryIds[missedCount++] = entryId;
             }
+        }
+
+        if (missedCount > 0) {
+            try {
+                readMissedEntries(ledgerId, firstEntryId, entries, Arrays.copyOf(missedEntryIds, missedCount));
+            } catch (IOException e) {
+                for (ByteBuf entry : entries) {
+                    ReferenceCountUtil.release(entry);
+                }
+                throw e;
+            }
+        }
+
+        // Only return the entries up to the first one that could not be read
+        int count = 0;
+        while (count < maxCount && entries[count] != null) {
+            count++;
+        }
+        for (int i = count + 1; i < maxCount; i++) {
+            ReferenceCountUtil.release(entries[i]);
+        }
+
+        if (count == 0) {
+            // Get the exact failure from the single entry read path
+            return Lists.newArrayList(getEntry(ledgerId, firstEntryId));
+        }
+
+        long elapsedNanos = MathUtils.elapsedNanos(startTime);
+        for (int i = 0; i < count; i++) {
+            dbLedgerStorageStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos / count,
+                    TimeUnit.NANOSECONDS);
+        }
+        return Lists.newArrayList(Arrays.asList(entries).subList(0, count));
+    }
+
+    private void readMissedEntries(long ledgerId, long firstEntryId, ByteBuf[] entries, long[] missedEntryIds)
+            throws IOException {
+        long locationIndexStartNano = MathUtils.nowInNano();
+        long[] locations;
+        try {
+            locations = entryLocationIndex.getLocations(ledgerId, missedEntryIds);
         } finally {
             dbLedgerStorageStats.getReadFromLocationIndexTime().addLatency(
                     MathUtils.elapsedNanos(locationIndexStartNano), TimeUnit.NANOSECONDS);
         }
 
+        // Submit all the reads before waiting for any of them. Entries after the first missing one are not needed.
+        int readsCount = 0;
+        while (readsCount < missedEntryIds.length && locations[readsCount] != 0) {
+            readsCount++;
+        }
+        @SuppressWarnings("unchecked")
+        CompletableFuture<ByteBuf>[] reads = new CompletableFuture[readsCount];
         long readEntryStartNano = MathUtils.nowInNano();
-        try {
-            entry = entryLogger.readEntry(ledgerId, entryId, entryLocation);
-        } finally {
-            dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
-                    MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+        for (int i = 0; i < readsCount; i++) {
+            reads[i] = entryLogger.readEntryAsync(ledgerId, missedEntryIds[i], locations[i]);
         }
 
-        readCache.put(ledgerId, entryId, entry);
+        // All the reads share the same deadline, so that a lost read can't block the read thread forever
+        long deadlineNanos = readEntryStartNano + readEntriesTimeoutNanos;
+        int lastRead = -1;
+        for (int i = 0; i < readsCount; i++) {
+            ByteBuf entry;
+            try {
+                entry = reads[i].get(Math.max(0, deadlineNanos - MathUtils.nowInNano()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                releaseCompletedReads(reads, i);
+                throw new IOException("Interrupted while reading entries of ledger " + ledgerId, e);
+            } catch (TimeoutException e) {
+                releaseCompletedReads(reads, i);
+                throw new IOException("Timed out reading entry " + ledgerId + "@" + missedEntryIds[i], e);
+            } catch (ExecutionException e) {
+                releaseCompletedReads(reads, i + 1);
+                if (e.getCause() instanceof NoEntryException) {
+                    // Only return the entries before the missing one
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to read entry {}@{}", ledgerId, missedEntryIds[i], e.getCause());
+                    }
+                    break;
+                }
+                throw new IOException("Failed to read entry " + ledgerId + "@" + missedEntryIds[i], e.getCause());
+            }
+
+            entries[(int) (missedEntryIds[i] - firstEntryId)] = entry;
+            readCache.put(ledgerId, missedEntryIds[i], entry);
+            lastRead = i;
+        }
+        dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+
+        if (lastRead < 0) {
+            return;
+        }
+        recordEntryLogRead(ledgerId);
 
         // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        long lastEntryId = missedEntryIds[lastRead];
+        long nextEntryLocation = locations[lastRead] + 4 /* size header */
+                + entries[(int) (lastEntryId - firstEntryId)].readableBytes();
+        if (adaptiveReadAhead == null) {
+            triggerReadAhead(ledgerId, lastEntryId + 1, readAheadCacheBatchSize, nextEntryLocation);
+        } else {
+            ReadAheadRequest request = adaptiveReadAhead.onBatchCacheMiss(ledgerId, missedEntryIds[0], lastEntryId);
+            if (request != null) {
+                triggerReadAhead(ledgerId, request.firstEntryId, request.maxEntries,
+                        request.firstEntryId == lastEntryId + 1 ? nextEntryLocation : 0L);
+            }
+        }
+    }
 
-        return entry;
+    private static void releaseCompletedReads(CompletableFuture<ByteBuf>[] reads, int fromIndex) {
+        for (int i = fromIndex; i < reads.length; i++) {
+            reads[i].thenAccept(ReferenceCountUtil::release);
+        }
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    /**
+     * Fill the read cache with the entries that follow a read, either in the current thread or, when configured, in
+     * the read-ahead executor so that the read can be completed right away.
+     *
+     * @param firstEntryLocation the location of the first entry to read, or 0 if it needs to be looked up
+     */
+    private void triggerReadAhead(long ledgerId, long firstEntryId, int maxEntries, long firstEntryLocation) {
+        if (readAheadExecutor == null) {
+            fillReadAheadCache(ledgerId, firstEntryId, maxEntries, firstEntryLocation);
+            return;
+        }
+
+        if (pendingReadAheads.incrementAndGet() > maxPendingReadAheads) {
+            // The disk is not keeping up with the read-ahead, skip this one
+            pendingReadAheads.decrementAndGet();
+            readAheadCompleted(ledgerId, firstEntryId, maxEntries, 0);
+            return;
+        }
+
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    fillReadAheadCache(ledgerId, firstEntryId, maxEntries, firstEntryLocation);
+                } finally {
+                    pendingReadAheads.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The storage is shutting down
+            pendingReadAheads.decrementAndGet();
+        }
+    }
+
+    private void readAheadCompleted(long ledgerId, long firstEntryId, int maxEntries, int readEntries) {
+        if (adaptiveReadAhead != null) {
+            adaptiveReadAhead.onReadAheadCompleted(ledgerId, firstEntryId, maxEntries, readEntries);
+        }
+    }
+
+    /**
+     * A read is considered to be tailing when the entry is close to the last add confirmed of the ledger, as known
+     * by the readers waiting for LAC updates. Every other read is part of a catch-up.
+     */
+    private boolean isTailingRead(long ledgerId, long entryId) {
+        TransientLedgerInfo ledgerInfo = transientLedgerInfoCache.get(ledgerId);
+        if (ledgerInfo == null) {
+            return false;
+        }
+
+        long lac = ledgerInfo.getLastAddConfirmed();
+        return lac != TransientLedgerInfo.NOT_ASSIGNED_LAC && entryId > lac - tailingReadMaxDistance;
+    }
+
+    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, int maxEntries, long firstEntryLocation) {
         long readAheadStartNano = MathUtils.nowInNano();
+        long readAheadFirstEntryId = firstEntryId;
         int count = 0;
         long size = 0;
 
         try {
+            // When the location of the first entry is known, the following entries are read sequentially from the
+            // same entry log, until an entry of another ledger is found. From there on, or when the first location is
+            // not known, the locations of the remaining entries are looked up with a single scan of the index.
+            long[] locations = null;
+            int locationsCount = 0;
+            int locationsOffset = 0;
+            if (firstEntryLocation == 0) {
+                locations = new long[maxEntries];
+                locationsCount = entryLocationIndex.getLocationsRange(orginalLedgerId, firstEntryId, locations);
+                if (locationsCount == 0) {
+                    // The entry was not written yet
+                    return;
+                }
+                firstEntryLocation = locations[0];
+            }
+
             long firstEntryLogId = (firstEntryLocation >> 32);
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
 
-            while (chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
-                        firstEntryId, currentEntryLocation);
+            while (count < maxEntries && chargeReadAheadCache(count, size)) {
+                if (locations != null) {
+                    if (count - locationsOffset >= locationsCount) {
+                        break;
+                    }
+                    currentEntryLocation = locations[count - locationsOffset];
+                } else if (currentEntryLogId != firstEntryLogId) {
+                    locations = new long[maxEntries - count];
+                    locationsOffset = count;
+                    locationsCount = entryLocationIndex.getLocationsRange(orginalLedgerId, firstEntryId, locations);
+                    continue;
+                }
 
+                ByteBuf entry;
                 try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
-
-                    if (currentEntryLedgerId != orginalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
+                    entry = entryLogger.readEntry(orginalLedgerId, firstEntryId, currentEntryLocation);
+                } catch (IOException e) {
+                    if (locations != null) {
+                        throw e;
                     }
+                    // The next entry in the entry log belongs to a different ledger
+                    locations = new long[maxEntries - count];
+                    locationsOffset = count;
+                    locationsCount = entryLocationIndex.getLocationsRange(orginalLedgerId, firstEntryId, locations);
+                    continue;
+                }
+
+                try {
+                    long currentEntryId = entry.getLong(8);
 
                     // Insert entry in read cache
                     readCache.put(orginalLedgerId, currentEntryId, entry);
@@ -693,6 +1104,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 log.debug("Exception during read ahead for ledger: {}: e", orginalLedgerId, e);
             }
         } finally {
+            readAheadCompleted(orginalLedgerId, readAheadFirstEntryId, maxEntries, count);
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().addLatency(
@@ -702,7 +1114,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes) {
         // compatible with old logic
-        boolean chargeSizeCondition = currentReadAheadCount < readAheadCacheBatchSize
+        boolean chargeSizeCondition = currentReadAheadCount < maxReadAheadEntries
                 && currentReadAheadBytes < maxReadAheadBytesSize;
         if (chargeSizeCondition && readAheadCacheBatchBytesSize > 0) {
             // exact limits limit the size and count for each batch
@@ -716,37 +1128,24 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         long stamp = writeCacheRotationLock.readLock();
         try {
-            // First try to read from the write cache of recent entries
-            ByteBuf entry = writeCache.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    long foundLedgerId = entry.readLong(); // ledgedId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
+            // First try to read from the write cache segments, starting from the active one which has the most recent
+            // entries. If there's a flush going on, the entry might be in one of the sealed segments.
+            int activeIdx = activeWriteCacheIdx;
+            for (int i = 0; i < writeCaches.length; i++) {
+                int idx = (activeIdx - i + writeCaches.length) % writeCaches.length;
+                ByteBuf entry = writeCaches[idx].getLastEntry(ledgerId);
+                if (entry != null) {
                     if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache: {}@{}", ledgerId, foundLedgerId,
-                                entryId);
+                        long foundLedgerId = entry.readLong(); // ledgedId
+                        long entryId = entry.readLong();
+                        entry.resetReaderIndex();
+                        log.debug("Found last entry for ledger {} in write cache segment {}: {}@{}", ledgerId, idx,
+                                foundLedgerId, entryId);
                     }
-                }
-
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
-            }
 
-            // If there's a flush going on, the entry might be in the flush buffer
-            entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    entry.readLong(); // ledgedId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
-                    if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId, entryId);
-                    }
+                    dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+                    return entry;
                 }
-
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
             }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
@@ -772,11 +1171,56 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return content;
     }
 
+    /**
+     * Look for an entry in all the write cache segments.
+     *
+     * <p>A sealed segment is cleared and reused once it's flushed, which could happen while an entry is being copied
+     * out of it. Clearing a segment takes the rotation lock, so the lookup is done under an optimistic read and
+     * repeated under the read lock if a segment was rotated or cleared in the meantime.
+     */
+    private ByteBuf getFromWriteCaches(long ledgerId, long entryId) {
+        long stamp = writeCacheRotationLock.tryOptimisticRead();
+        ByteBuf entry = getFromWriteCachesUnlocked(ledgerId, entryId);
+        if (writeCacheRotationLock.validate(stamp)) {
+            return entry;
+        }
+
+        // The entry might have been copied from a segment that was reused, discard it and read it again
+        ReferenceCountUtil.release(entry);
+        stamp = writeCacheRotationLock.readLock();
+        try {
+            return getFromWriteCachesUnlocked(ledgerId, entryId);
+        } finally {
+            writeCacheRotationLock.unlockRead(stamp);
+        }
+    }
+
+    private ByteBuf getFromWriteCachesUnlocked(long ledgerId, long entryId) {
+        int activeIdx = activeWriteCacheIdx;
+        for (int i = 0; i < writeCaches.length; i++) {
+            ByteBuf entry = writeCaches[(activeIdx - i + writeCaches.length) % writeCaches.length]
+                    .get(ledgerId, entryId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean writeCachesHaveEntry(long ledgerId, long entryId) {
+        for (WriteCache wc : writeCaches) {
+            if (wc.hasEntry(ledgerId, entryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @VisibleForTesting
     boolean isFlushRequired() {
         long stamp = writeCacheRotationLock.readLock();
         try {
-            return !writeCache.isEmpty();
+            return sealedWriteCaches.get() > 0 || !writeCaches[activeWriteCacheIdx].isEmpty();
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -791,26 +1235,46 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         // Only a single flush operation can happen at a time
         flushMutex.lock();
-        long startTime = -1;
         try {
-            startTime = MathUtils.nowInNano();
-        } catch (Throwable e) {
-            // Fix spotbugs warning. Should never happen
-            flushMutex.unlock();
-            throw new IOException(e);
-        }
+            // Allow another flush to be triggered for the segments sealed from now on
+            hasFlushBeenTriggered.set(false);
 
-        try {
-            if (writeCache.isEmpty()) {
-                return;
+            // Flush the segments that were already sealed, so that there is a free segment to rotate into
+            flushSealedWriteCachesLocked();
+
+            WriteCache activeWriteCache = writeCaches[activeWriteCacheIdx];
+            if (!activeWriteCache.isEmpty()) {
+                // Rotate the write cache so that writes can continue to happen while the flush is ongoing
+                checkState(rotateWriteCache(activeWriteCache), "There must be a free write cache segment");
+                flushSealedWriteCachesLocked();
+            }
+
+            lastCheckpoint = thisCheckpoint;
+        } finally {
+            try {
+                scheduleDeletedLedgersCleanup();
+            } finally {
+                flushMutex.unlock();
             }
-            // Swap the write cache so that writes can continue to happen while the flush is
-            // ongoing
-            swapWriteCache();
+        }
+    }
 
-            long sizeToFlush = writeCacheBeingFlushed.size();
+    private void flushSealedWriteCachesLocked() throws IOException {
+        while (sealedWriteCaches.get() > 0) {
+            flushWriteCache(writeCaches[oldestSealedWriteCacheIdx]);
+
+            // The segment is now empty and can be reused by the adds
+            oldestSealedWriteCacheIdx = (oldestSealedWriteCacheIdx + 1) % writeCaches.length;
+            sealedWriteCaches.decrementAndGet();
+        }
+    }
+
+    private void flushWriteCache(WriteCache writeCacheToFlush) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            long sizeToFlush = writeCacheToFlush.size();
             if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
+                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheToFlush.count(),
                         sizeToFlush / 1024.0 / 1024);
             }
 
@@ -818,7 +1282,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             // position for each entry
 
             Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+            writeCacheToFlush.forEach((ledgerId, entryId, entry) -> {
                 long location = entryLogger.addEntry(ledgerId, entry);
                 entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
             });
@@ -840,10 +1304,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             ledgerIndex.flush();
             recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
 
-            lastCheckpoint = thisCheckpoint;
-
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
+            // Discard all the entry from the write cache, since they're now persisted. The rotation lock makes the
+            // concurrent reads of the segment retry instead of copying bytes of the entries added after the clear
+            long stamp = writeCacheRotationLock.writeLock();
+            try {
+                writeCacheToFlush.clear();
+            } finally {
+                writeCacheRotationLock.unlockWrite(stamp);
+            }
 
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
@@ -858,50 +1326,52 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             recordFailedEvent(dbLedgerStorageStats.getFlushStats(), startTime);
             // Leave IOExecption as it is
             throw e;
-        } finally {
+        }
+    }
+
+    private void scheduleDeletedLedgersCleanup() {
+        cleanupExecutor.execute(() -> {
+            // There can only be one single cleanup task running because the cleanupExecutor
+            // is single-threaded
             try {
-                cleanupExecutor.execute(() -> {
-                    // There can only be one single cleanup task running because the cleanupExecutor
-                    // is single-threaded
-                    try {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Removing deleted ledgers from db indexes");
-                        }
-
-                        entryLocationIndex.removeOffsetFromDeletedLedgers();
-                        ledgerIndex.removeDeletedLedgers();
-                    } catch (Throwable t) {
-                        log.warn("Failed to cleanup db indexes", t);
-                    }
-                });
+                if (log.isDebugEnabled()) {
+                    log.debug("Removing deleted ledgers from db indexes");
+                }
 
-                isFlushOngoing.set(false);
-            } finally {
-                flushMutex.unlock();
+                entryLocationIndex.removeOffsetFromDeletedLedgers();
+                ledgerIndex.removeDeletedLedgers();
+            } catch (Throwable t) {
+                log.warn("Failed to cleanup db indexes", t);
             }
-        }
+        });
     }
 
     /**
-     * Swap the current write cache with the replacement cache.
+     * Seal the active write cache segment and move the adds to the next segment in the ring.
+     *
+     * @param expectedActiveWriteCache the segment that the caller has seen as active
+     * @return true if the segment was rotated, either by this call or by a concurrent one, false if the expected
+     *         segment is empty or if all the other segments are still waiting to be flushed
      */
-    private void swapWriteCache() {
+    private boolean rotateWriteCache(WriteCache expectedActiveWriteCache) {
         long stamp = writeCacheRotationLock.writeLock();
         try {
-            // First, swap the current write-cache map with an empty one so that writes will
-            // go on unaffected. Only a single flush is happening at the same time
-            WriteCache tmp = writeCacheBeingFlushed;
-            writeCacheBeingFlushed = writeCache;
-            writeCache = tmp;
+            WriteCache activeWriteCache = writeCaches[activeWriteCacheIdx];
+            if (activeWriteCache != expectedActiveWriteCache) {
+                // Already rotated by a different thread
+                return true;
+            }
 
-            // since the cache is switched, we can allow flush to be triggered
-            hasFlushBeenTriggered.set(false);
-        } finally {
-            try {
-                isFlushOngoing.set(true);
-            } finally {
-                writeCacheRotationLock.unlockWrite(stamp);
+            if (activeWriteCache.isEmpty() || sealedWriteCaches.get() >= writeCaches.length - 1) {
+                return false;
             }
+
+            // The next segment in the ring is guaranteed to be empty, since it's not waiting to be flushed
+            activeWriteCacheIdx = (activeWriteCacheIdx + 1) % writeCaches.length;
+            sealedWriteCaches.incrementAndGet();
+            return true;
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
         }
     }
 
@@ -923,7 +1393,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Delete entries from this ledger that are still in the write cache
         long stamp = writeCacheRotationLock.readLock();
         try {
-            writeCache.deleteLedger(ledgerId);
+            for (WriteCache wc : writeCaches) {
+                wc.deleteLedger(ledgerId);
+            }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -940,6 +1412,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (tli != null) {
             tli.close();
         }
+
+        if (adaptiveReadAhead != null) {
+            adaptiveReadAhead.removeLedger(ledgerId);
+        }
     }
 
     @Override
@@ -1067,6 +1543,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // No-op. Location index is already flushed in updateEntriesLocations() call
     }
 
+    private void recordEntryLogRead(long ledgerId) {
+        if (recentlyReadLedgers != null) {
+            recentlyReadLedgers.add(ledgerId);
+        }
+    }
+
+    @Override
+    public Iterable<Long> drainRecentlyReadLedgers() {
+        if (recentlyReadLedgers == null) {
+            return Collections.emptyList();
+        }
+        Set<Long> ledgers = recentlyReadLedgers.items();
+        ledgers.forEach(recentlyReadLedgers::remove);
+        return ledgers;
+    }
+
     /**
      * Add an already existing ledger to the index.
      *
@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Read cache that protects the frequently read entries from being flushed out by one-shot sequential scans.
+ *
+ * <p>The memory is split in two regions, each one managed as a ring of segments like the plain {@link ReadCache}:
+ * <ul>
+ * <li>a probation region, where all the new entries are inserted, including the ones pre-fetched by the read-ahead
+ * <li>a main region, which only admits entries whose estimated access frequency is at least the admission threshold
+ * </ul>
+ *
+ * <p>The access frequency is tracked for every read, hit or miss, with a {@link FrequencySketch}. When an entry found
+ * in the probation region has been read often enough, it gets copied into the main region. A catch-up reader scanning
+ * a big backlog reads each entry only once, so its entries never leave the probation region and cannot evict the
+ * entries in the main region, which are shared by the tailing readers.
+ */
+public class TinyLfuReadCache extends ReadCache {
+
+    static final int DEFAULT_PROBATION_PERCENT = 20;
+    static final int DEFAULT_ADMISSION_FREQUENCY = 2;
+
+    // Rough estimation of the entry size, used to size the frequency sketch
+    private static final int ESTIMATED_ENTRY_SIZE = 1024;
+
+    private final ReadCache probationCache;
+    private final FrequencySketch sketch;
+    private final int admissionFrequency;
+
+    public static TinyLfuReadCache create(ByteBufAllocator allocator, long maxCacheSize) {
+        return create(allocator, maxCacheSize, DEFAULT_PROBATION_PERCENT, DEFAULT_ADMISSION_FREQUENCY);
+    }
+
+    /**
+     * Create a read cache, after validating the parameters, so that no memory is allocated for an invalid cache.
+     */
+    public static TinyLfuReadCache create(ByteBufAllocator allocator, long maxCacheSize, int probationPercent,
+                                          int admissionFrequency) {
+        checkArgument(probationPercent > 0 && probationPercent < 100,
+                "Probation percent needs to be between 0 and 100");
+        checkArgument(admissionFrequency > 0 && admissionFrequency <= FrequencySketch.MAX_FREQUENCY,
+                "Admission frequency needs to be between 1 and %s", FrequencySketch.MAX_FREQUENCY);
+        return new TinyLfuReadCache(allocator, maxCacheSize, probationPercent, admissionFrequency);
+    }
+
+    private TinyLfuReadCache(ByteBufAllocator allocator, long maxCacheSize, int probationPercent,
+                             int admissionFrequency) {
+        super(allocator, maxCacheSize - maxCacheSize * probationPercent / 100);
+        this.probationCache = new ReadCache(allocator, maxCacheSize * probationPercent / 100);
+        this.sketch = new FrequencySketch(maxCacheSize / ESTIMATED_ENTRY_SIZE);
+        this.admissionFrequency = admissionFrequency;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        probationCache.close();
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        if (sketch.frequency(ledgerId, entryId) >= admissionFrequency) {
+            super.put(ledgerId, entryId, entry);
+        } else {
+            probationCache.put(ledgerId, entryId, entry);
+        }
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        sketch.increment(ledgerId, entryId);
+
+        ByteBuf entry = super.get(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        entry = probationCache.get(ledgerId, entryId);
+        if (entry != null && sketch.frequency(ledgerId, entryId) >= admissionFrequency) {
+            // The entry is being read frequently, promote it to the main region
+            super.put(ledgerId, entryId, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return super.hasEntry(ledgerId, entryId) || probationCache.hasEntry(ledgerId, entryId);
+    }
+
+    @Override
+    public long size() {
+        return super.size() + probationCache.size();
+    }
+
+    @Override
+    public long count() {
+        return super.count() + probationCache.count();
+    }
+}
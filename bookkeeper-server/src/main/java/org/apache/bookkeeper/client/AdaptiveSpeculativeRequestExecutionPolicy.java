@@ -0,0 +1,153 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} that issues speculative requests after a percentile of the latency
+ * of the replica the request is waiting on.
+ *
+ * <p>The time before a speculative request follows the latency of each replica: a request is only hedged when
+ * it is slower than most of the requests the same replica served recently. {@code defaultSpeculativeRequestTimeout}
+ * is used while the latency of the replica is unknown, and {@code maxSpeculativeRequestTimeout} bounds the time.
+ *
+ * <p>The speculative requests are limited by a budget, as a percentage of the requests: each request adds its
+ * share to the budget, up to a small burst, and each speculative request takes one from it. When every replica
+ * slows down, the speculative requests stop once the budget is spent instead of multiplying the load.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    // The budget is counted in ten thousandths of speculative request, so a request adds a hundred times its
+    // percentage
+    private static final long SPECULATIVE_REQUEST_COST = 10000;
+    private static final int MAX_BURST = 10;
+
+    final double latencyPercentile;
+    final int defaultSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+    private final long budgetPerRequest;
+    private final long maxBudget;
+    private final AtomicLong budget;
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(double latencyPercentile, int defaultSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, double budgetPercent) {
+        if (latencyPercentile <= 0 || latencyPercentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for latencyPercentile");
+        }
+        if (budgetPercent < 0) {
+            throw new IllegalArgumentException("Invalid value provided for budgetPercent");
+        }
+        this.latencyPercentile = latencyPercentile;
+        this.defaultSpeculativeRequestTimeout = defaultSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = Math.max(defaultSpeculativeRequestTimeout, maxSpeculativeRequestTimeout);
+        this.budgetPerRequest = Math.round(budgetPercent * SPECULATIVE_REQUEST_COST / 100);
+        this.maxBudget = MAX_BURST * SPECULATIVE_REQUEST_COST;
+        this.budget = new AtomicLong(maxBudget);
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        budget.updateAndGet(balance -> Math.min(maxBudget, balance + budgetPerRequest));
+        return scheduleSpeculativeRequest(scheduler, requestExecutor);
+    }
+
+    private long getSpeculativeRequestTimeoutNanos(SpeculativeRequestExecutor requestExecutor) {
+        long latencyNanos = requestExecutor.getPendingReplicaLatencyNanos(latencyPercentile);
+        if (latencyNanos < 0) {
+            return TimeUnit.MILLISECONDS.toNanos(defaultSpeculativeRequestTimeout);
+        }
+        return Math.min(latencyNanos, TimeUnit.MILLISECONDS.toNanos(maxSpeculativeRequestTimeout));
+    }
+
+    private boolean acquireBudget() {
+        long balance;
+        do {
+            balance = budget.get();
+            if (balance < SPECULATIVE_REQUEST_COST) {
+                return false;
+            }
+        } while (!budget.compareAndSet(balance, balance - SPECULATIVE_REQUEST_COST));
+        return true;
+    }
+
+    private void releaseBudget() {
+        budget.updateAndGet(balance -> Math.min(maxBudget, balance + SPECULATIVE_REQUEST_COST));
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                          final SpeculativeRequestExecutor requestExecutor) {
+        final long speculativeRequestTimeoutNanos = getSpeculativeRequestTimeoutNanos(requestExecutor);
+        try {
+            return scheduler.schedule(() -> {
+                if (!acquireBudget()) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("No budget left to issue a speculative request for {}", requestExecutor);
+                    }
+                    return;
+                }
+                ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean issueNextRequest) {
+                        if (issueNextRequest) {
+                            scheduleSpeculativeRequest(scheduler, requestExecutor);
+                        } else {
+                            // Nothing was sent
+                            releaseBudget();
+                            if (LOG.isTraceEnabled()) {
+                                LOG.trace("Stopped issuing speculative requests for {}, "
+                                        + "speculativeRequestTimeoutNanos = {}", requestExecutor,
+                                        speculativeRequestTimeoutNanos);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable thrown) {
+                        releaseBudget();
+                        LOG.warn("Failed to issue speculative request for {}, speculativeRequestTimeoutNanos = {} : ",
+                                requestExecutor, speculativeRequestTimeoutNanos, thrown);
+                    }
+                }, directExecutor());
+            }, speculativeRequestTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeRequestTimeoutNanos = {} : ",
+                        requestExecutor, speculativeRequestTimeoutNanos, re);
+            }
+        }
+        return null;
+    }
+}
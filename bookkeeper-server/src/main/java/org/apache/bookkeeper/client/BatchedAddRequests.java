@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.proto.BookieProtocol.FLAG_NONE;
+
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+
+/**
+ * The write requests of a batch of {@link PendingAddOp}, grouped by bookie, so that the entries sent to the same
+ * bookie are added with a single request.
+ */
+class BatchedAddRequests {
+
+    private final List<BookieRequests> requests = new ArrayList<>();
+
+    private static class BookieRequests {
+        final BookieId bookieId;
+        final int bookieIndex;
+        final List<PendingAddOp> ops = new ArrayList<>();
+        final List<ReferenceCounted> toSend = new ArrayList<>();
+        boolean allowFailFast = true;
+
+        BookieRequests(BookieId bookieId, int bookieIndex) {
+            this.bookieId = bookieId;
+            this.bookieIndex = bookieIndex;
+        }
+    }
+
+    void add(BookieId bookieId, int bookieIndex, PendingAddOp op, ReferenceCounted toSend, boolean allowFailFast) {
+        BookieRequests bookieRequests = null;
+        for (BookieRequests r : requests) {
+            if (r.bookieIndex == bookieIndex && r.bookieId.equals(bookieId)) {
+                bookieRequests = r;
+                break;
+            }
+        }
+        if (bookieRequests == null) {
+            bookieRequests = new BookieRequests(bookieId, bookieIndex);
+            requests.add(bookieRequests);
+        }
+        bookieRequests.ops.add(op);
+        bookieRequests.toSend.add(toSend);
+        bookieRequests.allowFailFast &= allowFailFast;
+    }
+
+    /**
+     * Send the write requests, and release the buffers to send.
+     */
+    void send(LedgerHandle lh, BookieClient bookieClient) {
+        for (BookieRequests r : requests) {
+            int numEntries = r.ops.size();
+            long[] entryIds = new long[numEntries];
+            WriteCallback[] cbs = new WriteCallback[numEntries];
+            for (int i = 0; i < numEntries; i++) {
+                // The ops can't be recycled until their write requests complete
+                entryIds[i] = r.ops.get(i).entryId;
+                cbs[i] = r.ops.get(i);
+            }
+            ReferenceCounted[] toSend = r.toSend.toArray(new ReferenceCounted[numEntries]);
+            try {
+                bookieClient.addEntries(r.bookieId, lh.ledgerId, lh.ledgerKey, entryIds, toSend, cbs,
+                        r.bookieIndex, FLAG_NONE, r.allowFailFast, lh.writeFlags);
+            } finally {
+                for (ReferenceCounted buf : toSend) {
+                    ReferenceCountUtil.release(buf);
+                }
+            }
+        }
+        requests.clear();
+    }
+}
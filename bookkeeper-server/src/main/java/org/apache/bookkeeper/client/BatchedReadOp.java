@@ -43,6 +43,7 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
 
     final int maxCount;
     final long maxSize;
+    final int preferredReplica;
 
     BatchedLedgerEntryRequest request;
 
@@ -52,9 +53,24 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
                   int maxCount,
                   long maxSize,
                   boolean isRecoveryRead) {
+        this(lh, clientCtx, startEntryId, maxCount, maxSize, isRecoveryRead, 0);
+    }
+
+    /**
+     * @param preferredReplica the replica of the write set to read from first, used to spread consecutive
+     *                         batches of a stream over the bookies
+     */
+    BatchedReadOp(LedgerHandle lh,
+                  ClientContext clientCtx,
+                  long startEntryId,
+                  int maxCount,
+                  long maxSize,
+                  boolean isRecoveryRead,
+                  int preferredReplica) {
         super(lh, clientCtx, startEntryId, -1L, isRecoveryRead);
         this.maxCount = maxCount;
         this.maxSize = maxSize;
+        this.preferredReplica = preferredReplica;
     }
 
     @Override
@@ -62,6 +78,9 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         this.requestTimeNanos = MathUtils.nowInNano();
         List<BookieId> ensemble = getLedgerMetadata().getEnsembleAt(startEntryId);
         request = new SequenceReadRequest(ensemble, lh.ledgerId, startEntryId, maxCount, maxSize);
+        if (preferredReplica > 0 && preferredReplica < request.writeSet.size()) {
+            request.writeSet.moveAndShift(preferredReplica, 0);
+        }
         request.read();
         if (clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
             speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
@@ -269,6 +288,7 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
 
             try {
                 BookieId to = ensemble.get(bookieIndex);
+                lastSentTo = to;
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
@@ -94,6 +94,9 @@ public interface BookKeeperClientStats {
     String ACTIVE_TLS_CHANNEL_COUNTER = "ACTIVE_TLS_CHANNEL_COUNTER";
     String FAILED_CONNECTION_COUNTER = "FAILED_CONNECTION_COUNTER";
     String FAILED_TLS_HANDSHAKE_COUNTER = "FAILED_TLS_HANDSHAKE_COUNTER";
+    String BOOKIE_CONCURRENCY_LIMIT = "BOOKIE_CONCURRENCY_LIMIT";
+    String BOOKIE_REQUESTS_IN_FLIGHT = "BOOKIE_REQUESTS_IN_FLIGHT";
+    String BOOKIE_CONCURRENCY_LIMIT_EXCEEDED = "BOOKIE_CONCURRENCY_LIMIT_EXCEEDED";
 
     // placementpolicy stats
     String NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK = "NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK";
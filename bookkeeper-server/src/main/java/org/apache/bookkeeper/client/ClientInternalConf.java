@@ -26,8 +26,12 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.feature.Feature;
 import org.apache.bookkeeper.feature.FeatureProvider;
 import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 class ClientInternalConf {
+    private static final Logger LOG = LoggerFactory.getLogger(ClientInternalConf.class);
+
     final Feature disableEnsembleChangeFeature;
     final boolean delayEnsembleChange;
 
@@ -36,6 +40,9 @@ class ClientInternalConf {
 
     final int explicitLacInterval;
     final long waitForWriteSetMs;
+    final boolean addEntryCoalescingEnabled;
+    final long addEntryCoalescingWindowNanos;
+    final int addEntryCoalescingMaxBytes;
     final long addEntryQuorumTimeoutNanos;
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
@@ -49,6 +56,7 @@ class ClientInternalConf {
     final boolean useV2WireProtocol;
     final boolean enforceMinNumFaultDomainsForWrite;
     final boolean batchReadEnabled;
+    final boolean batchAddEnabled;
     final int nettyMaxFrameSizeBytes;
 
     static ClientInternalConf defaultValues() {
@@ -71,10 +79,13 @@ class ClientInternalConf {
         this.enableParallelRecoveryRead = conf.getEnableParallelRecoveryRead();
         this.recoveryReadBatchSize = conf.getRecoveryReadBatchSize();
         this.waitForWriteSetMs = conf.getWaitTimeoutOnBackpressureMillis();
+        this.addEntryCoalescingWindowNanos = TimeUnit.MICROSECONDS.toNanos(conf.getAddEntryCoalescingWindowMicros());
+        this.addEntryCoalescingMaxBytes = conf.getAddEntryCoalescingMaxBytes();
         this.addEntryQuorumTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryQuorumTimeout());
         this.throttleValue = conf.getThrottleValue();
         this.bookieFailureHistoryExpirationMSec = conf.getBookieFailureHistoryExpirationMSec();
         this.batchReadEnabled = conf.isBatchReadEnabled();
+        this.batchAddEnabled = conf.isBatchAddEnabled();
         this.nettyMaxFrameSizeBytes = conf.getNettyMaxFrameSizeBytes();
         this.disableEnsembleChangeFeature = featureProvider.getFeature(conf.getDisableEnsembleChangeFeatureName());
         this.delayEnsembleChange = conf.getDelayEnsembleChange();
@@ -85,7 +96,22 @@ class ClientInternalConf {
         this.enableStickyReads = conf.isStickyReadsEnabled();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        // The coalesced entries are sent with batch add requests, which the v2 protocol doesn't have
+        this.addEntryCoalescingEnabled = addEntryCoalescingWindowNanos > 0 && batchAddEnabled && !useV2WireProtocol;
+        if (addEntryCoalescingWindowNanos > 0 && !addEntryCoalescingEnabled) {
+            LOG.warn("The add entry coalescing window of {} us is ignored, since the coalesced entries are sent with"
+                    + " batch add requests, which {}", conf.getAddEntryCoalescingWindowMicros(),
+                    useV2WireProtocol ? "the v2 wire protocol doesn't support" : "are disabled (batchAddEnabled)");
+        }
+
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.getSpeculativeReadTimeoutPercentile() > 0) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new AdaptiveSpeculativeRequestExecutionPolicy(
+                                        conf.getSpeculativeReadTimeoutPercentile(),
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout(),
+                                        conf.getSpeculativeReadBudgetPercent()));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
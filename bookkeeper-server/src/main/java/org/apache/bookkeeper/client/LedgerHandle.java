@@ -69,10 +69,13 @@ import org.apache.bookkeeper.client.SyncCallbackUtils.SyncReadLastConfirmedCallb
 import org.apache.bookkeeper.client.api.BKException.Code;
 import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
 import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryStreamImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
@@ -141,6 +144,7 @@ public class LedgerHandle implements WriteHandle {
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
     final RateLimiter throttler;
+    final PendingAddCoalescer addCoalescer;
     final LoadingCache<BookieId, Long> bookieFailureHistory;
     final BookiesHealthInfo bookiesHealthInfo;
     final EnumSet<WriteFlag> writeFlags;
@@ -212,6 +216,13 @@ public class LedgerHandle implements WriteHandle {
             this.throttler = null;
         }
 
+        if (clientCtx.getConf().addEntryCoalescingEnabled) {
+            this.addCoalescer = new PendingAddCoalescer(this, clientCtx.getScheduler(),
+                    clientCtx.getConf().addEntryCoalescingWindowNanos, clientCtx.getConf().addEntryCoalescingMaxBytes);
+        } else {
+            this.addCoalescer = null;
+        }
+
         macManager = DigestManager.instantiate(ledgerId, password, BookKeeper.DigestType.toProtoDigestType(digestType),
                                                clientCtx.getByteBufAllocator(), clientCtx.getConf().useV2WireProtocol);
 
@@ -241,6 +252,11 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+                return clientCtx.getBookieClient().getReadLatencyNanos(bookieSocketAddress);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -952,8 +968,103 @@ public class LedgerHandle implements WriteHandle {
         return ledgerMetadata.getEnsembleSize() != ledgerMetadata.getWriteQuorumSize();
     }
 
+    /**
+     * Open a stream over a sequence of entries, that reads ahead.
+     *
+     * <p>When batch reads are supported, each range is read with a batch read, and consecutive ranges are read
+     * from different replicas first, so that the reads in flight are spread over the bookies of the write set.
+     * Otherwise the ranges are read entry by entry, as in {@link #readAsync(long, long)}.
+     */
+    @Override
+    public LedgerEntryStream newEntryStream(long firstEntry, long lastEntry,
+                                            int entriesPerRead, int maxOutstandingReads) {
+        return new LedgerEntryStreamImpl(firstEntry, lastEntry, entriesPerRead, maxOutstandingReads,
+                this::readRangeForStream);
+    }
+
+    private CompletableFuture<LedgerEntries> readRangeForStream(long firstEntry, long lastEntry, long readIndex) {
+        if (firstEntry < 0 || firstEntry > lastEntry || lastEntry > lastAddConfirmed || notSupportBatchRead()) {
+            // readAsync reports the invalid ranges
+            return readAsync(firstEntry, lastEntry);
+        }
+        StreamRangeRead read = new StreamRangeRead(firstEntry, lastEntry, readIndex);
+        read.readNextBatch();
+        return read.future;
+    }
+
+    /**
+     * Read of a range of entries of a stream with batch reads. When a batch is cut by the size limit, the rest of
+     * the range is read with another batch, from the next replica, until the whole range is read. The entries of
+     * all the batches are collected in a single list.
+     */
+    private class StreamRangeRead {
+        private final long firstEntry;
+        private final long lastEntry;
+        private final List<org.apache.bookkeeper.client.api.LedgerEntry> entries;
+        private final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+        private long nextEntry;
+        private long readIndex;
+
+        StreamRangeRead(long firstEntry, long lastEntry, long readIndex) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+            this.entries = new ArrayList<>((int) (lastEntry - firstEntry + 1));
+            this.nextEntry = firstEntry;
+            this.readIndex = readIndex;
+        }
+
+        void readNextBatch() {
+            int count = (int) (lastEntry - nextEntry + 1);
+            int preferredReplica = (int) (readIndex % getLedgerMetadata().getWriteQuorumSize());
+            batchReadEntriesInternalAsync(nextEntry, count, 0, false, preferredReplica)
+                    .whenComplete(this::batchCompleted);
+        }
+
+        private void batchCompleted(LedgerEntries batch, Throwable ex) {
+            if (ex != null) {
+                entries.forEach(org.apache.bookkeeper.client.api.LedgerEntry::close);
+                entries.clear();
+                if (ex instanceof BKException.BKBookieHandleNotAvailableException) {
+                    // See batchReadAsync
+                    notSupportBatch = true;
+                    FutureUtils.proxyTo(readEntriesInternalAsync(firstEntry, lastEntry, false), future);
+                } else {
+                    future.completeExceptionally(ex);
+                }
+                return;
+            }
+
+            long batchFirstEntry = nextEntry;
+            try {
+                for (org.apache.bookkeeper.client.api.LedgerEntry entry : batch) {
+                    entries.add(entry.duplicate());
+                    nextEntry = entry.getEntryId() + 1;
+                }
+            } finally {
+                batch.close();
+            }
+            if (nextEntry == batchFirstEntry) {
+                // The bookies returned no entry below the last add confirmed
+                entries.forEach(org.apache.bookkeeper.client.api.LedgerEntry::close);
+                entries.clear();
+                future.completeExceptionally(new BKReadException());
+            } else if (nextEntry > lastEntry) {
+                future.complete(LedgerEntriesImpl.create(entries));
+            } else {
+                // The batch was cut by the size limit, read the rest of the range from the next replica
+                readIndex++;
+                readNextBatch();
+            }
+        }
+    }
+
     private CompletableFuture<LedgerEntries> batchReadEntriesInternalAsync(long startEntry, int maxCount, long maxSize,
             boolean isRecoveryRead) {
+        return batchReadEntriesInternalAsync(startEntry, maxCount, maxSize, isRecoveryRead, 0);
+    }
+
+    private CompletableFuture<LedgerEntries> batchReadEntriesInternalAsync(long startEntry, int maxCount, long maxSize,
+            boolean isRecoveryRead, int preferredReplica) {
         int nettyMaxFrameSizeBytes = clientCtx.getConf().nettyMaxFrameSizeBytes;
         if (maxSize > nettyMaxFrameSizeBytes) {
             LOG.info(
@@ -966,7 +1077,7 @@ public class LedgerHandle implements WriteHandle {
             maxSize = nettyMaxFrameSizeBytes;
         }
         BatchedReadOp op = new BatchedReadOp(this, clientCtx,
-                startEntry, maxCount, maxSize, isRecoveryRead);
+                startEntry, maxCount, maxSize, isRecoveryRead, preferredReplica);
         if (!clientCtx.isClientClosed()) {
             // Waiting on the first one.
             // This is not very helpful if there are multiple ensembles or if bookie goes into unresponsive
@@ -1205,6 +1316,32 @@ public class LedgerHandle implements WriteHandle {
         return callback;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The entries of the batch that are stored on the same bookie are sent to it with a single request, if the
+     * batch add is enabled with
+     * {@link org.apache.bookkeeper.conf.ClientConfiguration#setBatchAddEnabled(boolean)}, or with one request per
+     * entry otherwise. The entries are then retried one by one, if needed, like the entries added with
+     * {@link #appendAsync(ByteBuf)}.
+     */
+    @Override
+    public CompletableFuture<Long> appendBatchAsync(List<ByteBuf> data) {
+        if (data.isEmpty()) {
+            return FutureUtils.exception(new IllegalArgumentException("No entries to append"));
+        }
+        List<CompletableFuture<Long>> callbacks = new ArrayList<>(data.size());
+        PendingAddOp[] ops = new PendingAddOp[data.size()];
+        List<BookieId> ensemble = getCurrentEnsemble();
+        for (int i = 0; i < ops.length; i++) {
+            SyncAddCallback callback = new SyncAddCallback();
+            callbacks.add(callback);
+            ops[i] = PendingAddOp.create(this, clientCtx, ensemble, data.get(i), writeFlags, callback, null);
+        }
+        doAsyncAddEntries(ops);
+        return FutureUtils.collect(callbacks).thenApply(entryIds -> entryIds.get(entryIds.size() - 1));
+    }
+
     /**
      * Add entry synchronously to an open ledger. This can be used only with
      * {@link LedgerHandleAdv} returned through ledgers created with {@link
@@ -1335,7 +1472,11 @@ public class LedgerHandle implements WriteHandle {
 
     public void asyncAddEntry(ByteBuf data, final AddCallback cb, final Object ctx) {
         PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx);
-        doAsyncAddEntry(op);
+        if (addCoalescer != null) {
+            doAsyncAddEntryCoalesced(op);
+        } else {
+            doAsyncAddEntry(op);
+        }
     }
 
     /**
@@ -1584,48 +1725,121 @@ public class LedgerHandle implements WriteHandle {
             throttler.acquire();
         }
 
+        if (!addToPendingAddOps(op)) {
+            failAddToClosedLedger(op);
+            return;
+        }
+
+        maybeWaitForWriteSet(op);
+
+        op.initiate();
+
+    }
+
+    /**
+     * Add an entry, holding it in the coalescer to be sent in a batch with the next entries.
+     */
+    private void doAsyncAddEntryCoalesced(final PendingAddOp op) {
+        if (throttler != null) {
+            throttler.acquire();
+        }
+
+        if (!addToPendingAddOps(op)) {
+            failAddToClosedLedger(op);
+            return;
+        }
+
+        addCoalescer.add(op);
+    }
+
+    /**
+     * Assign the next entry id to an add operation, and add it to the pending adds.
+     *
+     * @return false if the ledger is closed
+     */
+    private synchronized boolean addToPendingAddOps(PendingAddOp op) {
+        // synchronized on this to ensure that
+        // the ledger isn't closed between checking and
+        // updating lastAddPushed
+        if (!isHandleWritable()) {
+            return false;
+        }
+        long entryId = ++lastAddPushed;
+        long currentLedgerLength = addToLength(op.payload.readableBytes());
+        op.setEntryId(entryId);
+        op.setLedgerLength(currentLedgerLength);
+        pendingAddOps.add(op);
+        return true;
+    }
+
+    /**
+     * Add a batch of entries, sending the entries that go to the same bookie with a single request.
+     */
+    void doAsyncAddEntries(final PendingAddOp[] ops) {
+        if (throttler != null) {
+            throttler.acquire(ops.length);
+        }
+
         boolean wasClosed = false;
         synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
+            // the entries of the batch get consecutive ids
             if (isHandleWritable()) {
-                long entryId = ++lastAddPushed;
-                long currentLedgerLength = addToLength(op.payload.readableBytes());
-                op.setEntryId(entryId);
-                op.setLedgerLength(currentLedgerLength);
-                pendingAddOps.add(op);
+                for (PendingAddOp op : ops) {
+                    addToPendingAddOps(op);
+                }
             } else {
                 wasClosed = true;
             }
         }
 
         if (wasClosed) {
-            // make sure the callback is triggered in main worker pool
-            try {
-                executeOrdered(new Runnable() {
-                    @Override
-                    public void run() {
-                        LOG.warn("Attempt to add to closed ledger: {}", ledgerId);
-                        op.cb.addCompleteWithLatency(BKException.Code.LedgerClosedException,
-                                LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
-                        op.recyclePendAddOpObject();
-                    }
-
-                    @Override
-                    public String toString() {
-                        return String.format("AsyncAddEntryToClosedLedger(lid=%d)", ledgerId);
-                    }
-                });
-            } catch (RejectedExecutionException e) {
-                op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
-                                BKException.Code.InterruptedException),
-                        LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
-                op.recyclePendAddOpObject();
+            for (PendingAddOp op : ops) {
+                failAddToClosedLedger(op);
             }
             return;
         }
 
+        initiateBatch(Arrays.asList(ops));
+    }
+
+    /**
+     * Initiate a batch of add operations, that were already added to the pending adds.
+     */
+    void initiateBatch(List<PendingAddOp> ops) {
+        BatchedAddRequests requests = new BatchedAddRequests();
+        for (PendingAddOp op : ops) {
+            maybeWaitForWriteSet(op);
+            op.initiateBatched(requests);
+        }
+        requests.send(this, clientCtx.getBookieClient());
+    }
+
+    private void failAddToClosedLedger(final PendingAddOp op) {
+        // make sure the callback is triggered in main worker pool
+        try {
+            executeOrdered(new Runnable() {
+                @Override
+                public void run() {
+                    LOG.warn("Attempt to add to closed ledger: {}", ledgerId);
+                    op.cb.addCompleteWithLatency(BKException.Code.LedgerClosedException,
+                            LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
+                    op.recyclePendAddOpObject();
+                }
+
+                @Override
+                public String toString() {
+                    return String.format("AsyncAddEntryToClosedLedger(lid=%d)", ledgerId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
+                            BKException.Code.InterruptedException),
+                    LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
+            op.recyclePendAddOpObject();
+        }
+    }
+
+    private void maybeWaitForWriteSet(PendingAddOp op) {
         if (clientCtx.getConf().waitForWriteSetMs >= 0) {
             DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(op.getEntryId());
             try {
@@ -1636,9 +1850,6 @@ public class LedgerHandle implements WriteHandle {
                 ws.recycle();
             }
         }
-
-        op.initiate();
-
     }
 
     synchronized void updateLastConfirmed(long lac, long len) {
@@ -23,10 +23,12 @@ package org.apache.bookkeeper.client;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
 import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.PriorityBlockingQueue;
@@ -37,6 +39,7 @@ import org.apache.bookkeeper.client.SyncCallbackUtils.SyncAddCallback;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteAdvHandle;
 import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -293,6 +296,16 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         cb.addCompleteWithLatency(BKException.Code.IllegalOpException, this, LedgerHandle.INVALID_ENTRY_ID, 0, ctx);
     }
 
+    /**
+     * LedgerHandleAdv will not allow addEntry without providing an entryId.
+     */
+    @Override
+    public CompletableFuture<Long> appendBatchAsync(List<ByteBuf> data) {
+        // The buffers are always released, as for the other handles
+        data.forEach(ReferenceCountUtil::release);
+        return FutureUtils.exception(BKException.create(BKException.Code.IllegalOpException));
+    }
+
     /**
      * LedgerHandleAdv will not allow addEntry without providing an entryId.
      */
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+
+/**
+ * Coalesces the entries appended to a ledger within a time window, or up to a size budget, so that they are
+ * sent to each bookie with a single batch add request.
+ *
+ * <p>The entries get their entry id before being coalesced, so the coalescing doesn't change their order, and
+ * each entry keeps its own callback.
+ *
+ * <p>The batches are taken and sent on the ordered executor of the ledger, whether the window elapsed or the size
+ * budget was reached, so that they are sent one at a time and in order.
+ */
+class PendingAddCoalescer {
+
+    private final LedgerHandle lh;
+    private final OrderedScheduler scheduler;
+    private final long windowNanos;
+    private final int maxBytes;
+
+    private List<PendingAddOp> pendingOps = new ArrayList<>();
+    private long pendingBytes = 0;
+    // Number of batches sent, so that a flush can tell whether its batch was already sent
+    private long sentBatches = 0;
+    // Batch for which a flush was already submitted because of its size
+    private long sizeFlushedBatch = -1;
+
+    PendingAddCoalescer(LedgerHandle lh, OrderedScheduler scheduler, long windowNanos, int maxBytes) {
+        this.lh = lh;
+        this.scheduler = scheduler;
+        this.windowNanos = windowNanos;
+        this.maxBytes = maxBytes;
+    }
+
+    void add(PendingAddOp op) {
+        final long batchId;
+        boolean flushNow = false;
+        boolean scheduleFlush = false;
+        synchronized (this) {
+            pendingOps.add(op);
+            pendingBytes += op.entryLength;
+            batchId = sentBatches;
+            if (pendingBytes >= maxBytes) {
+                if (sizeFlushedBatch != batchId) {
+                    sizeFlushedBatch = batchId;
+                    flushNow = true;
+                }
+            } else if (pendingOps.size() == 1) {
+                scheduleFlush = true;
+            }
+        }
+
+        if (flushNow) {
+            submitFlush(batchId);
+        } else if (scheduleFlush) {
+            try {
+                scheduler.scheduleOrdered(lh.getId(), () -> submitFlush(batchId), windowNanos,
+                        TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // The client is closing, don't hold the entry
+                submitFlush(batchId);
+            }
+        }
+    }
+
+    private void submitFlush(long batchId) {
+        try {
+            lh.executeOrdered(() -> flush(batchId));
+        } catch (RejectedExecutionException e) {
+            // The client is closing, send the batch on this thread rather than holding the entries
+            flush(batchId);
+        }
+    }
+
+    private void flush(long batchId) {
+        List<PendingAddOp> batch;
+        synchronized (this) {
+            if (batchId != sentBatches || pendingOps.isEmpty()) {
+                // Already sent, by the flush of the window or of the size
+                return;
+            }
+            batch = takePendingOps();
+        }
+        lh.initiateBatch(batch);
+    }
+
+    private List<PendingAddOp> takePendingOps() {
+        List<PendingAddOp> batch = pendingOps;
+        pendingOps = new ArrayList<>();
+        pendingBytes = 0;
+        sentBatches++;
+        return batch;
+    }
+}
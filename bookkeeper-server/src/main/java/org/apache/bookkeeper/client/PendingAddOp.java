@@ -238,6 +238,37 @@ class PendingAddOp implements WriteCallback {
             return;
         }
 
+        prepareForSending();
+
+        // Iterate over set and trigger the sendWriteRequests
+        for (int i = 0; i < lh.distributionSchedule.getWriteQuorumSize(); i++) {
+            sendWriteRequest(ensemble, lh.distributionSchedule.getWriteSetBookieIndex(entryId, i));
+        }
+    }
+
+    /**
+     * Initiate the add operation as part of a batch. The write requests are not sent, but added to
+     * {@code requests}, to be sent along with the other entries of the batch.
+     */
+    synchronized void initiateBatched(BatchedAddRequests requests) {
+        hasRun = true;
+        if (callbackTriggered) {
+            maybeRecycle();
+            return;
+        }
+
+        prepareForSending();
+
+        for (int i = 0; i < lh.distributionSchedule.getWriteQuorumSize(); i++) {
+            int bookieIndex = lh.distributionSchedule.getWriteSetBookieIndex(entryId, i);
+            // The request is accounted as pending right away, so that this op is not recycled before the
+            // batch is sent
+            requests.add(ensemble.get(bookieIndex), bookieIndex, this, toSend.retain(), allowFailFast);
+            ++pendingWriteRequests;
+        }
+    }
+
+    private void prepareForSending() {
         this.requestTimeNanos = MathUtils.nowInNano();
         checkNotNull(lh);
         checkNotNull(lh.macManager);
@@ -252,11 +283,6 @@ class PendingAddOp implements WriteCallback {
         // We are about to send. Check if we need to make an ensemble change
         // because of delayed write errors
         lh.maybeHandleDelayedWriteBookieFailure();
-
-        // Iterate over set and trigger the sendWriteRequests
-        for (int i = 0; i < lh.distributionSchedule.getWriteQuorumSize(); i++) {
-            sendWriteRequest(ensemble, lh.distributionSchedule.getWriteSetBookieIndex(entryId, i));
-        }
     }
 
     @Override
@@ -176,7 +176,8 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
                     this, new ReadContext(bookieIndex, to, entry), flags, lh.ledgerKey);
         } else {
             clientCtx.getBookieClient().readEntry(to, lh.ledgerId, entry.eId,
-                    this, new ReadContext(bookieIndex, to, entry), BookieProtocol.FLAG_NONE);
+                    this, new ReadContext(bookieIndex, to, entry), BookieProtocol.FLAG_NONE, null,
+                    entry.canFailFast());
         }
     }
 
@@ -194,6 +195,16 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
             entryImpl.close();
         }
 
+        /**
+         * Whether the read being sent may fail fast with a TooManyRequestsException when the bookie is not
+         * writable or over its concurrency limit.
+         *
+         * @return true if the read failed fast can be retried on another replica.
+         */
+        boolean canFailFast() {
+            return false;
+        }
+
         /**
          * Complete the read request from <i>host</i>.
          *
@@ -342,6 +353,12 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
             sendNextRead();
         }
 
+        @Override
+        synchronized boolean canFailFast() {
+            // The read sent to the last replica must not fail fast, nothing would be left to read from
+            return allowFailFast && nextReplicaIndexToReadFrom < getLedgerMetadata().getWriteQuorumSize();
+        }
+
         synchronized BookieId sendNextRead() {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
                 // we are done, the read has failed from all replicas, just fail the
@@ -358,6 +375,7 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
 
             try {
                 BookieId to = ensemble.get(bookieIndex);
+                lastSentTo = to;
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -114,6 +115,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected boolean reorderReadsByLatency = false;
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -332,6 +334,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        reorderReadsByLatency = conf.getReorderReadsByLatency();
         return initialize(
                 dnsResolver,
                 timer,
@@ -934,7 +937,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
-        if (reorderThresholdPendingRequests > 0) {
+        if (reorderReadsByLatency) {
+            reordered = reorderReadSequenceByLatency(ensemble, writeSet, bookiesHealthInfo);
+        } else if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
 
@@ -1086,6 +1091,55 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         return writeSet;
     }
 
+    /**
+     * Move the bookie that is likely the fastest to the first place of the write set, using the power of two
+     * choices: two bookies are picked at random, and the one with the lower expected latency wins. Picking among
+     * two rather than all the bookies keeps the clients from all rushing to the same bookie on stale latencies.
+     *
+     * @return true if the write set was reordered.
+     */
+    private boolean reorderReadSequenceByLatency(List<BookieId> ensemble,
+                                                 DistributionSchedule.WriteSet writeSet,
+                                                 BookiesHealthInfo bookiesHealthInfo) {
+        int size = writeSet.size();
+        if (size < 2) {
+            return false;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = (first + 1 + random.nextInt(size - 1)) % size;
+        if (second < first) {
+            int tmp = first;
+            first = second;
+            second = tmp;
+        }
+        // On a tie keep the original order of the write set
+        double firstCost = expectedReadLatency(ensemble.get(writeSet.get(first)), bookiesHealthInfo);
+        double secondCost = expectedReadLatency(ensemble.get(writeSet.get(second)), bookiesHealthInfo);
+        int best = secondCost < firstCost ? second : first;
+        if (best == 0) {
+            return false;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("read set reordered from {} to {} (expected latencies of the picked bookies: {}, {})",
+                    ensemble.get(writeSet.get(0)), ensemble.get(writeSet.get(best)), firstCost, secondCost);
+        }
+        writeSet.moveAndShift(best, 0);
+        return true;
+    }
+
+    private static double expectedReadLatency(BookieId bookie, BookiesHealthInfo bookiesHealthInfo) {
+        long latencyNanos = bookiesHealthInfo.getBookieReadLatencyNanos(bookie);
+        if (latencyNanos < 0) {
+            // Try the bookies we know nothing about first, to learn their latency
+            return 0;
+        }
+        // A request waits for the requests already queued on the bookie. The pending requests of a bookie
+        // that isn't writable carry a high bit, which makes it the last choice.
+        double pendingRequests = bookiesHealthInfo.getBookiePendingRequests(bookie);
+        return (pendingRequests + 1) * latencyNanos;
+    }
+
     // this method should be called in readlock scope of 'rwlock'
     @Override
     public PlacementPolicyAdherence isEnsembleAdheringToPlacementPolicy(List<BookieId> ensembleList,
@@ -121,6 +121,8 @@ public abstract class ReadOpBase implements Runnable {
 
         final List<BookieId> ensemble;
         final DistributionSchedule.WriteSet writeSet;
+        // The last replica the request was sent to
+        volatile BookieId lastSentTo;
 
 
         LedgerEntryRequest(List<BookieId> ensemble, final long eId) {
@@ -266,6 +268,12 @@ public abstract class ReadOpBase implements Runnable {
                 }
             });
         }
+
+        @Override
+        public long getPendingReplicaLatencyNanos(double percentile) {
+            BookieId bookie = lastSentTo;
+            return bookie == null ? -1L : clientCtx.getBookieClient().getReadLatencyPercentileNanos(bookie, percentile);
+        }
     }
 
     protected static class ReadContext implements BookkeeperInternalCallbacks.ReadEntryCallbackCtx {
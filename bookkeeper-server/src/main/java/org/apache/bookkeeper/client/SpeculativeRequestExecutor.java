@@ -39,4 +39,15 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Get a percentile of the latency of the replica the request is currently waiting on, which tells how long
+     * it is worth waiting before issuing a speculative request.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or -1 if unknown
+     */
+    default long getPendingReplicaLatencyNanos(double percentile) {
+        return -1L;
+    }
 }
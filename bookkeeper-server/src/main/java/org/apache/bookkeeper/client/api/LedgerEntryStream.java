@@ -0,0 +1,74 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * A stream over a range of entries of a ledger, returned in order.
+ *
+ * <p>The stream reads ahead: it keeps several reads of consecutive ranges of entries in flight, so that they
+ * can be served by different bookies at the same time. A new read is sent only when the result of a previous
+ * one is taken with {@link #readNextAsync()}, so the entries read ahead are bounded.
+ *
+ * @see ReadHandle#newEntryStream(long, long, int, int)
+ * @since 4.17
+ */
+@Public
+@Unstable
+public interface LedgerEntryStream extends AutoCloseable {
+
+    /**
+     * Check whether there are entries left to read in the stream.
+     *
+     * @return true if {@link #readNextAsync()} will return more entries
+     */
+    boolean hasNext();
+
+    /**
+     * Read the next entries of the stream asynchronously.
+     *
+     * <p>The entries are returned in order, in batches of at most the number of entries per read of the stream.
+     * If a read fails, the returned future fails, and the stream moves on to the next entries.
+     *
+     * @return an handle to the next entries of the stream. The caller must close them.
+     */
+    CompletableFuture<LedgerEntries> readNextAsync();
+
+    /**
+     * Read the next entries of the stream synchronously.
+     *
+     * @return the next entries of the stream. The caller must close them.
+     * @see #readNextAsync()
+     */
+    default LedgerEntries readNext() throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(readNextAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Close the stream, and release the entries read ahead.
+     */
+    @Override
+    void close();
+}
@@ -48,18 +48,21 @@ public interface ReadHandle extends Handle {
     /**
      * Read a sequence of entries asynchronously.
      *
+     * <p>The default implementation, for handles that cannot read in batches, reads the entries with
+     * {@link #readAsync(long, long)} up to the last add confirmed. It ignores {@code maxSize}: all the
+     * {@code maxCount} entries are returned whatever their total size.
+     *
      * @param startEntry
      *          start entry id
      * @param maxCount
      *          the total entries count.
      * @param maxSize
-     *          the total entries size.
+     *          the total entries size, not honored by the default implementation.
      * @return an handle to the result of the operation
      */
     default CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
-        CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
-        future.completeExceptionally(new UnsupportedOperationException());
-        return future;
+        long lastEntry = Math.min(startEntry + maxCount - 1, getLastAddConfirmed());
+        return readAsync(startEntry, lastEntry);
     }
 
     /**
@@ -91,6 +94,26 @@ public interface ReadHandle extends Handle {
         return FutureUtils.result(batchReadAsync(startEntry, maxCount, maxSize), BKException.HANDLER);
     }
 
+    /**
+     * Open a stream over a sequence of entries, that reads ahead.
+     *
+     * <p>The entries are read in ranges of {@code entriesPerRead} entries, and up to {@code maxOutstandingReads}
+     * ranges are read at the same time. The handle spreads the reads of consecutive ranges over the bookies when
+     * it can, so that a sequential scan is not limited by the latency of a single bookie.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @param entriesPerRead
+     *          the number of entries to read at once
+     * @param maxOutstandingReads
+     *          the max number of reads in flight
+     * @return the stream of entries
+     * @since 4.17
+     */
+    LedgerEntryStream newEntryStream(long firstEntry, long lastEntry, int entriesPerRead, int maxOutstandingReads);
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
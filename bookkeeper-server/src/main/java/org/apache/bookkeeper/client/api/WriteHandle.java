@@ -23,6 +23,8 @@ package org.apache.bookkeeper.client.api;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
@@ -133,6 +135,42 @@ public interface WriteHandle extends ReadHandle, ForceableHandle {
         return append(Unpooled.wrappedBuffer(data, offset, length));
     }
 
+    /**
+     * Add a batch of entries asynchronously to an open ledger.
+     *
+     * <p>The entries get consecutive entry ids, in the order of the list. Implementations may send the whole
+     * batch to each bookie with a single request, which is cheaper than adding the entries one by one when the
+     * entries are small.
+     *
+     * @param data the bytebufs to be written, one per entry. The reference count of each bytebuf will be
+     *             decremented by 1 after the call completes.
+     *             do not reuse the buffers, bk-client will release them appropriately.
+     * @return an handle to the result, in case of success it will return the id of the last entry of the batch
+     */
+    default CompletableFuture<Long> appendBatchAsync(List<ByteBuf> data) {
+        if (data.isEmpty()) {
+            return FutureUtils.exception(new IllegalArgumentException("No entries to append"));
+        }
+        List<CompletableFuture<Long>> futures = new ArrayList<>(data.size());
+        for (ByteBuf entry : data) {
+            futures.add(appendAsync(entry));
+        }
+        return FutureUtils.collect(futures).thenApply(entryIds -> entryIds.get(entryIds.size() - 1));
+    }
+
+    /**
+     * Add a batch of entries synchronously to an open ledger.
+     *
+     * @param data the bytebufs to be written, one per entry. The reference count of each bytebuf will be
+     *             decremented by 1 after the call completes.
+     *             do not reuse the buffers, bk-client will release them appropriately.
+     * @return the id of the last entry of the batch
+     * @see #appendBatchAsync(List)
+     */
+    default long appendBatch(List<ByteBuf> data) throws BKException, InterruptedException {
+        return FutureUtils.<Long, BKException>result(appendBatchAsync(data), BKException.HANDLER);
+    }
+
     /**
      * Get the entry id of the last entry that has been enqueued for addition (but
      * may not have possibly been persisted to the ledger).
@@ -0,0 +1,119 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Ledger entry stream implementation. It splits the range of entries in reads of consecutive ranges, and keeps
+ * up to a maximum number of them in flight.
+ */
+public class LedgerEntryStreamImpl implements LedgerEntryStream {
+
+    /**
+     * Reads a range of entries for the stream.
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+        /**
+         * Read a range of entries.
+         *
+         * @param firstEntry the first entry of the range
+         * @param lastEntry the last entry of the range, inclusive
+         * @param readIndex the index of the read in the stream, that can be used to spread the reads over
+         *                  the bookies
+         * @return an handle to the entries of the range
+         */
+        CompletableFuture<LedgerEntries> readRange(long firstEntry, long lastEntry, long readIndex);
+    }
+
+    private final RangeReader reader;
+    private final long lastEntry;
+    private final int entriesPerRead;
+    private final int maxOutstandingReads;
+
+    private final Deque<CompletableFuture<LedgerEntries>> reads;
+    private long nextEntryToRead;
+    private long nextReadIndex = 0;
+    private boolean closed = false;
+
+    public LedgerEntryStreamImpl(long firstEntry, long lastEntry, int entriesPerRead, int maxOutstandingReads,
+                                 RangeReader reader) {
+        checkArgument(firstEntry >= 0, "Invalid first entry %s", firstEntry);
+        checkArgument(entriesPerRead > 0, "Invalid number of entries per read %s", entriesPerRead);
+        checkArgument(maxOutstandingReads > 0, "Invalid number of outstanding reads %s", maxOutstandingReads);
+        this.reader = reader;
+        this.lastEntry = lastEntry;
+        this.entriesPerRead = entriesPerRead;
+        this.maxOutstandingReads = maxOutstandingReads;
+        this.reads = new ArrayDeque<>(maxOutstandingReads);
+        this.nextEntryToRead = firstEntry;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return !closed && (!reads.isEmpty() || nextEntryToRead <= lastEntry);
+    }
+
+    @Override
+    public synchronized CompletableFuture<LedgerEntries> readNextAsync() {
+        if (closed) {
+            return FutureUtils.exception(new BKException.BKUnexpectedConditionException());
+        }
+        fillReads();
+        CompletableFuture<LedgerEntries> next = reads.poll();
+        if (next == null) {
+            return FutureUtils.exception(new BKException.BKNoSuchEntryException());
+        }
+        // Replace the read taken by the caller
+        fillReads();
+        return next;
+    }
+
+    private void fillReads() {
+        while (reads.size() < maxOutstandingReads && nextEntryToRead <= lastEntry) {
+            long firstEntryOfRead = nextEntryToRead;
+            long lastEntryOfRead = Math.min(lastEntry, firstEntryOfRead + entriesPerRead - 1);
+            reads.add(reader.readRange(firstEntryOfRead, lastEntryOfRead, nextReadIndex++));
+            nextEntryToRead = lastEntryOfRead + 1;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (CompletableFuture<LedgerEntries> read : reads) {
+            read.thenAccept(LedgerEntries::close);
+        }
+        reads.clear();
+    }
+}
@@ -107,6 +107,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String SPECULATIVE_READ_TIMEOUT_PERCENTILE = "speculativeReadTimeoutPercentile";
+    protected static final String SPECULATIVE_READ_LATENCY_WINDOW_SEC = "speculativeReadLatencyWindowSec";
+    protected static final String SPECULATIVE_READ_BUDGET_PERCENT = "speculativeReadBudgetPercent";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -120,6 +123,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
+    protected static final String ADD_ENTRY_COALESCING_WINDOW_MICROS = "addEntryCoalescingWindowMicros";
+    protected static final String ADD_ENTRY_COALESCING_MAX_BYTES = "addEntryCoalescingMaxBytes";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
     protected static final String ADD_ENTRY_QUORUM_TIMEOUT_SEC = "addEntryQuorumTimeoutSec";
@@ -133,6 +138,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String TIMEOUT_TIMER_NUM_TICKS = "timeoutTimerNumTicks";
     // backpressure configuration
     protected static final String WAIT_TIMEOUT_ON_BACKPRESSURE = "waitTimeoutOnBackpressureMs";
+    protected static final String BOOKIE_CONCURRENCY_LIMIT_ENABLED = "bookieConcurrencyLimitEnabled";
+    protected static final String BOOKIE_CONCURRENCY_LIMIT_INITIAL = "bookieConcurrencyLimitInitial";
+    protected static final String BOOKIE_CONCURRENCY_LIMIT_MIN = "bookieConcurrencyLimitMin";
+    protected static final String BOOKIE_CONCURRENCY_LIMIT_MAX = "bookieConcurrencyLimitMax";
 
     // Bookie health check settings
     protected static final String BOOKIE_HEALTH_CHECK_ENABLED = "bookieHealthCheckEnabled";
@@ -159,6 +168,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_LATENCY = "readReorderByLatency";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
     protected static final String BOOKIE_ADDRESS_RESOLVER_ENABLED = "bookieAddressResolverEnabled";
@@ -206,6 +216,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     //For batch read api, it the batch read is not stable, we can fail back to single read by this config.
     protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
 
+    // Bookies older than the batch add api can't parse its requests, so it must only be enabled once all the
+    // bookies are upgraded.
+    protected static final String BATCH_ADD_ENABLED = "batchAddEnabled";
+
     /**
      * Construct a default client-side configuration.
      */
@@ -1001,6 +1015,83 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the percentile of the read latency of a bookie after which a speculative read is sent to the next
+     * bookie.
+     *
+     * <p>If positive, and speculative reads are enabled, the time to wait before each speculative read is the
+     * given percentile of the latency of the reads served by the bookie the read is waiting on, over the last
+     * {@link #getSpeculativeReadLatencyWindowSec()} seconds, bounded by {@link #getMaxSpeculativeReadTimeout()}.
+     * {@link #getFirstSpeculativeReadTimeout()} is used while the latency of the bookie is unknown, and the
+     * speculative reads are limited by {@link #getSpeculativeReadBudgetPercent()}. If zero, the speculative reads
+     * are sent after fixed timeouts.
+     *
+     * @return the percentile of the read latency, between 0 and 100. Default is 0.
+     */
+    public double getSpeculativeReadTimeoutPercentile() {
+        return getDouble(SPECULATIVE_READ_TIMEOUT_PERCENTILE, 0);
+    }
+
+    /**
+     * Set the percentile of the read latency of a bookie after which a speculative read is sent to the next
+     * bookie.
+     *
+     * @param percentile
+     *          the percentile of the read latency, between 0 and 100, or 0 to use fixed timeouts.
+     * @return client configuration.
+     * @see #getSpeculativeReadTimeoutPercentile()
+     */
+    public ClientConfiguration setSpeculativeReadTimeoutPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_TIMEOUT_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the window over which the read latency percentiles of the bookies are computed.
+     *
+     * @return the window in seconds. Default is 60.
+     */
+    public int getSpeculativeReadLatencyWindowSec() {
+        return getInt(SPECULATIVE_READ_LATENCY_WINDOW_SEC, 60);
+    }
+
+    /**
+     * Set the window over which the read latency percentiles of the bookies are computed.
+     *
+     * @param windowSec
+     *          the window in seconds.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyWindowSec(int windowSec) {
+        setProperty(SPECULATIVE_READ_LATENCY_WINDOW_SEC, windowSec);
+        return this;
+    }
+
+    /**
+     * Get the budget of the speculative reads sent after a latency percentile, as a percentage of the reads.
+     *
+     * <p>The budget keeps the speculative reads from adding load to the bookies when all of them are slow.
+     * A small burst of speculative reads is allowed over the budget.
+     *
+     * @return the budget in percent of the reads. Default is 10.
+     * @see #getSpeculativeReadTimeoutPercentile()
+     */
+    public double getSpeculativeReadBudgetPercent() {
+        return getDouble(SPECULATIVE_READ_BUDGET_PERCENT, 10);
+    }
+
+    /**
+     * Set the budget of the speculative reads sent after a latency percentile, as a percentage of the reads.
+     *
+     * @param budgetPercent
+     *          the budget in percent of the reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadBudgetPercent(double budgetPercent) {
+        setProperty(SPECULATIVE_READ_BUDGET_PERCENT, budgetPercent);
+        return this;
+    }
+
     /**
      * Multipler to use when determining time between successive speculative read LAC requests.
      *
@@ -1269,6 +1360,32 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether reads are sent first to the bookie that is likely the fastest.
+     *
+     * <p>Two bookies of the write set are picked at random, and the one with the lowest moving average of the
+     * read latency, weighted by its number of pending requests, is read first. When enabled, this replaces the
+     * reordering based on {@link #getReorderThresholdPendingRequests()}.
+     *
+     * @return true if reads are reordered by latency. Default is false.
+     */
+    public boolean getReorderReadsByLatency() {
+        return getBoolean(READ_REORDER_BY_LATENCY, false);
+    }
+
+    /**
+     * Enable or disable the reordering of reads by latency.
+     *
+     * @param enabled
+     *            whether reads are reordered by latency
+     * @return client configuration.
+     * @see #getReorderReadsByLatency()
+     */
+    public ClientConfiguration setReorderReadsByLatency(boolean enabled) {
+        setProperty(READ_REORDER_BY_LATENCY, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
@@ -1993,6 +2110,152 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the time window in which the entries appended to a ledger are coalesced before being sent.
+     *
+     * <p>When enabled, the entries appended to a ledger handle are held until the window elapses, or until
+     * {@link #getAddEntryCoalescingMaxBytes()} bytes are pending, and are then sent to each bookie with a single
+     * batch add request. Each entry keeps its own entry id and callback.
+     *
+     * <p>The coalescing is only done when the batch add requests are enabled with
+     * {@link #setBatchAddEnabled(boolean)}, and not with the v2 wire protocol.
+     *
+     * @return the coalescing window in microseconds. 0 (default) disables the coalescing.
+     */
+    public long getAddEntryCoalescingWindowMicros() {
+        return getLong(ADD_ENTRY_COALESCING_WINDOW_MICROS, 0);
+    }
+
+    /**
+     * Set the time window in which the entries appended to a ledger are coalesced before being sent.
+     *
+     * <p>The window is ignored, with a warning when the client is created, unless the batch add requests are
+     * enabled with {@link #setBatchAddEnabled(boolean)} and the v2 wire protocol is not used.
+     *
+     * @param windowMicros
+     *          the coalescing window in microseconds. 0 disables the coalescing.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryCoalescingWindowMicros(long windowMicros) {
+        setProperty(ADD_ENTRY_COALESCING_WINDOW_MICROS, windowMicros);
+        return this;
+    }
+
+    /**
+     * Get the size of the coalesced entries of a ledger after which they are sent without waiting for
+     * the end of the coalescing window.
+     *
+     * @return the max size of the coalesced entries in bytes. Default is 65536.
+     */
+    public int getAddEntryCoalescingMaxBytes() {
+        return getInt(ADD_ENTRY_COALESCING_MAX_BYTES, 64 * 1024);
+    }
+
+    /**
+     * Set the size of the coalesced entries of a ledger after which they are sent without waiting for
+     * the end of the coalescing window.
+     *
+     * @param maxBytes
+     *          the max size of the coalesced entries in bytes
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryCoalescingMaxBytes(int maxBytes) {
+        setProperty(ADD_ENTRY_COALESCING_MAX_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * Whether the number of requests in flight to each bookie is limited by an adaptive limit.
+     *
+     * <p>The limit of a bookie grows while its latency is stable, and shrinks when its latency increases or when
+     * its requests time out. A bookie that has more requests in flight than its limit is reported as not
+     * writable, so that the clients waiting on backpressure (see {@link #getWaitTimeoutOnBackpressureMillis()})
+     * wait for it, and the reads are sent to the other bookies of the write set first. The reads that allow to
+     * fail fast are rejected when the bookie is over its limit, while the adds are sent anyway once the writer
+     * waited for the bookie, so that the limit never replaces a bookie in the ensemble.
+     *
+     * @return true if the adaptive limit is enabled. Default is false.
+     */
+    public boolean getBookieConcurrencyLimitEnabled() {
+        return getBoolean(BOOKIE_CONCURRENCY_LIMIT_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the adaptive limit of the number of requests in flight to each bookie.
+     *
+     * @param enabled
+     *          whether the adaptive limit is enabled
+     * @return client configuration.
+     * @see #getBookieConcurrencyLimitEnabled()
+     */
+    public ClientConfiguration setBookieConcurrencyLimitEnabled(boolean enabled) {
+        setProperty(BOOKIE_CONCURRENCY_LIMIT_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the initial limit of the number of requests in flight to a bookie.
+     *
+     * @return the initial limit. Default is 500.
+     */
+    public int getBookieConcurrencyLimitInitial() {
+        return getInt(BOOKIE_CONCURRENCY_LIMIT_INITIAL, 500);
+    }
+
+    /**
+     * Set the initial limit of the number of requests in flight to a bookie.
+     *
+     * @param limit
+     *          the initial limit
+     * @return client configuration.
+     */
+    public ClientConfiguration setBookieConcurrencyLimitInitial(int limit) {
+        setProperty(BOOKIE_CONCURRENCY_LIMIT_INITIAL, limit);
+        return this;
+    }
+
+    /**
+     * Get the lowest limit of the number of requests in flight to a bookie.
+     *
+     * @return the lowest limit. Default is 16.
+     */
+    public int getBookieConcurrencyLimitMin() {
+        return getInt(BOOKIE_CONCURRENCY_LIMIT_MIN, 16);
+    }
+
+    /**
+     * Set the lowest limit of the number of requests in flight to a bookie.
+     *
+     * @param limit
+     *          the lowest limit
+     * @return client configuration.
+     */
+    public ClientConfiguration setBookieConcurrencyLimitMin(int limit) {
+        setProperty(BOOKIE_CONCURRENCY_LIMIT_MIN, limit);
+        return this;
+    }
+
+    /**
+     * Get the highest limit of the number of requests in flight to a bookie.
+     *
+     * @return the highest limit. Default is 10000.
+     */
+    public int getBookieConcurrencyLimitMax() {
+        return getInt(BOOKIE_CONCURRENCY_LIMIT_MAX, 10000);
+    }
+
+    /**
+     * Set the highest limit of the number of requests in flight to a bookie.
+     *
+     * @param limit
+     *          the highest limit
+     * @return client configuration.
+     */
+    public ClientConfiguration setBookieConcurrencyLimitMax(int limit) {
+        setProperty(BOOKIE_CONCURRENCY_LIMIT_MAX, limit);
+        return this;
+    }
+
     /**
      * Option to use Netty Pooled ByteBufs.
      *
@@ -2107,6 +2370,33 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getBoolean(BATCH_READ_ENABLED, true);
     }
 
+    /**
+     * Enable/disable the batch add requests.
+     *
+     * <p>When enabled, the entries of a batch append that are stored on the same bookie are sent with a single
+     * batch add request. Bookies that don't support the batch add request fail to decode it and close the
+     * connection, so it must only be enabled once all the bookies are upgraded. When disabled, the entries of a
+     * batch append are sent with one add request each, and the add entry coalescing window
+     * (see {@link #setAddEntryCoalescingWindowMicros(long)}) is ignored.
+     *
+     * @param enable
+     *          whether to send batch add requests
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchAddEnabled(boolean enable) {
+        setProperty(BATCH_ADD_ENABLED, enable);
+        return this;
+    }
+
+    /**
+     * Whether the entries of a batch append are sent to each bookie with a single batch add request.
+     *
+     * @return true if the batch add requests are enabled. Default is false.
+     */
+    public boolean isBatchAddEnabled() {
+        return getBoolean(BATCH_ADD_ENABLED, false);
+    }
+
     @Override
     protected ClientConfiguration getThis() {
         return this;
@@ -105,6 +105,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String NUM_COMPACTION_THREADS = "numCompactionThreads";
+    protected static final String USE_SORTED_COMPACTION = "useSortedCompaction";
+    protected static final String SORTED_COMPACTION_BUFFER_SIZE = "sortedCompactionBufferSize";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -139,10 +142,15 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT_ENABLED = "journalAdaptiveGroupCommitEnabled";
+    protected static final String JOURNAL_LOAD_BALANCING_ENABLED = "journalLoadBalancingEnabled";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT_MIN_WAIT_MICROS =
+            "journalAdaptiveGroupCommitMinWaitMicros";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
+    protected static final String JOURNAL_DIRECT_IO_ENABLED = "journalDirectIOEnabled";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
@@ -236,6 +244,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
 
     protected static final String READ_BUFFER_SIZE = "readBufferSizeBytes";
     protected static final String WRITE_BUFFER_SIZE = "writeBufferSizeBytes";
+    protected static final String ENTRY_LOG_ASYNC_READ_ENABLED = "entryLogAsyncReadEnabled";
+    protected static final String ENTRY_LOG_ASYNC_READ_QUEUE_DEPTH = "entryLogAsyncReadQueueDepth";
+    protected static final String ENTRY_LOG_ASYNC_READ_IO_URING_ENABLED = "entryLogAsyncReadIoUringEnabled";
+    protected static final String READ_ENTRY_ZERO_COPY_ENABLED = "readEntryZeroCopyEnabled";
+    protected static final String READ_ENTRY_ZERO_COPY_MIN_SIZE = "readEntryZeroCopyMinSize";
     // Whether the bookie should use its hostname or ipaddress for the
     // registration.
     protected static final String USE_HOST_NAME_AS_BOOKIE_ID = "useHostNameAsBookieID";
@@ -247,6 +260,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String SKIP_LIST_SIZE_LIMIT = "skipListSizeLimit";
     protected static final String SKIP_LIST_CHUNK_SIZE_ENTRY = "skipListArenaChunkSize";
     protected static final String SKIP_LIST_MAX_ALLOC_ENTRY = "skipListArenaMaxAllocSize";
+    protected static final String SKIP_LIST_OFF_HEAP_ENABLED = "skipListOffHeapEnabled";
 
     // Statistics Parameters
     protected static final String ENABLE_STATISTICS = "enableStatistics";
@@ -1943,6 +1957,120 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the entry logger reads entries through the native asynchronous read engine
+     * (io_uring, or the kernel AIO interface as fallback) when they are requested asynchronously.
+     * Default is false.
+     *
+     * @return true if asynchronous entry log reads are enabled
+     */
+    public boolean isEntryLogAsyncReadEnabled() {
+        return getBoolean(ENTRY_LOG_ASYNC_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable asynchronous entry log reads.
+     *
+     * @param enabled
+     *          whether asynchronous entry log reads are enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogAsyncReadEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_ASYNC_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of asynchronous entry log reads in flight in the kernel.
+     * Default is 256.
+     *
+     * @return async read queue depth
+     */
+    public int getEntryLogAsyncReadQueueDepth() {
+        return getInt(ENTRY_LOG_ASYNC_READ_QUEUE_DEPTH, 256);
+    }
+
+    /**
+     * Set the maximum number of asynchronous entry log reads in flight in the kernel.
+     *
+     * @param queueDepth
+     *          async read queue depth
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogAsyncReadQueueDepth(int queueDepth) {
+        setProperty(ENTRY_LOG_ASYNC_READ_QUEUE_DEPTH, queueDepth);
+        return this;
+    }
+
+    /**
+     * Whether the asynchronous entry log reads should use io_uring when the kernel supports it.
+     * When disabled, or not supported, the kernel AIO interface is used instead. The entry logs are
+     * not opened with O_DIRECT, so the kernel AIO interface reads them synchronously on submit, one
+     * at a time on the I/O thread. Default is true.
+     *
+     * @return true if io_uring is used for asynchronous entry log reads
+     */
+    public boolean isEntryLogAsyncReadIoUringEnabled() {
+        return getBoolean(ENTRY_LOG_ASYNC_READ_IO_URING_ENABLED, true);
+    }
+
+    /**
+     * Enable or disable io_uring for asynchronous entry log reads.
+     *
+     * @param enabled
+     *          whether io_uring is used for asynchronous entry log reads
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogAsyncReadIoUringEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_ASYNC_READ_IO_URING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the entries read with the v2 protocol that are not cached are sent from the entry log file to the
+     * socket without being copied in memory, using sendfile. It only applies to plain text connections on the
+     * epoll and nio transports, and to the ledger storages reading from entry logs. Default is false.
+     *
+     * @return whether the zero-copy read path is enabled
+     */
+    public boolean isReadEntryZeroCopyEnabled() {
+        return getBoolean(READ_ENTRY_ZERO_COPY_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable sending the entries from the entry log file to the socket without copying them in memory.
+     *
+     * @param enabled
+     *          whether the zero-copy read path is enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setReadEntryZeroCopyEnabled(boolean enabled) {
+        setProperty(READ_ENTRY_ZERO_COPY_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the minimum size of the entries sent without being copied in memory, when the zero-copy read path is
+     * enabled. Smaller entries are cheaper to copy than to send from a dedicated file descriptor. Default is 64KB.
+     *
+     * @return the minimum entry size in bytes
+     */
+    public int getReadEntryZeroCopyMinSize() {
+        return getInt(READ_ENTRY_ZERO_COPY_MIN_SIZE, 64 * 1024);
+    }
+
+    /**
+     * Set the minimum size of the entries sent without being copied in memory.
+     *
+     * @param minSize
+     *          the minimum entry size in bytes
+     * @return server configuration
+     */
+    public ServerConfiguration setReadEntryZeroCopyMinSize(int minSize) {
+        setProperty(READ_ENTRY_ZERO_COPY_MIN_SIZE, minSize);
+        return this;
+    }
+
     /**
      * Set the number of threads that would handle write requests.
      *
@@ -2270,6 +2398,27 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the entry mem table of the sorted ledger storage keeps the entries off heap, in direct
+     * chunks of {@link #getSkipListArenaChunkSize()} bytes taken from the bookie allocator.
+     *
+     * @return true if the entries are kept off heap (Default is false)
+     */
+    public boolean isSkipListOffHeapEnabled() {
+        return getBoolean(SKIP_LIST_OFF_HEAP_ENABLED, false);
+    }
+
+    /**
+     * Set whether the entry mem table of the sorted ledger storage keeps the entries off heap.
+     *
+     * @param enabled flag to keep the entries off heap.
+     * @return server configuration object.
+     */
+    public ServerConfiguration setSkipListOffHeapEnabled(boolean enabled) {
+        setProperty(SKIP_LIST_OFF_HEAP_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Should the data be fsynced on journal before acknowledgment.
      *
@@ -2363,6 +2512,73 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the time to wait for grouping journal writes is set from the observed commit latency and arrival
+     * rate of the entries, between {@link #getJournalAdaptiveGroupCommitMinWaitMicros()} and
+     * {@link #getJournalMaxGroupWaitMSec()}. Default is false.
+     *
+     * @return whether the adaptive group commit is enabled
+     */
+    public boolean getJournalAdaptiveGroupCommitEnabled() {
+        return getBoolean(JOURNAL_ADAPTIVE_GROUP_COMMIT_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the adaptive group commit of the journal.
+     *
+     * @param enabled flag to enable/disable the adaptive group commit
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommitEnabled(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Minimum time to wait for grouping journal writes when the adaptive group commit is enabled. Default is 0.
+     *
+     * <p>The wait drops to this minimum when less than one entry is expected to arrive during a commit. With 0,
+     * the entries are then committed as soon as the journal queue is empty, otherwise they still wait this long.
+     *
+     * @return min wait for grouping in microseconds
+     */
+    public long getJournalAdaptiveGroupCommitMinWaitMicros() {
+        return getLong(JOURNAL_ADAPTIVE_GROUP_COMMIT_MIN_WAIT_MICROS, 0);
+    }
+
+    /**
+     * Sets the minimum time to wait for grouping journal writes when the adaptive group commit is enabled.
+     *
+     * @param minWaitMicros minimum time to wait in microseconds.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommitMinWaitMicros(long minWaitMicros) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT_MIN_WAIT_MICROS, minWaitMicros);
+        return this;
+    }
+
+    /**
+     * Whether the new ledgers are assigned to the least loaded journal, based on the queue depth and the sync latency
+     * of each journal, rather than by hashing the ledger id. A ledger keeps using the same journal once assigned.
+     * It only applies when multiple journal directories are configured. Default is false.
+     *
+     * @return whether the journal load balancing is enabled
+     */
+    public boolean getJournalLoadBalancingEnabled() {
+        return getBoolean(JOURNAL_LOAD_BALANCING_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the assignment of the new ledgers to the least loaded journal.
+     *
+     * @param enabled flag to enable/disable the journal load balancing
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalLoadBalancingEnabled(boolean enabled) {
+        setProperty(JOURNAL_LOAD_BALANCING_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Maximum bytes to buffer to impose on a journal write to achieve grouping.
      *
@@ -2973,6 +3189,86 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of threads compacting the entry logs of a ledger directory at once. Default is 1.
+     *
+     * @return number of compaction threads
+     */
+    public int getNumCompactionThreads() {
+        return getInt(NUM_COMPACTION_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads compacting the entry logs of a ledger directory at once.
+     *
+     * <p>The threads pick the entry logs which reclaim the most space for the bytes they have to read and
+     * rewrite first, and share the rate set by {@link #setCompactionRateByBytes(int)} or
+     * {@link #setCompactionRateByEntries(int)}, so more threads do not compact faster than that rate.
+     * Transactional compaction with the default entry logger writes a single compaction log at a time
+     * and always uses one thread.
+     *
+     * @param numThreads number of compaction threads
+     *
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setNumCompactionThreads(int numThreads) {
+        setProperty(NUM_COMPACTION_THREADS, numThreads);
+        return this;
+    }
+
+    /**
+     * Get whether compaction rewrites the entries sorted by ledger. Default is false.
+     *
+     * @return use sorted compaction
+     */
+    public boolean getUseSortedCompaction() {
+        return getBoolean(USE_SORTED_COMPACTION, false);
+    }
+
+    /**
+     * Set whether compaction rewrites the entries sorted by ledger.
+     *
+     * <p>The entries of an entry log are interleaved with those of other ledgers, so reading a ledger
+     * from the entry logs is random I/O. Sorted compaction buffers the remaining entries of the entry
+     * log it compacts and rewrites them sorted by ledger and entry id, so that the entries of a ledger
+     * are read back sequentially and read-ahead finds them. The entries are only sorted within each
+     * run that fits in the sorted compaction buffer, and the runs are written to the current entry log,
+     * interleaved with the entries flushed from the write cache. The entry logs holding ledgers read
+     * from the entry logs since the last compaction are compacted first. Transactional compaction does
+     * not sort the entries.
+     *
+     * @param useSortedCompaction whether to use sorted compaction
+     *
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setUseSortedCompaction(boolean useSortedCompaction) {
+        setProperty(USE_SORTED_COMPACTION, useSortedCompaction);
+        return this;
+    }
+
+    /**
+     * Get the size of the buffer in which sorted compaction sorts the entries. Default is 64MB.
+     *
+     * @return size of the sorted compaction buffer in bytes
+     */
+    public long getSortedCompactionBufferSize() {
+        return getLong(SORTED_COMPACTION_BUFFER_SIZE, 64 * 1024 * 1024);
+    }
+
+    /**
+     * Set the size of the buffer in which sorted compaction sorts the entries, which is allocated
+     * by each compaction thread. The entries are sorted in runs of that size, and a ledger is only
+     * contiguous within a run.
+     *
+     * @param bufferSize size of the sorted compaction buffer in bytes
+     *
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setSortedCompactionBufferSize(long bufferSize) {
+        setProperty(SORTED_COMPACTION_BUFFER_SIZE, bufferSize);
+        return this;
+    }
+
     /**
      * Should we remove pages from page cache after force write.
      *
@@ -2995,6 +3291,31 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Should the journal files be written with direct I/O, bypassing the page cache.
+     *
+     * <p>It does not make the journal faster, the gain is that the journal writes no longer go through the page
+     * cache, which is left to the entry log reads. {@link #getJournalRemovePagesFromCache()} only drops the pages
+     * after they were written.
+     *
+     * @return whether the journal is written with direct I/O
+     */
+    public boolean getJournalDirectIOEnabled() {
+        return getBoolean(JOURNAL_DIRECT_IO_ENABLED, false);
+    }
+
+    /**
+     * Sets whether the journal files should be written with direct I/O, bypassing the page cache.
+     *
+     * @param enabled
+     *            - true to write the journal with direct I/O
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIOEnabled(boolean enabled) {
+        setProperty(JOURNAL_DIRECT_IO_ENABLED, enabled);
+        return this;
+    }
+
     /*
      * Get the {@link LedgerStorage} implementation class name.
      *
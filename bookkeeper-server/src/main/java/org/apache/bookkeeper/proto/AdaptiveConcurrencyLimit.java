@@ -0,0 +1,217 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_CONCURRENCY_LIMIT;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_CONCURRENCY_LIMIT_EXCEEDED;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_REQUESTS_IN_FLIGHT;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.CATEGORY_CLIENT;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.CHANNEL_SCOPE;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Adaptive limit of the number of requests in flight to a bookie.
+ *
+ * <p>The limit follows the gradient between the long term and the short term latency of the bookie: it grows by
+ * about the square root of the limit while the short term latency stays within a tolerance of the long term one,
+ * and shrinks proportionally when the short term latency increases, which means requests are queueing up on the
+ * bookie. Timeouts and rejected requests shrink the limit multiplicatively.
+ *
+ * <p>The limit is advisory: reads over the limit are only rejected when they allow to fail fast, so that they
+ * are sent to another replica, the other requests are reported through {@link #isExceeded()} so that the callers
+ * back off. Adds over the limit are always sent, since a rejected add would replace the bookie in the ensemble.
+ */
+@StatsDoc(
+    name = CHANNEL_SCOPE,
+    category = CATEGORY_CLIENT,
+    help = "Per bookie adaptive concurrency limit stats"
+)
+class AdaptiveConcurrencyLimit {
+
+    // Ratio of the long term latency the short term latency can reach before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SHORT_RTT_ALPHA = 0.1;
+    private static final double LONG_RTT_ALPHA = 0.002;
+    // Drift the long term latency down when the bookie recovers from a period of high latency
+    private static final double LONG_RTT_RECOVERY_RATIO = 2.0;
+    private static final double LONG_RTT_DECAY = 0.95;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Guarded by this, and volatile for the unsynchronized readers
+    private volatile double limit;
+    private double shortRttNanos = -1;
+    private double longRttNanos = -1;
+
+    @StatsDoc(
+        name = BOOKIE_CONCURRENCY_LIMIT,
+        help = "The current limit of the number of requests in flight to the bookie"
+    )
+    private final Gauge<Integer> limitGauge;
+    @StatsDoc(
+        name = BOOKIE_REQUESTS_IN_FLIGHT,
+        help = "The number of requests in flight to the bookie"
+    )
+    private final Gauge<Integer> inFlightGauge;
+    @StatsDoc(
+        name = BOOKIE_CONCURRENCY_LIMIT_EXCEEDED,
+        help = "The number of requests sent to the bookie while it was over its limit"
+    )
+    private final Counter limitExceededCounter;
+    private final StatsLogger bookieStatsLogger;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, StatsLogger bookieStatsLogger) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.bookieStatsLogger = bookieStatsLogger;
+
+        this.limitGauge = new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return getLimit();
+            }
+        };
+        this.inFlightGauge = new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return inFlight.get();
+            }
+        };
+        bookieStatsLogger.registerGauge(BOOKIE_CONCURRENCY_LIMIT, limitGauge);
+        bookieStatsLogger.registerGauge(BOOKIE_REQUESTS_IN_FLIGHT, inFlightGauge);
+        this.limitExceededCounter = bookieStatsLogger.getCounter(BOOKIE_CONCURRENCY_LIMIT_EXCEEDED);
+    }
+
+    /**
+     * Count a new request in flight.
+     *
+     * @return false if the bookie has more requests in flight than its limit, the request is counted anyway.
+     */
+    boolean acquire() {
+        if (inFlight.incrementAndGet() > limit) {
+            limitExceededCounter.inc();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release a request that was not sent.
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Release a completed request, and adjust the limit to its latency.
+     *
+     * @param startNanos the time the request was acquired at
+     * @param rc the result of the request
+     */
+    void onComplete(long startNanos, int rc) {
+        switch (rc) {
+        case BKException.Code.OK:
+        case BKException.Code.NoSuchEntryException:
+        case BKException.Code.NoSuchLedgerExistsException:
+            // The bookie served the request, its latency tells how loaded it is
+            onSample(MathUtils.elapsedNanos(startNanos));
+            break;
+        case BKException.Code.TimeoutException:
+        case BKException.Code.TooManyRequestsException:
+            backoff();
+            break;
+        default:
+            // Connection errors and the like don't say anything about the load of the bookie
+            break;
+        }
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Unregister the gauges of the bookie.
+     */
+    void close() {
+        bookieStatsLogger.unregisterGauge(BOOKIE_CONCURRENCY_LIMIT, limitGauge);
+        bookieStatsLogger.unregisterGauge(BOOKIE_REQUESTS_IN_FLIGHT, inFlightGauge);
+    }
+
+    boolean isExceeded() {
+        return inFlight.get() >= limit;
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void onSample(long rttNanos) {
+        if (shortRttNanos < 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos += SHORT_RTT_ALPHA * (rttNanos - shortRttNanos);
+        longRttNanos += LONG_RTT_ALPHA * (rttNanos - longRttNanos);
+        if (longRttNanos > LONG_RTT_RECOVERY_RATIO * shortRttNanos) {
+            longRttNanos *= LONG_RTT_DECAY;
+        }
+
+        double currentLimit = limit;
+        if (inFlight.get() < currentLimit / 2) {
+            // Not enough load to tell whether the bookie could take more
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        double newLimit = currentLimit * gradient + Math.sqrt(currentLimit);
+        newLimit = currentLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private synchronized void backoff() {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+}
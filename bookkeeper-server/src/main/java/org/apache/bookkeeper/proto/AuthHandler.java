@@ -29,6 +29,7 @@ import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.Queue;
@@ -337,6 +338,9 @@ class AuthHandler {
                     // through
                     break;
                 }
+            } else {
+                // drop the message, a read response may hold a buffer
+                ReferenceCountUtil.release(msg);
             }
         }
 
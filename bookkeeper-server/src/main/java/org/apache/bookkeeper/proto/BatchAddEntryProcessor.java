@@ -0,0 +1,210 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes batch add entry requests.
+ *
+ * <p>The entries of the batch are added to the bookie together, and a single response is sent once all of them
+ * are persisted, or as soon as one of them fails.
+ */
+class BatchAddEntryProcessor extends PacketProcessorBaseV3 implements WriteCallback {
+    private static final Logger logger = LoggerFactory.getLogger(BatchAddEntryProcessor.class);
+
+    private final AtomicInteger pendingEntries = new AtomicInteger();
+    private long startTimeNanos;
+
+    public BatchAddEntryProcessor(Request request, BookieRequestHandler requestHandler,
+                                  BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+    }
+
+    // Returns null if the entries were handed to the bookie
+    private StatusCode addEntries() {
+        BatchAddRequest batchAddRequest = request.getBatchAddRequest();
+        long ledgerId = batchAddRequest.getLedgerId();
+
+        if (!isVersionCompatible()) {
+            return StatusCode.EBADVERSION;
+        }
+
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(RequestUtils.isHighPriority(request)
+                    && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            logger.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            return StatusCode.EREADONLY;
+        }
+
+        if (batchAddRequest.getBodyCount() == 0) {
+            return StatusCode.EBADREQ;
+        }
+
+        final EnumSet<WriteFlag> writeFlags;
+        if (batchAddRequest.hasWriteFlags()) {
+            writeFlags = WriteFlag.getWriteFlags(batchAddRequest.getWriteFlags());
+        } else {
+            writeFlags = WriteFlag.NONE;
+        }
+        final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        final boolean recoveryAdd = batchAddRequest.hasFlag()
+                && batchAddRequest.getFlag() == AddRequest.Flag.RECOVERY_ADD;
+        byte[] masterKey = batchAddRequest.getMasterKey().toByteArray();
+        List<ByteBuf> entries = new ArrayList<>(batchAddRequest.getBodyCount());
+        for (int i = 0; i < batchAddRequest.getBodyCount(); i++) {
+            entries.add(Unpooled.wrappedBuffer(batchAddRequest.getBody(i).asReadOnlyByteBuffer()));
+        }
+
+        startTimeNanos = MathUtils.nowInNano();
+        pendingEntries.set(entries.size());
+        StatusCode status;
+        try {
+            requestProcessor.getBookie().addEntries(entries, ackBeforeSync, recoveryAdd, this,
+                    requestHandler.ctx().channel(), masterKey);
+            return null;
+        } catch (OperationRejectedException e) {
+            requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+            // Avoid to log each occurence of this exception as this can happen when the ledger storage is
+            // unable to keep up with the write rate.
+            if (logger.isDebugEnabled()) {
+                logger.debug("Operation rejected while writing {}", request, e);
+            }
+            status = StatusCode.ETOOMANYREQUESTS;
+        } catch (IOException e) {
+            logger.error("Error writing {} entries to ledger:{}", entries.size(), ledgerId, e);
+            status = StatusCode.EIO;
+        } catch (BookieException.LedgerFencedException e) {
+            logger.error("Ledger fenced while writing {} entries to ledger:{}", entries.size(), ledgerId, e);
+            status = StatusCode.EFENCED;
+        } catch (BookieException e) {
+            logger.error("Unauthorized access to ledger:{} while writing {} entries", ledgerId, entries.size(), e);
+            status = StatusCode.EUA;
+        } catch (Throwable t) {
+            logger.error("Unexpected exception while writing {} entries to ledger:{} : ",
+                    entries.size(), ledgerId, t);
+            // some bad request which cause unexpected exception
+            status = StatusCode.EBADREQ;
+        }
+        // The callback will never be triggered
+        pendingEntries.set(0);
+        return status;
+    }
+
+    @Override
+    public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+        final int remaining;
+        if (BookieProtocol.EOK == rc) {
+            remaining = pendingEntries.decrementAndGet();
+            if (remaining != 0) {
+                // Either waiting for other entries, or the response was already sent
+                return;
+            }
+        } else if (pendingEntries.getAndSet(0) <= 0) {
+            // The response was already sent
+            return;
+        }
+
+        OpStatsLogger addEntryStats = requestProcessor.getRequestStats().getAddEntryStats();
+        if (BookieProtocol.EOK == rc) {
+            addEntryStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            addEntryStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+
+        StatusCode status;
+        switch (rc) {
+            case BookieProtocol.EOK:
+                status = StatusCode.EOK;
+                break;
+            case BookieProtocol.EIO:
+                status = StatusCode.EIO;
+                break;
+            default:
+                status = StatusCode.EUA;
+                break;
+        }
+        sendResponse(status, buildResponse(status), requestProcessor.getRequestStats().getAddRequestStats());
+    }
+
+    Response buildResponse(StatusCode status) {
+        BatchAddRequest batchAddRequest = request.getBatchAddRequest();
+        BatchAddResponse.Builder batchAddResponse = BatchAddResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(batchAddRequest.getLedgerId())
+                .setNumEntries(batchAddRequest.getBodyCount());
+        return Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(status)
+                .setBatchAddResponse(batchAddResponse)
+                .build();
+    }
+
+    @Override
+    public void run() {
+        requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        StatusCode status = addEntries();
+        if (null != status) {
+            // This means there was an error and we should send this back.
+            sendResponse(status, buildResponse(status), requestProcessor.getRequestStats().getAddRequestStats());
+        }
+    }
+
+    @Override
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        super.sendResponse(code, response, statsLogger);
+        requestProcessor.onAddRequestFinish();
+    }
+
+    /**
+     * this toString method filters out body and masterKey from the output.
+     * masterKey contains the password of the ledger and body is customer data,
+     * so it is not appropriate to have these in logs or system output.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -23,12 +23,16 @@ package org.apache.bookkeeper.proto;
 import io.netty.buffer.ByteBuf;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCounted;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import org.apache.bookkeeper.proto.BookieProtocol.BatchedReadRequest;
 import org.apache.bookkeeper.util.ByteBufList;
 
 public class BatchedReadEntryProcessor extends ReadEntryProcessor {
 
+    private static final int INITIAL_ENTRIES_PER_STORAGE_READ = 8;
+    private static final int MAX_ENTRIES_PER_STORAGE_READ = 64;
+
     private long maxBatchReadSize;
 
     public static BatchedReadEntryProcessor create(BatchedReadRequest request,
@@ -57,29 +61,65 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
         long maxSize = Math.min(batchRequest.getMaxSize(), maxBatchReadSize);
         //See BookieProtoEncoding.ResponseEnDeCoderPreV3#encode on BatchedReadResponse case.
         long frameSize = 24 + 8 + 4;
-        for (int i = 0; i < maxCount; i++) {
+        long nextEntryId = request.getEntryId();
+        int readCount = 0;
+        boolean done = false;
+        while (!done && readCount < maxCount) {
+            // Ask the storage for a chunk of entries at once, so that it can batch the index lookups and the reads
+            int chunkSize = nextChunkSize(maxCount - readCount, readCount, frameSize, maxSize);
+            List<ByteBuf> entries;
             try {
-                ByteBuf entry = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId() + i);
+                entries = requestProcessor.getBookie().readEntries(request.getLedgerId(), nextEntryId, chunkSize);
+            } catch (Throwable e) {
+                if (data == null) {
+                    throw e;
+                }
+                break;
+            }
+
+            for (ByteBuf entry : entries) {
+                if (done) {
+                    entry.release();
+                    continue;
+                }
                 frameSize += entry.readableBytes() + 4;
                 if (data == null) {
                     data = ByteBufList.get(entry);
                 } else {
                     if (frameSize > maxSize) {
                         entry.release();
-                        break;
+                        done = true;
+                        continue;
                     }
                     data.add(entry);
                 }
-            } catch (Throwable e) {
-                if (data == null) {
-                    throw e;
-                }
-                break;
+            }
+            readCount += entries.size();
+            nextEntryId += entries.size();
+            if (entries.size() < chunkSize) {
+                // The next entry is not available
+                done = true;
             }
         }
         return data;
     }
 
+    /**
+     * Size the next chunk to read on the average size of the entries read so far, to avoid reading many entries
+     * past the size limit of the response.
+     */
+    private static int nextChunkSize(int remainingCount, int readCount, long frameSize, long maxSize) {
+        int chunkSize;
+        if (readCount == 0) {
+            chunkSize = INITIAL_ENTRIES_PER_STORAGE_READ;
+        } else {
+            long averageEntryFrameSize = Math.max(1, (frameSize - 24 - 8 - 4) / readCount);
+            chunkSize = (int) Math.min(MAX_ENTRIES_PER_STORAGE_READ,
+                    Math.max(1, (maxSize - frameSize) / averageEntryFrameSize + 1));
+        }
+        return Math.min(chunkSize, remainingCount);
+    }
+
     @Override
     protected BookieProtocol.Response buildReadResponse(ReferenceCounted data) {
         return ResponseBuilder.buildBatchedReadResponse((ByteBufList) data, (BatchedReadRequest) request);
@@ -85,6 +85,27 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the moving average of the latency of the reads served by a bookie.
+     *
+     * @param address the address of the bookie
+     * @return the latency in nanoseconds, or -1 if no read completed yet
+     */
+    default long getReadLatencyNanos(BookieId address) {
+        return -1L;
+    }
+
+    /**
+     * Get a percentile of the latency of the reads served by a bookie over a recent window.
+     *
+     * @param address the address of the bookie
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or -1 if unknown
+     */
+    default long getReadLatencyPercentileNanos(BookieId address, double percentile) {
+        return -1L;
+    }
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -144,6 +165,32 @@ public interface BookieClient {
                   long entryId, ReferenceCounted toSend, WriteCallback cb, Object ctx,
                   int options, boolean allowFastFail, EnumSet<WriteFlag> writeFlags);
 
+    /**
+     * Add a batch of entries for ledger {@code ledgerId} on the bookie at address {@code address}, with
+     * a single request when the protocol supports it.
+     *
+     * @param address the address of the bookie
+     * @param ledgerId the ledger to which we wish to add the entries
+     * @param entryIds the ids of the entries we wish to add
+     * @param toSend the buffers containing the entries and their digest, one per entry
+     * @param cbs the callbacks notified when the request completes, one per entry
+     * @param ctx a context object passed to the callbacks on completion
+     * @param options a bit mask of flags from BookieProtocol.FLAG_*
+     *                {@link org.apache.bookkeeper.proto.BookieProtocol}
+     * @param allowFastFail fail the adds immediately if the channel is non-writable
+     *                      {@link #isWritable(BookieId,long)}
+     * @param writeFlags a set of write flags
+     *                   {@link org.apache.bookkeeper.client.api.WriteFlag}
+     */
+    default void addEntries(BookieId address, long ledgerId, byte[] masterKey,
+                            long[] entryIds, ReferenceCounted[] toSend, WriteCallback[] cbs, Object ctx,
+                            int options, boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+        for (int i = 0; i < entryIds.length; i++) {
+            addEntry(address, ledgerId, masterKey, entryIds[i], toSend[i], cbs[i], ctx,
+                    options, allowFastFail, writeFlags);
+        }
+    }
+
     /**
      * Read entry with a null masterkey, disallowing failfast.
      * @see #readEntry(BookieId,long,long,ReadEntryCallback,Object,int,byte[],boolean)
@@ -21,6 +21,8 @@
 package org.apache.bookkeeper.proto;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_LABEL;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.CHANNEL_SCOPE;
 
 import com.google.common.collect.Lists;
 import com.google.protobuf.ExtensionRegistry;
@@ -69,6 +71,7 @@ import org.apache.bookkeeper.tls.SecurityException;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,6 +105,10 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
 
     private final long bookieErrorThresholdPerInterval;
 
+    private final boolean concurrencyLimitEnabled;
+    private final ConcurrentHashMap<BookieId, AdaptiveConcurrencyLimit> concurrencyLimits =
+            new ConcurrentHashMap<BookieId, AdaptiveConcurrencyLimit>();
+
     public BookieClientImpl(ClientConfiguration conf, EventLoopGroup eventLoopGroup,
                             ByteBufAllocator allocator,
                             OrderedExecutor executor, ScheduledExecutorService scheduler,
@@ -122,6 +129,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         this.statsLogger = statsLogger;
         this.numConnectionsPerBookie = conf.getNumChannelsPerBookie();
         this.bookieErrorThresholdPerInterval = conf.getBookieErrorThresholdPerInterval();
+        this.concurrencyLimitEnabled = conf.getBookieConcurrencyLimitEnabled();
 
         this.scheduler = scheduler;
         if (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0) {
@@ -165,7 +173,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     public boolean isWritable(BookieId address, long key) {
         final PerChannelBookieClientPool pcbcPool = lookupClient(address);
         // if null, let the write initiate connect of fail with whatever error it produces
-        return pcbcPool == null || pcbcPool.isWritable(key);
+        return pcbcPool == null || (pcbcPool.isWritable(key) && !isConcurrencyLimitExceeded(address));
     }
 
     @Override
@@ -173,13 +181,92 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         PerChannelBookieClientPool pcbcPool = lookupClient(address);
         if (pcbcPool == null) {
             return 0;
-        } else if (pcbcPool.isWritable(ledgerId)) {
+        } else if (pcbcPool.isWritable(ledgerId) && !isConcurrencyLimitExceeded(address)) {
             return pcbcPool.getNumPendingCompletionRequests();
         } else {
             return pcbcPool.getNumPendingCompletionRequests() | PENDINGREQ_NOTWRITABLE_MASK;
         }
     }
 
+    @Override
+    public long getReadLatencyNanos(BookieId address) {
+        // Don't connect to the bookie just to tell it has no latency yet
+        PerChannelBookieClientPool pcbcPool = channels.get(address);
+        return pcbcPool == null ? -1L : pcbcPool.getReadLatencyNanos();
+    }
+
+    @Override
+    public long getReadLatencyPercentileNanos(BookieId address, double percentile) {
+        PerChannelBookieClientPool pcbcPool = channels.get(address);
+        return pcbcPool == null ? -1L : pcbcPool.getReadLatencyPercentileNanos(percentile);
+    }
+
+    private boolean isConcurrencyLimitExceeded(BookieId address) {
+        AdaptiveConcurrencyLimit concurrencyLimit = concurrencyLimitEnabled ? concurrencyLimits.get(address) : null;
+        return concurrencyLimit != null && concurrencyLimit.isExceeded();
+    }
+
+    /**
+     * Get the adaptive concurrency limit of a bookie. The limit is created and closed along with the channel pool
+     * of the bookie, so it doesn't outlive it.
+     *
+     * @return the limit, or null if the limits are disabled or the bookie has no channel pool.
+     */
+    private AdaptiveConcurrencyLimit lookupConcurrencyLimit(BookieId address) {
+        return concurrencyLimitEnabled ? concurrencyLimits.get(address) : null;
+    }
+
+    private void createConcurrencyLimit(BookieId address) {
+        if (!concurrencyLimitEnabled) {
+            return;
+        }
+        StatsLogger limitStatsLogger = conf.getLimitStatsLogging() ? NullStatsLogger.INSTANCE
+                : statsLogger.scope(CHANNEL_SCOPE).scopeLabel(BOOKIE_LABEL, address.toString());
+        concurrencyLimits.put(address, new AdaptiveConcurrencyLimit(conf.getBookieConcurrencyLimitInitial(),
+                conf.getBookieConcurrencyLimitMin(), conf.getBookieConcurrencyLimitMax(), limitStatsLogger));
+    }
+
+    /**
+     * Remove the channel pool of a bookie and close it, along with the concurrency limit of the bookie so that its
+     * gauges are unregistered.
+     */
+    private void removeClient(BookieId address, PerChannelBookieClientPool pool, boolean wait) {
+        if (!channels.remove(address, pool)) {
+            return;
+        }
+        pool.close(wait);
+        AdaptiveConcurrencyLimit concurrencyLimit = concurrencyLimits.remove(address);
+        if (concurrencyLimit != null) {
+            concurrencyLimit.close();
+        }
+    }
+
+    private static WriteCallback trackCompletion(AdaptiveConcurrencyLimit concurrencyLimit, WriteCallback cb) {
+        final long startNanos = MathUtils.nowInNano();
+        return (rc, ledgerId, entryId, addr, ctx) -> {
+            concurrencyLimit.onComplete(startNanos, rc);
+            cb.writeComplete(rc, ledgerId, entryId, addr, ctx);
+        };
+    }
+
+    private static ReadEntryCallback trackCompletion(AdaptiveConcurrencyLimit concurrencyLimit,
+                                                     ReadEntryCallback cb) {
+        final long startNanos = MathUtils.nowInNano();
+        return (rc, ledgerId, entryId, buffer, ctx) -> {
+            concurrencyLimit.onComplete(startNanos, rc);
+            cb.readEntryComplete(rc, ledgerId, entryId, buffer, ctx);
+        };
+    }
+
+    private static BatchedReadEntryCallback trackCompletion(AdaptiveConcurrencyLimit concurrencyLimit,
+                                                            BatchedReadEntryCallback cb) {
+        final long startNanos = MathUtils.nowInNano();
+        return (rc, ledgerId, startEntryId, bufList, ctx) -> {
+            concurrencyLimit.onComplete(startNanos, rc);
+            cb.readEntriesComplete(rc, ledgerId, startEntryId, bufList, ctx);
+        };
+    }
+
     @Override
     public PerChannelBookieClient create(BookieId address, PerChannelBookieClientPool pcbcPool,
             SecurityHandlerFactory shFactory, boolean forceUseV3) throws SecurityException {
@@ -209,6 +296,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                 PerChannelBookieClientPool oldClientPool = channels.putIfAbsent(addr, newClientPool);
                 if (null == oldClientPool) {
                     clientPool = newClientPool;
+                    createConcurrencyLimit(addr);
                     // initialize the pool only after we put the pool into the map
                     clientPool.initialize();
                 } else {
@@ -291,7 +379,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                          final byte[] masterKey,
                          final long entryId,
                          final ReferenceCounted toSend,
-                         final WriteCallback cb,
+                         WriteCallback cb,
                          final Object ctx,
                          final int options,
                          final boolean allowFastFail,
@@ -303,6 +391,14 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
+        final AdaptiveConcurrencyLimit concurrencyLimit = lookupConcurrencyLimit(addr);
+        if (concurrencyLimit != null) {
+            // Adds over the limit are not rejected, since PendingAddOp replaces the bookies failing with
+            // TooManyRequests. The writers already waited for the bookie to be writable.
+            concurrencyLimit.acquire();
+            cb = trackCompletion(concurrencyLimit, cb);
+        }
+
         // Retain the buffer, since the connection could be obtained after
         // the PendingApp might have already failed
         toSend.retain();
@@ -313,6 +409,62 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                       ledgerId);
     }
 
+    @Override
+    public void addEntries(final BookieId addr,
+                           final long ledgerId,
+                           final byte[] masterKey,
+                           final long[] entryIds,
+                           final ReferenceCounted[] toSend,
+                           WriteCallback[] cbs,
+                           final Object ctx,
+                           final int options,
+                           final boolean allowFastFail,
+                           final EnumSet<WriteFlag> writeFlags) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            for (int i = 0; i < entryIds.length; i++) {
+                completeAdd(getRc(BKException.Code.BookieHandleNotAvailableException),
+                            ledgerId, entryIds[i], addr, cbs[i], ctx);
+            }
+            return;
+        }
+
+        final AdaptiveConcurrencyLimit concurrencyLimit = lookupConcurrencyLimit(addr);
+        if (concurrencyLimit != null) {
+            // As for a single add, the batch is sent even if it's over the limit
+            for (int i = 0; i < entryIds.length; i++) {
+                concurrencyLimit.acquire();
+            }
+            WriteCallback[] trackedCbs = new WriteCallback[cbs.length];
+            for (int i = 0; i < cbs.length; i++) {
+                trackedCbs[i] = trackCompletion(concurrencyLimit, cbs[i]);
+            }
+            cbs = trackedCbs;
+        }
+
+        // Retain the buffers, since the connection could be obtained after
+        // the PendingAddOps might have already failed
+        for (ReferenceCounted entry : toSend) {
+            entry.retain();
+        }
+
+        final WriteCallback[] entryCbs = cbs;
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                for (int i = 0; i < entryIds.length; i++) {
+                    completeAdd(rc, ledgerId, entryIds[i], addr, entryCbs[i], ctx);
+                }
+            } else {
+                pcbc.addEntries(ledgerId, masterKey, entryIds, toSend, entryCbs, ctx, options, allowFastFail,
+                        writeFlags);
+            }
+
+            for (ReferenceCounted entry : toSend) {
+                ReferenceCountUtil.release(entry);
+            }
+        }, ledgerId);
+    }
+
     @Override
     public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
             long ledgerId) {
@@ -486,7 +638,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
 
     @Override
     public void readEntry(final BookieId addr, final long ledgerId, final long entryId,
-                          final ReadEntryCallback cb, final Object ctx, int flags, byte[] masterKey,
+                          ReadEntryCallback cb, final Object ctx, int flags, byte[] masterKey,
                           final boolean allowFastFail) {
         final PerChannelBookieClientPool client = lookupClient(addr);
         if (client == null) {
@@ -495,18 +647,29 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
+        final AdaptiveConcurrencyLimit concurrencyLimit = lookupConcurrencyLimit(addr);
+        if (concurrencyLimit != null) {
+            if (!concurrencyLimit.acquire() && allowFastFail) {
+                concurrencyLimit.release();
+                completeRead(BKException.Code.TooManyRequestsException, ledgerId, entryId, null, cb, ctx);
+                return;
+            }
+            cb = trackCompletion(concurrencyLimit, cb);
+        }
+
+        final ReadEntryCallback readCb = cb;
         client.obtain((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
-                completeRead(rc, ledgerId, entryId, null, cb, ctx);
+                completeRead(rc, ledgerId, entryId, null, readCb, ctx);
             } else {
-                pcbc.readEntry(ledgerId, entryId, cb, ctx, flags, masterKey, allowFastFail);
+                pcbc.readEntry(ledgerId, entryId, readCb, ctx, flags, masterKey, allowFastFail);
             }
         }, ledgerId);
     }
 
     @Override
     public void batchReadEntries(final BookieId address, final long ledgerId, final long startEntryId,
-            final int maxCount, final long maxSize, final BatchedReadEntryCallback cb, final Object ctx,
+            final int maxCount, final long maxSize, BatchedReadEntryCallback cb, final Object ctx,
             final int flags, final byte[] masterKey, final boolean allowFastFail) {
         final PerChannelBookieClientPool client = lookupClient(address);
         if (client == null) {
@@ -515,11 +678,22 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
+        final AdaptiveConcurrencyLimit concurrencyLimit = lookupConcurrencyLimit(address);
+        if (concurrencyLimit != null) {
+            if (!concurrencyLimit.acquire() && allowFastFail) {
+                concurrencyLimit.release();
+                completeBatchRead(BKException.Code.TooManyRequestsException, ledgerId, startEntryId, null, cb, ctx);
+                return;
+            }
+            cb = trackCompletion(concurrencyLimit, cb);
+        }
+
+        final BatchedReadEntryCallback batchCb = cb;
         client.obtain((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
-                completeBatchRead(rc, ledgerId, startEntryId, null, cb, ctx);
+                completeBatchRead(rc, ledgerId, startEntryId, null, batchCb, ctx);
             } else {
-                pcbc.batchReadEntries(ledgerId, startEntryId, maxCount, maxSize, cb, ctx, flags, masterKey,
+                pcbc.batchReadEntries(ledgerId, startEntryId, maxCount, maxSize, batchCb, ctx, flags, masterKey,
                         allowFastFail);
             }
         }, ledgerId);
@@ -590,10 +764,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         closeLock.writeLock().lock();
         try {
             closed = true;
-            for (PerChannelBookieClientPool pool : channels.values()) {
-                pool.close(true);
-            }
-            channels.clear();
+            channels.forEach((address, pool) -> removeClient(address, pool, true));
             authProviderFactory.close();
 
             if (timeoutFuture != null) {
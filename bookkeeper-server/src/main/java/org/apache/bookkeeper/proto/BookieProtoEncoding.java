@@ -20,14 +20,20 @@
  */
 package org.apache.bookkeeper.proto;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -35,9 +41,15 @@ import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
 import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
 import org.apache.bookkeeper.proto.checksum.MacDigestManager;
 import org.apache.bookkeeper.util.ByteBufList;
@@ -267,6 +279,21 @@ public class BookieProtoEncoding {
 
         private static final int RESPONSE_HEADERS_SIZE = 24;
 
+        /**
+         * Encode the frame size and the headers of a read response, which are followed by {@code payloadSize}
+         * bytes of data.
+         */
+        static ByteBuf encodeReadResponseHeader(BookieProtocol.Response r, long payloadSize,
+                                                ByteBufAllocator allocator) {
+            ByteBuf buf = allocator.buffer(4 /* frame size */ + RESPONSE_HEADERS_SIZE);
+            buf.writeInt(Math.toIntExact(RESPONSE_HEADERS_SIZE + payloadSize));
+            buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
+            buf.writeInt(r.getErrorCode());
+            buf.writeLong(r.getLedgerId());
+            buf.writeLong(r.getEntryId());
+            return buf;
+        }
+
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator)
                 throws Exception {
@@ -432,12 +459,28 @@ public class BookieProtoEncoding {
 
         @Override
         public Object decode(ByteBuf packet) throws Exception {
-            return BookkeeperProtocol.Request.parseFrom(new ByteBufInputStream(packet), extensionRegistry);
+            return BookkeeperProtocol.Request.parseFrom(newCodedInput(packet), extensionRegistry);
         }
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
             BookkeeperProtocol.Request request = (BookkeeperProtocol.Request) msg;
+            if (request.hasAddRequest() && request.getAddRequest().getBody().size() >= SMALL_ENTRY_SIZE_THRESHOLD) {
+                AddRequest addRequest = request.getAddRequest();
+                BookkeeperProtocol.Request head = request.toBuilder()
+                        .setAddRequest(addRequest.toBuilder().clearBody().buildPartial())
+                        .buildPartial();
+                return serializeProtobufWithPayloads(head, BookkeeperProtocol.Request.ADDREQUEST_FIELD_NUMBER,
+                        AddRequest.BODY_FIELD_NUMBER, Collections.singletonList(addRequest.getBody()), allocator);
+            } else if (request.hasBatchAddRequest()
+                    && getTotalSize(request.getBatchAddRequest().getBodyList()) >= SMALL_ENTRY_SIZE_THRESHOLD) {
+                BatchAddRequest batchAddRequest = request.getBatchAddRequest();
+                BookkeeperProtocol.Request head = request.toBuilder()
+                        .setBatchAddRequest(batchAddRequest.toBuilder().clearBody().buildPartial())
+                        .buildPartial();
+                return serializeProtobufWithPayloads(head, BookkeeperProtocol.Request.BATCHADDREQUEST_FIELD_NUMBER,
+                        BatchAddRequest.BODY_FIELD_NUMBER, batchAddRequest.getBodyList(), allocator);
+            }
             return serializeProtobuf(request, allocator);
         }
 
@@ -455,18 +498,99 @@ public class BookieProtoEncoding {
 
         @Override
         public Object decode(ByteBuf packet) throws Exception {
-            return BookkeeperProtocol.Response.parseFrom(new ByteBufInputStream(packet),
-                                                         extensionRegistry);
+            if (packet.readableBytes() >= SMALL_ENTRY_SIZE_THRESHOLD && packet.hasMemoryAddress()
+                    && packet.nioBufferCount() == 1) {
+                // Parse the bytes fields as views of the packet, so that the body of a read response can be passed
+                // on as a slice of the packet instead of a copy
+                CodedInputStream input = UnsafeByteOperations.unsafeWrap(packet.nioBuffer()).newCodedInput();
+                input.enableAliasing(true);
+                BookkeeperProtocol.Response response = BookkeeperProtocol.Response.parseFrom(input,
+                                                                                             extensionRegistry);
+                if (response.getHeader().getOperation() == OperationType.READ_ENTRY
+                        && response.getReadResponse().hasBody()) {
+                    ByteBuf body = retainedSlice(packet, response.getReadResponse().getBody());
+                    if (body != null) {
+                        return new ResponseWithBody(response, body);
+                    }
+                }
+                // The other responses must not refer to the packet, which is released once decoded
+            }
+            return BookkeeperProtocol.Response.parseFrom(newCodedInput(packet), extensionRegistry);
         }
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
             BookkeeperProtocol.Response response = (BookkeeperProtocol.Response) msg;
+            if (response.hasReadResponse()
+                    && response.getReadResponse().getBody().size() >= SMALL_ENTRY_SIZE_THRESHOLD) {
+                ReadResponse readResponse = response.getReadResponse();
+                BookkeeperProtocol.Response head = response.toBuilder()
+                        .setReadResponse(readResponse.toBuilder().clearBody().buildPartial())
+                        .buildPartial();
+                return serializeProtobufWithPayloads(head, BookkeeperProtocol.Response.READRESPONSE_FIELD_NUMBER,
+                        ReadResponse.BODY_FIELD_NUMBER, Collections.singletonList(readResponse.getBody()), allocator);
+            }
             return serializeProtobuf(response, allocator);
         }
 
     }
 
+    /**
+     * A version 3 read response, whose body is a slice of the packet the response was parsed from.
+     *
+     * <p>The bytes fields of the response are views of the packet, which stays valid as long as the body is
+     * retained.
+     */
+    public static final class ResponseWithBody extends DefaultByteBufHolder {
+        private final BookkeeperProtocol.Response response;
+
+        ResponseWithBody(BookkeeperProtocol.Response response, ByteBuf body) {
+            super(body);
+            this.response = response;
+        }
+
+        public BookkeeperProtocol.Response getResponse() {
+            return response;
+        }
+    }
+
+    private static CodedInputStream newCodedInput(ByteBuf packet) {
+        if (packet.nioBufferCount() == 1) {
+            // Read the packet memory directly, instead of through the intermediate buffer of an input stream
+            return CodedInputStream.newInstance(packet.nioBuffer());
+        }
+        return CodedInputStream.newInstance(new ByteBufInputStream(packet));
+    }
+
+    /**
+     * Get a retained slice of the packet for a bytes field parsed from the packet with aliasing.
+     *
+     * @return the slice, or null if the field doesn't point in the packet
+     */
+    private static ByteBuf retainedSlice(ByteBuf packet, ByteString field) {
+        ByteBuffer fieldBuffer = field.asReadOnlyByteBuffer();
+        if (!fieldBuffer.isDirect()) {
+            return null;
+        }
+        ByteBuf fieldBuf = Unpooled.wrappedBuffer(fieldBuffer);
+        if (!fieldBuf.hasMemoryAddress()) {
+            return null;
+        }
+        long index = fieldBuf.memoryAddress() - packet.memoryAddress();
+        if (index < packet.readerIndex() || index + field.size() > packet.writerIndex()) {
+            return null;
+        }
+        return packet.retainedSlice((int) index, field.size());
+    }
+
+    private static int getTotalSize(List<ByteString> payloads) {
+        int size = 0;
+        for (ByteString payload : payloads) {
+            size += payload.size();
+        }
+        return size;
+    }
+
     private static ByteBuf serializeProtobuf(MessageLite msg, ByteBufAllocator allocator) {
         int size = msg.getSerializedSize();
         int frameSize = size + 4;
@@ -493,6 +617,82 @@ public class BookieProtoEncoding {
         return buf;
     }
 
+    /**
+     * Serialize a message with its large payloads passed on as buffers of their own, instead of being copied into
+     * the frame.
+     *
+     * <p>Protobuf merges the occurrences of a message field, so the field holding the payloads is written twice:
+     * once in {@code head}, with all its fields but the payloads, and once more at the end of the frame, with the
+     * payloads only. Any protobuf parser reads the frame as the original message.
+     *
+     * @param head the message without its payloads
+     * @param fieldNumber the number of the message field holding the payloads
+     * @param payloadFieldNumber the number of the bytes field of the payloads in that message field
+     * @param payloads the payloads
+     * @return the frame, whose buffers wrap the memory of the large payloads
+     */
+    private static ByteBufList serializeProtobufWithPayloads(MessageLite head, int fieldNumber,
+                                                             int payloadFieldNumber, List<ByteString> payloads,
+                                                             ByteBufAllocator allocator) {
+        int headSize = head.getSerializedSize();
+        int payloadsSize = 0;
+        for (ByteString payload : payloads) {
+            payloadsSize += CodedOutputStream.computeBytesSize(payloadFieldNumber, payload);
+        }
+        int size = headSize + CodedOutputStream.computeTagSize(fieldNumber)
+                + CodedOutputStream.computeUInt32SizeNoTag(payloadsSize) + payloadsSize;
+
+        ByteBufList frame = ByteBufList.get();
+        ByteBuf buf = allocator.directBuffer(4 + headSize + MAX_FIELD_PREFIX_SIZE * 2);
+        buf.writeInt(size);
+        try {
+            head.writeTo(CodedOutputStream.newInstance(buf.nioBuffer(buf.writerIndex(), headSize)));
+        } catch (IOException e) {
+            // This is in-memory serialization, should not fail
+            buf.release();
+            frame.release();
+            throw new RuntimeException(e);
+        }
+        buf.writerIndex(buf.writerIndex() + headSize);
+        writeFieldPrefix(buf, fieldNumber, payloadsSize);
+
+        for (ByteString payload : payloads) {
+            writeFieldPrefix(buf, payloadFieldNumber, payload.size());
+            if (payload.size() < SMALL_ENTRY_SIZE_THRESHOLD) {
+                for (ByteBuffer payloadBuffer : payload.asReadOnlyByteBufferList()) {
+                    buf.writeBytes(payloadBuffer);
+                }
+            } else {
+                List<ByteBuffer> payloadBuffers = payload.asReadOnlyByteBufferList();
+                frame.add(buf);
+                frame.add(Unpooled.wrappedBuffer(payloadBuffers.toArray(new ByteBuffer[0])));
+                buf = allocator.directBuffer(MAX_FIELD_PREFIX_SIZE);
+            }
+        }
+        if (buf.isReadable()) {
+            frame.add(buf);
+        } else {
+            buf.release();
+        }
+        return frame;
+    }
+
+    // A tag and the varint32 of a length
+    private static final int MAX_FIELD_PREFIX_SIZE = 10;
+
+    private static void writeFieldPrefix(ByteBuf buf, int fieldNumber, int length) {
+        writeVarint32(buf, (fieldNumber << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(buf, length);
+    }
+
+    private static void writeVarint32(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
     /**
      * A request message encoder.
      */
@@ -595,6 +795,19 @@ public class BookieProtoEncoding {
                 ctx.write(msg, promise);
             } else if (msg instanceof BookkeeperProtocol.Response) {
                 ctx.write(repV3.encode(msg, ctx.alloc()), promise);
+            } else if (msg instanceof BookieProtocol.RegionReadResponse) {
+                // The region cannot be part of a ByteBufList, so the header and the region are written separately
+                BookieProtocol.RegionReadResponse rr = (BookieProtocol.RegionReadResponse) msg;
+                ByteBuf header;
+                try {
+                    header = ResponseEnDeCoderPreV3.encodeReadResponseHeader(rr, rr.getRegion().count(),
+                            ctx.alloc());
+                } catch (Throwable t) {
+                    rr.release();
+                    throw t;
+                }
+                ctx.write(header, ctx.voidPromise());
+                ctx.write(rr.getRegion(), promise);
             } else if (msg instanceof BookieProtocol.Response) {
                 ctx.write(repPreV3.encode(msg, ctx.alloc()), promise);
             } else {
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
@@ -552,6 +553,61 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A response to a read whose data is a region of a file, which is transferred to the socket without being
+     * copied in memory. It is encoded like a {@link ReadResponse}.
+     */
+    class RegionReadResponse extends Response implements ReferenceCounted {
+        final FileRegion region;
+
+        RegionReadResponse(byte protocolVersion, long ledgerId, long entryId, FileRegion region) {
+            init(protocolVersion, READENTRY, EOK, ledgerId, entryId);
+            this.region = region;
+        }
+
+        FileRegion getRegion() {
+            return region;
+        }
+
+        @Override
+        public int refCnt() {
+            return region.refCnt();
+        }
+
+        @Override
+        public ReferenceCounted retain() {
+            region.retain();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted retain(int increment) {
+            return region.retain(increment);
+        }
+
+        @Override
+        public ReferenceCounted touch() {
+            region.touch();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            region.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return region.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return region.release(decrement);
+        }
+    }
+
     /**
      * The response for batched read.
      * The ledger_id and entry_id will be used as start_ledger_id and start_entry_id.
@@ -130,6 +130,9 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    // Minimum size of the entries sent from a region of the entry log, or -1 if disabled
+    private final int readEntryZeroCopyMinSize;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
                                   ChannelGroup allChannels) throws SecurityException {
@@ -140,6 +143,8 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.readEntryZeroCopyMinSize = serverCfg.isReadEntryZeroCopyEnabled()
+                ? Math.max(0, serverCfg.getReadEntryZeroCopyMinSize()) : -1;
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -318,6 +323,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case ADD_ENTRY:
                         processAddRequestV3(r, requestHandler);
                         break;
+                    case BATCH_ADD_ENTRY:
+                        processBatchAddRequestV3(r, requestHandler);
+                        break;
                     case READ_ENTRY:
                         processReadRequestV3(r, requestHandler);
                         break;
@@ -474,6 +482,35 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processBatchAddRequestV3(final BookkeeperProtocol.Request r,
+                                          final BookieRequestHandler requestHandler) {
+        BatchAddEntryProcessor write = new BatchAddEntryProcessor(r, requestHandler, this);
+
+        final OrderedExecutor threadPool;
+        if (RequestUtils.isHighPriority(r)) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = writeThreadPool;
+        }
+
+        if (null == threadPool) {
+            write.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getBatchAddRequest().getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add {} entries to ledger {}. Too many pending requests",
+                              r.getBatchAddRequest().getBodyCount(), r.getBatchAddRequest().getLedgerId());
+                }
+                getRequestStats().getAddEntryRejectedCounter().inc();
+                write.sendResponse(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS,
+                        write.buildResponse(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS),
+                        requestStats.getAddRequestStats());
+            }
+        }
+    }
+
     private void processForceLedgerRequestV3(final BookkeeperProtocol.Request r,
                                              final BookieRequestHandler requestHandler) {
         ForceLedgerProcessorV3 forceLedger = new ForceLedgerProcessorV3(r, requestHandler, this);
@@ -718,6 +755,10 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    public int getReadEntryZeroCopyMinSize() {
+        return readEntryZeroCopyMinSize;
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
@@ -173,4 +173,30 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         }
         return numPending;
     }
+
+    @Override
+    public long getReadLatencyNanos() {
+        // Reads go through the default clients only
+        long latencySum = 0;
+        int numSampled = 0;
+        for (PerChannelBookieClient pcbc : clients) {
+            long latency = pcbc.getReadLatencyNanos();
+            if (latency >= 0) {
+                latencySum += latency;
+                numSampled++;
+            }
+        }
+        return numSampled == 0 ? -1L : latencySum / numSampled;
+    }
+
+    @Override
+    public long getReadLatencyPercentileNanos(double percentile) {
+        long[] counts = new long[LatencyHistogram.NUM_BUCKETS];
+        for (PerChannelBookieClient pcbc : clients) {
+            if (!pcbc.addReadLatencies(counts)) {
+                return -1L;
+            }
+        }
+        return LatencyHistogram.getPercentileNanos(counts, percentile);
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Histogram of the latencies recorded over a sliding window.
+ *
+ * <p>The window is split in slices, and the slice that falls out of the window is cleared when it is reused,
+ * so the histogram covers between {@code (NUM_SLICES - 1) / NUM_SLICES} of the window and the whole window.
+ * Latencies are counted in buckets of microseconds: one bucket per microsecond up to 16 microseconds, then
+ * 8 buckets per power of two, which bounds the error of a percentile to 12.5%.
+ */
+class LatencyHistogram {
+
+    static final int NUM_BUCKETS = 176;
+    private static final int NUM_LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int NUM_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_SLICES = 4;
+    private static final long NO_EPOCH = Long.MIN_VALUE;
+
+    // Don't trust a percentile computed out of a handful of samples
+    private static final long MIN_SAMPLES = 20;
+
+    private final long sliceNanos;
+    private final AtomicLongArray[] slices;
+    private final AtomicLongArray sliceEpochs;
+
+    LatencyHistogram(long windowNanos) {
+        this.sliceNanos = Math.max(1, windowNanos / NUM_SLICES);
+        this.slices = new AtomicLongArray[NUM_SLICES];
+        for (int i = 0; i < NUM_SLICES; i++) {
+            slices[i] = new AtomicLongArray(NUM_BUCKETS);
+        }
+        this.sliceEpochs = new AtomicLongArray(NUM_SLICES);
+        for (int i = 0; i < NUM_SLICES; i++) {
+            sliceEpochs.set(i, NO_EPOCH);
+        }
+    }
+
+    void record(long latencyNanos) {
+        long epoch = Math.floorDiv(MathUtils.nowInNano(), sliceNanos);
+        int slice = (int) Math.floorMod(epoch, NUM_SLICES);
+        if (sliceEpochs.get(slice) != epoch) {
+            resetSlice(slice, epoch);
+        }
+        slices[slice].incrementAndGet(bucketOf(latencyNanos));
+    }
+
+    private synchronized void resetSlice(int slice, long epoch) {
+        if (sliceEpochs.get(slice) == epoch) {
+            return;
+        }
+        AtomicLongArray counts = slices[slice];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sliceEpochs.set(slice, epoch);
+    }
+
+    /**
+     * Add the counts of the latencies recorded in the window to the given buckets.
+     *
+     * @param counts buckets of {@link #NUM_BUCKETS} counts
+     */
+    void addTo(long[] counts) {
+        long epoch = Math.floorDiv(MathUtils.nowInNano(), sliceNanos);
+        for (int slice = 0; slice < NUM_SLICES; slice++) {
+            long sliceEpoch = sliceEpochs.get(slice);
+            if (sliceEpoch == NO_EPOCH || epoch - sliceEpoch >= NUM_SLICES) {
+                continue;
+            }
+            AtomicLongArray sliceCounts = slices[slice];
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                counts[i] += sliceCounts.get(i);
+            }
+        }
+    }
+
+    /**
+     * Get a percentile of the latencies counted in the given buckets.
+     *
+     * @param counts buckets filled by {@link #addTo(long[])}
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket of the percentile in nanoseconds, or -1 if there are not enough samples
+     */
+    static long getPercentileNanos(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total < MIN_SAMPLES) {
+            return -1L;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketUpperBoundNanos(i);
+            }
+        }
+        return bucketUpperBoundNanos(NUM_BUCKETS - 1);
+    }
+
+    static int bucketOf(long latencyNanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (micros < NUM_LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (NUM_SUB_BUCKETS - 1);
+        int bucket = NUM_LINEAR_BUCKETS + (exponent - 4) * NUM_SUB_BUCKETS + subBucket;
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    static long bucketUpperBoundNanos(int bucket) {
+        if (bucket < NUM_LINEAR_BUCKETS) {
+            return TimeUnit.MICROSECONDS.toNanos(bucket + 1);
+        }
+        int exponent = (bucket - NUM_LINEAR_BUCKETS) / NUM_SUB_BUCKETS + 4;
+        int subBucket = (bucket - NUM_LINEAR_BUCKETS) % NUM_SUB_BUCKETS;
+        return TimeUnit.MICROSECONDS.toNanos((long) (NUM_SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS));
+    }
+}
@@ -23,6 +23,8 @@ package org.apache.bookkeeper.proto;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
@@ -53,6 +55,14 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
     }
 
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        sendResponse(code, response, statsLogger, null);
+    }
+
+    /**
+     * Send a response that refers to the memory of {@code body}, which is released once the response is written.
+     */
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger,
+                                ReferenceCounted body) {
         final long writeNanos = MathUtils.nowInNano();
 
         Channel channel = requestHandler.ctx().channel();
@@ -83,6 +93,7 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
                 statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                ReferenceCountUtil.release(body);
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
@@ -92,6 +103,7 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
             channel.writeAndFlush(response).addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture future) throws Exception {
+                    ReferenceCountUtil.release(body);
                     long writeElapsedNanos = MathUtils.elapsedNanos(writeNanos);
                     if (!future.isSuccess()) {
                         requestProcessor.getRequestStats().getChannelWriteStats()
@@ -108,6 +120,7 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                 }
             });
         } else {
+            ReferenceCountUtil.release(body);
             log.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
         }
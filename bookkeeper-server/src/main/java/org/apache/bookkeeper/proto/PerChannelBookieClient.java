@@ -75,19 +75,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.BiPredicate;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import lombok.SneakyThrows;
@@ -116,6 +116,8 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
@@ -145,8 +147,8 @@ import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.StringUtils;
-import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
-import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongPairMultiMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongRingMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -174,7 +176,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         BKException.Code.DuplicateEntryIdException,
                         BKException.Code.WriteOnReadOnlyBookieException));
     private static final int DEFAULT_HIGH_PRIORITY_VALUE = 100; // We may add finer grained priority later.
-    private static final AtomicLong txnIdGenerator = new AtomicLong(0);
+    // Number of pending requests with a txn id that are tracked without locking, per channel
+    private static final int COMPLETION_RING_SIZE = 1024;
 
     final BookieId bookieId;
     final BookieAddressResolver bookieAddressResolver;
@@ -187,13 +190,30 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long getBookieInfoTimeoutNanos;
     final int startTLSTimeout;
 
-    private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
-            ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().autoShrink(true).build();
-
-    // Map that hold duplicated read requests. The idea is to only use this map (synchronized) when there is a duplicate
-    // read request for the same ledgerId/entryId
-    private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
-        new SynchronizedHashMultiMap<>();
+    // The txn ids are generated per channel, so that the pending requests of the channel have consecutive ids
+    // and fit in the completion ring
+    private final AtomicLong txnIdGenerator = new AtomicLong(0);
+
+    // Completions of the requests identified by a txn id
+    private final ConcurrentLongRingMap<CompletionValue> txnCompletions =
+            new ConcurrentLongRingMap<>(COMPLETION_RING_SIZE);
+
+    // Completions of the v2 requests, identified by ledger id and entry id, per operation type. Duplicated requests
+    // for the same entry are tracked under the same key, and completed in order
+    private final EnumMap<OperationType, ConcurrentLongPairMultiMap<CompletionValue>> v2Completions =
+            new EnumMap<>(OperationType.class);
+
+    // Weight of a new sample in the moving average of the read latency
+    private static final double READ_LATENCY_EWMA_ALPHA = 0.2;
+    // The moving average is forgotten when no read completed for a while, so that a bookie that stopped
+    // getting reads because it was slow gets tried again
+    private static final long READ_LATENCY_EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // Moving average of the read latency in nanoseconds, stored as the bits of a double, negative until the
+    // first read completes
+    private final AtomicLong readLatencyEwmaBits = new AtomicLong(Double.doubleToRawLongBits(-1.0));
+    private volatile long lastReadLatencySampleNanos;
+    // Only kept when the speculative reads are sent after a percentile of the read latency
+    private final LatencyHistogram readLatencyHistogram;
 
     private final StatsLogger statsLogger;
     @StatsDoc(
@@ -316,6 +336,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final Counter failedTlsHandshakeCounter;
 
     private final boolean useV2WireProtocol;
+    private final boolean batchAddEnabled;
     private final boolean preserveMdcForTaskExecution;
 
     /**
@@ -400,10 +421,23 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.state = ConnectionState.DISCONNECTED;
         this.addEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryTimeout());
         this.readEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getReadEntryTimeout());
+        if (conf.getSpeculativeReadTimeoutPercentile() > 0 && conf.getFirstSpeculativeReadTimeout() > 0) {
+            this.readLatencyHistogram = new LatencyHistogram(
+                    TimeUnit.SECONDS.toNanos(conf.getSpeculativeReadLatencyWindowSec()));
+        } else {
+            this.readLatencyHistogram = null;
+        }
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        this.batchAddEnabled = conf.isBatchAddEnabled();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
+        if (useV2WireProtocol) {
+            // The operations of the v2 protocol that are identified by ledger id and entry id
+            v2Completions.put(OperationType.ADD_ENTRY, new ConcurrentLongPairMultiMap<>());
+            v2Completions.put(OperationType.READ_ENTRY, new ConcurrentLongPairMultiMap<>());
+            v2Completions.put(OperationType.READ_LAC, new ConcurrentLongPairMultiMap<>());
+        }
 
         this.authProviderFactory = authProviderFactory;
         this.extRegistry = extRegistry;
@@ -526,8 +560,66 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * Get the moving average of the latency of the reads served by the bookie on this channel.
+     *
+     * @return the latency in nanoseconds, or -1 if no read completed yet.
+     */
+    long getReadLatencyNanos() {
+        double ewma = Double.longBitsToDouble(readLatencyEwmaBits.get());
+        if (ewma < 0 || MathUtils.elapsedNanos(lastReadLatencySampleNanos) > READ_LATENCY_EXPIRY_NANOS) {
+            return -1L;
+        }
+        return (long) ewma;
+    }
+
+    /**
+     * Add the read latencies of the channel over the latency window to the given buckets.
+     *
+     * @return false if the read latencies are not tracked.
+     */
+    boolean addReadLatencies(long[] counts) {
+        if (readLatencyHistogram == null) {
+            return false;
+        }
+        readLatencyHistogram.addTo(counts);
+        return true;
+    }
+
+    private void recordReadLatency(int rc, long latencyNanos) {
+        switch (rc) {
+        case BKException.Code.OK:
+        case BKException.Code.NoSuchEntryException:
+        case BKException.Code.NoSuchLedgerExistsException:
+        case BKException.Code.TimeoutException:
+            // A timed out read is counted with the time it waited, so that the bookie falls behind the others
+            break;
+        default:
+            // The other errors are tracked by the failure history of the bookie
+            return;
+        }
+        if (readLatencyHistogram != null) {
+            readLatencyHistogram.record(latencyNanos);
+        }
+        long now = MathUtils.nowInNano();
+        boolean expired = now - lastReadLatencySampleNanos > READ_LATENCY_EXPIRY_NANOS;
+        long oldBits;
+        double newEwma;
+        do {
+            oldBits = readLatencyEwmaBits.get();
+            double oldEwma = Double.longBitsToDouble(oldBits);
+            newEwma = oldEwma < 0 || expired
+                    ? latencyNanos : oldEwma + READ_LATENCY_EWMA_ALPHA * (latencyNanos - oldEwma);
+        } while (!readLatencyEwmaBits.compareAndSet(oldBits, Double.doubleToRawLongBits(newEwma)));
+        lastReadLatencySampleNanos = now;
+    }
+
     protected long getNumPendingCompletionRequests() {
-        return completionObjects.size();
+        long numPending = txnCompletions.size();
+        for (ConcurrentLongPairMultiMap<CompletionValue> completions : v2Completions.values()) {
+            numPending += completions.size();
+        }
+        return numPending;
     }
 
     protected ChannelFuture connect() {
@@ -691,7 +783,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new TxnCompletionKey(txnId,
                                                                 OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new WriteLacCompletion(completionKey, cb,
                                                      ctx, ledgerId));
 
@@ -718,7 +810,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 .setHeader(headerBuilder)
                 .setWriteLacRequest(writeLacBuilder)
                 .build();
-        writeAndFlush(channel, completionKey, writeLacRequest);
+        writeAndFlush(channel, completionKey, writeLacRequest, false, toSend.retain());
     }
 
     void forceLedger(final long ledgerId, ForceLedgerCallback cb, Object ctx) {
@@ -733,7 +825,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new TxnCompletionKey(txnId,
                                                                 OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new ForceLedgerCompletion(completionKey, cb,
                                                      ctx, ledgerId));
 
@@ -803,24 +895,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
-            ByteString body = null;
-            ByteBufList bufToSend = (ByteBufList) toSend;
-
-            if (bufToSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
-                        bufToSend.readableBytes());
-            } else {
-                for (int i = 0; i < bufToSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
-                }
-            }
             AddRequest.Builder addBuilder = AddRequest.newBuilder()
                     .setLedgerId(ledgerId)
                     .setEntryId(entryId)
                     .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
+                    .setBody(toByteString(toSend));
 
             if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
                 addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
@@ -847,10 +926,107 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             errorOut(completionKey);
             ReferenceCountUtil.release(toSend);
             return;
-        } else {
+        } else if (useV2WireProtocol) {
             // addEntry times out on backpressure
             writeAndFlush(c, completionKey, request, allowFastFail);
+        } else {
+            // the request wraps the memory of toSend, which has to outlive the write
+            writeAndFlush(c, completionKey, request, allowFastFail, toSend.retain());
+        }
+    }
+
+    private static ByteString toByteString(ReferenceCounted toSend) {
+        if (toSend instanceof ByteBuf) {
+            return UnsafeByteOperations.unsafeWrap(((ByteBuf) toSend).nioBuffer());
+        }
+
+        ByteString body = null;
+        ByteBufList bufToSend = (ByteBufList) toSend;
+
+        if (bufToSend.hasArray()) {
+            body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
+                    bufToSend.readableBytes());
+        } else {
+            for (int i = 0; i < bufToSend.size(); i++) {
+                ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
+                // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
+                body = (body == null) ? piece : body.concat(piece);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Add a batch of entries of a ledger with a single request. This method should be called only after
+     * connection has been checked for {@link #connectIfNeededAndDoOp(GenericCallback)}.
+     *
+     * <p>The v2 protocol has no batch add, and older bookies can't decode it, so each entry is sent with its own
+     * request when using the v2 protocol or when the batch add is disabled with
+     * {@link ClientConfiguration#setBatchAddEnabled(boolean)}.
+     *
+     * @param ledgerId
+     *          Ledger Id
+     * @param masterKey
+     *          Master Key
+     * @param entryIds
+     *          Ids of the entries
+     * @param toSend
+     *          Buffers to send, one per entry
+     * @param cbs
+     *          Write callbacks, one per entry
+     * @param ctx
+     *          Write callback context, shared by the entries
+     * @param allowFastFail
+     *          allowFastFail flag
+     * @param writeFlags
+     *          WriteFlags
+     */
+    void addEntries(final long ledgerId, byte[] masterKey, final long[] entryIds, ReferenceCounted[] toSend,
+                    WriteCallback[] cbs, Object ctx, final int options, boolean allowFastFail,
+                    final EnumSet<WriteFlag> writeFlags) {
+        if (useV2WireProtocol || !batchAddEnabled) {
+            for (int i = 0; i < entryIds.length; i++) {
+                addEntry(ledgerId, masterKey, entryIds[i], toSend[i], cbs[i], ctx, options, allowFastFail,
+                        writeFlags);
+            }
+            return;
+        }
+
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.BATCH_ADD_ENTRY);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.BATCH_ADD_ENTRY)
+                .setTxnId(txnId);
+        if (((short) options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
         }
+
+        BatchAddRequest.Builder batchAddBuilder = BatchAddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey));
+        for (ReferenceCounted entry : toSend) {
+            batchAddBuilder.addBody(toByteString(entry));
+        }
+
+        if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
+            batchAddBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
+        }
+
+        if (!writeFlags.isEmpty()) {
+            batchAddBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+        }
+
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setBatchAddRequest(batchAddBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new BatchAddCompletion(completionKey, cbs, ctx, ledgerId, entryIds));
+        // batch add times out on backpressure, like addEntry
+        writeAndFlush(channel, completionKey, request, allowFastFail, retainAll(toSend));
     }
 
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
@@ -885,7 +1061,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
+        putCompletionKeyValue(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
 
         // Build the request.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
@@ -1002,7 +1178,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId);
+        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId,
+                timeOutInMillis != null);
         putCompletionKeyValue(completionKey, readCompletion);
 
         writeAndFlush(channel, completionKey, request, allowFastFail);
@@ -1054,7 +1231,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new GetBookieInfoCompletion(
                                       completionKey, cb, ctx));
 
@@ -1075,14 +1252,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, getBookieInfoRequest);
     }
 
-    private static final BiPredicate<CompletionKey, CompletionValue> timeoutCheck = (key, value) -> {
-        return value.maybeTimeout();
-    };
-
     public void checkTimeoutOnPendingOperations() {
-        int timedOutOperations = completionObjects.removeIf(timeoutCheck);
+        // Only time out the operations that are not completed concurrently by a response
+        int timedOutOperations = txnCompletions.removeIf((txnId, value) -> value.isTimedOut(),
+                (txnId, value) -> value.timeout());
 
-        timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
+        for (ConcurrentLongPairMultiMap<CompletionValue> completions : v2Completions.values()) {
+            timedOutOperations += completions.removeIf(CompletionValue::maybeTimeout);
+        }
 
         if (timedOutOperations > 0) {
             LOG.info("Timed-out {} operations to channel {} for {}",
@@ -1177,9 +1354,24 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                            final CompletionKey key,
                            final Object request,
                            final boolean allowFastFail) {
+        writeAndFlush(channel, key, request, allowFastFail, null);
+    }
+
+    /**
+     * Write a request whose payload wraps the memory of reference counted buffers.
+     *
+     * @param body
+     *          buffers wrapped by the request, which are released once the request is written or failed
+     */
+    private void writeAndFlush(final Channel channel,
+                           final CompletionKey key,
+                           final Object request,
+                           final boolean allowFastFail,
+                           final Object body) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
             errorOut(key);
+            releaseBody(body);
             return;
         }
 
@@ -1194,16 +1386,19 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     StringUtils.requestToString(request));
 
             errorOut(key, BKException.Code.TooManyRequestsException);
+            releaseBody(body);
             return;
         }
 
+        ChannelPromise promise = null;
         try {
             final long startTime = MathUtils.nowInNano();
 
-            ChannelPromise promise = channel.newPromise().addListener(future -> {
+            promise = channel.newPromise().addListener(future -> {
+                releaseBody(body);
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                    CompletionValue completion = completionObjects.get(key);
+                    CompletionValue completion = key.get();
                     if (completion != null) {
                         completion.setOutstanding();
                     }
@@ -1215,6 +1410,29 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         } catch (Throwable e) {
             LOG.warn("Operation {} failed", StringUtils.requestToString(request), e);
             errorOut(key);
+            if (promise == null) {
+                releaseBody(body);
+            } else {
+                // the listener releases the body
+                promise.tryFailure(e);
+            }
+        }
+    }
+
+    private static ReferenceCounted[] retainAll(ReferenceCounted[] buffers) {
+        for (ReferenceCounted buffer : buffers) {
+            buffer.retain();
+        }
+        return buffers;
+    }
+
+    private static void releaseBody(Object body) {
+        if (body instanceof ReferenceCounted[]) {
+            for (ReferenceCounted buffer : (ReferenceCounted[]) body) {
+                ReferenceCountUtil.release(buffer);
+            }
+        } else if (body != null) {
+            ReferenceCountUtil.release(body);
         }
     }
 
@@ -1222,12 +1440,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = key.remove();
         if (completion != null) {
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
@@ -1235,12 +1450,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = key.remove();
         if (completion != null) {
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1269,14 +1481,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     void errorOutOutstandingEntries(int rc) {
-        Optional<CompletionKey> multikey = completionObjectsV2Conflicts.getAnyKey();
-        while (multikey.isPresent()) {
-            multikey.ifPresent(k -> errorOut(k, rc));
-            multikey = completionObjectsV2Conflicts.getAnyKey();
-        }
-        for (CompletionKey key : completionObjects.keys()) {
-            errorOut(key, rc);
+        for (ConcurrentLongPairMultiMap<CompletionValue> completions : v2Completions.values()) {
+            completions.removeIf(completion -> {
+                completion.errorOut(rc);
+                return true;
+            });
         }
+        txnCompletions.removeIf((txnId, completion) -> true,
+                (txnId, completion) -> completion.errorOut(rc));
     }
 
     void recordError() {
@@ -1389,7 +1601,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             readV2Response(response);
         } else if (msg instanceof Response) {
             Response response = (Response) msg;
-            readV3Response(response);
+            readV3Response(response, null);
+        } else if (msg instanceof BookieProtoEncoding.ResponseWithBody) {
+            BookieProtoEncoding.ResponseWithBody responseWithBody = (BookieProtoEncoding.ResponseWithBody) msg;
+            readV3Response(responseWithBody.getResponse(), responseWithBody.content());
         } else {
             ctx.fireChannelRead(msg);
         }
@@ -1399,14 +1614,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         OperationType operationType = getOperationType(response.getOpCode());
         StatusCode status = getStatusCodeFromErrorCode(response.errorCode);
 
-        CompletionKey key;
+        CompletionValue completionValue;
         if (OperationType.BATCH_READ_ENTRY == operationType) {
-            key = new TxnCompletionKey(((BookieProtocol.BatchedReadResponse) response).getRequestId(), operationType);
+            completionValue = txnCompletions.remove(((BookieProtocol.BatchedReadResponse) response).getRequestId());
         } else {
-            key = acquireV2Key(response.ledgerId, response.entryId, operationType);
+            ConcurrentLongPairMultiMap<CompletionValue> completions = v2Completions.get(operationType);
+            completionValue = completions != null ? completions.remove(response.ledgerId, response.entryId) : null;
         }
-        CompletionValue completionValue = getCompletionValue(key);
-        key.release();
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1520,11 +1734,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void readV3Response(final Response response) {
+    /**
+     * Handle a v3 response.
+     *
+     * @param body the body of the response when it was passed on as a slice of the packet, or null. The response
+     *             refers to the memory of the packet, so the body is released only once the response is handled.
+     */
+    private void readV3Response(final Response response, final ByteBuf body) {
         final BKPacketHeader header = response.getHeader();
 
-        final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
-        final CompletionValue completionValue = completionObjects.get(key);
+        final CompletionValue completionValue = txnCompletions.remove(header.getTxnId());
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1532,25 +1751,38 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 LOG.debug("Unexpected response received from bookie : " + bookieId + " for type : "
                         + header.getOperation() + " and txnId : " + header.getTxnId());
             }
+            ReferenceCountUtil.release(body);
         } else {
             long orderingKey = completionValue.ledgerId;
-            executor.executeOrdered(orderingKey, new Runnable() {
-                @Override
-                public void run() {
-                    completionValue.restoreMdcContext();
-                    completionValue.handleV3Response(response);
-                }
+            try {
+                executor.executeOrdered(orderingKey, new Runnable() {
+                    @Override
+                    public void run() {
+                        completionValue.restoreMdcContext();
+                        if (body == null) {
+                            completionValue.handleV3Response(response);
+                            return;
+                        }
+                        try {
+                            completionValue.handleV3Response(response, body);
+                        } finally {
+                            body.release();
+                        }
+                    }
 
-                @Override
-                public String toString() {
-                    return String.format("HandleResponse(Txn=%d, Type=%s, Entry=(%d, %d))",
-                                         header.getTxnId(), header.getOperation(),
-                                         completionValue.ledgerId, completionValue.entryId);
-                }
-            });
+                    @Override
+                    public String toString() {
+                        return String.format("HandleResponse(Txn=%d, Type=%s, Entry=(%d, %d))",
+                                             header.getTxnId(), header.getOperation(),
+                                             completionValue.ledgerId, completionValue.entryId);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The task will never run to release the body
+                ReferenceCountUtil.release(body);
+                throw e;
+            }
         }
-
-        completionObjects.remove(key);
     }
 
     void initTLSHandshake() {
@@ -1670,7 +1902,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             this.mdcContextMap = preserveMdcForTaskExecution ? MDC.getCopyOfContextMap() : null;
         }
 
-        private long latency() {
+        protected long latency() {
             return MathUtils.elapsedNanos(startTime);
         }
 
@@ -1687,8 +1919,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        boolean isTimedOut() {
+            return MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos;
+        }
+
         boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
+            if (isTimedOut()) {
                 timeout();
                 return true;
             } else {
@@ -1755,6 +1991,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         public abstract void handleV3Response(
                 BookkeeperProtocol.Response response);
+
+        /**
+         * Handle a response whose body is a slice of the received packet.
+         *
+         * @param body the body of the response, released by the caller once the response is handled
+         */
+        public void handleV3Response(BookkeeperProtocol.Response response, ByteBuf body) {
+            handleV3Response(response);
+        }
     }
 
     // visible for testing
@@ -1923,7 +2168,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         public ReadCompletion(final CompletionKey key,
                               final ReadEntryCallback originalCallback,
                               final Object originalCtx,
-                              long ledgerId, final long entryId) {
+                              long ledgerId, final long entryId,
+                              final boolean longPoll) {
             super("Read", originalCtx, ledgerId, entryId,
                   readEntryOpLogger, readTimeoutOpLogger);
 
@@ -1933,6 +2179,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   long entryId, ByteBuf buffer,
                                                   Object ctx) {
                         logOpResult(rc);
+                        if (!longPoll) {
+                            // A long poll waits for the entry to be written, not for the bookie
+                            recordReadLatency(rc, latency());
+                        }
                         originalCallback.readEntryComplete(rc,
                                                            ledgerId, entryId,
                                                            buffer, originalCtx);
@@ -1973,14 +2223,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         @Override
         public void handleV3Response(BookkeeperProtocol.Response response) {
-            readEntryOutstanding.dec();
             ReadResponse readResponse = response.getReadResponse();
-            StatusCode status = response.getStatus() == StatusCode.EOK
-                ? readResponse.getStatus() : response.getStatus();
             ByteBuf buffer = Unpooled.EMPTY_BUFFER;
             if (readResponse.hasBody()) {
                 buffer = Unpooled.wrappedBuffer(readResponse.getBody().asReadOnlyByteBuffer());
             }
+            handleV3Response(response, buffer);
+            ReferenceCountUtil.release(
+                    buffer); // meaningless using unpooled, but client may expect to hold the last reference
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response, ByteBuf buffer) {
+            readEntryOutstanding.dec();
+            ReadResponse readResponse = response.getReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? readResponse.getStatus() : response.getStatus();
             long maxLAC = INVALID_ENTRY_ID;
             if (readResponse.hasMaxLAC()) {
                 maxLAC = readResponse.getMaxLAC();
@@ -1992,8 +2250,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             handleReadResponse(readResponse.getLedgerId(),
                                readResponse.getEntryId(),
                                status, buffer, maxLAC, lacUpdateTimestamp);
-            ReferenceCountUtil.release(
-                    buffer); // meaningless using unpooled, but client may expect to hold the last reference
         }
 
         private void handleReadResponse(long ledgerId,
@@ -2038,6 +2294,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                 ByteBufList bufList,
                                                 Object ctx) {
                     logOpResult(rc);
+                    recordReadLatency(rc, latency());
                     originalCallback.readEntriesComplete(rc,
                             ledgerId, entryId,
                             bufList, originalCtx);
@@ -2168,13 +2425,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        boolean isTimedOut() {
+            return MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos;
         }
 
         @Override
@@ -2314,13 +2566,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        boolean isTimedOut() {
+            return MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos;
         }
 
         @Override
@@ -2369,9 +2616,64 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    // visable for testing
-    CompletionKey newCompletionKey(long txnId, OperationType operationType) {
-        return new TxnCompletionKey(txnId, operationType);
+    class BatchAddCompletion extends CompletionValue {
+        final CompletionKey key;
+        final WriteCallback[] originalCallbacks;
+        final long[] entryIds;
+
+        BatchAddCompletion(final CompletionKey key,
+                           final WriteCallback[] originalCallbacks,
+                           final Object originalCtx,
+                           final long ledgerId, final long[] entryIds) {
+            super("BatchAdd", originalCtx, ledgerId, entryIds[0], addEntryOpLogger, addTimeoutOpLogger);
+            this.key = key;
+            this.originalCallbacks = originalCallbacks;
+            this.entryIds = entryIds;
+        }
+
+        private void writeComplete(int rc) {
+            logOpResult(rc);
+            for (int i = 0; i < entryIds.length; i++) {
+                originalCallbacks[i].writeComplete(rc, ledgerId, entryIds[i], bookieId, ctx);
+            }
+            key.release();
+        }
+
+        @Override
+        boolean isTimedOut() {
+            return MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos;
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(() -> writeComplete(rc));
+        }
+
+        @Override
+        public void setOutstanding() {
+            addEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV3Response(
+                BookkeeperProtocol.Response response) {
+            addEntryOutstanding.dec();
+            BatchAddResponse batchAddResponse = response.getBatchAddResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? batchAddResponse.getStatus() : response.getStatus();
+
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "entries", entryIds.length);
+            }
+
+            int rc = convertStatus(status, BKException.Code.WriteException);
+            writeComplete(rc);
+        }
     }
 
     class TxnCompletionKey extends CompletionKey {
@@ -2401,6 +2703,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             return String.format("TxnId(%d), OperationType(%s)", txnId, operationType);
         }
 
+        @Override
+        void put(CompletionValue value) {
+            txnCompletions.put(txnId, value);
+        }
+
+        @Override
+        CompletionValue get() {
+            return txnCompletions.get(txnId);
+        }
+
+        @Override
+        CompletionValue remove() {
+            return txnCompletions.remove(txnId);
+        }
+
     }
 
     abstract class CompletionKey {
@@ -2411,6 +2728,23 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         public void release() {}
+
+        /**
+         * Track the completion of the request of this key.
+         */
+        abstract void put(CompletionValue value);
+
+        /**
+         * @return the pending completion of this key, or null
+         */
+        abstract CompletionValue get();
+
+        /**
+         * Stop tracking the completion of this key.
+         *
+         * @return the completion removed, or null if it was not pending
+         */
+        abstract CompletionValue remove();
     }
 
     /**
@@ -2447,20 +2781,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
-        CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
-        if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
-            // There's a pending read request on same ledger/entry. Use the multimap to track all of them
-            completionObjectsV2Conflicts.put(key, value);
-        }
-    }
-
-    private CompletionValue getCompletionValue(CompletionKey key) {
-        CompletionValue completionValue = completionObjects.remove(key);
-        if (completionValue == null) {
-            // If there's no completion object here, try in the multimap
-            completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
-        }
-        return completionValue;
+        key.put(value);
     }
 
     private long getTxnId() {
@@ -2519,6 +2840,23 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             return String.format("%d:%d %s", ledgerId, entryId, operationType);
         }
 
+        @Override
+        void put(CompletionValue value) {
+            v2Completions.get(operationType).put(ledgerId, entryId, value);
+        }
+
+        @Override
+        CompletionValue get() {
+            ConcurrentLongPairMultiMap<CompletionValue> completions = v2Completions.get(operationType);
+            return completions != null ? completions.get(ledgerId, entryId) : null;
+        }
+
+        @Override
+        CompletionValue remove() {
+            ConcurrentLongPairMultiMap<CompletionValue> completions = v2Completions.get(operationType);
+            return completions != null ? completions.remove(ledgerId, entryId) : null;
+        }
+
         @Override
         public void release() {
             recyclerHandle.recycle(this);
@@ -2692,7 +3030,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new StartTLSCompletion(completionKey));
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
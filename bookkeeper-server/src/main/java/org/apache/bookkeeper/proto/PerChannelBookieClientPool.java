@@ -92,4 +92,23 @@ public interface PerChannelBookieClientPool {
      * Get the number of pending completion requests in the channel.
      */
     long getNumPendingCompletionRequests();
+
+    /**
+     * Get the moving average of the read latency of the bookie.
+     *
+     * @return the latency in nanoseconds, or -1 if no read completed yet.
+     */
+    default long getReadLatencyNanos() {
+        return -1L;
+    }
+
+    /**
+     * Get a percentile of the read latency of the bookie over the latency window.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or -1 if unknown.
+     */
+    default long getReadLatencyPercentileNanos(double percentile) {
+        return -1L;
+    }
 }
@@ -18,6 +18,11 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.FileRegion;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
@@ -128,9 +133,22 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     }
 
     protected ReferenceCounted readData() throws Exception {
+        int minRegionSize = requestProcessor.getReadEntryZeroCopyMinSize();
+        if (minRegionSize >= 0 && canTransferRegion(requestHandler.ctx().channel())) {
+            return requestProcessor.getBookie().readEntryForTransfer(request.getLedgerId(), request.getEntryId(),
+                    minRegionSize);
+        }
         return requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
     }
 
+    /**
+     * Regions of files can only be sent in plain text, by the transports that support them.
+     */
+    private static boolean canTransferRegion(Channel channel) {
+        return (channel instanceof EpollSocketChannel || channel instanceof NioSocketChannel)
+                && channel.pipeline().get(SslHandler.class) == null;
+    }
+
     private void sendResponse(ReferenceCounted data, int errorCode, long startTimeNanos) {
         final RequestStats stats = requestProcessor.getRequestStats();
         final OpStatsLogger logger = stats.getReadEntryStats();
@@ -151,6 +169,9 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     }
 
     protected BookieProtocol.Response buildReadResponse(ReferenceCounted data) {
+        if (data instanceof FileRegion) {
+            return ResponseBuilder.buildReadResponse((FileRegion) data, request);
+        }
         return ResponseBuilder.buildReadResponse((ByteBuf) data, request);
     }
 
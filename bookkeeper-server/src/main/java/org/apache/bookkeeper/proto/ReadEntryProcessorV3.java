@@ -18,7 +18,7 @@
 package org.apache.bookkeeper.proto;
 
 import com.google.common.base.Stopwatch;
-import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.util.ReferenceCountUtil;
@@ -47,6 +47,8 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     private final ExecutorService fenceThreadPool;
 
     private CompletableFuture<Boolean> fenceResult = null;
+    // The entry the body of the response refers to
+    private ByteBuf responseBody = null;
 
     protected final ReadRequest readRequest;
     protected final long ledgerId;
@@ -175,8 +177,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             handleReadResultForFenceRead(entryBody, readResponseBuilder, entryId, startTimeSw);
             return null;
         } else {
+            boolean success = false;
             try {
-                readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+                readResponseBuilder.setBody(UnsafeByteOperations.unsafeWrap(entryBody.nioBuffer()));
                 if (readLACPiggyBack) {
                     readResponseBuilder.setEntryId(entryId);
                 } else {
@@ -185,9 +188,15 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 }
                 registerSuccessfulEvent(readStats, startTimeSw);
                 readResponseBuilder.setStatus(StatusCode.EOK);
-                return readResponseBuilder.build();
+                ReadResponse readResponse = readResponseBuilder.build();
+                // the body refers to the entry, which is released once the response is written
+                responseBody = entryBody;
+                success = true;
+                return readResponse;
             } finally {
-                ReferenceCountUtil.release(entryBody);
+                if (!success) {
+                    ReferenceCountUtil.release(entryBody);
+                }
             }
         }
     }
@@ -287,11 +296,12 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             registerFailedEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         } else {
             status = StatusCode.EOK;
-            readResponse.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+            readResponse.setBody(UnsafeByteOperations.unsafeWrap(entryBody.nioBuffer()));
+            responseBody = entryBody;
             registerSuccessfulEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         }
 
-        if (null != entryBody) {
+        if (null != entryBody && responseBody != entryBody) {
             ReferenceCountUtil.release(entryBody);
         }
 
@@ -324,9 +334,12 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 .setHeader(getHeader())
                 .setStatus(readResponse.getStatus())
                 .setReadResponse(readResponse);
+        ByteBuf body = responseBody;
+        responseBody = null;
         sendResponse(response.getStatus(),
                      response.build(),
-                     reqStats);
+                     reqStats,
+                     body);
         requestProcessor.onReadRequestFinish();
     }
 
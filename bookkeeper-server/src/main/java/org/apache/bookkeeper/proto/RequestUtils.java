@@ -68,6 +68,18 @@ class RequestUtils {
                 stringHelper.add("writeFlags", addRequest.getWriteFlags());
             }
             return stringHelper.toString();
+        } else if (request.hasBatchAddRequest()) {
+            BookkeeperProtocol.BatchAddRequest batchAddRequest = request.getBatchAddRequest();
+            includeHeaderFields(stringHelper, header);
+            stringHelper.add("ledgerId", batchAddRequest.getLedgerId());
+            stringHelper.add("numEntries", batchAddRequest.getBodyCount());
+            if (batchAddRequest.hasFlag()) {
+                stringHelper.add("flag", batchAddRequest.getFlag());
+            }
+            if (batchAddRequest.hasWriteFlags()) {
+                stringHelper.add("writeFlags", batchAddRequest.getWriteFlags());
+            }
+            return stringHelper.toString();
         } else if (request.hasReadRequest()) {
             BookkeeperProtocol.ReadRequest readRequest = request.getReadRequest();
             includeHeaderFields(stringHelper, header);
@@ -21,7 +21,6 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.PooledByteBufAllocator;
-import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.security.GeneralSecurityException;
@@ -66,7 +65,8 @@ public abstract class DigestManager {
         } else if (buffer.hasArray()) {
             return internalUpdate(digest, buffer.array(), buffer.arrayOffset() + offset, len);
         } else {
-            UpdateContext updateContext = new UpdateContext(digest);
+            UpdateContext updateContext = UPDATE_CONTEXT.get();
+            updateContext.digest = digest;
             ByteBufVisitor.visitBuffers(buffer, offset, len, byteBufVisitorCallback, updateContext);
             return updateContext.digest;
         }
@@ -169,7 +169,8 @@ public abstract class DigestManager {
 
     private ByteBufList computeDigestAndPackageForSendingV3(long entryId, long lastAddConfirmed, long length,
                                                             ByteBuf data) {
-        ByteBuf headersBuffer = Unpooled.buffer(METADATA_LENGTH + macCodeLength);
+        int headersSize = METADATA_LENGTH + macCodeLength;
+        ByteBuf headersBuffer = allocator.buffer(headersSize, headersSize);
         headersBuffer.writeLong(ledgerId);
         headersBuffer.writeLong(entryId);
         headersBuffer.writeLong(lastAddConfirmed);
@@ -189,12 +190,8 @@ public abstract class DigestManager {
      */
 
     public ByteBufList computeDigestAndPackageForSendingLac(long lac) {
-        ByteBuf headersBuffer;
-        if (this.useV2Protocol) {
-            headersBuffer = allocator.buffer(LAC_METADATA_LENGTH + macCodeLength);
-        } else {
-            headersBuffer = Unpooled.buffer(LAC_METADATA_LENGTH + macCodeLength);
-        }
+        int headersSize = LAC_METADATA_LENGTH + macCodeLength;
+        ByteBuf headersBuffer = allocator.buffer(headersSize, headersSize);
         headersBuffer.writeLong(ledgerId);
         headersBuffer.writeLong(lac);
 
@@ -360,11 +357,15 @@ public abstract class DigestManager {
 
     private static class UpdateContext {
         int digest;
+    }
 
-        UpdateContext(int digest) {
-            this.digest = digest;
+    // The digest of a buffer is updated on a single thread, and the visitor callbacks don't update other digests
+    private static final FastThreadLocal<UpdateContext> UPDATE_CONTEXT = new FastThreadLocal<UpdateContext>() {
+        @Override
+        protected UpdateContext initialValue() {
+            return new UpdateContext();
         }
-    }
+    };
 
     private class DigestUpdaterByteBufVisitorCallback implements ByteBufVisitor.ByteBufVisitorCallback<UpdateContext> {
 
@@ -22,12 +22,11 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import java.security.DigestException;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,15 +54,75 @@ public class MacDigestManager extends DigestManager {
         }
     }
 
-    private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>() {
+    private static final int SHA1_BLOCK_LENGTH = 64;
+    private static final int COPY_CHUNK_LENGTH = 4096;
+    private static final byte IPAD = 0x36;
+    private static final byte OPAD = 0x5c;
+
+    /**
+     * HMAC-SHA1 over a plain {@link MessageDigest}, following RFC 2104.
+     *
+     * <p>Unlike {@link javax.crypto.Mac#doFinal()}, which returns a new array for each digest, the code is computed
+     * into a reused array, so that computing the digest of an entry doesn't allocate. The SHA-1 implementation
+     * only reads arrays, so direct memory is copied in chunks into a reused array as well, instead of going through
+     * a {@link java.nio.ByteBuffer} view of the buffer, which is allocated for each buffer.
+     */
+    private static final class HmacSha1 {
+        private final MessageDigest digest;
+        private final byte[] innerPad = new byte[SHA1_BLOCK_LENGTH];
+        private final byte[] outerPad = new byte[SHA1_BLOCK_LENGTH];
+        private final byte[] code = new byte[MAC_CODE_LENGTH];
+        private final byte[] chunk = new byte[COPY_CHUNK_LENGTH];
+
+        HmacSha1(byte[] key) throws GeneralSecurityException {
+            this.digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            if (key.length > SHA1_BLOCK_LENGTH) {
+                key = digest.digest(key);
+            }
+            for (int i = 0; i < SHA1_BLOCK_LENGTH; i++) {
+                byte k = i < key.length ? key[i] : 0;
+                innerPad[i] = (byte) (k ^ IPAD);
+                outerPad[i] = (byte) (k ^ OPAD);
+            }
+            digest.update(innerPad);
+        }
+
+        void update(byte[] buffer, int offset, int len) {
+            digest.update(buffer, offset, len);
+        }
+
+        void update(ByteBuf buffer, int offset, int len) {
+            while (len > 0) {
+                int chunkLength = Math.min(len, COPY_CHUNK_LENGTH);
+                buffer.getBytes(offset, chunk, 0, chunkLength);
+                digest.update(chunk, 0, chunkLength);
+                offset += chunkLength;
+                len -= chunkLength;
+            }
+        }
+
+        void doFinal(ByteBuf out) {
+            try {
+                digest.digest(code, 0, MAC_CODE_LENGTH);
+                digest.update(outerPad);
+                digest.update(code, 0, MAC_CODE_LENGTH);
+                digest.digest(code, 0, MAC_CODE_LENGTH);
+            } catch (DigestException e) {
+                // The code array is always large enough for a SHA-1 digest
+                throw new IllegalStateException(e);
+            } finally {
+                // Get ready for the next code
+                digest.update(innerPad);
+            }
+            out.writeBytes(code, 0, MAC_CODE_LENGTH);
+        }
+    }
+
+    private final ThreadLocal<HmacSha1> mac = new ThreadLocal<HmacSha1>() {
         @Override
-        protected Mac initialValue() {
+        protected HmacSha1 initialValue() {
             try {
-                byte[] macKey = genDigest("mac", passwd);
-                SecretKeySpec keySpec = new SecretKeySpec(macKey, KEY_ALGORITHM);
-                Mac mac = Mac.getInstance(KEY_ALGORITHM);
-                mac.init(keySpec);
-                return mac;
+                return new HmacSha1(genDigest("mac", passwd));
             } catch (GeneralSecurityException gse) {
                 LOG.error("Couldn't not get mac instance", gse);
                 return null;
@@ -92,12 +151,12 @@ public class MacDigestManager extends DigestManager {
 
     @Override
     void populateValueAndReset(int digest, ByteBuf buffer) {
-        buffer.writeBytes(mac.get().doFinal());
+        mac.get().doFinal(buffer);
     }
 
     @Override
     int internalUpdate(int digest, ByteBuf data, int offset, int len) {
-        mac.get().update(data.slice(offset, len).nioBuffer());
+        mac.get().update(data, offset, len);
         return 0;
     }
 
@@ -114,6 +173,6 @@ public class MacDigestManager extends DigestManager {
 
     @Override
     boolean acceptsMemoryAddressBuffer() {
-        return false;
+        return true;
     }
 }
@@ -95,19 +95,37 @@ public class ByteBufVisitor {
      * See @{@link #visitBuffers(ByteBuf, int, int, ByteBufVisitorCallback, Object)}. This method
      * allows to specify the maximum depth of recursion for visiting wrapped buffers.
      */
+    @SuppressWarnings("unchecked")
     public static <T> void visitBuffers(ByteBuf buffer, int offset, int length, ByteBufVisitorCallback<T> callback,
                                         T context, int maxDepth) {
         if (length == 0) {
             // skip visiting empty buffers
             return;
         }
-        InternalContext<T> internalContext = new InternalContext<>();
+        InternalContext<T> internalContext = (InternalContext<T>) TL_INTERNAL_CONTEXT.get();
+        if (internalContext.inUse) {
+            // a callback is visiting another buffer
+            internalContext = new InternalContext<>();
+        }
+        internalContext.inUse = true;
         internalContext.maxDepth = maxDepth;
         internalContext.callbackContext = context;
         internalContext.callback = callback;
-        internalContext.recursivelyVisitBuffers(buffer, offset, length);
+        try {
+            internalContext.recursivelyVisitBuffers(buffer, offset, length);
+        } finally {
+            internalContext.reset();
+        }
     }
 
+    private static final FastThreadLocal<InternalContext<?>> TL_INTERNAL_CONTEXT =
+            new FastThreadLocal<InternalContext<?>>() {
+                @Override
+                protected InternalContext<?> initialValue() {
+                    return new InternalContext<>();
+                }
+            };
+
     private static final int TL_COPY_BUFFER_SIZE = 64 * 1024;
     private static final FastThreadLocal<byte[]> TL_COPY_BUFFER = new FastThreadLocal<byte[]>() {
         @Override
@@ -117,6 +135,7 @@ public class ByteBufVisitor {
     };
 
     private static class InternalContext<T> {
+        boolean inUse;
         int depth;
         int maxDepth;
         ByteBuf parentBuffer;
@@ -126,6 +145,14 @@ public class ByteBufVisitor {
         ByteBufVisitorCallback<T> callback;
         GetBytesCallbackByteBuf<T> callbackByteBuf = new GetBytesCallbackByteBuf(this);
 
+        void reset() {
+            depth = 0;
+            parentBuffer = null;
+            callbackContext = null;
+            callback = null;
+            inUse = false;
+        }
+
         void recursivelyVisitBuffers(ByteBuf visitBuffer, int visitIndex, int visitLength) {
             // visit the wrapped buffers recursively if the buffer is not backed by an array or memory address
             // and the max depth has not been reached
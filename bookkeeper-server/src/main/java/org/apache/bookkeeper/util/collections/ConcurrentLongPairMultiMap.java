@@ -0,0 +1,415 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent multi-map where the keys are pairs of longs.
+ *
+ * <p>(long,long) --&gt; V, V...
+ *
+ * <p>It's an open hash map with linear probing, so no node allocations are required to store the keys, and no
+ * boxing is required. A list is only allocated for a key that has more than one value.
+ *
+ * <p>The first key of the pair <strong>MUST</strong> be &gt;= 0.
+ */
+public class ConcurrentLongPairMultiMap<V> {
+
+    private static final long EmptyKey = -1L;
+    private static final long DeletedKey = -2L;
+
+    private static final int DefaultExpectedItems = 256;
+    private static final int DefaultConcurrencyLevel = 16;
+
+    private static final float MapFillFactor = 0.66f;
+    private static final float MapIdleFactor = 0.15f;
+
+    private final Section<V>[] sections;
+
+    public ConcurrentLongPairMultiMap() {
+        this(DefaultExpectedItems, DefaultConcurrencyLevel);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongPairMultiMap(int expectedItems, int concurrencyLevel) {
+        checkArgument(expectedItems > 0);
+        checkArgument(concurrencyLevel > 0);
+        checkArgument(expectedItems >= concurrencyLevel);
+
+        int numSections = concurrencyLevel;
+        int perSectionExpectedItems = expectedItems / numSections;
+        int perSectionCapacity = (int) (perSectionExpectedItems / MapFillFactor);
+        this.sections = new Section[numSections];
+
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section<>(perSectionCapacity);
+        }
+    }
+
+    /**
+     * @return the number of values in the map
+     */
+    public long size() {
+        long size = 0;
+        for (Section<V> s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (Section<V> s : sections) {
+            if (s.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a value to a key. The values already associated to the key are kept.
+     */
+    public void put(long key1, long key2, V value) {
+        checkBiggerEqualZero(key1);
+        checkArgument(value != null);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        getSection(h).put(key1, key2, value, (int) h);
+    }
+
+    /**
+     * @return the first value of a key, or null if the key is not present
+     */
+    public V get(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).get(key1, key2, (int) h);
+    }
+
+    /**
+     * Remove one of the values of a key. The values of a key are removed in the order they were added.
+     *
+     * @return the value removed, or null if the key was not present
+     */
+    public V remove(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).remove(key1, key2, (int) h);
+    }
+
+    /**
+     * Remove the values matching a predicate. The predicate is evaluated while holding the lock of the section
+     * of the map, so it must not update the map.
+     *
+     * @return the number of values removed
+     */
+    public int removeIf(Predicate<V> predicate) {
+        int removed = 0;
+        for (Section<V> s : sections) {
+            removed += s.removeIf(predicate);
+        }
+        return removed;
+    }
+
+    private Section<V> getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    /**
+     * The values of a key that has more than one value.
+     */
+    @SuppressWarnings("serial")
+    private static final class Values extends ArrayDeque<Object> {
+        Values() {
+            super(4);
+        }
+    }
+
+    // A section is a portion of the hash map that is covered by a single
+    @SuppressWarnings("serial")
+    private static final class Section<V> extends StampedLock {
+        // Keys are stored in pairs in the keys array, and the value of a key is either a V or a Values
+        private long[] keys;
+        private Object[] values;
+
+        private int capacity;
+        private final int initCapacity;
+        private volatile int size;
+        private int usedBuckets;
+        private int resizeThresholdUp;
+        private int resizeThresholdBelow;
+
+        Section(int capacity) {
+            this.capacity = alignToPowerOfTwo(capacity);
+            this.initCapacity = this.capacity;
+            this.keys = new long[2 * this.capacity];
+            this.values = new Object[this.capacity];
+            this.size = 0;
+            this.usedBuckets = 0;
+            this.resizeThresholdUp = (int) (this.capacity * MapFillFactor);
+            this.resizeThresholdBelow = (int) (this.capacity * MapIdleFactor);
+            Arrays.fill(keys, EmptyKey);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key1, long key2, int keyHash) {
+            long stamp = readLock();
+            int bucket = signSafeMod(keyHash, capacity);
+
+            try {
+                while (true) {
+                    long storedKey1 = keys[2 * bucket];
+                    long storedKey2 = keys[2 * bucket + 1];
+
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        Object storedValue = values[bucket];
+                        return (V) (storedValue instanceof Values ? ((Values) storedValue).peek() : storedValue);
+                    } else if (storedKey1 == EmptyKey) {
+                        // Not found
+                        return null;
+                    }
+
+                    bucket = (bucket + 1) & (capacity - 1);
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        void put(long key1, long key2, V value, int keyHash) {
+            long stamp = writeLock();
+            int bucket = signSafeMod(keyHash, capacity);
+
+            // Remember where we find the first available spot
+            int firstDeletedKey = -1;
+
+            try {
+                while (true) {
+                    long storedKey1 = keys[2 * bucket];
+                    long storedKey2 = keys[2 * bucket + 1];
+
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        Object storedValue = values[bucket];
+                        if (storedValue instanceof Values) {
+                            ((Values) storedValue).add(value);
+                        } else {
+                            Values storedValues = new Values();
+                            storedValues.add(storedValue);
+                            storedValues.add(value);
+                            values[bucket] = storedValues;
+                        }
+                        ++size;
+                        return;
+                    } else if (storedKey1 == EmptyKey) {
+                        // Found an empty bucket. This means the key is not in the map. If we've already seen a deleted
+                        // key, we should write at that position
+                        if (firstDeletedKey != -1) {
+                            bucket = firstDeletedKey;
+                        } else {
+                            ++usedBuckets;
+                        }
+
+                        keys[2 * bucket] = key1;
+                        keys[2 * bucket + 1] = key2;
+                        values[bucket] = value;
+                        ++size;
+                        return;
+                    } else if (storedKey1 == DeletedKey) {
+                        // The bucket contained a different deleted key
+                        if (firstDeletedKey == -1) {
+                            firstDeletedKey = bucket;
+                        }
+                    }
+
+                    bucket = (bucket + 1) & (capacity - 1);
+                }
+            } finally {
+                if (usedBuckets > resizeThresholdUp) {
+                    try {
+                        // Expand the hashmap
+                        rehash(2 * capacity);
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } else {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(long key1, long key2, int keyHash) {
+            long stamp = writeLock();
+            int bucket = signSafeMod(keyHash, capacity);
+
+            try {
+                while (true) {
+                    long storedKey1 = keys[2 * bucket];
+                    long storedKey2 = keys[2 * bucket + 1];
+
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        Object storedValue = values[bucket];
+                        --size;
+                        if (storedValue instanceof Values) {
+                            Values storedValues = (Values) storedValue;
+                            Object value = storedValues.poll();
+                            if (storedValues.size() == 1) {
+                                values[bucket] = storedValues.poll();
+                            }
+                            return (V) value;
+                        }
+                        cleanBucket(bucket);
+                        return (V) storedValue;
+                    } else if (storedKey1 == EmptyKey) {
+                        // Key wasn't found
+                        return null;
+                    }
+
+                    bucket = (bucket + 1) & (capacity - 1);
+                }
+            } finally {
+                if (size < resizeThresholdBelow && capacity > initCapacity) {
+                    try {
+                        // Shrink the hashmap, but not below the initial capacity to avoid resizing it back and forth
+                        int newCapacity = Math.max(capacity / 2, initCapacity);
+                        if ((int) (newCapacity * MapFillFactor) > usedBuckets) {
+                            rehash(newCapacity);
+                        }
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } else {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        int removeIf(Predicate<V> predicate) {
+            long stamp = writeLock();
+            int removed = 0;
+
+            try {
+                for (int bucket = 0; bucket < capacity; bucket++) {
+                    long storedKey1 = keys[2 * bucket];
+                    if (storedKey1 == EmptyKey || storedKey1 == DeletedKey) {
+                        continue;
+                    }
+
+                    Object storedValue = values[bucket];
+                    if (storedValue instanceof Values) {
+                        Values storedValues = (Values) storedValue;
+                        int sizeBefore = storedValues.size();
+                        storedValues.removeIf(value -> predicate.test((V) value));
+                        removed += sizeBefore - storedValues.size();
+                        if (storedValues.size() == 1) {
+                            values[bucket] = storedValues.poll();
+                        } else if (storedValues.isEmpty()) {
+                            cleanBucket(bucket);
+                        }
+                    } else if (predicate.test((V) storedValue)) {
+                        removed++;
+                        cleanBucket(bucket);
+                    }
+                }
+                size -= removed;
+                return removed;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private void cleanBucket(int bucket) {
+            values[bucket] = null;
+            int nextInArray = (bucket + 1) & (capacity - 1);
+            if (keys[2 * nextInArray] == EmptyKey) {
+                keys[2 * bucket] = EmptyKey;
+                keys[2 * bucket + 1] = EmptyKey;
+                --usedBuckets;
+
+                // Cleanup all the buckets that were in `DeletedKey` state,
+                // so that we can reduce unnecessary expansions
+                bucket = (bucket - 1) & (capacity - 1);
+                while (keys[2 * bucket] == DeletedKey) {
+                    keys[2 * bucket] = EmptyKey;
+                    keys[2 * bucket + 1] = EmptyKey;
+                    --usedBuckets;
+
+                    bucket = (bucket - 1) & (capacity - 1);
+                }
+            } else {
+                keys[2 * bucket] = DeletedKey;
+                keys[2 * bucket + 1] = DeletedKey;
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            long[] newKeys = new long[2 * newCapacity];
+            Object[] newValues = new Object[newCapacity];
+            Arrays.fill(newKeys, EmptyKey);
+
+            // Re-hash table
+            int newUsedBuckets = 0;
+            for (int i = 0; i < capacity; i++) {
+                long storedKey1 = keys[2 * i];
+                long storedKey2 = keys[2 * i + 1];
+                if (storedKey1 != EmptyKey && storedKey1 != DeletedKey) {
+                    int bucket = signSafeMod(ConcurrentLongLongPairHashMap.hash(storedKey1, storedKey2), newCapacity);
+                    while (newKeys[2 * bucket] != EmptyKey) {
+                        bucket = (bucket + 1) & (newCapacity - 1);
+                    }
+                    newKeys[2 * bucket] = storedKey1;
+                    newKeys[2 * bucket + 1] = storedKey2;
+                    newValues[bucket] = values[i];
+                    newUsedBuckets++;
+                }
+            }
+
+            keys = newKeys;
+            values = newValues;
+            usedBuckets = newUsedBuckets;
+            capacity = newCapacity;
+            resizeThresholdUp = (int) (capacity * MapFillFactor);
+            resizeThresholdBelow = (int) (capacity * MapIdleFactor);
+        }
+    }
+
+    private static int signSafeMod(long n, int max) {
+        return (int) (n & (max - 1));
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static void checkBiggerEqualZero(long n) {
+        if (n < 0L) {
+            throw new IllegalArgumentException("Keys must be >= 0");
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap.EntryProcessor;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap.LongObjectPredicate;
+
+/**
+ * Concurrent map for keys that are generated in increasing order, such as request ids.
+ *
+ * <p>The entries are stored in a fixed ring of slots, indexed by the key modulo the size of the ring, so that
+ * adding, getting and removing an entry are lock-free and do not allocate. Since the keys increase, a slot is
+ * only taken when the entry stored there is older than the last {@code ringSize} keys. The entries that do not
+ * fit in the ring are stored in an overflow {@link ConcurrentLongHashMap}.
+ *
+ * <p>Keys <strong>MUST</strong> be &gt; 0 and unique: a key must not be added again after it has been removed.
+ * <br>
+ * <b>WARN: the forEach and removeIf methods do not see a consistent snapshot of the map.</b> They may or may not
+ * observe the entries that are added or removed concurrently.
+ */
+public class ConcurrentLongRingMap<V> {
+
+    private static final long FREE = 0L;
+    // A slot being updated, the value of the slot must not be used
+    private static final long BUSY = -1L;
+
+    private final int mask;
+    private final AtomicLongArray keys;
+    private final AtomicReferenceArray<V> values;
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    private final ConcurrentLongHashMap<V> overflow;
+    private final AtomicInteger overflowSize = new AtomicInteger(0);
+
+    public ConcurrentLongRingMap(int ringSize) {
+        checkArgument(ringSize > 0 && Integer.bitCount(ringSize) == 1, "The ring size must be a power of 2");
+        this.mask = ringSize - 1;
+        this.keys = new AtomicLongArray(ringSize);
+        this.values = new AtomicReferenceArray<>(ringSize);
+        this.overflow = ConcurrentLongHashMap.<V>newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .build();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Add an entry. The key must not be in the map.
+     */
+    public void put(long key, V value) {
+        checkArgument(key > 0, "Keys must be > 0");
+        int slot = (int) (key & mask);
+        if (keys.compareAndSet(slot, FREE, BUSY)) {
+            values.set(slot, value);
+            keys.set(slot, key);
+        } else {
+            // The slot is still used by an older key
+            overflowSize.incrementAndGet();
+            overflow.put(key, value);
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * @return the value of the key, or null if the key is not in the map
+     */
+    public V get(long key) {
+        int slot = (int) (key & mask);
+        if (keys.get(slot) == key) {
+            V value = values.get(slot);
+            // The value doesn't change as long as the slot has the same key, and keys are not reused
+            if (keys.get(slot) == key) {
+                return value;
+            }
+            return null;
+        }
+        return overflowSize.get() > 0 ? overflow.get(key) : null;
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @return the value of the key, or null if the key was not in the map
+     */
+    public V remove(long key) {
+        int slot = (int) (key & mask);
+        if (keys.compareAndSet(slot, key, BUSY)) {
+            V value = values.get(slot);
+            values.set(slot, null);
+            keys.set(slot, FREE);
+            size.decrementAndGet();
+            return value;
+        }
+        if (overflowSize.get() > 0) {
+            V value = overflow.remove(key);
+            if (value != null) {
+                overflowSize.decrementAndGet();
+                size.decrementAndGet();
+            }
+            return value;
+        }
+        return null;
+    }
+
+    /**
+     * Iterate over the entries of the map. The processor must not update the map, use
+     * {@link #removeIf(LongObjectPredicate)} to remove entries while iterating.
+     */
+    public void forEach(EntryProcessor<V> processor) {
+        for (int slot = 0; slot <= mask; slot++) {
+            long key = keys.get(slot);
+            if (key > 0) {
+                V value = values.get(slot);
+                if (keys.get(slot) == key) {
+                    processor.accept(key, value);
+                }
+            }
+        }
+        if (overflowSize.get() > 0) {
+            overflow.forEach(processor);
+        }
+    }
+
+    /**
+     * Remove the entries matching a predicate. The predicate may be evaluated for an entry that is being removed
+     * concurrently, so it must not have side effects: use {@link #removeIf(LongObjectPredicate, EntryProcessor)}
+     * to act on the removed entries.
+     *
+     * @return the number of entries removed
+     */
+    public int removeIf(LongObjectPredicate<V> predicate) {
+        return removeIf(predicate, null);
+    }
+
+    /**
+     * Remove the entries matching a predicate, and pass each of them to a processor once it is removed.
+     *
+     * <p>An entry is only passed to the processor if this call removed it: when an entry matching the predicate is
+     * concurrently removed with {@link #remove(long)}, only one of the two callers gets it. The processor is called
+     * without holding any lock, so it may update the map.
+     *
+     * @return the number of entries removed
+     */
+    public int removeIf(LongObjectPredicate<V> predicate, EntryProcessor<V> removedProcessor) {
+        int removed = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            long key = keys.get(slot);
+            if (key > 0) {
+                V value = values.get(slot);
+                // Claim the entry before acting on it, a concurrent remove of the key may have won
+                if (keys.get(slot) == key && predicate.test(key, value) && remove(key) == value) {
+                    removed++;
+                    if (removedProcessor != null) {
+                        removedProcessor.accept(key, value);
+                    }
+                }
+            }
+        }
+        if (overflowSize.get() > 0) {
+            // The overflow is only used under a burst of requests, boxing the matching keys is fine
+            List<Long> matchingKeys = new ArrayList<>();
+            List<V> matchingValues = new ArrayList<>();
+            overflow.forEach((key, value) -> {
+                if (predicate.test(key, value)) {
+                    matchingKeys.add(key);
+                    matchingValues.add(value);
+                }
+            });
+            for (int i = 0; i < matchingKeys.size(); i++) {
+                long key = matchingKeys.get(i);
+                V value = matchingValues.get(i);
+                if (overflow.remove(key, value)) {
+                    overflowSize.decrementAndGet();
+                    size.decrementAndGet();
+                    removed++;
+                    if (removedProcessor != null) {
+                        removedProcessor.accept(key, value);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Test the asynchronous entry log reads, with the native engines and with the fallback to synchronous reads when
+ * the native engines are disabled or not available.
+ */
+@RunWith(Parameterized.class)
+public class DefaultEntryLoggerAsyncReadTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int NUM_ENTRIES = 20;
+
+    private final boolean asyncReadEnabled;
+    private final boolean ioUringEnabled;
+    private final int queueDepth;
+    private File tmpDir;
+    private DefaultEntryLogger entryLogger;
+    private final List<Long> locations = new ArrayList<>();
+
+    @Parameterized.Parameters(name = "asyncReadEnabled={0}, ioUringEnabled={1}, queueDepth={2}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {false, false, 256},
+                {true, true, 256},
+                {true, false, 256},
+                // The native reader can't be created, the reads fall back to synchronous reads
+                {true, true, 0},
+        });
+    }
+
+    public DefaultEntryLoggerAsyncReadTest(boolean asyncReadEnabled, boolean ioUringEnabled, int queueDepth) {
+        this.asyncReadEnabled = asyncReadEnabled;
+        this.ioUringEnabled = ioUringEnabled;
+        this.queueDepth = queueDepth;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        File curDir = BookieImpl.getCurrentDirectory(tmpDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setEntryLogAsyncReadEnabled(asyncReadEnabled);
+        conf.setEntryLogAsyncReadIoUringEnabled(ioUringEnabled);
+        conf.setEntryLogAsyncReadQueueDepth(queueDepth);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, new File[] { curDir },
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = entry(entryId);
+            locations.add(entryLogger.addEntry(LEDGER_ID, entry));
+            entry.release();
+        }
+        entryLogger.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entryLogger.close();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Entries alternatively smaller and larger than the first read of the asynchronous path.
+     */
+    private static ByteBuf entry(long entryId) {
+        int size = entryId % 2 == 0 ? 100 : 3 * DefaultEntryLogger.ASYNC_READ_INITIAL_SIZE;
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private void rollLog() throws IOException {
+        ((EntryLogManagerBase) entryLogger.getEntryLogManager()).createNewLog(EntryLogger.UNASSIGNED_LEDGERID);
+        entryLogger.flush();
+    }
+
+    private void checkReads() throws Exception {
+        List<CompletableFuture<ByteBuf>> reads = new ArrayList<>();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            reads.add(entryLogger.readEntryAsync(LEDGER_ID, entryId, locations.get((int) entryId)));
+        }
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf read = reads.get((int) entryId).get(10, TimeUnit.SECONDS);
+            ByteBuf expected = entry(entryId);
+            try {
+                assertEquals(expected, read);
+            } finally {
+                expected.release();
+                read.release();
+            }
+        }
+    }
+
+    @Test
+    public void testReadsFromCurrentLog() throws Exception {
+        checkReads();
+    }
+
+    @Test
+    public void testReadsFromRotatedLog() throws Exception {
+        rollLog();
+        checkReads();
+    }
+
+    @Test
+    public void testReadOfWrongEntryFails() throws Exception {
+        rollLog();
+        try {
+            entryLogger.readEntryAsync(LEDGER_ID, 1, locations.get(0)).get(10, TimeUnit.SECONDS);
+            fail("The entry at this location is another one");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
+import io.netty.util.ReferenceCounted;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger.LogFileRegion;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the reads of the entries to be transferred over the network, as regions of the entry log files.
+ */
+public class DefaultEntryLoggerTransferTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int NUM_ENTRIES = 4;
+    private static final int MIN_REGION_SIZE = 64 * 1024;
+
+    private File tmpDir;
+    private DefaultEntryLogger entryLogger;
+    private final List<Long> locations = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        File curDir = BookieImpl.getCurrentDirectory(tmpDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, new File[] { curDir },
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = entry(entryId);
+            locations.add(entryLogger.addEntry(LEDGER_ID, entry));
+            entry.release();
+        }
+        entryLogger.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entryLogger.close();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Entries alternatively smaller and larger than the minimum size of a region.
+     */
+    private static ByteBuf entry(long entryId) {
+        int size = entryId % 2 == 0 ? 100 : 2 * MIN_REGION_SIZE;
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private void rollLog() throws IOException {
+        ((EntryLogManagerBase) entryLogger.getEntryLogManager()).createNewLog(EntryLogger.UNASSIGNED_LEDGERID);
+        entryLogger.flush();
+    }
+
+    private ReferenceCounted readForTransfer(long entryId) throws Exception {
+        return entryLogger.readEntryForTransfer(LEDGER_ID, entryId, locations.get((int) entryId), MIN_REGION_SIZE);
+    }
+
+    private static void checkContent(long entryId, ReferenceCounted read) throws Exception {
+        ByteBuf expected = entry(entryId);
+        try {
+            if (read instanceof ByteBuf) {
+                assertEquals(expected, read);
+                return;
+            }
+            FileRegion region = (FileRegion) read;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            while (region.transferred() < region.count()) {
+                region.transferTo(target, region.transferred());
+            }
+            assertEquals(expected, Unpooled.wrappedBuffer(out.toByteArray()));
+        } finally {
+            expected.release();
+        }
+    }
+
+    @Test
+    public void testEntriesOfCurrentLogReadInMemory() throws Exception {
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ReferenceCounted read = readForTransfer(entryId);
+            try {
+                assertTrue(read instanceof ByteBuf);
+                checkContent(entryId, read);
+            } finally {
+                read.release();
+            }
+        }
+    }
+
+    @Test
+    public void testLargeEntriesReadAsRegions() throws Exception {
+        rollLog();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ReferenceCounted read = readForTransfer(entryId);
+            try {
+                assertEquals(entryId % 2 == 1, read instanceof LogFileRegion);
+                checkContent(entryId, read);
+            } finally {
+                read.release();
+            }
+        }
+    }
+
+    @Test
+    public void testRegionsShareOneChannel() throws Exception {
+        rollLog();
+        LogFileRegion region1 = (LogFileRegion) readForTransfer(1);
+        LogFileRegion region3 = (LogFileRegion) readForTransfer(3);
+        DefaultEntryLogger.TransferLogFile file = region1.file;
+        assertSame(file, region3.file);
+        // One reference held by the entry logger, and one by each region
+        assertEquals(3, file.refCnt());
+
+        assertTrue(region1.release());
+        assertEquals(2, file.refCnt());
+        checkContent(3, region3);
+        assertTrue(region3.release());
+        assertEquals(1, file.refCnt());
+        assertTrue(file.channel.isOpen());
+
+        // The channel is reused by the next transfers
+        LogFileRegion region = (LogFileRegion) readForTransfer(1);
+        assertSame(file, region.file);
+        region.release();
+    }
+
+    @Test
+    public void testChannelClosedOnceTransfersOfRemovedLogComplete() throws Exception {
+        rollLog();
+        LogFileRegion region = (LogFileRegion) readForTransfer(1);
+        DefaultEntryLogger.TransferLogFile file = region.file;
+
+        // The log is deleted while the transfer is in flight, the region can still be sent
+        assertTrue(entryLogger.removeEntryLog(DefaultEntryLogger.logIdForOffset(locations.get(1))));
+        assertEquals(1, file.refCnt());
+        assertTrue(file.channel.isOpen());
+        checkContent(1, region);
+
+        region.release();
+        assertEquals(0, file.refCnt());
+        assertFalse(file.channel.isOpen());
+
+        try {
+            readForTransfer(3);
+            fail("The entry log was removed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
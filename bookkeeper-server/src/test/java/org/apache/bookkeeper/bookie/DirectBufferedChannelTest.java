@@ -0,0 +1,384 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.DirectBufferedChannel.ALIGNMENT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.internal.PlatformDependent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.bookie.DirectBufferedChannel.AlignedBufferPool;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the DirectBufferedChannel class, and the journal files written with it.
+ */
+public class DirectBufferedChannelTest {
+
+    private static final int BUFFER_SIZE = 2 * ALIGNMENT;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final FakeNativeIO nativeIO = new FakeNativeIO();
+    private AlignedBufferPool bufferPool;
+    private File file;
+
+    /**
+     * Writes to the files with file channels, checking that the writes are aligned like the O_DIRECT writes.
+     */
+    private static class FakeNativeIO implements NativeIO {
+        final Map<Integer, FileChannel> files = new HashMap<>();
+        // The offset and the size of each write
+        final List<long[]> writes = new ArrayList<>();
+        boolean fallocateSupported = true;
+        int fallocates = 0;
+        int nextFd = 100;
+
+        @Override
+        public int open(String pathname, int flags, int mode) throws NativeIOException {
+            assertEquals(O_WRONLY | O_DIRECT, flags);
+            try {
+                files.put(nextFd, FileChannel.open(new File(pathname).toPath(), StandardOpenOption.WRITE));
+            } catch (IOException e) {
+                throw new NativeIOException(e.getMessage());
+            }
+            return nextFd++;
+        }
+
+        @Override
+        public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+            assertEquals("Unaligned address", 0, pointer % ALIGNMENT);
+            assertEquals("Unaligned size", 0, count % ALIGNMENT);
+            assertEquals("Unaligned offset", 0, offset % ALIGNMENT);
+            ByteBuffer src = Unpooled.wrappedBuffer(pointer, count, false).nioBuffer();
+            try {
+                writes.add(new long[] {offset, count});
+                return files.get(fd).write(src, offset);
+            } catch (IOException e) {
+                throw new NativeIOException(e.getMessage());
+            }
+        }
+
+        @Override
+        public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+            if (!fallocateSupported) {
+                throw new NativeIOException("Operation not supported", 95);
+            }
+            fallocates++;
+            try {
+                FileChannel fc = files.get(fd);
+                if (fc.size() < offset + len) {
+                    fc.write(ByteBuffer.allocate(1), offset + len - 1);
+                }
+            } catch (IOException e) {
+                throw new NativeIOException(e.getMessage());
+            }
+            return 0;
+        }
+
+        @Override
+        public int close(int fd) throws NativeIOException {
+            try {
+                files.remove(fd).close();
+            } catch (IOException e) {
+                throw new NativeIOException(e.getMessage());
+            }
+            return 0;
+        }
+
+        @Override
+        public int fsync(int fd) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int posix_fadvise(int fd, long offset, long len, int flag) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long posix_memalign(int alignment, int size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void free(long pointer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long lseek(int fd, long offset, int whence) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long pread(int fd, long pointer, long size, long offset) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // The aligned buffers are written from their memory address
+        Assume.assumeTrue(PlatformDependent.hasUnsafe());
+        bufferPool = new AlignedBufferPool(UnpooledByteBufAllocator.DEFAULT, BUFFER_SIZE, 2);
+        file = tmpDir.newFile("direct.txn");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (bufferPool != null) {
+            bufferPool.close();
+        }
+    }
+
+    private DirectBufferedChannel open(long position) throws IOException {
+        FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fc.position(position);
+        return DirectBufferedChannel.open(nativeIO, bufferPool, file, fc);
+    }
+
+    private static byte[] data(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    private byte[] fileContent(int from, int length) throws IOException {
+        return Arrays.copyOfRange(Files.readAllBytes(file.toPath()), from, from + length);
+    }
+
+    @Test
+    public void testAlignedPooledBuffers() throws Exception {
+        assertEquals(BUFFER_SIZE, bufferPool.getBufferSize());
+        assertEquals(BUFFER_SIZE, new AlignedBufferPool(UnpooledByteBufAllocator.DEFAULT, BUFFER_SIZE - 100, 1)
+                .getBufferSize());
+
+        ByteBuf first = bufferPool.acquire();
+        ByteBuf second = bufferPool.acquire();
+        assertNotSame(first, second);
+        for (ByteBuf buffer : Arrays.asList(first, second)) {
+            assertEquals(0, buffer.memoryAddress() % ALIGNMENT);
+            assertEquals(BUFFER_SIZE, buffer.capacity());
+            assertEquals(0, buffer.writerIndex());
+        }
+
+        // The channel releases its reference before giving the buffer back to the pool, which then reuses it
+        first.writeInt(1);
+        first.release();
+        bufferPool.release(first);
+        ByteBuf reused = bufferPool.acquire();
+        assertSame(first, reused);
+        assertEquals(0, reused.writerIndex());
+
+        // A buffer still referenced elsewhere is not reused
+        second.release();
+        second.retain();
+        bufferPool.release(second);
+        assertEquals(1, second.refCnt());
+        assertNotSame(second, bufferPool.acquire());
+        second.release();
+    }
+
+    @Test
+    public void testPartialBlockRewrittenByNextFlush() throws Exception {
+        DirectBufferedChannel channel = open(0);
+        byte[] first = data(100, 0);
+        channel.write(Unpooled.wrappedBuffer(first));
+        channel.flush();
+
+        // The partial block is padded with zeros
+        assertEquals(1, nativeIO.writes.size());
+        assertArrayEquals(new long[] {0, ALIGNMENT}, nativeIO.writes.get(0));
+        assertEquals(ALIGNMENT, file.length());
+        assertArrayEquals(first, fileContent(0, 100));
+        assertArrayEquals(new byte[ALIGNMENT - 100], fileContent(100, ALIGNMENT - 100));
+        assertEquals(100, channel.forceWrite(false));
+
+        // Nothing is written if there is no new data
+        channel.flush();
+        assertEquals(1, nativeIO.writes.size());
+
+        // The data that follows is written with the partial block, which the buffer kept
+        byte[] second = data(ALIGNMENT + 50, 7);
+        channel.write(Unpooled.wrappedBuffer(second));
+        channel.flush();
+        assertArrayEquals(new long[] {0, 2 * ALIGNMENT}, nativeIO.writes.get(1));
+        assertArrayEquals(first, fileContent(0, 100));
+        assertArrayEquals(second, fileContent(100, second.length));
+        assertEquals(100 + second.length, channel.forceWrite(false));
+        assertEquals(100 + second.length, channel.position());
+
+        // Once a block is complete, the next flush starts at the last partial block
+        channel.write(Unpooled.wrappedBuffer(data(10, 3)));
+        channel.flush();
+        assertArrayEquals(new long[] {ALIGNMENT, ALIGNMENT}, nativeIO.writes.get(2));
+        assertArrayEquals(data(10, 3), fileContent(100 + second.length, 10));
+        channel.close();
+        assertTrue(nativeIO.files.isEmpty());
+    }
+
+    @Test
+    public void testWritesLargerThanBuffer() throws Exception {
+        DirectBufferedChannel channel = open(0);
+        byte[] data = data(3 * BUFFER_SIZE + 10, 1);
+        channel.write(Unpooled.wrappedBuffer(data));
+        channel.flush();
+        channel.close();
+
+        assertArrayEquals(data, fileContent(0, data.length));
+        for (long[] write : nativeIO.writes) {
+            assertTrue(write[1] <= BUFFER_SIZE);
+        }
+    }
+
+    @Test
+    public void testReopenAtAlignedPosition() throws Exception {
+        DirectBufferedChannel channel = open(0);
+        byte[] first = data(2 * ALIGNMENT, 0);
+        channel.write(Unpooled.wrappedBuffer(first));
+        channel.flush();
+        channel.close();
+
+        // Reopen to write again from the second block
+        channel = open(ALIGNMENT);
+        assertEquals(ALIGNMENT, channel.position());
+        byte[] second = data(10, 5);
+        channel.write(Unpooled.wrappedBuffer(second));
+        channel.flush();
+        channel.close();
+
+        assertArrayEquals(new long[] {ALIGNMENT, ALIGNMENT}, nativeIO.writes.get(nativeIO.writes.size() - 1));
+        assertArrayEquals(Arrays.copyOf(first, ALIGNMENT), fileContent(0, ALIGNMENT));
+        assertArrayEquals(second, fileContent(ALIGNMENT, second.length));
+        assertTrue(nativeIO.files.isEmpty());
+    }
+
+    @Test
+    public void testReopenAtUnalignedPositionFails() throws Exception {
+        try {
+            open(100);
+            fail("The direct writes must start at an aligned position");
+        } catch (IOException e) {
+            // expected
+        }
+        // The file descriptor was closed, and the buffer given back to the pool
+        assertTrue(nativeIO.files.isEmpty());
+        ByteBuf buffer = bufferPool.acquire();
+        assertEquals(2, buffer.refCnt());
+        buffer.release();
+        bufferPool.release(buffer);
+    }
+
+    @Test
+    public void testExtendWithZeros() throws Exception {
+        DirectBufferedChannel channel = open(0);
+        byte[] data = data(100, 0);
+        channel.write(Unpooled.wrappedBuffer(data));
+        channel.flush();
+
+        channel.extendWithZeros(4 * ALIGNMENT);
+        assertArrayEquals(new long[] {3 * ALIGNMENT, ALIGNMENT}, nativeIO.writes.get(1));
+        assertEquals(4 * ALIGNMENT, file.length());
+        assertArrayEquals(data, fileContent(0, data.length));
+
+        // The blocks with data are never overwritten
+        channel.extendWithZeros(ALIGNMENT);
+        assertEquals(2, nativeIO.writes.size());
+        channel.close();
+    }
+
+    private JournalChannel newJournalChannel(long preAllocSize) throws IOException {
+        Journal.BufferedChannelBuilder bcBuilder = new Journal.BufferedChannelBuilder() {
+            @Override
+            public BufferedChannel create(FileChannel fc, int capacity) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public BufferedChannel create(File journalFile, FileChannel fc, int capacity) throws IOException {
+                return DirectBufferedChannel.open(nativeIO, bufferPool, journalFile, fc);
+            }
+        };
+        return new JournalChannel(tmpDir.getRoot(), 1, preAllocSize, BUFFER_SIZE, JournalChannel.SECTOR_SIZE,
+                false, JournalChannel.V5, bcBuilder, new ServerConfiguration(), new DefaultFileChannelProvider(),
+                null);
+    }
+
+    @Test
+    public void testJournalPreallocatedWithFallocate() throws Exception {
+        JournalChannel jc = newJournalChannel(4 * ALIGNMENT);
+        assertEquals(1, nativeIO.fallocates);
+        assertEquals(4 * ALIGNMENT, new File(tmpDir.getRoot(), "1.txn").length());
+
+        jc.preAllocIfNeeded(4 * ALIGNMENT);
+        assertEquals(2, nativeIO.fallocates);
+        assertEquals(8 * ALIGNMENT, new File(tmpDir.getRoot(), "1.txn").length());
+        // Only the header was written
+        assertEquals(1, nativeIO.writes.size());
+        jc.close();
+    }
+
+    @Test
+    public void testJournalPreallocatedWithoutFallocate() throws Exception {
+        nativeIO.fallocateSupported = false;
+        JournalChannel jc = newJournalChannel(4 * ALIGNMENT);
+        // The file is extended by writing its last block through the direct channel
+        assertEquals(2, nativeIO.writes.size());
+        assertArrayEquals(new long[] {3 * ALIGNMENT, ALIGNMENT}, nativeIO.writes.get(1));
+        assertEquals(4 * ALIGNMENT, new File(tmpDir.getRoot(), "1.txn").length());
+
+        jc.preAllocIfNeeded(4 * ALIGNMENT);
+        assertArrayEquals(new long[] {7 * ALIGNMENT, ALIGNMENT}, nativeIO.writes.get(2));
+        assertEquals(8 * ALIGNMENT, new File(tmpDir.getRoot(), "1.txn").length());
+        assertEquals(0, nativeIO.fallocates);
+        jc.close();
+    }
+}
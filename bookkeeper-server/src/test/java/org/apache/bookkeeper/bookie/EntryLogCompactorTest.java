@@ -0,0 +1,176 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the copy of the entries by the entry log compactor, with and without sorted compaction.
+ */
+public class EntryLogCompactorTest {
+
+    private static final long ENTRY_LOG_ID = 1;
+    // The entries of ledgers 1 and 2 interleaved, with an entry of ledger 3, which is not in the entry log metadata
+    private static final long[][] SCANNED_ENTRIES = {{2, 0}, {1, 0}, {3, 0}, {2, 1}, {1, 1}, {2, 2}, {1, 2}};
+    private static final int PAYLOAD_SIZE = 16;
+    private static final int ENTRY_SIZE = 16 + PAYLOAD_SIZE;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final List<long[]> addedEntries = new ArrayList<>();
+    private final List<EntryLocation> updatedLocations = new ArrayList<>();
+    private final List<Long> removedLogs = new ArrayList<>();
+
+    private EntryLogger entryLogger;
+    private CompactableLedgerStorage ledgerStorage;
+    private long[][] scannedEntries = SCANNED_ENTRIES;
+
+    @Before
+    public void setUp() throws Exception {
+        entryLogger = mock(EntryLogger.class);
+        doAnswer(invocation -> {
+            EntryLogScanner scanner = invocation.getArgument(1);
+            long offset = 0;
+            for (long[] entry : scannedEntries) {
+                int size = entry.length > 2 ? (int) entry[2] : ENTRY_SIZE;
+                if (scanner.accept(entry[0])) {
+                    ByteBuf buf = entry(entry[0], entry[1], size);
+                    try {
+                        scanner.process(entry[0], offset, buf);
+                    } finally {
+                        buf.release();
+                    }
+                }
+                offset += size;
+            }
+            return null;
+        }).when(entryLogger).scanEntryLog(eq(ENTRY_LOG_ID), any());
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class))).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            ByteBuf buf = invocation.getArgument(1);
+            assertEquals(ledgerId, buf.getLong(buf.readerIndex()));
+            long entryId = buf.getLong(buf.readerIndex() + 8);
+            // The payload is copied along with the entry
+            for (int i = 16; i < buf.readableBytes(); i++) {
+                assertEquals((byte) (ledgerId * 10 + entryId), buf.getByte(buf.readerIndex() + i));
+            }
+            addedEntries.add(new long[] {ledgerId, entryId});
+            return 1000L + addedEntries.size();
+        });
+
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        doAnswer(invocation -> {
+            Iterable<EntryLocation> locations = invocation.getArgument(0);
+            locations.forEach(updatedLocations::add);
+            return null;
+        }).when(ledgerStorage).updateEntriesLocations(any());
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf buf = Unpooled.buffer(size);
+        buf.writeLong(ledgerId);
+        buf.writeLong(entryId);
+        while (buf.isWritable()) {
+            buf.writeByte((byte) (ledgerId * 10 + entryId));
+        }
+        return buf;
+    }
+
+    private void compact() {
+        EntryLogMetadata meta = new EntryLogMetadata(ENTRY_LOG_ID);
+        meta.addLedgerSize(1, 3 * ENTRY_SIZE);
+        meta.addLedgerSize(2, 3 * ENTRY_SIZE);
+        EntryLogCompactor compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, removedLogs::add);
+        assertTrue(compactor.compact(meta));
+
+        assertEquals(Arrays.asList(ENTRY_LOG_ID), removedLogs);
+        // Every copied entry gets its new location
+        assertEquals(addedEntries.size(), updatedLocations.size());
+        for (EntryLocation location : updatedLocations) {
+            assertTrue(location.getLocation() > 1000L);
+        }
+    }
+
+    private void assertAddedEntries(long[]... expected) {
+        assertEquals(expected.length, addedEntries.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("entry " + i, Arrays.toString(expected[i]), Arrays.toString(addedEntries.get(i)));
+        }
+    }
+
+    @Test
+    public void testUnsortedCompactionKeepsScanOrder() throws Exception {
+        conf.setUseSortedCompaction(false);
+        compact();
+
+        assertAddedEntries(new long[] {2, 0}, new long[] {1, 0}, new long[] {2, 1}, new long[] {1, 1},
+                new long[] {2, 2}, new long[] {1, 2});
+    }
+
+    @Test
+    public void testSortedCompaction() throws Exception {
+        conf.setUseSortedCompaction(true);
+        compact();
+
+        assertAddedEntries(new long[] {1, 0}, new long[] {1, 1}, new long[] {1, 2},
+                new long[] {2, 0}, new long[] {2, 1}, new long[] {2, 2});
+    }
+
+    @Test
+    public void testSortedCompactionInRuns() throws Exception {
+        // The buffer holds 3 entries, the entries are only sorted within each run of 3
+        conf.setUseSortedCompaction(true);
+        conf.setSortedCompactionBufferSize(3 * ENTRY_SIZE);
+        compact();
+
+        assertAddedEntries(new long[] {1, 0}, new long[] {2, 0}, new long[] {2, 1},
+                new long[] {1, 1}, new long[] {1, 2}, new long[] {2, 2});
+    }
+
+    @Test
+    public void testSortedCompactionOfEntryLargerThanBuffer() throws Exception {
+        // The large entry is copied right after the run before it
+        scannedEntries = new long[][] {{2, 0}, {1, 0}, {2, 1, 10 * ENTRY_SIZE}, {1, 1}, {2, 2}, {1, 2}};
+        conf.setUseSortedCompaction(true);
+        conf.setSortedCompactionBufferSize(4 * ENTRY_SIZE);
+        compact();
+
+        assertAddedEntries(new long[] {1, 0}, new long[] {2, 0}, new long[] {2, 1},
+                new long[] {1, 1}, new long[] {1, 2}, new long[] {2, 2});
+    }
+}
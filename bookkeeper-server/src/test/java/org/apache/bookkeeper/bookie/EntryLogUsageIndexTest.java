@@ -0,0 +1,125 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+/**
+ * Test the ordering of the entry logs by usage, and its updates as the entry logs are compacted.
+ */
+public class EntryLogUsageIndexTest {
+
+    private static final int NUM_BUCKETS = 10;
+    private static final long TOTAL_SIZE = 1000;
+
+    private final EntryLogUsageIndex index = new EntryLogUsageIndex(NUM_BUCKETS);
+
+    private void put(long entryLogId, long remainingSize) {
+        index.put(entryLogId, (double) remainingSize / TOTAL_SIZE, TOTAL_SIZE, remainingSize);
+    }
+
+    private List<Long> entryLogsBelow(double threshold) {
+        return index.getEntryLogsBelow(threshold).stream().map(usage -> usage.entryLogId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testEntryLogsOrderedByUsage() {
+        put(1, 500);
+        put(2, 100);
+        put(3, 900);
+        put(4, 300);
+        // Entry logs of the same usage are ordered by id
+        put(6, 100);
+        put(5, 100);
+
+        assertEquals(Arrays.asList(2L, 5L, 6L, 4L, 1L, 3L), entryLogsBelow(1.0));
+        assertEquals(Arrays.asList(2L, 5L, 6L, 4L), entryLogsBelow(0.4));
+        // The threshold itself is excluded
+        assertEquals(Arrays.asList(2L, 5L, 6L), entryLogsBelow(0.3));
+        assertTrue(entryLogsBelow(0.1).isEmpty());
+
+        EntryLogUsageIndex.Usage usage = index.getEntryLogsBelow(0.2).get(0);
+        assertEquals(2, usage.entryLogId);
+        assertEquals(0.1, usage.usage, 0.0);
+        assertEquals(TOTAL_SIZE, usage.totalSize);
+        assertEquals(100, usage.remainingSize);
+    }
+
+    @Test
+    public void testUsageUpdated() {
+        put(1, 500);
+        put(2, 800);
+        assertEquals(1300, index.getTotalRemainingSize());
+
+        // The entry log is moved to its new usage, and only counted once
+        put(2, 200);
+        assertEquals(Arrays.asList(2L, 1L), entryLogsBelow(1.0));
+        assertEquals(700, index.getTotalRemainingSize());
+        assertArrayEquals(new int[] {0, 0, 1, 0, 0, 1, 0, 0, 0, 0}, index.getUsageBuckets());
+
+        put(2, 200);
+        assertEquals(Arrays.asList(2L, 1L), entryLogsBelow(1.0));
+        assertEquals(700, index.getTotalRemainingSize());
+    }
+
+    @Test
+    public void testEntryLogRemoved() {
+        put(1, 500);
+        put(2, 200);
+        index.remove(2);
+        assertEquals(Arrays.asList(1L), entryLogsBelow(1.0));
+        assertEquals(500, index.getTotalRemainingSize());
+
+        // Removing an entry log not indexed is ignored
+        index.remove(2);
+        index.remove(3);
+        assertEquals(Arrays.asList(1L), entryLogsBelow(1.0));
+        assertEquals(500, index.getTotalRemainingSize());
+        assertEquals(1, Arrays.stream(index.getUsageBuckets()).sum());
+    }
+
+    @Test
+    public void testUsageBuckets() {
+        put(1, 0);
+        put(2, 50);
+        put(3, 99);
+        put(4, 100);
+        put(5, 550);
+        // A full entry log goes to the last bucket
+        put(6, 1000);
+        assertArrayEquals(new int[] {3, 1, 0, 0, 0, 1, 0, 0, 0, 1}, index.getUsageBuckets());
+
+        put(1, 950);
+        index.remove(5);
+        assertArrayEquals(new int[] {2, 1, 0, 0, 0, 0, 0, 0, 0, 2}, index.getUsageBuckets());
+
+        // The buckets returned are a copy
+        index.getUsageBuckets()[0] = 100;
+        assertEquals(2, index.getUsageBuckets()[0]);
+    }
+}
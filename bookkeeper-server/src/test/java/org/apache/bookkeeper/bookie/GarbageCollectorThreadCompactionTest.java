@@ -0,0 +1,211 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the compaction of the entry logs by the garbage collector thread.
+ */
+public class GarbageCollectorThreadCompactionTest {
+
+    private static final int NUM_ENTRY_LOGS = 8;
+    // Each entry log i holds the ledger i, which is kept, and the ledger 100 + i, which is deleted
+    private static final long DELETED_LEDGER_OFFSET = 100;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final Set<Long> existingLedgers = Collections.synchronizedSet(new HashSet<>());
+    private final List<Long> recentlyReadLedgers = new ArrayList<>();
+
+    private CompactableLedgerStorage ledgerStorage;
+    private EntryLogger entryLogger;
+    private GarbageCollectorThread gcThread;
+
+    @Before
+    public void setUp() throws Exception {
+        conf.setBookieId("gc-compaction-test-bookie");
+
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        when(ledgerStorage.ledgerExists(anyLong()))
+                .thenAnswer(invocation -> existingLedgers.contains(invocation.<Long>getArgument(0)));
+        when(ledgerStorage.drainRecentlyReadLedgers()).thenAnswer(invocation -> {
+            List<Long> drained = new ArrayList<>(recentlyReadLedgers);
+            recentlyReadLedgers.clear();
+            return drained;
+        });
+
+        List<Long> entryLogIds = new ArrayList<>();
+        for (long logId = 1; logId <= NUM_ENTRY_LOGS; logId++) {
+            entryLogIds.add(logId);
+            existingLedgers.add(logId);
+            existingLedgers.add(DELETED_LEDGER_OFFSET + logId);
+        }
+        entryLogger = mock(EntryLogger.class);
+        when(entryLogger.getFlushedLogIds()).thenReturn(entryLogIds);
+        when(entryLogger.logExists(anyLong())).thenReturn(true);
+        when(entryLogger.getEntryLogMetadata(anyLong(), any())).thenAnswer(invocation -> {
+            long entryLogId = invocation.getArgument(0);
+            EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+            // The entry logs with a higher id have more data left after the deletion
+            meta.addLedgerSize(entryLogId, 100 + 10 * entryLogId);
+            meta.addLedgerSize(DELETED_LEDGER_OFFSET + entryLogId, 1000);
+            return meta;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (gcThread != null) {
+            gcThread.shutdown();
+        }
+    }
+
+    private void startGcThread() throws Exception {
+        gcThread = new GarbageCollectorThread(conf, null, mock(LedgerDirsManager.class), ledgerStorage,
+                entryLogger, NullStatsLogger.INSTANCE);
+        gcThread.extractMetaFromEntryLogs();
+        gcThread.doGcEntryLogs(false);
+
+        for (long logId = 1; logId <= NUM_ENTRY_LOGS; logId++) {
+            existingLedgers.remove(DELETED_LEDGER_OFFSET + logId);
+            gcThread.garbageCleaner.clean(DELETED_LEDGER_OFFSET + logId);
+        }
+        gcThread.doGcEntryLogs(false);
+    }
+
+    /**
+     * A compactor that records the entry logs it compacts, and takes its permits from the shared throttler.
+     */
+    private static class RecordingCompactor extends AbstractLogCompactor {
+        private final int permitsPerLog;
+        private final List<Long> compacted;
+        private final AtomicInteger active;
+        private final AtomicInteger maxActive;
+
+        RecordingCompactor(ServerConfiguration conf, GarbageCollectorThread gcThread, int permitsPerLog,
+                           List<Long> compacted, AtomicInteger active, AtomicInteger maxActive) {
+            super(conf, logId -> { }, gcThread.compactionThrottler);
+            this.permitsPerLog = permitsPerLog;
+            this.compacted = compacted;
+            this.active = active;
+            this.maxActive = maxActive;
+        }
+
+        @Override
+        public boolean compact(EntryLogMetadata entryLogMeta) {
+            int nowActive = active.incrementAndGet();
+            maxActive.accumulateAndGet(nowActive, Math::max);
+            try {
+                throttler.acquire(permitsPerLog);
+                compacted.add(entryLogMeta.getEntryLogId());
+                return true;
+            } catch (Exception e) {
+                return false;
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private List<Long> installRecordingCompactors(int permitsPerLog, AtomicInteger maxActive) {
+        List<Long> compacted = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger active = new AtomicInteger();
+        for (int i = 0; i < gcThread.compactors.length; i++) {
+            gcThread.compactors[i] = new RecordingCompactor(conf, gcThread, permitsPerLog, compacted, active,
+                    maxActive);
+        }
+        return compacted;
+    }
+
+    @Test
+    public void testCompactorsShareTheRate() throws Exception {
+        int numThreads = 3;
+        int rate = 1000;
+        int permitsPerLog = 250;
+        conf.setNumCompactionThreads(numThreads);
+        conf.setIsThrottleByBytes(true);
+        conf.setCompactionRateByBytes(rate);
+        startGcThread();
+        assertEquals(numThreads, gcThread.compactors.length);
+
+        AtomicInteger maxActive = new AtomicInteger();
+        List<Long> compacted = installRecordingCompactors(permitsPerLog, maxActive);
+
+        long start = System.nanoTime();
+        gcThread.doCompactEntryLogs(0.5, 0);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Every entry log is compacted once
+        assertEquals(NUM_ENTRY_LOGS, compacted.size());
+        assertEquals(NUM_ENTRY_LOGS, new HashSet<>(compacted).size());
+        assertTrue("compactors ran one at a time", maxActive.get() > 1);
+        // With a limiter per thread, the compaction would take less than a second. The shared limiter hands out the
+        // permits of the logs after the first one at the configured rate.
+        long minMillis = 1000L * (NUM_ENTRY_LOGS - 1) * permitsPerLog / rate;
+        assertTrue("compaction took " + elapsedMillis + "ms", elapsedMillis >= minMillis * 9 / 10);
+    }
+
+    @Test
+    public void testRecentlyReadEntryLogsCompactedFirst() throws Exception {
+        conf.setUseSortedCompaction(true);
+        startGcThread();
+        List<Long> compacted = installRecordingCompactors(1, new AtomicInteger());
+
+        // Ledger 50 is in no entry log
+        recentlyReadLedgers.addAll(Arrays.asList(6L, 50L, 3L));
+        gcThread.doCompactEntryLogs(0.5, 0);
+
+        // The recently read entry logs go first, then all by reclaimed space per byte of work
+        assertEquals(Arrays.asList(3L, 6L, 1L, 2L, 4L, 5L, 7L, 8L), compacted);
+        assertTrue(recentlyReadLedgers.isEmpty());
+    }
+
+    @Test
+    public void testRecentlyReadIgnoredWithoutSortedCompaction() throws Exception {
+        conf.setUseSortedCompaction(false);
+        startGcThread();
+        List<Long> compacted = installRecordingCompactors(1, new AtomicInteger());
+
+        recentlyReadLedgers.addAll(Arrays.asList(6L, 3L));
+        gcThread.doCompactEntryLogs(0.5, 0);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), compacted);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the garbage collection of the entry logs of the deleted ledgers.
+ */
+public class GarbageCollectorThreadTest {
+
+    // entry log 1: ledgers 1 and 2, entry log 2: ledgers 2 and 3, entry log 3: ledger 3
+    private static final long[][] ENTRY_LOG_LEDGERS = {{1, 2}, {2, 3}, {3}};
+
+    private final Set<Long> existingLedgers = new HashSet<>(Arrays.asList(1L, 2L, 3L));
+    private final Set<Long> failingLedgers = new HashSet<>();
+
+    private CompactableLedgerStorage ledgerStorage;
+    private EntryLogger entryLogger;
+    private GarbageCollectorThread gcThread;
+
+    @Before
+    public void setUp() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setBookieId("gc-test-bookie");
+
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        when(ledgerStorage.ledgerExists(anyLong())).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            if (failingLedgers.contains(ledgerId)) {
+                throw new IOException("Failed to check ledger " + ledgerId);
+            }
+            return existingLedgers.contains(ledgerId);
+        });
+
+        entryLogger = mock(EntryLogger.class);
+        when(entryLogger.getFlushedLogIds()).thenReturn(Arrays.asList(1L, 2L, 3L));
+        when(entryLogger.logExists(anyLong())).thenReturn(true);
+        when(entryLogger.removeEntryLog(anyLong())).thenReturn(true);
+        when(entryLogger.getEntryLogMetadata(anyLong(), any())).thenAnswer(invocation -> {
+            long entryLogId = invocation.getArgument(0);
+            EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+            for (long ledgerId : ENTRY_LOG_LEDGERS[(int) entryLogId - 1]) {
+                meta.addLedgerSize(ledgerId, 100);
+            }
+            return meta;
+        });
+
+        gcThread = new GarbageCollectorThread(conf, null, mock(LedgerDirsManager.class), ledgerStorage,
+                entryLogger, NullStatsLogger.INSTANCE);
+        gcThread.extractMetaFromEntryLogs();
+        // The first pass checks all the entry logs
+        gcThread.doGcEntryLogs(false);
+        clearInvocations(ledgerStorage);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gcThread.shutdown();
+    }
+
+    @Test
+    public void testOnlyEntryLogsOfDeletedLedgerAreUpdated() throws Exception {
+        deleteLedger(1);
+        gcThread.doGcEntryLogs(false);
+
+        // Only entry log 1 holds ledger 1
+        verify(ledgerStorage, times(1)).ledgerExists(1L);
+        verify(ledgerStorage, never()).ledgerExists(2L);
+        verify(ledgerStorage, never()).ledgerExists(3L);
+        assertFalse(getEntryLogMetadata(1).containsLedger(1));
+        assertTrue(getEntryLogMetadata(1).containsLedger(2));
+
+        // Nothing else to update on the next pass
+        clearInvocations(ledgerStorage);
+        gcThread.doGcEntryLogs(false);
+        verify(ledgerStorage, never()).ledgerExists(anyLong());
+    }
+
+    @Test
+    public void testLedgerInSeveralEntryLogs() throws Exception {
+        deleteLedger(2);
+        gcThread.doGcEntryLogs(false);
+
+        // Entry logs 1 and 2 hold ledger 2, entry log 3 is not checked
+        verify(ledgerStorage, times(2)).ledgerExists(2L);
+        verify(ledgerStorage, never()).ledgerExists(1L);
+        verify(ledgerStorage, never()).ledgerExists(3L);
+        assertFalse(getEntryLogMetadata(1).containsLedger(2));
+        assertFalse(getEntryLogMetadata(2).containsLedger(2));
+        verify(entryLogger, never()).removeEntryLog(anyLong());
+    }
+
+    @Test
+    public void testFailedLedgerIsRetried() throws Exception {
+        failingLedgers.add(3L);
+        deleteLedger(3);
+        gcThread.doGcEntryLogs(false);
+
+        verify(ledgerStorage, times(2)).ledgerExists(3L);
+        verify(entryLogger, never()).removeEntryLog(anyLong());
+        assertTrue(getEntryLogMetadata(2).containsLedger(3));
+
+        // The ledger is retried on the next pass, without being deleted again
+        failingLedgers.clear();
+        clearInvocations(ledgerStorage);
+        gcThread.doGcEntryLogs(false);
+
+        verify(ledgerStorage, times(2)).ledgerExists(3L);
+        verify(ledgerStorage, never()).ledgerExists(1L);
+        verify(ledgerStorage, never()).ledgerExists(2L);
+        assertFalse(getEntryLogMetadata(2).containsLedger(3));
+        // Entry log 3 had no other ledger
+        verify(entryLogger, times(1)).removeEntryLog(3L);
+        assertNull(getEntryLogMetadata(3));
+    }
+
+    private void deleteLedger(long ledgerId) {
+        existingLedgers.remove(ledgerId);
+        gcThread.garbageCleaner.clean(ledgerId);
+    }
+
+    private EntryLogMetadata getEntryLogMetadata(long entryLogId) throws Exception {
+        AtomicReference<EntryLogMetadata> metadata = new AtomicReference<>();
+        gcThread.getEntryLogMetaMap().forKey(entryLogId, (logId, meta) -> metadata.set(meta));
+        return metadata.get();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the assignment of the ledgers to the least loaded journal.
+ */
+public class JournalLoadBalancerTest {
+
+    private static final int NUM_JOURNALS = 3;
+    private static final long SYNC_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong nowNanos = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nowNanos.get();
+        }
+    };
+    private final int[] queueLengths = new int[NUM_JOURNALS];
+    private final long[] syncLatencies = new long[NUM_JOURNALS];
+    // The markers queued by the sweeps of the idle assignments, by journal
+    private final List<List<WriteCallback>> markers = new ArrayList<>();
+    private final List<Journal> journals = new ArrayList<>();
+    private JournalLoadBalancer balancer;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < NUM_JOURNALS; i++) {
+            final int journalIndex = i;
+            syncLatencies[i] = SYNC_LATENCY_NANOS;
+            List<WriteCallback> journalMarkers = new ArrayList<>();
+            markers.add(journalMarkers);
+
+            Journal journal = mock(Journal.class);
+            when(journal.getJournalQueueLength()).thenAnswer(invocation -> queueLengths[journalIndex]);
+            when(journal.getAverageSyncLatencyNanos()).thenAnswer(invocation -> syncLatencies[journalIndex]);
+            doAnswer(invocation -> {
+                journalMarkers.add(invocation.getArgument(1));
+                return null;
+            }).when(journal).forceLedger(anyLong(), any(), any());
+            journals.add(journal);
+        }
+        balancer = new JournalLoadBalancer(journals, NullStatsLogger.INSTANCE, ticker);
+    }
+
+    private void setQueueLengths(int... lengths) {
+        System.arraycopy(lengths, 0, queueLengths, 0, NUM_JOURNALS);
+    }
+
+    private void checkAssignedLedgers(long... expected) {
+        for (int i = 0; i < NUM_JOURNALS; i++) {
+            assertEquals("Ledgers of journal " + i, expected[i], balancer.getAssignedLedgers(i));
+        }
+    }
+
+    private void completeMarkers(int journalIndex) {
+        markers.get(journalIndex).forEach(cb -> cb.writeComplete(BKException.Code.OK, -1L,
+                BookieImpl.METAENTRY_ID_FORCE_LEDGER, null, null));
+        markers.get(journalIndex).clear();
+    }
+
+    @Test
+    public void testLeastLoadedJournalSelected() {
+        setQueueLengths(5, 0, 2);
+        assertSame(journals.get(1), balancer.getJournal(0));
+
+        // The ledger stays on its journal, even once another one is less loaded
+        setQueueLengths(5, 10, 2);
+        assertSame(journals.get(1), balancer.getJournal(0));
+        assertSame(journals.get(2), balancer.getJournal(1));
+        checkAssignedLedgers(0, 1, 1);
+    }
+
+    @Test
+    public void testTiesGoToHashedJournal() {
+        for (long ledgerId = 0; ledgerId < 2 * NUM_JOURNALS; ledgerId++) {
+            assertSame(journals.get((int) (ledgerId % NUM_JOURNALS)), balancer.getJournal(ledgerId));
+        }
+        checkAssignedLedgers(2, 2, 2);
+
+        // Before the first sync of the journals, the queue depth still matters
+        syncLatencies[0] = syncLatencies[1] = syncLatencies[2] = 0;
+        setQueueLengths(0, 3, 3);
+        assertSame(journals.get(0), balancer.getJournal(2 * NUM_JOURNALS + 1));
+    }
+
+    @Test
+    public void testSyncLatencyWeighsQueueDepth() {
+        // The queue of the journal 1 is longer, but it syncs much faster
+        syncLatencies[0] = 10 * SYNC_LATENCY_NANOS;
+        syncLatencies[2] = 10 * SYNC_LATENCY_NANOS;
+        setQueueLengths(0, 5, 0);
+        assertSame(journals.get(1), balancer.getJournal(0));
+
+        setQueueLengths(0, 10, 0);
+        assertSame(journals.get(0), balancer.getJournal(3));
+    }
+
+    @Test
+    public void testDeletedLedgerReassigned() {
+        setQueueLengths(5, 0, 5);
+        assertSame(journals.get(1), balancer.getJournal(0));
+
+        setQueueLengths(0, 5, 5);
+        balancer.ledgerDeleted(0);
+        checkAssignedLedgers(0, 0, 0);
+        // Deleting it again doesn't count it twice
+        balancer.ledgerDeleted(0);
+        checkAssignedLedgers(0, 0, 0);
+
+        assertSame(journals.get(0), balancer.getJournal(0));
+        checkAssignedLedgers(1, 0, 0);
+    }
+
+    @Test
+    public void testIdleAssignmentDroppedOnceSynced() {
+        setQueueLengths(5, 0, 5);
+        assertSame(journals.get(1), balancer.getJournal(0));
+        // The other ledgers go to the journal 0 from now on
+        setQueueLengths(0, 5, 5);
+
+        // The ledger is idle, but none of its entries is known to be synced, the sweep queues a marker on each journal
+        nowNanos.addAndGet(JournalLoadBalancer.IDLE_ASSIGNMENT_NANOS + TimeUnit.MINUTES.toNanos(1));
+        balancer.getJournal(1);
+        checkAssignedLedgers(1, 1, 0);
+        for (int i = 0; i < NUM_JOURNALS; i++) {
+            assertEquals(1, markers.get(i).size());
+        }
+
+        // The marker of the journal is not completed yet
+        nowNanos.addAndGet(JournalLoadBalancer.IDLE_ASSIGNMENT_NANOS / 2);
+        balancer.getJournal(2);
+        checkAssignedLedgers(2, 1, 0);
+
+        // Once a marker queued after the last entry of the ledger is synced, the assignment is dropped by the next
+        // sweep. The other ledgers were written recently, they stay assigned.
+        completeMarkers(1);
+        completeMarkers(0);
+        nowNanos.addAndGet(JournalLoadBalancer.IDLE_ASSIGNMENT_NANOS / 2);
+        balancer.getJournal(3);
+        checkAssignedLedgers(3, 0, 0);
+
+        // The ledger is assigned again when it is written again
+        assertSame(journals.get(0), balancer.getJournal(0));
+        checkAssignedLedgers(4, 0, 0);
+    }
+
+    @Test
+    public void testMarkerFailureKeepsAssignment() {
+        setQueueLengths(5, 0, 5);
+        assertSame(journals.get(1), balancer.getJournal(0));
+        setQueueLengths(0, 5, 5);
+
+        nowNanos.addAndGet(JournalLoadBalancer.IDLE_ASSIGNMENT_NANOS + TimeUnit.MINUTES.toNanos(1));
+        balancer.getJournal(1);
+        markers.get(1).forEach(cb -> cb.writeComplete(BKException.Code.WriteException, -1L,
+                BookieImpl.METAENTRY_ID_FORCE_LEDGER, null, null));
+
+        nowNanos.addAndGet(JournalLoadBalancer.IDLE_ASSIGNMENT_NANOS / 2);
+        balancer.getJournal(2);
+        checkAssignedLedgers(2, 1, 0);
+        assertSame(journals.get(1), balancer.getJournal(0));
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.Bookie.NoLedgerException;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the puts, the gets, the snapshots and the flushes of OffHeapEntryMemTable.
+ */
+public class OffHeapEntryMemTableTest {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final CacheCallback NO_CALLBACK = cp -> { };
+
+    /**
+     * A checkpoint of the order it was taken in.
+     */
+    private static class TestCheckpoint implements Checkpoint {
+        final long id;
+
+        TestCheckpoint(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Checkpoint o) {
+            if (o == Checkpoint.MAX) {
+                return -1;
+            } else if (o == Checkpoint.MIN) {
+                return 1;
+            }
+            return Long.compare(id, ((TestCheckpoint) o).id);
+        }
+    }
+
+    private final AtomicLong checkpointIds = new AtomicLong();
+    private final CheckpointSource checkpointSource = new CheckpointSource() {
+        @Override
+        public Checkpoint newCheckpoint() {
+            return new TestCheckpoint(checkpointIds.incrementAndGet());
+        }
+
+        @Override
+        public void checkpointComplete(Checkpoint checkpoint, boolean compact) {
+        }
+    };
+    // The chunks taken by the mem table
+    private final List<ByteBuf> chunks = new ArrayList<>();
+    private final UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true) {
+        @Override
+        public ByteBuf directBuffer(int initialCapacity, int maxCapacity) {
+            ByteBuf chunk = super.directBuffer(initialCapacity, maxCapacity);
+            chunks.add(chunk);
+            return chunk;
+        }
+    };
+    // The entries flushed, as (ledgerId, entryId, content)
+    private final List<Object[]> flushed = new ArrayList<>();
+    private final SkipListFlusher flusher = (ledgerId, entryId, entry) ->
+            flushed.add(new Object[] {ledgerId, entryId, ByteBufUtil.getBytes(entry)});
+    private OffHeapEntryMemTable memTable;
+
+    @Before
+    public void setUp() {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setSkipListArenaChunkSize(CHUNK_SIZE);
+        memTable = new OffHeapEntryMemTable(conf, checkpointSource, NullStatsLogger.INSTANCE, allocator);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        memTable.close();
+        chunks.forEach(chunk -> assertEquals(0, chunk.refCnt()));
+    }
+
+    private static byte[] entry(long ledgerId, long entryId, int length) {
+        byte[] entry = new byte[length];
+        Arrays.fill(entry, (byte) (ledgerId * 31 + entryId));
+        return entry;
+    }
+
+    private long addEntry(long ledgerId, long entryId, int length) throws IOException {
+        return memTable.addEntry(ledgerId, entryId, ByteBuffer.wrap(entry(ledgerId, entryId, length)), NO_CALLBACK);
+    }
+
+    private void checkEntry(long ledgerId, long entryId, int length) throws IOException {
+        EntryKeyValue value = memTable.getEntry(ledgerId, entryId);
+        assertNotNull("Entry " + ledgerId + ":" + entryId, value);
+        assertEquals(length, value.getLength());
+        assertArrayEquals(entry(ledgerId, entryId, length),
+                Arrays.copyOfRange(value.getBuffer(), value.getOffset(), value.getOffset() + value.getLength()));
+    }
+
+    private static List<Long> toList(PrimitiveIterator.OfLong entries) {
+        List<Long> list = new ArrayList<>();
+        entries.forEachRemaining((long entryId) -> list.add(entryId));
+        return list;
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        assertTrue(memTable.isEmpty());
+        assertEquals(100, addEntry(1, 0, 100));
+        assertEquals(300, addEntry(1, 2, 300));
+        assertEquals(200, addEntry(1, 1, 200));
+        assertEquals(100, addEntry(2, 5, 100));
+        // Larger than a chunk
+        assertEquals(3 * CHUNK_SIZE, addEntry(2, 6, 3 * CHUNK_SIZE));
+        assertFalse(memTable.isEmpty());
+
+        checkEntry(1, 0, 100);
+        checkEntry(1, 1, 200);
+        checkEntry(1, 2, 300);
+        checkEntry(2, 5, 100);
+        checkEntry(2, 6, 3 * CHUNK_SIZE);
+        assertNull(memTable.getEntry(1, 3));
+        assertNull(memTable.getEntry(3, 0));
+
+        // The last entry is the one with the highest id, not the last one added
+        assertEquals(2, memTable.getLastEntry(1).getEntryId());
+        assertEquals(6, memTable.getLastEntry(2).getEntryId());
+        assertNull(memTable.getLastEntry(3));
+
+        // The entries are copied in direct chunks, the large one in a chunk of its own
+        assertEquals(2, chunks.size());
+        chunks.forEach(chunk -> assertTrue(chunk.isDirect()));
+        assertEquals(3 * CHUNK_SIZE, chunks.get(1).capacity());
+    }
+
+    @Test
+    public void testDuplicatePutIgnored() throws Exception {
+        assertEquals(100, addEntry(1, 0, 100));
+        int availablePermits = memTable.skipListSemaphore.availablePermits();
+
+        ByteBuffer duplicate = ByteBuffer.allocate(3 * CHUNK_SIZE);
+        assertEquals(0, memTable.addEntry(1, 0, duplicate, NO_CALLBACK));
+        checkEntry(1, 0, 100);
+        // The duplicate takes neither room in the chunks, nor permits of the mem table
+        assertEquals(availablePermits, memTable.skipListSemaphore.availablePermits());
+        assertEquals(100, addEntry(1, 1, 100));
+        assertEquals(1, chunks.size());
+        assertEquals(200, memTable.size.get());
+    }
+
+    @Test
+    public void testSnapshotAndFlush() throws Exception {
+        addEntry(2, 1, 100);
+        addEntry(1, 1, 200);
+        addEntry(2, 0, 3 * CHUNK_SIZE);
+        addEntry(1, 0, 100);
+        assertNotNull(memTable.snapshot());
+        List<ByteBuf> snapshotChunks = new ArrayList<>(chunks);
+
+        // The entries of the snapshot are still read, and the new entries go to a new table
+        checkEntry(1, 1, 200);
+        addEntry(1, 2, 100);
+        checkEntry(1, 2, 100);
+        assertEquals(2, memTable.getLastEntry(1).getEntryId());
+        assertEquals(Arrays.asList(0L, 1L, 2L), toList(memTable.getListOfEntriesOfLedger(1)));
+        // No new snapshot while the previous one is not flushed
+        assertNull(memTable.snapshot());
+
+        // The entries are flushed sorted by ledger and entry
+        assertEquals(400 + 3 * CHUNK_SIZE, memTable.flushSnapshot(flusher, Checkpoint.MAX));
+        assertEquals(4, flushed.size());
+        long[][] expectedOrder = {{1, 0}, {1, 1}, {2, 0}, {2, 1}};
+        int[] expectedLengths = {100, 200, 3 * CHUNK_SIZE, 100};
+        for (int i = 0; i < expectedOrder.length; i++) {
+            long ledgerId = expectedOrder[i][0];
+            long entryId = expectedOrder[i][1];
+            assertEquals(ledgerId, flushed.get(i)[0]);
+            assertEquals(entryId, flushed.get(i)[1]);
+            assertArrayEquals(entry(ledgerId, entryId, expectedLengths[i]), (byte[]) flushed.get(i)[2]);
+        }
+
+        // The chunks of the snapshot are released once it is flushed
+        snapshotChunks.forEach(chunk -> assertEquals(0, chunk.refCnt()));
+        assertNull(memTable.getEntry(1, 1));
+        assertNull(memTable.getEntry(2, 0));
+        checkEntry(1, 2, 100);
+        assertEquals(Arrays.asList(2L), toList(memTable.getListOfEntriesOfLedger(1)));
+
+        // Nothing left to flush
+        assertEquals(0, memTable.flushSnapshot(flusher, Checkpoint.MAX));
+        assertEquals(4, flushed.size());
+    }
+
+    @Test
+    public void testSnapshotNotFlushedBeforeItsCheckpoint() throws Exception {
+        addEntry(1, 0, 100);
+        assertNotNull(memTable.snapshot());
+
+        // The snapshot may hold entries added after the checkpoint
+        assertEquals(0, memTable.flushSnapshot(flusher, Checkpoint.MIN));
+        assertTrue(flushed.isEmpty());
+        checkEntry(1, 0, 100);
+
+        assertEquals(100, memTable.flushSnapshot(flusher, checkpointSource.newCheckpoint()));
+        assertEquals(1, flushed.size());
+        assertTrue(memTable.isEmpty());
+    }
+
+    @Test
+    public void testEntriesOfDeletedLedgerSkipped() throws Exception {
+        for (long entryId = 0; entryId < 3; entryId++) {
+            addEntry(1, entryId, 100);
+            addEntry(2, entryId, 100);
+        }
+        memTable.snapshot();
+
+        List<Long> processedLedgers = new ArrayList<>();
+        memTable.flushSnapshot((ledgerId, entryId, entry) -> {
+            processedLedgers.add(ledgerId);
+            if (ledgerId == 1) {
+                throw new NoLedgerException(ledgerId);
+            }
+        }, Checkpoint.MAX);
+        // The flush gives up on the ledger at its first entry
+        assertEquals(Arrays.asList(1L, 2L, 2L, 2L), processedLedgers);
+        assertTrue(memTable.isEmpty());
+    }
+
+    @Test
+    public void testCloseReleasesChunks() throws Exception {
+        addEntry(1, 0, 100);
+        memTable.snapshot();
+        addEntry(1, 1, 100);
+        assertEquals(2, chunks.size());
+
+        memTable.close();
+        chunks.forEach(chunk -> assertEquals(0, chunk.refCnt()));
+    }
+}
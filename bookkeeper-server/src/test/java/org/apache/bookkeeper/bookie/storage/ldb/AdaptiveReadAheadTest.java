@@ -0,0 +1,146 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.bookkeeper.bookie.storage.ldb.AdaptiveReadAhead.ReadAheadRequest;
+import org.junit.Test;
+
+/**
+ * Test the detection of the sequential reads and the sizing of the read-ahead window of the AdaptiveReadAhead class.
+ */
+public class AdaptiveReadAheadTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final long OTHER_LEDGER_ID = 2;
+    private static final int MAX_WINDOW = 16;
+
+    private static void assertRequest(long firstEntryId, int maxEntries, ReadAheadRequest request) {
+        assertNotNull(request);
+        assertEquals(firstEntryId, request.firstEntryId);
+        assertEquals(maxEntries, request.maxEntries);
+    }
+
+    @Test
+    public void testWindowDoublesOnSequentialReads() {
+        AdaptiveReadAhead readAhead = new AdaptiveReadAhead(MAX_WINDOW);
+        // A single miss is not a sequential read
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 10));
+        assertRequest(12, 4, readAhead.onCacheMiss(LEDGER_ID, 11));
+
+        // The misses on the window being pre-fetched don't schedule anything
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 13));
+
+        // Reading the first entry of the window schedules the next one, twice larger
+        assertRequest(16, 8, readAhead.onCacheHit(LEDGER_ID, 12));
+        assertNull(readAhead.onCacheHit(LEDGER_ID, 13));
+        assertNull(readAhead.onCacheHit(LEDGER_ID, 15));
+        assertRequest(24, 16, readAhead.onCacheHit(LEDGER_ID, 16));
+
+        // Up to the max window
+        assertRequest(40, MAX_WINDOW, readAhead.onCacheHit(LEDGER_ID, 24));
+        assertRequest(56, MAX_WINDOW, readAhead.onCacheHit(LEDGER_ID, 40));
+    }
+
+    @Test
+    public void testRandomReadResetsWindow() {
+        AdaptiveReadAhead readAhead = new AdaptiveReadAhead(MAX_WINDOW);
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 0));
+        assertRequest(2, 4, readAhead.onCacheMiss(LEDGER_ID, 1));
+        assertRequest(6, 8, readAhead.onCacheHit(LEDGER_ID, 2));
+
+        // A read elsewhere stops the read-ahead
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 100));
+        assertNull(readAhead.onCacheHit(LEDGER_ID, 6));
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 50));
+
+        // Until the reads are sequential again, starting over with a small window
+        assertRequest(52, 4, readAhead.onCacheMiss(LEDGER_ID, 51));
+    }
+
+    @Test
+    public void testLedgersTrackedSeparately() {
+        AdaptiveReadAhead readAhead = new AdaptiveReadAhead(MAX_WINDOW);
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 0));
+        assertNull(readAhead.onCacheMiss(OTHER_LEDGER_ID, 0));
+        assertRequest(2, 4, readAhead.onCacheMiss(LEDGER_ID, 1));
+        assertRequest(2, 4, readAhead.onCacheMiss(OTHER_LEDGER_ID, 1));
+
+        // The hits of a ledger without state are ignored
+        assertNull(readAhead.onCacheHit(3, 2));
+
+        readAhead.removeLedger(LEDGER_ID);
+        assertNull(readAhead.onCacheHit(LEDGER_ID, 2));
+        assertRequest(6, 8, readAhead.onCacheHit(OTHER_LEDGER_ID, 2));
+    }
+
+    @Test
+    public void testBatchReads() {
+        AdaptiveReadAhead readAhead = new AdaptiveReadAhead(MAX_WINDOW);
+        assertNull(readAhead.onBatchCacheMiss(LEDGER_ID, 0, 9));
+        assertRequest(20, 4, readAhead.onBatchCacheMiss(LEDGER_ID, 10, 19));
+
+        // A batch within the window being pre-fetched
+        assertNull(readAhead.onBatchCacheMiss(LEDGER_ID, 20, 22));
+        // A batch starting in the window and going past it continues the sequence
+        assertRequest(31, 8, readAhead.onBatchCacheMiss(LEDGER_ID, 22, 30));
+
+        assertNull(readAhead.onBatchCacheMiss(LEDGER_ID, 100, 109));
+        assertRequest(120, 4, readAhead.onBatchCacheMiss(LEDGER_ID, 110, 119));
+    }
+
+    @Test
+    public void testIncompleteReadAhead() {
+        AdaptiveReadAhead readAhead = new AdaptiveReadAhead(MAX_WINDOW);
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 0));
+        assertRequest(2, 4, readAhead.onCacheMiss(LEDGER_ID, 1));
+
+        // A complete read-ahead doesn't change the window
+        readAhead.onReadAheadCompleted(LEDGER_ID, 2, 4, 4);
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 3));
+
+        // Only the first entry was pre-fetched, the miss on the next one continues the sequence
+        readAhead.onReadAheadCompleted(LEDGER_ID, 2, 4, 1);
+        assertNull(readAhead.onCacheHit(LEDGER_ID, 2));
+        assertRequest(4, 8, readAhead.onCacheMiss(LEDGER_ID, 3));
+
+        // The completion of an older window is ignored
+        readAhead.onReadAheadCompleted(LEDGER_ID, 2, 4, 0);
+        assertRequest(12, 16, readAhead.onCacheHit(LEDGER_ID, 4));
+    }
+
+    @Test
+    public void testSmallMaxWindow() {
+        AdaptiveReadAhead readAhead = new AdaptiveReadAhead(2);
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 0));
+        assertRequest(2, 2, readAhead.onCacheMiss(LEDGER_ID, 1));
+        assertRequest(4, 2, readAhead.onCacheHit(LEDGER_ID, 2));
+
+        // No read-ahead at all
+        readAhead = new AdaptiveReadAhead(0);
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 0));
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 1));
+        assertNull(readAhead.onCacheMiss(LEDGER_ID, 2));
+    }
+}
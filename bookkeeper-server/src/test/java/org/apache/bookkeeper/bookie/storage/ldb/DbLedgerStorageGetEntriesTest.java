@@ -0,0 +1,267 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.test.CountingStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the reads of sequences of entries by DbLedgerStorage, with the batched lookup of the locations, the
+ * read-ahead after the batch and the failures of the entry log reads.
+ */
+public class DbLedgerStorageGetEntriesTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int NUM_ENTRIES = 50;
+    private static final int READ_AHEAD_BATCH_SIZE = 10;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final CountingStatsLogger statsLogger = new CountingStatsLogger();
+    // The results of the asynchronous reads of the entry log, by entry id, replacing the actual reads
+    private final Map<Long, CompletableFuture<ByteBuf>> injectedReads = new ConcurrentHashMap<>();
+    private File tmpDir;
+    private DbLedgerStorage storage;
+    private EntryLogger entryLogger;
+
+    /**
+     * A storage whose asynchronous entry log reads can be replaced.
+     */
+    private class TestDbLedgerStorage extends DbLedgerStorage {
+        @Override
+        protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                EntryLogger realEntryLogger, StatsLogger statsLogger, long writeCacheSize, long readCacheSize,
+                int readAheadCacheBatchSize, long readAheadCacheBatchBytesSize) throws IOException {
+            entryLogger = mock(EntryLogger.class, delegatesTo(realEntryLogger));
+            doAnswer(invocation -> {
+                long entryId = invocation.getArgument(1);
+                CompletableFuture<ByteBuf> injected = injectedReads.get(entryId);
+                if (injected != null) {
+                    return injected;
+                }
+                return realEntryLogger.readEntryAsync(invocation.getArgument(0), entryId, invocation.getArgument(2));
+            }).when(entryLogger).readEntryAsync(anyLong(), anyLong(), anyLong());
+            return super.newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
+                    entryLogger, statsLogger, writeCacheSize, readCacheSize, readAheadCacheBatchSize,
+                    readAheadCacheBatchBytesSize);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_SIZE, READ_AHEAD_BATCH_SIZE);
+    }
+
+    private void startStorage() throws Exception {
+        File curDir = BookieImpl.getCurrentDirectory(tmpDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, new File[] { curDir },
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = new TestDbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, statsLogger,
+                UnpooledByteBufAllocator.DEFAULT);
+
+        storage.setMasterKey(LEDGER_ID, "key".getBytes());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = entry(entryId);
+            storage.addEntry(entry);
+            entry.release();
+        }
+        // The entries are read from the entry log and the read cache, not from the write cache
+        storage.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(1024);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        // last add confirmed
+        entry.writeLong(entryId);
+        entry.writeBytes(new byte[1000]);
+        return entry;
+    }
+
+    private static void checkEntries(List<ByteBuf> entries, long firstEntryId, int count) {
+        try {
+            assertEquals(count, entries.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(firstEntryId + i, entries.get(i).getLong(8));
+            }
+        } finally {
+            entries.forEach(ByteBuf::release);
+        }
+    }
+
+    private void readEntry(long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(LEDGER_ID, entryId);
+        try {
+            assertEquals(entryId, entry.getLong(8));
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testMissedEntriesReadInBatch() throws Exception {
+        startStorage();
+        checkEntries(storage.getEntries(LEDGER_ID, 0, 5), 0, 5);
+        verify(entryLogger, times(5)).readEntryAsync(eq(LEDGER_ID), anyLong(), anyLong());
+        assertEquals(5, statsLogger.getCounterValue("read-cache-misses"));
+
+        // The entries read in the batch are cached
+        checkEntries(storage.getEntries(LEDGER_ID, 0, 5), 0, 5);
+        verify(entryLogger, times(5)).readEntryAsync(eq(LEDGER_ID), anyLong(), anyLong());
+        assertEquals(5, statsLogger.getCounterValue("read-cache-hits"));
+    }
+
+    @Test
+    public void testReadAheadAfterBatch() throws Exception {
+        startStorage();
+        checkEntries(storage.getEntries(LEDGER_ID, 0, 5), 0, 5);
+
+        // The read-ahead starts right after the last entry of the batch
+        for (long entryId = 5; entryId < 5 + READ_AHEAD_BATCH_SIZE; entryId++) {
+            readEntry(entryId);
+        }
+        assertEquals(READ_AHEAD_BATCH_SIZE, statsLogger.getCounterValue("read-cache-hits"));
+        assertEquals(5, statsLogger.getCounterValue("read-cache-misses"));
+
+        readEntry(5 + READ_AHEAD_BATCH_SIZE);
+        assertEquals(6, statsLogger.getCounterValue("read-cache-misses"));
+    }
+
+    @Test
+    public void testBatchMixedWithCachedEntries() throws Exception {
+        startStorage();
+        // Entries 21 to 30 are read ahead
+        readEntry(20);
+
+        checkEntries(storage.getEntries(LEDGER_ID, 18, 5), 18, 5);
+        verify(entryLogger, times(1)).readEntryAsync(eq(LEDGER_ID), eq(18L), anyLong());
+        verify(entryLogger, times(1)).readEntryAsync(eq(LEDGER_ID), eq(19L), anyLong());
+        verify(entryLogger, never()).readEntryAsync(eq(LEDGER_ID), eq(21L), anyLong());
+    }
+
+    @Test
+    public void testBatchStopsAtEndOfLedger() throws Exception {
+        startStorage();
+        checkEntries(storage.getEntries(LEDGER_ID, NUM_ENTRIES - 3, 10), NUM_ENTRIES - 3, 3);
+        verify(entryLogger, times(3)).readEntryAsync(eq(LEDGER_ID), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testBatchStopsAtMissingEntry() throws Exception {
+        startStorage();
+        CompletableFuture<ByteBuf> missing = new CompletableFuture<>();
+        missing.completeExceptionally(new NoEntryException(LEDGER_ID, 2));
+        injectedReads.put(2L, missing);
+
+        // Only the entries before the missing one are returned
+        checkEntries(storage.getEntries(LEDGER_ID, 0, 5), 0, 2);
+    }
+
+    @Test
+    public void testReadErrorIsPropagated() throws Exception {
+        startStorage();
+        IOException diskError = new IOException("Disk error");
+        CompletableFuture<ByteBuf> failed = new CompletableFuture<>();
+        failed.completeExceptionally(diskError);
+        injectedReads.put(2L, failed);
+
+        try {
+            storage.getEntries(LEDGER_ID, 0, 5);
+            fail("The read error should not be reported as a short read");
+        } catch (IOException e) {
+            assertSame(diskError, e.getCause());
+        }
+
+        // The entries read before the failure were cached, the others are read again
+        injectedReads.clear();
+        checkEntries(storage.getEntries(LEDGER_ID, 0, 5), 0, 5);
+    }
+
+    @Test
+    public void testLostReadTimesOut() throws Exception {
+        conf.setProperty(DbLedgerStorage.READ_ENTRIES_TIMEOUT_MILLIS, 100);
+        startStorage();
+        CompletableFuture<ByteBuf> lost = new CompletableFuture<>();
+        injectedReads.put(1L, lost);
+
+        try {
+            storage.getEntries(LEDGER_ID, 0, 5);
+            fail("The read should have timed out");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        // The entry is released if the read eventually completes
+        ByteBuf lateEntry = entry(1);
+        lost.complete(lateEntry);
+        assertEquals(0, lateEntry.refCnt());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.test.CountingStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the adaptive read-ahead of the DbLedgerStorage, filling the read cache with the background threads.
+ */
+public class DbLedgerStorageReadAheadTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int NUM_ENTRIES = 100;
+    private static final int READ_AHEAD_BATCH_SIZE = 2;
+    private static final int READ_AHEAD_MAX_WINDOW = 16;
+
+    private final CountingStatsLogger statsLogger = new CountingStatsLogger();
+    private File tmpDir;
+    private DbLedgerStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        File curDir = BookieImpl.getCurrentDirectory(tmpDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_SIZE, READ_AHEAD_BATCH_SIZE);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ADAPTIVE_ENABLED, true);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ADAPTIVE_MAX_WINDOW, READ_AHEAD_MAX_WINDOW);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ASYNC_THREADS, 1);
+
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, new File[] { curDir },
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, statsLogger,
+                UnpooledByteBufAllocator.DEFAULT);
+
+        storage.setMasterKey(LEDGER_ID, "key".getBytes());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = Unpooled.buffer(1024);
+            entry.writeLong(LEDGER_ID);
+            entry.writeLong(entryId);
+            entry.writeBytes(new byte[1000]);
+            storage.addEntry(entry);
+            entry.release();
+        }
+        // The entries are read from the entry log and the read cache, not from the write cache
+        storage.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private void readEntry(long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(LEDGER_ID, entryId);
+        try {
+            assertEquals(entryId, entry.getLong(8));
+        } finally {
+            entry.release();
+        }
+    }
+
+    private long readCacheCount() {
+        return statsLogger.getGauges().get("read-cache-count").getSample().longValue();
+    }
+
+    private void awaitReadCacheCount(long expectedCount) {
+        // The read-ahead is done in background, after the read completed
+        await().untilAsserted(() -> assertEquals(expectedCount, readCacheCount()));
+    }
+
+    @Test
+    public void testWindowGrowsOnSequentialReads() throws Exception {
+        // The first miss doesn't trigger any read-ahead
+        readEntry(0);
+        awaitReadCacheCount(1);
+
+        // The second one is sequential, the next 4 entries are pre-fetched
+        readEntry(1);
+        awaitReadCacheCount(6);
+
+        // Reading the first pre-fetched entry pre-fetches the next window, twice larger
+        readEntry(2);
+        awaitReadCacheCount(14);
+        readEntry(3);
+        readEntry(4);
+        readEntry(5);
+        assertEquals(14, readCacheCount());
+
+        // The window grows beyond the read-ahead batch size, up to the max window
+        readEntry(6);
+        awaitReadCacheCount(30);
+        readEntry(14);
+        awaitReadCacheCount(30 + READ_AHEAD_MAX_WINDOW);
+
+        assertEquals(2, statsLogger.getCounterValue("read-cache-misses"));
+        assertEquals(6, statsLogger.getCounterValue("read-cache-hits"));
+    }
+
+    @Test
+    public void testRandomReadsNotPrefetched() throws Exception {
+        readEntry(50);
+        readEntry(10);
+        readEntry(80);
+        readEntry(30);
+        await().pollDelay(100, TimeUnit.MILLISECONDS).untilAsserted(() -> assertEquals(4, readCacheCount()));
+        assertEquals(4, statsLogger.getCounterValue("read-cache-misses"));
+
+        // A sequential read after the random ones starts the read-ahead
+        readEntry(31);
+        awaitReadCacheCount(9);
+        readEntry(32);
+        assertEquals(1, statsLogger.getCounterValue("read-cache-hits"));
+    }
+}
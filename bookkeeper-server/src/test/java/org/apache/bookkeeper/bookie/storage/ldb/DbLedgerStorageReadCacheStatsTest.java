@@ -0,0 +1,140 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.test.CountingStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the read cache hits and misses are accounted separately for the tailing and the catch-up reads.
+ */
+public class DbLedgerStorageReadCacheStatsTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int NUM_ENTRIES = 100;
+    private static final long LAST_ENTRY_ID = NUM_ENTRIES - 1;
+    private static final int TAILING_READ_MAX_DISTANCE = 10;
+    private static final int READ_AHEAD_BATCH_SIZE = 10;
+
+    private final CountingStatsLogger statsLogger = new CountingStatsLogger();
+    private File tmpDir;
+    private DbLedgerStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        File curDir = BookieImpl.getCurrentDirectory(tmpDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_SIZE, READ_AHEAD_BATCH_SIZE);
+        conf.setProperty(DbLedgerStorage.READ_CACHE_TAILING_READ_MAX_DISTANCE, TAILING_READ_MAX_DISTANCE);
+
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, new File[] { curDir },
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, statsLogger,
+                UnpooledByteBufAllocator.DEFAULT);
+
+        storage.setMasterKey(LEDGER_ID, "key".getBytes());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = Unpooled.buffer(1024);
+            entry.writeLong(LEDGER_ID);
+            entry.writeLong(entryId);
+            // last add confirmed
+            entry.writeLong(entryId);
+            entry.writeBytes(new byte[1000]);
+            storage.addEntry(entry);
+            entry.release();
+        }
+        // The entries are read from the entry log and the read cache, not from the write cache
+        storage.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private void readEntry(long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(LEDGER_ID, entryId);
+        try {
+            assertEquals(entryId, entry.getLong(8));
+        } finally {
+            entry.release();
+        }
+    }
+
+    private void assertReadCacheStats(long tailingHits, long tailingMisses, long catchUpHits, long catchUpMisses) {
+        assertEquals(tailingHits, statsLogger.getCounterValue("read-cache-tailing-hits"));
+        assertEquals(tailingMisses, statsLogger.getCounterValue("read-cache-tailing-misses"));
+        assertEquals(catchUpHits, statsLogger.getCounterValue("read-cache-catchup-hits"));
+        assertEquals(catchUpMisses, statsLogger.getCounterValue("read-cache-catchup-misses"));
+        assertEquals(tailingHits + catchUpHits, statsLogger.getCounterValue("read-cache-hits"));
+        assertEquals(tailingMisses + catchUpMisses, statsLogger.getCounterValue("read-cache-misses"));
+    }
+
+    @Test
+    public void testReadsWithoutKnownLacAreCatchUpReads() throws Exception {
+        // No reader asked for the last add confirmed of the ledger
+        readEntry(LAST_ENTRY_ID - 1);
+        readEntry(LAST_ENTRY_ID);
+        assertReadCacheStats(0, 0, 1, 1);
+    }
+
+    @Test
+    public void testTailingAndCatchUpReads() throws Exception {
+        // The tailing readers know the last add confirmed of the ledger
+        assertEquals(LAST_ENTRY_ID, storage.getLastAddConfirmed(LEDGER_ID));
+
+        // Catch-up reader: the first read misses and fills the read-ahead, the next one hits
+        readEntry(0);
+        readEntry(1);
+        assertReadCacheStats(0, 0, 1, 1);
+
+        // Tailing reader, close to the last add confirmed
+        readEntry(LAST_ENTRY_ID - TAILING_READ_MAX_DISTANCE + 2);
+        readEntry(LAST_ENTRY_ID - TAILING_READ_MAX_DISTANCE + 3);
+        assertReadCacheStats(1, 1, 1, 1);
+
+        // Out of the read-ahead window of the catch-up reader
+        readEntry(READ_AHEAD_BATCH_SIZE + 1);
+        assertReadCacheStats(1, 1, 1, 2);
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.test.CountingStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the ring of write cache segments of DbLedgerStorage: rotation, flushes concurrent with the adds, and the adds
+ * blocked while all the segments are waiting to be flushed.
+ */
+public class DbLedgerStorageWriteCacheTest {
+
+    private static final int ENTRY_SIZE = 10 * 1024;
+    // 4 segments of 256KB
+    private static final int WRITE_CACHE_SEGMENTS = 4;
+    private static final int ENTRIES_PER_SEGMENT = 256 * 1024 / ENTRY_SIZE;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final CountingStatsLogger statsLogger = new CountingStatsLogger();
+    private final TestCheckpointSource checkpointSource = new TestCheckpointSource();
+    // When set, the flushes of the entry logger wait for the latch
+    private final AtomicReference<CountDownLatch> flushBlocker = new AtomicReference<>();
+    private File tmpDir;
+    private DbLedgerStorage storage;
+    private EntryLogger entryLogger;
+
+    /**
+     * A checkpoint source handing out increasing checkpoints.
+     */
+    private static class TestCheckpointSource implements CheckpointSource {
+        private final AtomicLong sequence = new AtomicLong();
+        private final CountDownLatch firstCompleted = new CountDownLatch(1);
+
+        @Override
+        public Checkpoint newCheckpoint() {
+            return new TestCheckpoint(sequence.incrementAndGet());
+        }
+
+        @Override
+        public void checkpointComplete(Checkpoint checkpoint, boolean compact) {
+            firstCompleted.countDown();
+        }
+    }
+
+    private static class TestCheckpoint implements Checkpoint {
+        private final long sequence;
+
+        TestCheckpoint(long sequence) {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Checkpoint o) {
+            if (o == Checkpoint.MAX) {
+                return -1;
+            } else if (o == Checkpoint.MIN) {
+                return 1;
+            }
+            return Long.compare(sequence, ((TestCheckpoint) o).sequence);
+        }
+    }
+
+    /**
+     * A storage whose entry logger flushes can be blocked.
+     */
+    private class TestDbLedgerStorage extends DbLedgerStorage {
+        @Override
+        protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                EntryLogger realEntryLogger, StatsLogger statsLogger, long writeCacheSize, long readCacheSize,
+                int readAheadCacheBatchSize, long readAheadCacheBatchBytesSize) throws IOException {
+            entryLogger = mock(EntryLogger.class, delegatesTo(realEntryLogger));
+            doAnswer(invocation -> {
+                CountDownLatch blocker = flushBlocker.get();
+                if (blocker != null) {
+                    blocker.await();
+                }
+                realEntryLogger.flush();
+                return null;
+            }).when(entryLogger).flush();
+            return super.newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
+                    entryLogger, statsLogger, writeCacheSize, readCacheSize, readAheadCacheBatchSize,
+                    readAheadCacheBatchBytesSize);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 1);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_SEGMENTS, WRITE_CACHE_SEGMENTS);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 1);
+    }
+
+    private void startStorage() throws Exception {
+        File curDir = BookieImpl.getCurrentDirectory(tmpDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, new File[] { curDir },
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = new TestDbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, statsLogger,
+                UnpooledByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(checkpointSource);
+        storage.setMasterKey(1, "key".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CountDownLatch blocker = flushBlocker.getAndSet(null);
+        if (blocker != null) {
+            blocker.countDown();
+        }
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private void addEntry(long entryId) throws Exception {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(1);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        try {
+            storage.addEntry(entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private void checkEntry(long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(1, entryId);
+        try {
+            assertEquals(ENTRY_SIZE, entry.readableBytes());
+            assertEquals(entryId, entry.getLong(8));
+            assertEquals((byte) entryId, entry.getByte(ENTRY_SIZE - 1));
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testRotationFlushesInBackground() throws Exception {
+        startStorage();
+
+        // Fill more than 2 segments, without flushing explicitly
+        int numEntries = 60;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            addEntry(entryId);
+        }
+
+        // The background flush reports the checkpoint as complete, like an explicit flush
+        assertTrue(checkpointSource.firstCompleted.await(10, TimeUnit.SECONDS));
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            checkEntry(entryId);
+        }
+        assertEquals(0, statsLogger.getCounterValue("rejected-write-requests"));
+    }
+
+    @Test
+    public void testCheckpointWithEmptyWriteCache() throws Exception {
+        startStorage();
+        addEntry(0);
+        storage.checkpoint(checkpointSource.newCheckpoint());
+        verify(entryLogger, times(1)).flush();
+
+        // Nothing to flush, the checkpoint is still recorded as the last completed one
+        Checkpoint older = checkpointSource.newCheckpoint();
+        storage.checkpoint(checkpointSource.newCheckpoint());
+        verify(entryLogger, times(1)).flush();
+
+        // A checkpoint older than the last completed one doesn't trigger a flush
+        addEntry(1);
+        storage.checkpoint(older);
+        verify(entryLogger, times(1)).flush();
+
+        storage.flush();
+        verify(entryLogger, times(2)).flush();
+        checkEntry(0);
+        checkEntry(1);
+    }
+
+    @Test
+    public void testFlushesConcurrentWithAdds() throws Exception {
+        startStorage();
+        int numEntries = 500;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (long entryId = 0; entryId < numEntries; entryId++) {
+                    addEntry(entryId);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        writer.start();
+
+        // Keep flushing while the segments are rotated by the adds
+        while (writer.isAlive()) {
+            storage.flush();
+        }
+        writer.join();
+        if (failure.get() != null) {
+            throw new AssertionError("Add failed", failure.get());
+        }
+
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            checkEntry(entryId);
+        }
+        storage.flush();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            checkEntry(entryId);
+        }
+    }
+
+    @Test
+    public void testBlockedAddStats() throws Exception {
+        conf.setProperty(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS, 100);
+        startStorage();
+
+        // The flushes can't complete, so the segments fill up
+        CountDownLatch blocker = new CountDownLatch(1);
+        flushBlocker.set(blocker);
+        long entryId = 0;
+        try {
+            for (; entryId < 1000; entryId++) {
+                addEntry(entryId);
+            }
+            fail("The adds should be rejected once all the segments are full");
+        } catch (OperationRejectedException e) {
+            // expected
+        }
+        // At least the sealed segments were filled before the add got throttled
+        assertTrue(entryId >= (WRITE_CACHE_SEGMENTS - 1) * ENTRIES_PER_SEGMENT);
+        assertEquals(1, statsLogger.getCounterValue("throttled-write-requests"));
+        assertEquals(1, statsLogger.getCounterValue("rejected-write-requests"));
+        assertTrue(statsLogger.getCounterValue("write-cache-blocked-time") >= 100);
+
+        // Once the flush completes, the adds go through again
+        flushBlocker.set(null);
+        blocker.countDown();
+        storage.flush();
+        addEntry(entryId);
+        assertEquals(1, statsLogger.getCounterValue("rejected-write-requests"));
+        for (long id = 0; id <= entryId; id++) {
+            checkEntry(id);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batched and range lookups of the EntryLocationIndex class, with and without the in-memory tier.
+ */
+public class EntryLocationIndexTest {
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private File tmpDir;
+    private EntryLocationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (index != null) {
+            index.close();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private void createIndex(long hotLocationsMaxSize) throws Exception {
+        index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, tmpDir.getAbsolutePath(),
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT, hotLocationsMaxSize);
+        // Entries 0 to 9 of ledger 1, with a gap at entry 5, and the entries of ledgers 0 and 2 around them
+        for (long entryId = 0; entryId < 10; entryId++) {
+            if (entryId != 5) {
+                index.addLocation(1, entryId, 100 + entryId);
+            }
+            index.addLocation(0, entryId, 200 + entryId);
+            index.addLocation(2, entryId, 300 + entryId);
+        }
+    }
+
+    private void checkGetLocations() throws Exception {
+        assertArrayEquals(new long[] {100, 101, 102}, index.getLocations(1, new long[] {0, 1, 2}));
+        // Same order as the requested entries, with 0 for the missing ones
+        assertArrayEquals(new long[] {109, 0, 103, 0, 0},
+                index.getLocations(1, new long[] {9, 5, 3, 10, 100}));
+        assertArrayEquals(new long[] {0, 0}, index.getLocations(3, new long[] {0, 1}));
+        assertArrayEquals(new long[0], index.getLocations(1, new long[0]));
+
+        for (long entryId = 0; entryId < 10; entryId++) {
+            assertEquals(index.getLocation(1, entryId), index.getLocations(1, new long[] {entryId})[0]);
+        }
+    }
+
+    private void checkGetLocationsRange() throws Exception {
+        long[] locations = new long[3];
+        assertEquals(3, index.getLocationsRange(1, 1, locations));
+        assertArrayEquals(new long[] {101, 102, 103}, locations);
+
+        // The range stops at the gap
+        locations = new long[10];
+        assertEquals(5, index.getLocationsRange(1, 0, locations));
+        assertArrayEquals(new long[] {100, 101, 102, 103, 104}, Arrays.copyOf(locations, 5));
+
+        // And at the end of the ledger, without reading the entries of the next one
+        locations = new long[10];
+        assertEquals(4, index.getLocationsRange(1, 6, locations));
+        assertArrayEquals(new long[] {106, 107, 108, 109}, Arrays.copyOf(locations, 4));
+
+        assertEquals(0, index.getLocationsRange(1, 5, new long[10]));
+        assertEquals(0, index.getLocationsRange(3, 0, new long[10]));
+    }
+
+    @Test
+    public void testGetLocations() throws Exception {
+        createIndex(0);
+        checkGetLocations();
+    }
+
+    @Test
+    public void testGetLocationsWithHotLocations() throws Exception {
+        createIndex(1024 * 1024);
+        checkGetLocations();
+    }
+
+    @Test
+    public void testGetLocationsAfterUpdate() throws Exception {
+        createIndex(1024 * 1024);
+        index.updateLocations(Collections.singletonList(new EntryLocation(1, 2, 1002)));
+        assertArrayEquals(new long[] {101, 1002, 103}, index.getLocations(1, new long[] {1, 2, 3}));
+    }
+
+    @Test
+    public void testGetLocationsRange() throws Exception {
+        createIndex(0);
+        checkGetLocationsRange();
+    }
+
+    @Test
+    public void testGetLocationsRangeWithHotLocations() throws Exception {
+        createIndex(1024 * 1024);
+        checkGetLocationsRange();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the in-memory tier of the entry location index, and the clock eviction of its ledgers.
+ */
+public class HotLocationIndexTest {
+
+    // Size of the locations of a ledger with less than 4 blocks of entries
+    private static final long LEDGER_SIZE = 4 * (8 + 4 * HotLocationIndex.BLOCK_SIZE);
+    private static final long MAX_SIZE = 10 * LEDGER_SIZE;
+
+    private HotLocationIndex index;
+
+    @After
+    public void tearDown() {
+        if (index != null) {
+            index.close();
+            assertEquals(0, index.size());
+        }
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) + 1000 + entryId * 100;
+    }
+
+    private void addLedgers(long firstLedgerId, long lastLedgerId) {
+        for (long ledgerId = firstLedgerId; ledgerId <= lastLedgerId; ledgerId++) {
+            index.addLocation(ledgerId, 0, location(ledgerId, 0));
+        }
+    }
+
+    @Test
+    public void testGetLocations() {
+        index = new HotLocationIndex(UnpooledByteBufAllocator.DEFAULT, MAX_SIZE);
+        for (long entryId = 10; entryId < 200; entryId++) {
+            index.addLocation(1, entryId, location(1, entryId));
+        }
+        for (long entryId = 10; entryId < 200; entryId++) {
+            assertEquals(location(1, entryId), index.getLocation(1, entryId));
+        }
+        assertEquals(1, index.ledgersCount());
+
+        // The entries before the first one tracked, or never added, are left to the persistent index
+        assertEquals(0, index.getLocation(1, 9));
+        assertEquals(0, index.getLocation(1, 200));
+        assertEquals(0, index.getLocation(2, 10));
+
+        // A relocated entry, and an entry relocated too far from the others of its block
+        index.updateLocation(1, 50, location(1, 50) + 10_000);
+        assertEquals(location(1, 50) + 10_000, index.getLocation(1, 50));
+        index.updateLocation(1, 51, location(3, 51));
+        assertEquals(0, index.getLocation(1, 51));
+        // The relocations of the ledgers not tracked are ignored
+        index.updateLocation(2, 50, location(2, 50));
+        assertEquals(0, index.getLocation(2, 50));
+    }
+
+    @Test
+    public void testLocationTooFarFromBlockBase() {
+        index = new HotLocationIndex(UnpooledByteBufAllocator.DEFAULT, MAX_SIZE);
+        index.addLocation(1, 0, location(1, 0));
+        // In another entry log, the delta from the base of the block doesn't fit
+        index.addLocation(1, 1, location(2, 1));
+        index.addLocation(1, 2, location(1, 2));
+
+        assertEquals(location(1, 0), index.getLocation(1, 0));
+        assertEquals(0, index.getLocation(1, 1));
+        assertEquals(location(1, 2), index.getLocation(1, 2));
+
+        // The next block has its own base
+        index.addLocation(1, HotLocationIndex.BLOCK_SIZE, location(2, HotLocationIndex.BLOCK_SIZE));
+        assertEquals(location(2, HotLocationIndex.BLOCK_SIZE), index.getLocation(1, HotLocationIndex.BLOCK_SIZE));
+    }
+
+    @Test
+    public void testLedgerTooLargeDropped() {
+        index = new HotLocationIndex(UnpooledByteBufAllocator.DEFAULT, MAX_SIZE);
+        // The locations of a ledger can take up to a fourth of the budget
+        long maxEntries = 8 * HotLocationIndex.BLOCK_SIZE;
+        for (long entryId = 0; entryId < maxEntries; entryId++) {
+            index.addLocation(1, entryId, location(1, entryId));
+        }
+        assertEquals(2 * LEDGER_SIZE, index.size());
+        assertEquals(location(1, 0), index.getLocation(1, 0));
+
+        index.addLocation(1, maxEntries, location(1, maxEntries));
+        assertEquals(0, index.getLocation(1, 0));
+        assertEquals(0, index.ledgersCount());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testOldestLedgersEvicted() {
+        index = new HotLocationIndex(UnpooledByteBufAllocator.DEFAULT, MAX_SIZE);
+        addLedgers(1, 10);
+        assertEquals(MAX_SIZE, index.size());
+        assertEquals(10, index.ledgersCount());
+
+        // All the ledgers were accessed, they all get a second chance before the oldest ones are evicted, until
+        // the size is back under 90% of the budget
+        addLedgers(11, 11);
+        assertEquals(9, index.ledgersCount());
+        assertEquals(9 * LEDGER_SIZE, index.size());
+        assertEquals(0, index.getLocation(1, 0));
+        assertEquals(0, index.getLocation(2, 0));
+        for (long ledgerId = 3; ledgerId <= 11; ledgerId++) {
+            assertEquals(location(ledgerId, 0), index.getLocation(ledgerId, 0));
+        }
+    }
+
+    @Test
+    public void testAccessedLedgerGetsSecondChance() {
+        index = new HotLocationIndex(UnpooledByteBufAllocator.DEFAULT, MAX_SIZE);
+        addLedgers(1, 11);
+        // The first eviction cleared the references of the ledgers left, only the ledger 3 is accessed again
+        assertNotEquals(0, index.getLocation(3, 0));
+
+        addLedgers(12, 13);
+        assertEquals(9, index.ledgersCount());
+        assertEquals(location(3, 0), index.getLocation(3, 0));
+        assertEquals(0, index.getLocation(4, 0));
+        assertEquals(0, index.getLocation(5, 0));
+        for (long ledgerId = 6; ledgerId <= 13; ledgerId++) {
+            assertEquals(location(ledgerId, 0), index.getLocation(ledgerId, 0));
+        }
+    }
+
+    @Test
+    public void testRemovedLedgersSkippedByClock() {
+        index = new HotLocationIndex(UnpooledByteBufAllocator.DEFAULT, MAX_SIZE);
+        addLedgers(1, 10);
+        index.removeLedger(1);
+        index.removeLedger(5);
+        assertEquals(8, index.ledgersCount());
+        assertEquals(8 * LEDGER_SIZE, index.size());
+
+        // The budget is not exceeded, no ledger is evicted
+        addLedgers(11, 12);
+        assertEquals(10, index.ledgersCount());
+
+        // The removed ledgers don't count as evicted
+        addLedgers(13, 13);
+        assertEquals(9, index.ledgersCount());
+        assertEquals(0, index.getLocation(2, 0));
+        assertEquals(0, index.getLocation(3, 0));
+        for (long ledgerId = 4; ledgerId <= 13; ledgerId++) {
+            if (ledgerId != 5) {
+                assertEquals(location(ledgerId, 0), index.getLocation(ledgerId, 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+
+/**
+ * Test the admission and eviction of the TinyLfuReadCache class, compared to the plain ReadCache.
+ */
+public class TinyLfuReadCacheTest {
+
+    private static final int ENTRY_SIZE = 1024;
+    // The main region holds 2 segments of 40 entries, the probation region 2 segments of 10 entries
+    private static final long CACHE_SIZE = 100 * ENTRY_SIZE;
+    private static final int PROBATION_PERCENT = 20;
+    private static final int ADMISSION_FREQUENCY = 2;
+    // Enough entries to rotate both segments of the probation region
+    private static final int PROBATION_ENTRIES = 20;
+
+    private static TinyLfuReadCache newTinyLfuReadCache() {
+        return TinyLfuReadCache.create(UnpooledByteBufAllocator.DEFAULT, CACHE_SIZE, PROBATION_PERCENT,
+                ADMISSION_FREQUENCY);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId));
+        }
+        return entry;
+    }
+
+    private static void put(ReadCache cache, long ledgerId, long entryId) {
+        ByteBuf entry = entry(ledgerId, entryId);
+        try {
+            cache.put(ledgerId, entryId, entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Read an entry, checking its content when it's found.
+     *
+     * @return whether the entry was found
+     */
+    private static boolean get(ReadCache cache, long ledgerId, long entryId) {
+        ByteBuf cached = cache.get(ledgerId, entryId);
+        if (cached == null) {
+            return false;
+        }
+        ByteBuf expected = entry(ledgerId, entryId);
+        try {
+            assertEquals(expected, cached);
+            return true;
+        } finally {
+            expected.release();
+            cached.release();
+        }
+    }
+
+    private static void fillProbation(ReadCache cache, long ledgerId) {
+        for (long entryId = 0; entryId < PROBATION_ENTRIES; entryId++) {
+            put(cache, ledgerId, entryId);
+        }
+    }
+
+    @Test
+    public void testNewEntryStaysOnProbation() {
+        try (TinyLfuReadCache cache = newTinyLfuReadCache()) {
+            put(cache, 1, 0);
+            assertTrue(cache.hasEntry(1, 0));
+            assertEquals(1, cache.count());
+
+            // The entries that were never read are all inserted in the probation region, which only holds the last ones
+            fillProbation(cache, 2);
+            assertFalse(cache.hasEntry(1, 0));
+            assertTrue(cache.hasEntry(2, PROBATION_ENTRIES - 1));
+            assertTrue(cache.count() < PROBATION_ENTRIES);
+        }
+    }
+
+    @Test
+    public void testFrequentEntryAdmittedOnPut() {
+        try (TinyLfuReadCache cache = newTinyLfuReadCache()) {
+            // The entry was missed often enough before being read from the entry log
+            assertFalse(get(cache, 1, 0));
+            assertFalse(get(cache, 1, 0));
+            put(cache, 1, 0);
+
+            fillProbation(cache, 2);
+            assertTrue(get(cache, 1, 0));
+        }
+    }
+
+    @Test
+    public void testFrequentEntryPromotedFromProbation() {
+        try (TinyLfuReadCache cache = newTinyLfuReadCache()) {
+            put(cache, 1, 0);
+            put(cache, 1, 1);
+            // Entry 0 is read twice and promoted to the main region, entry 1 only once
+            assertTrue(get(cache, 1, 0));
+            assertTrue(get(cache, 1, 0));
+            assertTrue(get(cache, 1, 1));
+
+            fillProbation(cache, 2);
+            assertTrue(get(cache, 1, 0));
+            assertFalse(cache.hasEntry(1, 1));
+        }
+    }
+
+    /**
+     * Tailing readers read the hot entries twice, then a catch-up reader scans a backlog larger than the cache,
+     * reading each entry once.
+     */
+    private static void tailingReadsThenScan(ReadCache cache, int hotEntries, int scannedEntries) {
+        for (long entryId = 0; entryId < hotEntries; entryId++) {
+            put(cache, 1, entryId);
+            assertTrue(get(cache, 1, entryId));
+            assertTrue(get(cache, 1, entryId));
+        }
+
+        for (long entryId = 0; entryId < scannedEntries; entryId++) {
+            // Miss, then read from the entry log and inserted
+            assertFalse(get(cache, 2, entryId));
+            put(cache, 2, entryId);
+        }
+    }
+
+    @Test
+    public void testScanDoesNotEvictFrequentEntries() {
+        int hotEntries = 30;
+        int scannedEntries = 200;
+        try (TinyLfuReadCache cache = newTinyLfuReadCache()) {
+            tailingReadsThenScan(cache, hotEntries, scannedEntries);
+
+            for (long entryId = 0; entryId < hotEntries; entryId++) {
+                assertTrue("hot entry " + entryId, get(cache, 1, entryId));
+            }
+            // The last scanned entries are still on probation
+            assertTrue(cache.hasEntry(2, scannedEntries - 1));
+            assertTrue(cache.size() <= CACHE_SIZE);
+        }
+
+        // With the plain read cache, the scan flushes out the hot entries
+        try (ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, CACHE_SIZE)) {
+            tailingReadsThenScan(cache, hotEntries, scannedEntries);
+
+            for (long entryId = 0; entryId < hotEntries; entryId++) {
+                assertNull("hot entry " + entryId, cache.get(1, entryId));
+            }
+            assertTrue(cache.hasEntry(2, scannedEntries - 1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProbationPercent() {
+        TinyLfuReadCache.create(UnpooledByteBufAllocator.DEFAULT, CACHE_SIZE, 100, ADMISSION_FREQUENCY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProbationPercentRejectedBeforeAllocation() {
+        // The main region would take the whole terabyte
+        TinyLfuReadCache.create(UnpooledByteBufAllocator.DEFAULT, 1L << 40, 0, ADMISSION_FREQUENCY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdmissionFrequencyAboveSketchMax() {
+        // The frequency estimated by the sketch never reaches it, no entry would be admitted in the main region
+        TinyLfuReadCache.create(UnpooledByteBufAllocator.DEFAULT, CACHE_SIZE, PROBATION_PERCENT,
+                FrequencySketch.MAX_FREQUENCY + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAdmissionFrequency() {
+        TinyLfuReadCache.create(UnpooledByteBufAllocator.DEFAULT, CACHE_SIZE, PROBATION_PERCENT, 0);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the timeouts and the budget of the speculative requests issued by AdaptiveSpeculativeRequestExecutionPolicy.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicyTest {
+
+    private static final double PERCENTILE = 95;
+    private static final int DEFAULT_TIMEOUT_MS = 20;
+    private static final int MAX_TIMEOUT_MS = 100;
+    private static final int MAX_BURST = 10;
+
+    // The speculative requests scheduled, and their delay
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Long> delaysNanos = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private RequestExecutor requestExecutor;
+
+    /**
+     * A request waiting on a replica of the given latency.
+     */
+    private static class RequestExecutor implements SpeculativeRequestExecutor {
+        long latencyNanos = -1L;
+        boolean issueNextRequest = true;
+        double percentile;
+        int numIssued;
+
+        @Override
+        public ListenableFuture<Boolean> issueSpeculativeRequest() {
+            numIssued++;
+            return Futures.immediateFuture(issueNextRequest);
+        }
+
+        @Override
+        public long getPendingReplicaLatencyNanos(double percentile) {
+            this.percentile = percentile;
+            return latencyNanos;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        doAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            delaysNanos.add(invocation.<TimeUnit>getArgument(2).toNanos(invocation.getArgument(1)));
+            return mock(ScheduledFuture.class);
+        }).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        requestExecutor = new RequestExecutor();
+    }
+
+    private static AdaptiveSpeculativeRequestExecutionPolicy newPolicy(double budgetPercent) {
+        return new AdaptiveSpeculativeRequestExecutionPolicy(PERCENTILE, DEFAULT_TIMEOUT_MS, MAX_TIMEOUT_MS,
+                budgetPercent);
+    }
+
+    private long lastDelayNanos() {
+        return delaysNanos.get(delaysNanos.size() - 1);
+    }
+
+    /**
+     * Initiate the given number of requests, and run their first speculative request.
+     */
+    private void runRequests(AdaptiveSpeculativeRequestExecutionPolicy policy, int numRequests) {
+        List<Runnable> speculativeRequests = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            policy.initiateSpeculativeRequest(scheduler, requestExecutor);
+            speculativeRequests.add(scheduled.get(scheduled.size() - 1));
+        }
+        speculativeRequests.forEach(Runnable::run);
+    }
+
+    @Test
+    public void testDefaultTimeoutWhileLatencyUnknown() {
+        newPolicy(10).initiateSpeculativeRequest(scheduler, requestExecutor);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT_MS), lastDelayNanos());
+        assertEquals(PERCENTILE, requestExecutor.percentile, 0.0);
+    }
+
+    @Test
+    public void testTimeoutFollowsReplicaLatency() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(10);
+        requestExecutor.latencyNanos = TimeUnit.MILLISECONDS.toNanos(3);
+        policy.initiateSpeculativeRequest(scheduler, requestExecutor);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(3), lastDelayNanos());
+
+        // The next speculative request waits on the latency of the replica read last
+        requestExecutor.latencyNanos = TimeUnit.MILLISECONDS.toNanos(7);
+        scheduled.get(0).run();
+        assertEquals(1, requestExecutor.numIssued);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(7), lastDelayNanos());
+
+        // A slow replica doesn't hold the request longer than the max timeout
+        requestExecutor.latencyNanos = TimeUnit.SECONDS.toNanos(1);
+        policy.initiateSpeculativeRequest(scheduler, requestExecutor);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(MAX_TIMEOUT_MS), lastDelayNanos());
+    }
+
+    @Test
+    public void testBudgetLimitsSpeculativeRequests() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(10);
+        // Every request is slow, only the burst is hedged
+        runRequests(policy, 2 * MAX_BURST);
+        assertEquals(MAX_BURST, requestExecutor.numIssued);
+
+        // Then one request out of ten
+        runRequests(policy, 10);
+        assertEquals(MAX_BURST + 1, requestExecutor.numIssued);
+        runRequests(policy, 9);
+        assertEquals(MAX_BURST + 1, requestExecutor.numIssued);
+        runRequests(policy, 1);
+        assertEquals(MAX_BURST + 2, requestExecutor.numIssued);
+    }
+
+    @Test
+    public void testNoBudgetBeyondBurst() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0);
+        runRequests(policy, 100);
+        assertEquals(MAX_BURST, requestExecutor.numIssued);
+    }
+
+    @Test
+    public void testBudgetReturnedWhenNothingSent() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0);
+        // There is no replica left to read from, the speculative requests don't spend the budget
+        requestExecutor.issueNextRequest = false;
+        runRequests(policy, 3 * MAX_BURST);
+        assertEquals(3 * MAX_BURST, requestExecutor.numIssued);
+        assertEquals(3 * MAX_BURST, scheduled.size());
+
+        requestExecutor.issueNextRequest = true;
+        runRequests(policy, 2 * MAX_BURST);
+        assertEquals(4 * MAX_BURST, requestExecutor.numIssued);
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        try {
+            new AdaptiveSpeculativeRequestExecutionPolicy(0, DEFAULT_TIMEOUT_MS, MAX_TIMEOUT_MS, 10);
+            fail("The percentile should be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new AdaptiveSpeculativeRequestExecutionPolicy(101, DEFAULT_TIMEOUT_MS, MAX_TIMEOUT_MS, 10);
+            fail("The percentile should be at most 100");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new AdaptiveSpeculativeRequestExecutionPolicy(PERCENTILE, DEFAULT_TIMEOUT_MS, MAX_TIMEOUT_MS, -1);
+            fail("The budget should not be negative");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+
+/**
+ * A client context whose bookie client is provided by the test, to test the client operations without bookies.
+ */
+final class MockClientContext {
+
+    static final byte[] PASSWORD = "password".getBytes();
+
+    private MockClientContext() {
+    }
+
+    /**
+     * Create a client context. The scheduler is also used as the main worker pool, and the ledger metadata
+     * updates always succeed.
+     */
+    static ClientContext create(ClientConfiguration conf, BookieClient bookieClient, OrderedScheduler scheduler) {
+        ClientInternalConf internalConf = ClientInternalConf.fromConfig(conf);
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        EnsemblePlacementPolicy placementPolicy = mock(EnsemblePlacementPolicy.class);
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.writeLedgerMetadata(anyLong(), any(), any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(new Versioned<>(invocation.<LedgerMetadata>getArgument(1),
+                        new LongVersion(1))));
+
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(internalConf);
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getMainWorkerPool()).thenReturn(scheduler);
+        when(clientCtx.getScheduler()).thenReturn(scheduler);
+        when(clientCtx.getClientStats()).thenReturn(clientStats);
+        when(clientCtx.getPlacementPolicy()).thenReturn(placementPolicy);
+        when(clientCtx.getLedgerManager()).thenReturn(ledgerManager);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        return clientCtx;
+    }
+
+    static Versioned<LedgerMetadata> metadata(long ledgerId, List<BookieId> ensemble, int writeQuorumSize,
+                                              int ackQuorumSize) {
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withPassword(PASSWORD)
+                .withDigestType(DigestType.CRC32C)
+                .withEnsembleSize(ensemble.size())
+                .withWriteQuorumSize(writeQuorumSize)
+                .withAckQuorumSize(ackQuorumSize)
+                .newEnsembleEntry(0L, ensemble)
+                .build();
+        return new Versioned<>(metadata, new LongVersion(0));
+    }
+
+    /**
+     * Create a handle of an open ledger written to {@code ensemble}.
+     */
+    static LedgerHandle newLedgerHandle(ClientContext clientCtx, long ledgerId, List<BookieId> ensemble,
+                                        int writeQuorumSize, int ackQuorumSize) throws Exception {
+        return new LedgerHandle(clientCtx, ledgerId, metadata(ledgerId, ensemble, writeQuorumSize, ackQuorumSize),
+                BookKeeper.DigestType.CRC32C, PASSWORD, WriteFlag.NONE);
+    }
+}
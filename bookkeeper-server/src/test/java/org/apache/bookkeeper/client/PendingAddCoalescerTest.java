@@ -0,0 +1,250 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the coalescing of the entries added to a ledger into batch add requests.
+ */
+public class PendingAddCoalescerTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int ENTRY_SIZE = 16;
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+    // The batches are sent by the scheduler thread
+    private final List<BatchRequest> requests = new CopyOnWriteArrayList<>();
+    private final List<long[]> completions = Collections.synchronizedList(new ArrayList<>());
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private OrderedScheduler scheduler;
+    private BookieClient bookieClient;
+
+    /**
+     * A batch add request received by the bookie client.
+     */
+    private static class BatchRequest {
+        final BookieId bookieId;
+        final long[] entryIds;
+        final WriteCallback[] cbs;
+        final Object ctx;
+
+        BatchRequest(BookieId bookieId, long[] entryIds, WriteCallback[] cbs, Object ctx) {
+            this.bookieId = bookieId;
+            this.entryIds = entryIds;
+            this.cbs = cbs;
+            this.ctx = ctx;
+        }
+
+        void complete(int rc) {
+            for (int i = 0; i < entryIds.length; i++) {
+                cbs[i].writeComplete(rc, LEDGER_ID, entryIds[i], bookieId, ctx);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("test-pending-add-coalescer").build();
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            requests.add(new BatchRequest(invocation.getArgument(0), invocation.getArgument(3),
+                    invocation.getArgument(5), invocation.getArgument(6)));
+            return null;
+        }).when(bookieClient).addEntries(any(), anyLong(), any(), any(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    private LedgerHandle newLedgerHandle(long windowMicros, int maxBytes) throws Exception {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setBatchAddEnabled(true)
+                .setAddEntryCoalescingWindowMicros(windowMicros)
+                .setAddEntryCoalescingMaxBytes(maxBytes);
+        ClientContext clientCtx = MockClientContext.create(conf, bookieClient, scheduler);
+        // Each entry is written to all the bookies
+        return MockClientContext.newLedgerHandle(clientCtx, LEDGER_ID, ensemble, 3, 2);
+    }
+
+    private void addEntries(LedgerHandle lh, int numEntries) {
+        AddCallback cb = (rc, handle, entryId, ctx) -> completions.add(new long[] {rc, entryId});
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+            entry.writeZero(ENTRY_SIZE);
+            entries.add(entry);
+            lh.asyncAddEntry(entry, cb, null);
+        }
+    }
+
+    private List<BatchRequest> batch(int batchIndex) {
+        // Each batch is sent to each bookie with a single request
+        return requests.subList(batchIndex * ensemble.size(), (batchIndex + 1) * ensemble.size());
+    }
+
+    private void checkBatch(int batchIndex, String expectedEntryIds) {
+        for (int bookieIndex = 0; bookieIndex < ensemble.size(); bookieIndex++) {
+            BookieId bookieId = ensemble.get(bookieIndex);
+            BatchRequest request = batch(batchIndex).stream()
+                    .filter(r -> r.bookieId.equals(bookieId))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("No request sent to " + bookieId));
+            assertEquals(bookieIndex, request.ctx);
+            assertEquals(expectedEntryIds, Arrays.toString(request.entryIds));
+        }
+    }
+
+    private void completeBatch(int batchIndex) {
+        batch(batchIndex).forEach(request -> request.complete(BKException.Code.OK));
+    }
+
+    private void checkCompletions(int expectedRc, long... expectedEntryIds) {
+        await().untilAsserted(() -> assertEquals(expectedEntryIds.length, completions.size()));
+        for (int i = 0; i < expectedEntryIds.length; i++) {
+            assertEquals(expectedRc, completions.get(i)[0]);
+            assertEquals(expectedEntryIds[i], completions.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void testEntriesSentWhenWindowElapses() throws Exception {
+        LedgerHandle lh = newLedgerHandle(TimeUnit.MILLISECONDS.toMicros(200), 1024 * 1024);
+        addEntries(lh, 3);
+        // The entries are held until the end of the window
+        assertTrue(requests.isEmpty());
+
+        await().untilAsserted(() -> assertEquals(3, requests.size()));
+        checkBatch(0, "[0, 1, 2]");
+        verify(bookieClient, never()).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+
+        completeBatch(0);
+        checkCompletions(BKException.Code.OK, 0, 1, 2);
+        assertEquals(2, lh.getLastAddConfirmed());
+        await().untilAsserted(() -> entries.forEach(entry -> assertEquals(0, entry.refCnt())));
+    }
+
+    @Test
+    public void testEntriesSentWhenMaxBytesReached() throws Exception {
+        // The window never elapses during the test, the batches are only sent because of their size
+        LedgerHandle lh = newLedgerHandle(TimeUnit.HOURS.toMicros(1), 2 * ENTRY_SIZE);
+        addEntries(lh, 2);
+        await().untilAsserted(() -> assertEquals(3, requests.size()));
+        checkBatch(0, "[0, 1]");
+
+        // The next entry waits for the one after it
+        addEntries(lh, 1);
+        await().pollDelay(100, TimeUnit.MILLISECONDS).untilAsserted(() -> assertEquals(3, requests.size()));
+        addEntries(lh, 1);
+        await().untilAsserted(() -> assertEquals(6, requests.size()));
+        checkBatch(1, "[2, 3]");
+
+        completeBatch(0);
+        completeBatch(1);
+        checkCompletions(BKException.Code.OK, 0, 1, 2, 3);
+    }
+
+    @Test
+    public void testEntriesCompletedInOrder() throws Exception {
+        LedgerHandle lh = newLedgerHandle(TimeUnit.HOURS.toMicros(1), 2 * ENTRY_SIZE);
+        addEntries(lh, 2);
+        await().untilAsserted(() -> assertEquals(3, requests.size()));
+        addEntries(lh, 2);
+        await().untilAsserted(() -> assertEquals(6, requests.size()));
+
+        // The second batch is acknowledged first, but its entries wait for the entries of the first batch
+        completeBatch(1);
+        await().pollDelay(100, TimeUnit.MILLISECONDS).untilAsserted(() -> assertTrue(completions.isEmpty()));
+        assertEquals(-1, lh.getLastAddConfirmed());
+
+        completeBatch(0);
+        checkCompletions(BKException.Code.OK, 0, 1, 2, 3);
+        assertEquals(3, lh.getLastAddConfirmed());
+    }
+
+    @Test
+    public void testCoalescedEntriesErroredOutOnClose() throws Exception {
+        LedgerHandle lh = newLedgerHandle(TimeUnit.SECONDS.toMicros(1), 1024 * 1024);
+        addEntries(lh, 3);
+
+        // The close fails the entries held by the coalescer
+        lh.closeAsync().get(10, TimeUnit.SECONDS);
+        checkCompletions(BKException.Code.LedgerClosedException, 0, 1, 2);
+        assertTrue(lh.isClosed());
+        assertEquals(-1, lh.getLastAddConfirmed());
+
+        // The flush at the end of the window sends nothing, and releases the entries
+        await().untilAsserted(() -> entries.forEach(entry -> assertEquals(0, entry.refCnt())));
+        assertTrue(requests.isEmpty());
+        verify(bookieClient, never()).addEntries(any(), anyLong(), any(), any(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+    }
+
+    @Test
+    public void testWindowIgnoredWhenBatchAddDisabled() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setAddEntryCoalescingWindowMicros(TimeUnit.HOURS.toMicros(1));
+        assertNull(MockClientContext.newLedgerHandle(MockClientContext.create(conf, bookieClient, scheduler),
+                LEDGER_ID, ensemble, 3, 2).addCoalescer);
+
+        conf.setBatchAddEnabled(true).setUseV2WireProtocol(true);
+        assertNull(MockClientContext.newLedgerHandle(MockClientContext.create(conf, bookieClient, scheduler),
+                LEDGER_ID, ensemble, 3, 2).addCoalescer);
+
+        conf.setUseV2WireProtocol(false);
+        assertNotNull(MockClientContext.newLedgerHandle(MockClientContext.create(conf, bookieClient, scheduler),
+                LEDGER_ID, ensemble, 3, 2).addCoalescer);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batched add operations, whose write requests are grouped by bookie before being sent.
+ */
+public class PendingAddOpTest {
+
+    private static final long LEDGER_ID = 1;
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+    private final List<BatchRequest> requests = new ArrayList<>();
+    private OrderedScheduler scheduler;
+    private BookieClient bookieClient;
+    private ClientContext clientCtx;
+
+    /**
+     * A batch add request received by the bookie client.
+     */
+    private static class BatchRequest {
+        final BookieId bookieId;
+        final long[] entryIds;
+        final WriteCallback[] cbs;
+        final Object ctx;
+
+        BatchRequest(BookieId bookieId, long[] entryIds, WriteCallback[] cbs, Object ctx) {
+            this.bookieId = bookieId;
+            this.entryIds = entryIds;
+            this.cbs = cbs;
+            this.ctx = ctx;
+        }
+
+        void complete(int rc) {
+            for (int i = 0; i < entryIds.length; i++) {
+                cbs[i].writeComplete(rc, LEDGER_ID, entryIds[i], bookieId, ctx);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("test-pending-add-op").build();
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            // The buffers to send are only valid during the call
+            for (ReferenceCounted toSend : invocation.<ReferenceCounted[]>getArgument(4)) {
+                assertTrue(toSend.refCnt() > 0);
+            }
+            requests.add(new BatchRequest(invocation.getArgument(0), invocation.getArgument(3),
+                    invocation.getArgument(5), invocation.getArgument(6)));
+            return null;
+        }).when(bookieClient).addEntries(any(), anyLong(), any(), any(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+        clientCtx = MockClientContext.create(new ClientConfiguration(), bookieClient, scheduler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    private static List<ByteBuf> entries(int numEntries) {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf entry = Unpooled.buffer(16);
+            entry.writeLong(i);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private BatchRequest request(int bookieIndex) {
+        for (BatchRequest request : requests) {
+            if (request.bookieId.equals(ensemble.get(bookieIndex))) {
+                return request;
+            }
+        }
+        throw new AssertionError("No request sent to bookie " + bookieIndex);
+    }
+
+    @Test
+    public void testEntriesGroupedByBookie() throws Exception {
+        LedgerHandle lh = MockClientContext.newLedgerHandle(clientCtx, LEDGER_ID, ensemble, 2, 2);
+        List<ByteBuf> entries = entries(4);
+        CompletableFuture<Long> result = lh.appendBatchAsync(entries);
+
+        // One request per bookie, with the entries of the batch in the write set of the bookie, in order
+        assertEquals(3, requests.size());
+        assertEquals("[0, 2, 3]", Arrays.toString(request(0).entryIds));
+        assertEquals("[0, 1, 3]", Arrays.toString(request(1).entryIds));
+        assertEquals("[1, 2]", Arrays.toString(request(2).entryIds));
+        for (int bookieIndex = 0; bookieIndex < ensemble.size(); bookieIndex++) {
+            assertEquals(bookieIndex, request(bookieIndex).ctx);
+        }
+        verify(bookieClient, never()).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+
+        requests.forEach(request -> request.complete(BKException.Code.OK));
+        assertEquals(3L, result.get(10, TimeUnit.SECONDS).longValue());
+        assertEquals(3, lh.getLastAddConfirmed());
+        // The payloads were handed to the ops, and the packages sent were released with the batch
+        entries.forEach(entry -> assertEquals(0, entry.refCnt()));
+    }
+
+    @Test
+    public void testEntriesCompletedInOrder() throws Exception {
+        LedgerHandle lh = MockClientContext.newLedgerHandle(clientCtx, LEDGER_ID, ensemble, 2, 2);
+        CompletableFuture<Long> result = lh.appendBatchAsync(entries(4));
+        assertEquals(3, requests.size());
+
+        // Entries 0 and 3 reach the ack quorum, but entry 3 waits for the entries before it
+        request(0).complete(BKException.Code.OK);
+        request(1).complete(BKException.Code.OK);
+        assertEquals(0, lh.getLastAddConfirmed());
+        assertFalse(result.isDone());
+
+        request(2).complete(BKException.Code.OK);
+        assertEquals(3L, result.get(10, TimeUnit.SECONDS).longValue());
+        assertEquals(3, lh.getLastAddConfirmed());
+    }
+
+    @Test
+    public void testEntriesAfterBatchGetNextIds() throws Exception {
+        LedgerHandle lh = MockClientContext.newLedgerHandle(clientCtx, LEDGER_ID, ensemble, 3, 2);
+        CompletableFuture<Long> first = lh.appendBatchAsync(entries(2));
+        CompletableFuture<Long> second = lh.appendBatchAsync(entries(3));
+
+        // Each batch is sent to each bookie of the write quorum with a single request
+        assertEquals(6, requests.size());
+        assertEquals("[2, 3, 4]", Arrays.toString(requests.get(5).entryIds));
+        requests.forEach(request -> request.complete(BKException.Code.OK));
+        assertEquals(1L, first.get(10, TimeUnit.SECONDS).longValue());
+        assertEquals(4L, second.get(10, TimeUnit.SECONDS).longValue());
+    }
+
+    @Test
+    public void testEmptyBatchRejected() throws Exception {
+        LedgerHandle lh = MockClientContext.newLedgerHandle(clientCtx, LEDGER_ID, ensemble, 2, 2);
+        try {
+            lh.appendBatchAsync(new ArrayList<>()).get(10, TimeUnit.SECONDS);
+            fail("An empty batch can't be appended");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void testBatchOnAdvHandleReleasesEntries() throws Exception {
+        LedgerHandleAdv lh = new LedgerHandleAdv(clientCtx, LEDGER_ID,
+                MockClientContext.metadata(LEDGER_ID, ensemble, 2, 2), BookKeeper.DigestType.CRC32C,
+                MockClientContext.PASSWORD, WriteFlag.NONE);
+        List<ByteBuf> entries = entries(2);
+        try {
+            lh.appendBatchAsync(entries).get(10, TimeUnit.SECONDS);
+            fail("The entries of a ledger handle adv have explicit ids");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKIllegalOpException);
+        }
+        entries.forEach(entry -> assertEquals(0, entry.refCnt()));
+        assertTrue(requests.isEmpty());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the retries of the reads which failed fast on the next replica.
+ */
+public class PendingReadOpTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final byte[] DATA = "entry-data".getBytes();
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"));
+    // The result code answered by each bookie, the bookies not in the map return the entry
+    private final Map<BookieId, Integer> bookieRcs = new HashMap<>();
+    // The bookies the reads were sent to, and whether the reads were allowed to fail fast
+    private final List<BookieId> readBookies = new ArrayList<>();
+    private final List<Boolean> readFastFails = new ArrayList<>();
+    private OrderedScheduler scheduler;
+    private ClientContext clientCtx;
+    private LedgerHandle lh;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("test-pending-read-op").build();
+        BookieClient bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            BookieId bookieId = invocation.getArgument(0);
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            readBookies.add(bookieId);
+            readFastFails.add(invocation.getArgument(7));
+
+            int rc = bookieRcs.getOrDefault(bookieId, BKException.Code.OK);
+            if (rc != BKException.Code.OK) {
+                cb.readEntryComplete(rc, LEDGER_ID, entryId, null, invocation.getArgument(4));
+                return null;
+            }
+            ByteBufList toSend = (ByteBufList) lh.macManager.computeDigestAndPackageForSending(entryId, -1,
+                    DATA.length, Unpooled.wrappedBuffer(DATA), null, BookieProtocol.FLAG_NONE);
+            ByteBuf entry = ByteBufList.coalesce(toSend);
+            toSend.release();
+            try {
+                cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId, entry, invocation.getArgument(4));
+            } finally {
+                entry.release();
+            }
+            return null;
+        }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt(), any(), anyBoolean());
+
+        // No speculative read, the replicas are only read after the previous one failed
+        ClientConfiguration conf = new ClientConfiguration().setFirstSpeculativeReadTimeout(0);
+        clientCtx = MockClientContext.create(conf, bookieClient, scheduler);
+        lh = MockClientContext.newLedgerHandle(clientCtx, LEDGER_ID, ensemble, 3, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    private PendingReadOp newReadOp(boolean allowFailFast) {
+        PendingReadOp op = new PendingReadOp(lh, clientCtx, 0, 0, false);
+        if (allowFailFast) {
+            op.allowFailFastOnUnwritableChannel();
+        }
+        return op;
+    }
+
+    private static void checkEntry(PendingReadOp op) throws Exception {
+        try (LedgerEntries entries = op.future().get(10, TimeUnit.SECONDS)) {
+            assertArrayEquals(DATA, entries.getEntry(0).getEntryBytes());
+        }
+    }
+
+    @Test
+    public void testTooManyRequestsRetriedOnNextReplica() throws Exception {
+        bookieRcs.put(ensemble.get(0), BKException.Code.TooManyRequestsException);
+        PendingReadOp op = newReadOp(true);
+        op.run();
+
+        checkEntry(op);
+        assertEquals(ensemble.subList(0, 2), readBookies);
+        assertEquals(Arrays.asList(true, true), readFastFails);
+    }
+
+    @Test
+    public void testLastReplicaReadNotFailingFast() throws Exception {
+        bookieRcs.put(ensemble.get(0), BKException.Code.TooManyRequestsException);
+        bookieRcs.put(ensemble.get(1), BKException.Code.TooManyRequestsException);
+        PendingReadOp op = newReadOp(true);
+        op.run();
+
+        // The last replica has to serve the read, even if it is loaded
+        checkEntry(op);
+        assertEquals(ensemble, readBookies);
+        assertEquals(Arrays.asList(true, true, false), readFastFails);
+    }
+
+    @Test
+    public void testReadsNotFailingFastUnlessAllowed() throws Exception {
+        PendingReadOp op = newReadOp(false);
+        op.run();
+
+        checkEntry(op);
+        assertEquals(ensemble.subList(0, 1), readBookies);
+        assertEquals(Arrays.asList(false), readFastFails);
+    }
+
+    @Test
+    public void testReadFailsWhenAllReplicasFail() throws Exception {
+        ensemble.forEach(bookieId -> bookieRcs.put(bookieId, BKException.Code.TooManyRequestsException));
+        PendingReadOp op = newReadOp(true);
+        op.run();
+
+        try {
+            op.future().get(10, TimeUnit.SECONDS);
+            fail("The read should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKTooManyRequestsException);
+        }
+        assertEquals(ensemble, readBookies);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.feature.SettableFeatureProvider.DISABLE_ALL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the reordering of the reads by the expected latency of the bookies.
+ */
+public class ReadReorderByLatencyTest {
+
+    private static final int NUM_READS = 100;
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("127.0.0.1:3181"), BookieId.parse("127.0.0.2:3181"), BookieId.parse("127.0.0.3:3181"));
+    private final DistributionSchedule schedule = new RoundRobinDistributionSchedule(3, 2, 3);
+    private final Map<BookieId, Long> latencies = new HashMap<>();
+    private final Map<BookieId, Long> pendingRequests = new HashMap<>();
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return pendingRequests.getOrDefault(bookieSocketAddress, 0L);
+        }
+
+        @Override
+        public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+            return latencies.getOrDefault(bookieSocketAddress, LATENCY_NANOS);
+        }
+    };
+    private RackawareEnsemblePlacementPolicy repp;
+
+    @After
+    public void tearDown() {
+        if (repp != null) {
+            repp.uninitalize();
+        }
+    }
+
+    private void initialize(boolean reorderReadsByLatency) {
+        ClientConfiguration conf = new ClientConfiguration().setReorderReadsByLatency(reorderReadsByLatency);
+        repp = new RackawareEnsemblePlacementPolicy();
+        repp.initialize(conf, Optional.of(new TopologyAwareEnsemblePlacementPolicy.DefaultResolver(
+                () -> NetworkTopology.DEFAULT_REGION_AND_RACK)), null, DISABLE_ALL, NullStatsLogger.INSTANCE,
+                BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        repp.onClusterChanged(new HashSet<>(ensemble), Collections.emptySet());
+    }
+
+    private List<Integer> reorderReads() {
+        DistributionSchedule.WriteSet writeSet = repp.reorderReadSequence(ensemble, healthInfo,
+                schedule.getWriteSet(0));
+        try {
+            return Arrays.asList(writeSet.get(0), writeSet.get(1), writeSet.get(2));
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testSlowBookieNeverReadFirst() {
+        initialize(true);
+        latencies.put(ensemble.get(0), 10 * LATENCY_NANOS);
+        for (int i = 0; i < NUM_READS; i++) {
+            List<Integer> order = reorderReads();
+            // The bookie picked is moved to the front, the others keep their order
+            assertTrue(order.toString(), order.equals(Arrays.asList(1, 0, 2)) || order.equals(Arrays.asList(2, 0, 1)));
+        }
+    }
+
+    @Test
+    public void testPendingRequestsWeighLatency() {
+        initialize(true);
+        // The bookie 0 is the fastest, but the requests queued on it make it the slowest to answer
+        latencies.put(ensemble.get(0), LATENCY_NANOS / 2);
+        pendingRequests.put(ensemble.get(0), 10L);
+        for (int i = 0; i < NUM_READS; i++) {
+            assertNotEquals(0, reorderReads().get(0).intValue());
+        }
+    }
+
+    @Test
+    public void testUnknownLatencyTriedFirst() {
+        initialize(true);
+        latencies.put(ensemble.get(2), -1L);
+        int readsFromUnknown = 0;
+        for (int i = 0; i < NUM_READS; i++) {
+            int first = reorderReads().get(0);
+            // On a tie between the bookies 0 and 1, the order of the write set is kept
+            assertNotEquals(1, first);
+            if (first == 2) {
+                readsFromUnknown++;
+            }
+        }
+        assertTrue(readsFromUnknown > 0);
+    }
+
+    @Test
+    public void testNotReorderedWhenDisabled() {
+        initialize(false);
+        latencies.put(ensemble.get(0), 10 * LATENCY_NANOS);
+        for (int i = 0; i < NUM_READS; i++) {
+            assertEquals(Arrays.asList(0, 1, 2), reorderReads());
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.junit.Test;
+
+/**
+ * Test the ordering, the bounded read-ahead, the failures and the close of the LedgerEntryStreamImpl class.
+ */
+public class LedgerEntryStreamImplTest {
+
+    private static final long LEDGER_ID = 1;
+
+    /**
+     * A range reader whose reads are completed by the test.
+     */
+    private static class TestRangeReader implements LedgerEntryStreamImpl.RangeReader {
+        final List<long[]> ranges = new ArrayList<>();
+        final List<CompletableFuture<LedgerEntries>> reads = new ArrayList<>();
+        final List<ByteBuf> buffers = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<LedgerEntries> readRange(long firstEntry, long lastEntry, long readIndex) {
+            assertEquals(ranges.size(), readIndex);
+            ranges.add(new long[] {firstEntry, lastEntry});
+            CompletableFuture<LedgerEntries> read = new CompletableFuture<>();
+            reads.add(read);
+            return read;
+        }
+
+        void complete(int readIndex) {
+            long[] range = ranges.get(readIndex);
+            List<LedgerEntry> entries = new ArrayList<>();
+            for (long entryId = range[0]; entryId <= range[1]; entryId++) {
+                ByteBuf buf = Unpooled.buffer(8);
+                buf.writeLong(entryId);
+                buffers.add(buf);
+                entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, buf.readableBytes(), buf));
+            }
+            reads.get(readIndex).complete(LedgerEntriesImpl.create(entries));
+        }
+
+        void completeAll() {
+            for (int i = 0; i < reads.size(); i++) {
+                if (!reads.get(i).isDone()) {
+                    complete(i);
+                }
+            }
+        }
+    }
+
+    private static void checkEntries(CompletableFuture<LedgerEntries> read, long firstEntry, long lastEntry)
+            throws Exception {
+        try (LedgerEntries entries = read.get()) {
+            long entryId = firstEntry;
+            for (LedgerEntry entry : entries) {
+                assertEquals(entryId, entry.getEntryId());
+                assertEquals(entryId, entry.getEntryBuffer().getLong(0));
+                entryId++;
+            }
+            assertEquals(lastEntry + 1, entryId);
+        }
+    }
+
+    @Test
+    public void testEntriesReturnedInOrder() throws Exception {
+        TestRangeReader reader = new TestRangeReader();
+        LedgerEntryStreamImpl stream = new LedgerEntryStreamImpl(5, 29, 10, 3, reader);
+
+        List<CompletableFuture<LedgerEntries>> results = new ArrayList<>();
+        while (stream.hasNext()) {
+            results.add(stream.readNextAsync());
+        }
+        // The last range is cut at the last entry of the stream
+        assertEquals(3, reader.ranges.size());
+        assertEquals("[5, 14]", Arrays.toString(reader.ranges.get(0)));
+        assertEquals("[15, 24]", Arrays.toString(reader.ranges.get(1)));
+        assertEquals("[25, 29]", Arrays.toString(reader.ranges.get(2)));
+
+        // The reads complete out of order, the results are still in order
+        reader.complete(2);
+        reader.complete(0);
+        reader.complete(1);
+        assertEquals(3, results.size());
+        checkEntries(results.get(0), 5, 14);
+        checkEntries(results.get(1), 15, 24);
+        checkEntries(results.get(2), 25, 29);
+
+        assertFalse(stream.hasNext());
+        try {
+            stream.readNextAsync().get();
+            fail("There are no entries left in the stream");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKNoSuchEntryException);
+        }
+        stream.close();
+        reader.buffers.forEach(buf -> assertEquals(0, buf.refCnt()));
+    }
+
+    @Test
+    public void testOutstandingReadsBounded() throws Exception {
+        TestRangeReader reader = new TestRangeReader();
+        LedgerEntryStreamImpl stream = new LedgerEntryStreamImpl(0, 99, 10, 3, reader);
+        // Nothing is read before the first entries are asked for
+        assertTrue(stream.hasNext());
+        assertEquals(0, reader.ranges.size());
+
+        // The first read is taken and replaced, the reads in flight stay at the max
+        CompletableFuture<LedgerEntries> first = stream.readNextAsync();
+        assertEquals(4, reader.ranges.size());
+
+        // No more read is sent until the caller takes the next entries, even if the reads are completed
+        reader.completeAll();
+        assertEquals(4, reader.ranges.size());
+        checkEntries(first, 0, 9);
+        assertEquals(4, reader.ranges.size());
+
+        CompletableFuture<LedgerEntries> second = stream.readNextAsync();
+        assertEquals(5, reader.ranges.size());
+        checkEntries(second, 10, 19);
+
+        stream.close();
+    }
+
+    @Test
+    public void testFailedReadDoesNotStopStream() throws Exception {
+        TestRangeReader reader = new TestRangeReader();
+        LedgerEntryStreamImpl stream = new LedgerEntryStreamImpl(0, 29, 10, 2, reader);
+
+        CompletableFuture<LedgerEntries> first = stream.readNextAsync();
+        CompletableFuture<LedgerEntries> second = stream.readNextAsync();
+        CompletableFuture<LedgerEntries> third = stream.readNextAsync();
+        BKException failure = new BKException.BKReadException();
+        reader.complete(0);
+        reader.reads.get(1).completeExceptionally(failure);
+        reader.complete(2);
+
+        checkEntries(first, 0, 9);
+        try {
+            second.get();
+            fail("The read of the second range failed");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        checkEntries(third, 20, 29);
+        assertFalse(stream.hasNext());
+    }
+
+    @Test
+    public void testCloseReleasesOutstandingReads() throws Exception {
+        TestRangeReader reader = new TestRangeReader();
+        LedgerEntryStreamImpl stream = new LedgerEntryStreamImpl(0, 99, 10, 4, reader);
+
+        CompletableFuture<LedgerEntries> first = stream.readNextAsync();
+        // One of the reads ahead completes before the close, the others after
+        reader.complete(1);
+        stream.close();
+        reader.completeAll();
+
+        // Only the entries taken by the caller are still retained
+        checkEntries(first, 0, 9);
+        for (ByteBuf buf : reader.buffers) {
+            assertEquals(0, buf.refCnt());
+        }
+
+        assertFalse(stream.hasNext());
+        try {
+            stream.readNextAsync().get();
+            fail("The stream is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKUnexpectedConditionException);
+        }
+        // No read is sent after the close
+        assertEquals(5, reader.ranges.size());
+        stream.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEntriesPerRead() {
+        new LedgerEntryStreamImpl(0, 99, 0, 4, new TestRangeReader());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOutstandingReads() {
+        new LedgerEntryStreamImpl(0, 99, 10, 0, new TestRangeReader());
+    }
+}
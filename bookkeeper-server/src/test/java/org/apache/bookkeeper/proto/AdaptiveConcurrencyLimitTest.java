@@ -0,0 +1,182 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_CONCURRENCY_LIMIT;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_CONCURRENCY_LIMIT_EXCEEDED;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_REQUESTS_IN_FLIGHT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.test.CountingStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.junit.Test;
+
+/**
+ * Test the increase and the decrease of the adaptive concurrency limit of a bookie.
+ */
+public class AdaptiveConcurrencyLimitTest {
+
+    private final CountingStatsLogger statsLogger = new CountingStatsLogger();
+
+    /**
+     * Complete a request of the given latency, with the other requests in flight.
+     */
+    private static void completeRequest(AdaptiveConcurrencyLimit limit, long latencyMillis, int rc) {
+        limit.acquire();
+        limit.onComplete(MathUtils.nowInNano() - TimeUnit.MILLISECONDS.toNanos(latencyMillis), rc);
+    }
+
+    private static void acquire(AdaptiveConcurrencyLimit limit, int numRequests) {
+        for (int i = 0; i < numRequests; i++) {
+            limit.acquire();
+        }
+    }
+
+    @Test
+    public void testRequestsOverLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, statsLogger);
+        assertTrue(limit.acquire());
+        assertFalse(limit.isExceeded());
+        assertTrue(limit.acquire());
+        assertTrue(limit.isExceeded());
+
+        // The requests over the limit are counted anyway
+        assertFalse(limit.acquire());
+        assertEquals(3, limit.getInFlight());
+        assertEquals(1, statsLogger.getCounterValue(BOOKIE_CONCURRENCY_LIMIT_EXCEEDED));
+
+        limit.release();
+        limit.onComplete(MathUtils.nowInNano(), BKException.Code.BookieHandleNotAvailableException);
+        assertEquals(1, limit.getInFlight());
+        assertFalse(limit.isExceeded());
+    }
+
+    @Test
+    public void testIncreaseWithStableLatency() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 20, statsLogger);
+        // Without enough requests in flight, the bookie might not take more
+        for (int i = 0; i < 10; i++) {
+            completeRequest(limit, 10, BKException.Code.OK);
+        }
+        assertEquals(10, limit.getLimit());
+
+        // The limit grows additively while the bookie keeps up with its load, up to the max limit
+        acquire(limit, 9);
+        for (int i = 0; i < 5; i++) {
+            completeRequest(limit, 10, BKException.Code.OK);
+        }
+        assertTrue(limit.getLimit() > 10);
+        for (int i = 0; i < 100; i++) {
+            completeRequest(limit, 10, BKException.Code.OK);
+        }
+        assertEquals(20, limit.getLimit());
+        assertEquals(9, limit.getInFlight());
+    }
+
+    @Test
+    public void testDecreaseWithIncreasingLatency() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 1, 40, statsLogger);
+        acquire(limit, 19);
+        completeRequest(limit, 1, BKException.Code.OK);
+        assertEquals(20, limit.getLimit());
+
+        // The requests queue up on the bookie, the limit shrinks
+        completeRequest(limit, 100, BKException.Code.OK);
+        assertTrue(limit.getLimit() < 20);
+        for (int i = 0; i < 100; i++) {
+            completeRequest(limit, 100, BKException.Code.OK);
+        }
+        assertTrue(limit.getLimit() < 10);
+        assertTrue(limit.getLimit() >= 1);
+    }
+
+    @Test
+    public void testMultiplicativeDecreaseOnRejections() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 20, statsLogger);
+        completeRequest(limit, 10, BKException.Code.TooManyRequestsException);
+        assertEquals(9, limit.getLimit());
+        completeRequest(limit, 10, BKException.Code.TimeoutException);
+        assertEquals(8, limit.getLimit());
+
+        // The errors which say nothing about the load of the bookie don't change the limit
+        completeRequest(limit, 10, BKException.Code.BookieHandleNotAvailableException);
+        assertEquals(8, limit.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            completeRequest(limit, 10, BKException.Code.TimeoutException);
+        }
+        assertEquals(2, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    public void testGaugesUnregisteredOnClose() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 20, statsLogger);
+        acquire(limit, 3);
+        assertEquals(10, statsLogger.getGauges().get(BOOKIE_CONCURRENCY_LIMIT).getSample().intValue());
+        assertEquals(3, statsLogger.getGauges().get(BOOKIE_REQUESTS_IN_FLIGHT).getSample().intValue());
+
+        limit.close();
+        assertTrue(statsLogger.getGauges().isEmpty());
+    }
+
+    @Test
+    public void testLimitClosedWithChannelPool() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setBookieConcurrencyLimitEnabled(true)
+                .setLimitStatsLogging(false);
+        EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+        OrderedExecutor executor = OrderedExecutor.newBuilder().numThreads(1).name("test-concurrency-limit").build();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            BookieClientImpl bookieClient = new BookieClientImpl(conf, eventLoopGroup,
+                    UnpooledByteBufAllocator.DEFAULT, executor, scheduler, statsLogger,
+                    BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+            // The limit is created along with the pool of the bookie
+            bookieClient.lookupClient(BookieId.parse("127.0.0.1:1"));
+            assertEquals(1, bookieClient.channels.size());
+            assertTrue(statsLogger.getGauges().containsKey(BOOKIE_CONCURRENCY_LIMIT));
+            assertTrue(statsLogger.getGauges().containsKey(BOOKIE_REQUESTS_IN_FLIGHT));
+
+            bookieClient.close();
+            assertTrue(bookieClient.channels.isEmpty());
+            assertFalse(statsLogger.getGauges().containsKey(BOOKIE_CONCURRENCY_LIMIT));
+            assertFalse(statsLogger.getGauges().containsKey(BOOKIE_REQUESTS_IN_FLIGHT));
+        } finally {
+            eventLoopGroup.shutdownGracefully();
+            executor.shutdown();
+            scheduler.shutdown();
+        }
+    }
+}
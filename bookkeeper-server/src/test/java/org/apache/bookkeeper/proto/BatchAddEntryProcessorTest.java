@@ -0,0 +1,309 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookKeeperServerStats;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.test.CountingStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the processing of the batch add requests by the bookie, from the request processor to the single response
+ * of the batch.
+ */
+public class BatchAddEntryProcessorTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final byte[] MASTER_KEY = "master-key".getBytes();
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final CountingStatsLogger statsLogger = new CountingStatsLogger();
+    private final Bookie bookie = mock(Bookie.class);
+    private final EmbeddedChannel channel = new EmbeddedChannel();
+    private final BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+    private BookieRequestProcessor requestProcessor;
+    private long txnId = 0;
+
+    // The entries and the callback of the last call to Bookie.addEntries
+    private final List<byte[]> addedEntries = new ArrayList<>();
+    private WriteCallback writeCallback;
+    private Object writeCtx;
+
+    @Before
+    public void setUp() throws Exception {
+        // The requests are processed by the calling thread
+        conf.setNumAddWorkerThreads(0);
+        conf.setNumReadWorkerThreads(0);
+        conf.setNumHighPriorityWorkerThreads(0);
+
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        doAnswer(invocation -> {
+            addedEntries.clear();
+            for (ByteBuf entry : invocation.<List<ByteBuf>>getArgument(0)) {
+                byte[] bytes = new byte[entry.readableBytes()];
+                entry.getBytes(entry.readerIndex(), bytes);
+                addedEntries.add(bytes);
+            }
+            writeCallback = invocation.getArgument(3);
+            writeCtx = invocation.getArgument(4);
+            return null;
+        }).when(bookie).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (requestProcessor != null) {
+            requestProcessor.close();
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    private void startProcessor() throws Exception {
+        requestProcessor = new BookieRequestProcessor(conf, bookie, statsLogger, null,
+                UnpooledByteBufAllocator.DEFAULT, null);
+    }
+
+    private static byte[] entry(long entryId) {
+        byte[] entry = new byte[64];
+        for (int i = 0; i < entry.length; i++) {
+            entry[i] = (byte) (entryId + i);
+        }
+        return entry;
+    }
+
+    private Request request(ProtocolVersion version, int priority, int numEntries, AddRequest.Flag flag) {
+        BatchAddRequest.Builder batchAddRequest = BatchAddRequest.newBuilder()
+                .setLedgerId(LEDGER_ID)
+                .setMasterKey(ByteString.copyFrom(MASTER_KEY));
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            batchAddRequest.addBody(ByteString.copyFrom(entry(entryId)));
+        }
+        if (flag != null) {
+            batchAddRequest.setFlag(flag);
+        }
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(version)
+                        .setOperation(OperationType.BATCH_ADD_ENTRY)
+                        .setTxnId(++txnId)
+                        .setPriority(priority))
+                .setBatchAddRequest(batchAddRequest)
+                .build();
+    }
+
+    private Request request(int numEntries) {
+        return request(ProtocolVersion.VERSION_THREE, 0, numEntries, null);
+    }
+
+    private void completeEntry(int rc, long entryId) {
+        writeCallback.writeComplete(rc, LEDGER_ID, entryId, null, writeCtx);
+    }
+
+    private Response response() {
+        Object response = channel.readOutbound();
+        assertNotNull("No response was sent", response);
+        Response r = (Response) response;
+        assertEquals(OperationType.BATCH_ADD_ENTRY, r.getHeader().getOperation());
+        assertEquals(txnId, r.getHeader().getTxnId());
+        assertEquals(LEDGER_ID, r.getBatchAddResponse().getLedgerId());
+        assertEquals(r.getStatus(), r.getBatchAddResponse().getStatus());
+        return r;
+    }
+
+    private void checkResponse(StatusCode status) {
+        assertEquals(status, response().getStatus());
+        assertNull("A single response is sent for the batch", channel.readOutbound());
+    }
+
+    @Test
+    public void testSingleResponseOnceAllEntriesAdded() throws Exception {
+        startProcessor();
+        requestProcessor.processRequest(request(3), requestHandler);
+
+        verify(bookie).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+        assertEquals(3, addedEntries.size());
+        for (int entryId = 0; entryId < 3; entryId++) {
+            assertArrayEquals(entry(entryId), addedEntries.get(entryId));
+        }
+        assertEquals(channel, writeCtx);
+
+        // The entries are persisted in any order, the response is sent after the last one
+        completeEntry(BookieProtocol.EOK, 2);
+        completeEntry(BookieProtocol.EOK, 0);
+        assertNull(channel.readOutbound());
+        completeEntry(BookieProtocol.EOK, 1);
+
+        Response response = response();
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(3, response.getBatchAddResponse().getNumEntries());
+        assertNull(channel.readOutbound());
+        assertEquals(0, requestProcessor.getRequestStats().getAddsInProgress().get());
+    }
+
+    @Test
+    public void testFlagsPassedToBookie() throws Exception {
+        startProcessor();
+        requestProcessor.processRequest(request(ProtocolVersion.VERSION_THREE, 0, 2, AddRequest.Flag.RECOVERY_ADD),
+                requestHandler);
+        verify(bookie).addEntries(any(), eq(false), eq(true), any(), any(), any());
+    }
+
+    @Test
+    public void testFirstFailureSentOnce() throws Exception {
+        startProcessor();
+        requestProcessor.processRequest(request(3), requestHandler);
+
+        completeEntry(BookieProtocol.EOK, 0);
+        completeEntry(BookieProtocol.EIO, 1);
+        checkResponse(StatusCode.EIO);
+
+        // The completions of the other entries are ignored
+        completeEntry(BookieProtocol.EOK, 2);
+        completeEntry(BookieProtocol.EIO, 2);
+        assertNull(channel.readOutbound());
+        assertEquals(0, requestProcessor.getRequestStats().getAddsInProgress().get());
+    }
+
+    @Test
+    public void testOtherFailureSentAsUnauthorized() throws Exception {
+        startProcessor();
+        requestProcessor.processRequest(request(2), requestHandler);
+        completeEntry(BookieProtocol.EFENCED, 0);
+        checkResponse(StatusCode.EUA);
+    }
+
+    private void checkRejectedByBookie(Exception exception, StatusCode status) throws Exception {
+        doThrow(exception).when(bookie).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+        requestProcessor.processRequest(request(2), requestHandler);
+        checkResponse(status);
+    }
+
+    @Test
+    public void testBookieExceptionsMappedToStatus() throws Exception {
+        startProcessor();
+        checkRejectedByBookie(new BookieException.OperationRejectedException(), StatusCode.ETOOMANYREQUESTS);
+        assertEquals(1, statsLogger.getCounterValue(BookKeeperServerStats.ADD_ENTRY_REJECTED));
+        checkRejectedByBookie(new IOException("Disk error"), StatusCode.EIO);
+        checkRejectedByBookie(new BookieException.LedgerFencedException(), StatusCode.EFENCED);
+        checkRejectedByBookie(new BookieException.BookieUnauthorizedAccessException(), StatusCode.EUA);
+        checkRejectedByBookie(new IllegalStateException("Bad entry"), StatusCode.EBADREQ);
+        assertEquals(0, requestProcessor.getRequestStats().getAddsInProgress().get());
+    }
+
+    @Test
+    public void testEmptyBatchRejected() throws Exception {
+        startProcessor();
+        requestProcessor.processRequest(request(0), requestHandler);
+        checkResponse(StatusCode.EBADREQ);
+        verify(bookie, never()).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+    }
+
+    @Test
+    public void testBadVersionRejected() throws Exception {
+        startProcessor();
+        requestProcessor.processRequest(request(ProtocolVersion.VERSION_TWO, 0, 2, null), requestHandler);
+        checkResponse(StatusCode.EBADVERSION);
+        verify(bookie, never()).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+    }
+
+    @Test
+    public void testReadOnlyBookie() throws Exception {
+        when(bookie.isReadOnly()).thenReturn(true);
+        startProcessor();
+        requestProcessor.processRequest(request(2), requestHandler);
+        checkResponse(StatusCode.EREADONLY);
+        verify(bookie, never()).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+
+        // The high priority writes are still accepted when the bookie allows them
+        when(bookie.isAvailableForHighPriorityWrites()).thenReturn(true);
+        requestProcessor.processRequest(request(ProtocolVersion.VERSION_THREE, 1, 2, null), requestHandler);
+        verify(bookie).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+    }
+
+    @Test
+    public void testRejectedWhenWriteQueueFull() throws Exception {
+        conf.setNumAddWorkerThreads(1);
+        conf.setMaxPendingAddRequestPerThread(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            blocked.await();
+            return null;
+        }).when(bookie).addEntries(any(), anyBoolean(), anyBoolean(), any(), any(), any());
+        startProcessor();
+
+        // The first request blocks the write thread, the second one fills the queue
+        requestProcessor.processRequest(request(2), requestHandler);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        requestProcessor.processRequest(request(2), requestHandler);
+        assertNull(channel.readOutbound());
+
+        requestProcessor.processRequest(request(2), requestHandler);
+        Response response = response();
+        assertEquals(StatusCode.ETOOMANYREQUESTS, response.getStatus());
+        assertEquals(2, response.getBatchAddResponse().getNumEntries());
+        assertEquals(1, statsLogger.getCounterValue(BookKeeperServerStats.ADD_ENTRY_REJECTED));
+
+        blocked.countDown();
+    }
+}
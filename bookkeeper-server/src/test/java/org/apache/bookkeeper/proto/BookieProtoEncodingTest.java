@@ -0,0 +1,283 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.ResponseEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.ResponseWithBody;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Test the version 3 codec, whose large payloads are not copied into the protobuf frame.
+ */
+public class BookieProtoEncodingTest {
+
+    private static final int LARGE_ENTRY_SIZE = 64 * 1024;
+    private static final ExtensionRegistry EXTENSION_REGISTRY = ExtensionRegistry.newInstance();
+
+    private static ByteString payload(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return ByteString.copyFrom(data);
+    }
+
+    private static BKPacketHeader header(OperationType operation, long txnId) {
+        return BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(operation)
+                .setTxnId(txnId)
+                .build();
+    }
+
+    /**
+     * Flatten an encoded frame and check its length prefix.
+     *
+     * @return the frame without its length prefix, as the frame decoder passes it on
+     */
+    private static ByteBuf flatten(Object encoded) {
+        ByteBuf frame;
+        if (encoded instanceof ByteBufList) {
+            frame = ByteBufList.coalesce((ByteBufList) encoded);
+            ((ByteBufList) encoded).release();
+        } else {
+            frame = (ByteBuf) encoded;
+        }
+        try {
+            int size = frame.readInt();
+            assertEquals(frame.readableBytes(), size);
+            ByteBuf packet = Unpooled.directBuffer(size);
+            packet.writeBytes(frame);
+            return packet;
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static byte[] toBytes(ByteBuf packet) {
+        byte[] bytes = new byte[packet.readableBytes()];
+        packet.getBytes(packet.readerIndex(), bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testAddRequestParsedByStockParser() throws Exception {
+        Request request = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY, 1))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(1)
+                        .setEntryId(2)
+                        .setMasterKey(ByteString.copyFromUtf8("key"))
+                        .setBody(payload(LARGE_ENTRY_SIZE, 1)))
+                .build();
+
+        Object encoded = new RequestEnDecoderV3(EXTENSION_REGISTRY).encode(request, UnpooledByteBufAllocator.DEFAULT);
+        assertTrue(encoded instanceof ByteBufList);
+        ByteBuf packet = flatten(encoded);
+        try {
+            assertEquals(request, Request.parseFrom(toBytes(packet)));
+            assertEquals(request, new RequestEnDecoderV3(EXTENSION_REGISTRY).decode(packet));
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testBatchAddRequestParsedByStockParser() throws Exception {
+        // A small payload is copied into the frame, between the large ones
+        Request request = Request.newBuilder()
+                .setHeader(header(OperationType.BATCH_ADD_ENTRY, 1))
+                .setBatchAddRequest(BatchAddRequest.newBuilder()
+                        .setLedgerId(1)
+                        .setMasterKey(ByteString.copyFromUtf8("key"))
+                        .addBody(payload(LARGE_ENTRY_SIZE, 1))
+                        .addBody(payload(100, 2))
+                        .addBody(payload(LARGE_ENTRY_SIZE, 3)))
+                .build();
+
+        Object encoded = new RequestEnDecoderV3(EXTENSION_REGISTRY).encode(request, UnpooledByteBufAllocator.DEFAULT);
+        ByteBuf packet = flatten(encoded);
+        try {
+            assertEquals(request, Request.parseFrom(toBytes(packet)));
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testSmallReadResponseIsNotSplit() throws Exception {
+        Response response = readResponse(1, payload(100, 1));
+
+        Object encoded = new ResponseEnDecoderV3(EXTENSION_REGISTRY).encode(response, UnpooledByteBufAllocator.DEFAULT);
+        assertTrue(encoded instanceof ByteBuf);
+        ByteBuf packet = flatten(encoded);
+        try {
+            assertEquals(response, Response.parseFrom(toBytes(packet)));
+            assertEquals(response, new ResponseEnDecoderV3(EXTENSION_REGISTRY).decode(packet));
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testReadResponseBodyIsSliceOfPacket() throws Exception {
+        ByteString body = payload(LARGE_ENTRY_SIZE, 1);
+        Response response = readResponse(1, body);
+
+        Object encoded = new ResponseEnDecoderV3(EXTENSION_REGISTRY).encode(response, UnpooledByteBufAllocator.DEFAULT);
+        assertTrue(encoded instanceof ByteBufList);
+        ByteBuf packet = flatten(encoded);
+        assertEquals(response, Response.parseFrom(toBytes(packet)));
+
+        Object decoded = new ResponseEnDecoderV3(EXTENSION_REGISTRY).decode(packet);
+        assertTrue(decoded instanceof ResponseWithBody);
+        ResponseWithBody responseWithBody = (ResponseWithBody) decoded;
+        assertEquals(response, responseWithBody.getResponse());
+        assertArrayEquals(body.toByteArray(), toBytes(responseWithBody.content()));
+
+        // The body holds a reference to the packet
+        assertEquals(2, packet.refCnt());
+        packet.release();
+        assertEquals(1, responseWithBody.content().refCnt());
+        responseWithBody.release();
+        assertEquals(0, packet.refCnt());
+    }
+
+    @Test
+    public void testReadV3ResponseReleasesBody() throws Exception {
+        OrderedExecutor executor = mock(OrderedExecutor.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(executor).executeOrdered(anyLong(), any(Runnable.class));
+        PerChannelBookieClient client = newClient(executor);
+
+        AtomicInteger rc = new AtomicInteger(Integer.MIN_VALUE);
+        AtomicReference<byte[]> entry = new AtomicReference<>();
+        client.readEntry(1, 2, (code, ledgerId, entryId, buffer, ctx) -> {
+            rc.set(code);
+            entry.set(toBytes(buffer));
+        }, null, 0, null, false);
+
+        ByteString body = payload(LARGE_ENTRY_SIZE, 1);
+        ByteBuf packet = encode(readResponse(sentTxnId(client), body));
+        receive(client, packet);
+
+        assertEquals(BKException.Code.OK, rc.get());
+        assertArrayEquals(body.toByteArray(), entry.get());
+        assertEquals(0, packet.refCnt());
+    }
+
+    @Test
+    public void testReadV3ResponseReleasesBodyOnRejection() throws Exception {
+        OrderedExecutor executor = mock(OrderedExecutor.class);
+        doThrow(new RejectedExecutionException("shut down"))
+                .when(executor).executeOrdered(anyLong(), any(Runnable.class));
+        PerChannelBookieClient client = newClient(executor);
+
+        client.readEntry(1, 2, (code, ledgerId, entryId, buffer, ctx) -> fail("Read should not complete"),
+                null, 0, null, false);
+
+        ByteBuf packet = encode(readResponse(sentTxnId(client), payload(LARGE_ENTRY_SIZE, 1)));
+        try {
+            receive(client, packet);
+            fail("The rejection should be propagated");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(0, packet.refCnt());
+    }
+
+    private static Response readResponse(long txnId, ByteString body) {
+        return Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY, txnId))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(ReadResponse.newBuilder()
+                        .setStatus(StatusCode.EOK)
+                        .setLedgerId(1)
+                        .setEntryId(2)
+                        .setBody(body))
+                .build();
+    }
+
+    private static PerChannelBookieClient newClient(OrderedExecutor executor) throws Exception {
+        PerChannelBookieClient client = new PerChannelBookieClient(executor, null,
+                BookieId.parse("127.0.0.1:3181"), null);
+        // The requests are kept in the outbound buffer of the channel
+        client.channel = new EmbeddedChannel();
+        return client;
+    }
+
+    private static long sentTxnId(PerChannelBookieClient client) {
+        Object request = ((EmbeddedChannel) client.channel).readOutbound();
+        assertNotNull(request);
+        return ((Request) request).getHeader().getTxnId();
+    }
+
+    private static ByteBuf encode(Response response) throws Exception {
+        return flatten(new ResponseEnDecoderV3(EXTENSION_REGISTRY).encode(response, UnpooledByteBufAllocator.DEFAULT));
+    }
+
+    /**
+     * Decode a packet and pass the response to the client, then release the packet, as the response decoder does.
+     */
+    private static void receive(PerChannelBookieClient client, ByteBuf packet) throws Exception {
+        try {
+            client.channelRead(null, new ResponseEnDecoderV3(EXTENSION_REGISTRY).decode(packet));
+        } finally {
+            packet.release();
+        }
+    }
+}
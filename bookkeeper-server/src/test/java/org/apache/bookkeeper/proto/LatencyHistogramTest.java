@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Test the percentiles of the read latencies computed by LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static long percentile(LatencyHistogram histogram, double percentile) {
+        long[] counts = new long[LatencyHistogram.NUM_BUCKETS];
+        histogram.addTo(counts);
+        return LatencyHistogram.getPercentileNanos(counts, percentile);
+    }
+
+    private static void record(LatencyHistogram histogram, int numSamples, long latencyMillis) {
+        for (int i = 0; i < numSamples; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    @Test
+    public void testBucketUpperBoundWithinError() {
+        long maxLatencyNanos = TimeUnit.SECONDS.toNanos(1);
+        for (long latencyNanos = 0; latencyNanos < maxLatencyNanos; latencyNanos = latencyNanos * 5 / 4 + 777) {
+            long upperBound = LatencyHistogram.bucketUpperBoundNanos(LatencyHistogram.bucketOf(latencyNanos));
+            assertTrue("Upper bound of " + latencyNanos, upperBound > latencyNanos);
+            // One microsecond in the linear buckets, 12.5% in the others
+            assertTrue("Upper bound of " + latencyNanos, upperBound <= Math.max(latencyNanos * 1.125,
+                    latencyNanos + TimeUnit.MICROSECONDS.toNanos(1)));
+        }
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.bucketOf(TimeUnit.HOURS.toNanos(1)));
+    }
+
+    @Test
+    public void testNotEnoughSamples() {
+        LatencyHistogram histogram = new LatencyHistogram(WINDOW_NANOS);
+        assertEquals(-1L, percentile(histogram, 50));
+        record(histogram, 19, 1);
+        assertEquals(-1L, percentile(histogram, 50));
+        record(histogram, 1, 1);
+        assertTrue(percentile(histogram, 50) > 0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(WINDOW_NANOS);
+        record(histogram, 90, 1);
+        record(histogram, 10, 100);
+
+        long p50 = percentile(histogram, 50);
+        long p90 = percentile(histogram, 90);
+        long p99 = percentile(histogram, 99);
+        assertEquals(p50, p90);
+        assertTrue(p90 >= TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(p90 <= TimeUnit.MICROSECONDS.toNanos(1125));
+        assertTrue(p99 >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(p99 <= TimeUnit.MICROSECONDS.toNanos(112500));
+        assertEquals(p99, percentile(histogram, 100));
+    }
+
+    @Test
+    public void testHistogramsMerged() {
+        LatencyHistogram fast = new LatencyHistogram(WINDOW_NANOS);
+        LatencyHistogram slow = new LatencyHistogram(WINDOW_NANOS);
+        record(fast, 50, 1);
+        record(slow, 50, 100);
+
+        long[] counts = new long[LatencyHistogram.NUM_BUCKETS];
+        fast.addTo(counts);
+        slow.addTo(counts);
+        assertTrue(LatencyHistogram.getPercentileNanos(counts, 50) < TimeUnit.MILLISECONDS.toNanos(2));
+        assertTrue(LatencyHistogram.getPercentileNanos(counts, 51) >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testOldLatenciesLeaveWindow() throws Exception {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(40);
+        LatencyHistogram histogram = new LatencyHistogram(windowNanos);
+        record(histogram, 100, 1);
+        assertTrue(percentile(histogram, 50) > 0);
+
+        TimeUnit.NANOSECONDS.sleep(2 * windowNanos);
+        assertEquals(-1L, percentile(histogram, 50));
+        record(histogram, 20, 100);
+        assertTrue(percentile(histogram, 50) >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batch add requests sent by PerChannelBookieClient, and the completion of their entries.
+ */
+public class PerChannelBookieClientBatchAddTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final byte[] MASTER_KEY = "master-key".getBytes();
+    private static final long[] ENTRY_IDS = {3, 4, 5};
+    private static final Object CTX = 7;
+
+    private final ClientConfiguration conf = new ClientConfiguration();
+    private final List<Object[]> completions = new ArrayList<>();
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private OrderedExecutor executor;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        conf.setBatchAddEnabled(true);
+        // The callbacks are run by the calling thread
+        executor = mock(OrderedExecutor.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(executor).executeOrdered(anyLong(), any(Runnable.class));
+        for (long entryId : ENTRY_IDS) {
+            ByteBuf entry = Unpooled.buffer(64);
+            entry.writeLong(LEDGER_ID);
+            entry.writeLong(entryId);
+            entry.writeZero(48);
+            entries.add(entry);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+        entries.forEach(ReferenceCountUtil::release);
+    }
+
+    private PerChannelBookieClient newClient() throws Exception {
+        PerChannelBookieClient client = new PerChannelBookieClient(conf, executor, null,
+                BookieId.parse("127.0.0.1:3181"), null, null, null, null, null);
+        // The requests are kept in the outbound buffer of the channel
+        channel = new EmbeddedChannel();
+        client.channel = channel;
+        return client;
+    }
+
+    private void addEntries(PerChannelBookieClient client) {
+        WriteCallback[] cbs = new WriteCallback[ENTRY_IDS.length];
+        for (int i = 0; i < cbs.length; i++) {
+            cbs[i] = (rc, ledgerId, entryId, addr, ctx) -> completions.add(new Object[] {rc, entryId, ctx});
+        }
+        client.addEntries(LEDGER_ID, MASTER_KEY, ENTRY_IDS, entries.toArray(new ReferenceCounted[0]), cbs, CTX,
+                BookieProtocol.FLAG_NONE, false, WriteFlag.NONE);
+    }
+
+    private void checkCompletions(int expectedRc) {
+        assertEquals(ENTRY_IDS.length, completions.size());
+        for (int i = 0; i < ENTRY_IDS.length; i++) {
+            assertEquals(expectedRc, completions.get(i)[0]);
+            assertEquals(ENTRY_IDS[i], completions.get(i)[1]);
+            assertEquals(CTX, completions.get(i)[2]);
+        }
+    }
+
+    private static Response response(long txnId, StatusCode status, StatusCode batchStatus) {
+        return Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.BATCH_ADD_ENTRY)
+                        .setTxnId(txnId))
+                .setStatus(status)
+                .setBatchAddResponse(BatchAddResponse.newBuilder()
+                        .setStatus(batchStatus)
+                        .setLedgerId(LEDGER_ID)
+                        .setNumEntries(ENTRY_IDS.length))
+                .build();
+    }
+
+    private Request sentBatchRequest() {
+        Object sent = channel.readOutbound();
+        assertNotNull(sent);
+        Request request = (Request) sent;
+        assertEquals(OperationType.BATCH_ADD_ENTRY, request.getHeader().getOperation());
+        assertNull("The batch is sent with a single request", channel.readOutbound());
+        return request;
+    }
+
+    @Test
+    public void testBatchSentWithSingleRequest() throws Exception {
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+        // The buffers are retained by the client only until the request is written
+        entries.forEach(entry -> assertEquals(1, entry.refCnt()));
+
+        BatchAddRequest batchAddRequest = sentBatchRequest().getBatchAddRequest();
+        assertEquals(LEDGER_ID, batchAddRequest.getLedgerId());
+        assertArrayEquals(MASTER_KEY, batchAddRequest.getMasterKey().toByteArray());
+        assertEquals(ENTRY_IDS.length, batchAddRequest.getBodyCount());
+        for (int i = 0; i < ENTRY_IDS.length; i++) {
+            ByteBuf entry = entries.get(i);
+            assertEquals(entry, Unpooled.wrappedBuffer(batchAddRequest.getBody(i).asReadOnlyByteBuffer()));
+        }
+        assertTrue(completions.isEmpty());
+    }
+
+    @Test
+    public void testResponseCompletesAllEntries() throws Exception {
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+        long txnId = sentBatchRequest().getHeader().getTxnId();
+
+        client.channelRead(null, response(txnId, StatusCode.EOK, StatusCode.EOK));
+        checkCompletions(BKException.Code.OK);
+
+        // A response is only handled once
+        client.channelRead(null, response(txnId, StatusCode.EOK, StatusCode.EOK));
+        assertEquals(ENTRY_IDS.length, completions.size());
+    }
+
+    @Test
+    public void testFailedBatchFailsAllEntries() throws Exception {
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+        long txnId = sentBatchRequest().getHeader().getTxnId();
+
+        client.channelRead(null, response(txnId, StatusCode.EOK, StatusCode.EFENCED));
+        checkCompletions(BKException.Code.LedgerFencedException);
+    }
+
+    @Test
+    public void testFailedResponseStatusFailsAllEntries() throws Exception {
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+        long txnId = sentBatchRequest().getHeader().getTxnId();
+
+        // The status of the response takes precedence over the status of the batch
+        client.channelRead(null, response(txnId, StatusCode.ETOOMANYREQUESTS, StatusCode.EOK));
+        checkCompletions(BKException.Code.TooManyRequestsException);
+    }
+
+    @Test
+    public void testOutstandingBatchErroredOut() throws Exception {
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+        sentBatchRequest();
+
+        client.errorOutOutstandingEntries(BKException.Code.BookieHandleNotAvailableException);
+        checkCompletions(BKException.Code.BookieHandleNotAvailableException);
+    }
+
+    @Test
+    public void testBatchTimesOut() throws Exception {
+        conf.setAddEntryTimeout(0);
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+        long txnId = sentBatchRequest().getHeader().getTxnId();
+
+        client.checkTimeoutOnPendingOperations();
+        checkCompletions(BKException.Code.TimeoutException);
+
+        // The late response is ignored
+        client.channelRead(null, response(txnId, StatusCode.EOK, StatusCode.EOK));
+        assertEquals(ENTRY_IDS.length, completions.size());
+    }
+
+    @Test
+    public void testEntriesSentOneByOneWhenDisabled() throws Exception {
+        conf.setBatchAddEnabled(false);
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+
+        for (long entryId : ENTRY_IDS) {
+            Object sent = channel.readOutbound();
+            assertNotNull(sent);
+            Request request = (Request) sent;
+            assertEquals(OperationType.ADD_ENTRY, request.getHeader().getOperation());
+            assertEquals(entryId, request.getAddRequest().getEntryId());
+        }
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testEntriesSentOneByOneWithV2Protocol() throws Exception {
+        conf.setUseV2WireProtocol(true);
+        PerChannelBookieClient client = newClient();
+        addEntries(client);
+
+        // The v2 protocol has no batch add, each entry is sent with its own request
+        for (int i = 0; i < ENTRY_IDS.length; i++) {
+            Object sent = channel.readOutbound();
+            assertTrue(sent instanceof ByteBuf);
+            ReferenceCountUtil.release(sent);
+        }
+        assertNull(channel.readOutbound());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.google.protobuf.ByteString;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the moving average of the read latency tracked by PerChannelBookieClient.
+ */
+public class PerChannelBookieClientReadLatencyTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final long ENTRY_ID = 3;
+
+    private final ClientConfiguration conf = new ClientConfiguration();
+    private final List<Integer> completions = new ArrayList<>();
+    private OrderedExecutor executor;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        // The callbacks are run by the calling thread
+        executor = mock(OrderedExecutor.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(executor).executeOrdered(anyLong(), any(Runnable.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (channel != null) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private PerChannelBookieClient newClient() throws Exception {
+        PerChannelBookieClient client = new PerChannelBookieClient(conf, executor, null,
+                BookieId.parse("127.0.0.1:3181"), null, null, null, null, null);
+        channel = new EmbeddedChannel();
+        client.channel = channel;
+        return client;
+    }
+
+    /**
+     * Send a read to the bookie.
+     *
+     * @return the transaction id of the read request.
+     */
+    private long readEntry(PerChannelBookieClient client) {
+        client.readEntry(LEDGER_ID, ENTRY_ID, (rc, ledgerId, entryId, buffer, ctx) -> completions.add(rc), null,
+                BookieProtocol.FLAG_NONE, null, false);
+        Object sent = channel.readOutbound();
+        assertNotNull(sent);
+        return ((Request) sent).getHeader().getTxnId();
+    }
+
+    private static Response response(long txnId, StatusCode status) {
+        ReadResponse.Builder readResponse = ReadResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(LEDGER_ID)
+                .setEntryId(ENTRY_ID);
+        if (status == StatusCode.EOK) {
+            readResponse.setBody(ByteString.copyFromUtf8("entry-data"));
+        }
+        return Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(txnId))
+                .setStatus(status)
+                .setReadResponse(readResponse)
+                .build();
+    }
+
+    @Test
+    public void testLatencyUnknownBeforeFirstRead() throws Exception {
+        PerChannelBookieClient client = newClient();
+        assertEquals(-1L, client.getReadLatencyNanos());
+
+        // A read in flight doesn't tell the latency of the bookie yet
+        readEntry(client);
+        assertEquals(-1L, client.getReadLatencyNanos());
+    }
+
+    @Test
+    public void testLatencyOfCompletedReads() throws Exception {
+        PerChannelBookieClient client = newClient();
+        client.channelRead(null, response(readEntry(client), StatusCode.EOK));
+        assertEquals(BKException.Code.OK, completions.get(0).intValue());
+        assertTrue(client.getReadLatencyNanos() >= 0);
+
+        // A missing entry is served by the bookie as well
+        client = newClient();
+        client.channelRead(null, response(readEntry(client), StatusCode.ENOENTRY));
+        assertEquals(BKException.Code.NoSuchEntryException, completions.get(1).intValue());
+        assertTrue(client.getReadLatencyNanos() >= 0);
+    }
+
+    @Test
+    public void testFailedReadsNotCounted() throws Exception {
+        PerChannelBookieClient client = newClient();
+        client.channelRead(null, response(readEntry(client), StatusCode.EIO));
+        assertEquals(BKException.Code.ReadException, completions.get(0).intValue());
+        // The errors are tracked by the failure history of the bookie
+        assertEquals(-1L, client.getReadLatencyNanos());
+
+        readEntry(client);
+        client.errorOutOutstandingEntries(BKException.Code.BookieHandleNotAvailableException);
+        assertEquals(BKException.Code.BookieHandleNotAvailableException, completions.get(1).intValue());
+        assertEquals(-1L, client.getReadLatencyNanos());
+    }
+
+    @Test
+    public void testTimedOutReadsCounted() throws Exception {
+        conf.setReadEntryTimeout(0);
+        PerChannelBookieClient client = newClient();
+        readEntry(client);
+
+        client.checkTimeoutOnPendingOperations();
+        assertEquals(BKException.Code.TimeoutException, completions.get(0).intValue());
+        // The bookie falls behind the others with the time the read waited
+        assertTrue(client.getReadLatencyNanos() >= 0);
+    }
+}
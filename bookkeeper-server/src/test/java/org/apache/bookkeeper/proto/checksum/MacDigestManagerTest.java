@@ -0,0 +1,213 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto.checksum;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Test that the HMAC-SHA1 codes computed by MacDigestManager match the ones of {@link Mac}, for any kind of buffer.
+ */
+public class MacDigestManagerTest {
+
+    private static final long LEDGER_ID = 7;
+    private static final byte[] PASSWD = "mac-digest-test".getBytes();
+    // Around the size of the chunks the direct memory is copied in
+    private static final int[] DATA_LENGTHS = {0, 1, 100, 4095, 4096, 4097, 10000};
+
+    private final ByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+    private final Random random = new Random(42);
+
+    /**
+     * Compute the code of an entry the way the digest manager did with {@link Mac}.
+     */
+    private static byte[] expectedMac(byte[] metadata, byte[] data) throws Exception {
+        Mac mac = Mac.getInstance(MacDigestManager.KEY_ALGORITHM);
+        mac.init(new SecretKeySpec(MacDigestManager.genDigest("mac", PASSWD), MacDigestManager.KEY_ALGORITHM));
+        mac.update(metadata);
+        mac.update(data);
+        return mac.doFinal();
+    }
+
+    private static byte[] entryMetadata(long entryId, long lastAddConfirmed, long length) {
+        return ByteBuffer.allocate(DigestManager.METADATA_LENGTH)
+                .putLong(LEDGER_ID).putLong(entryId).putLong(lastAddConfirmed).putLong(length).array();
+    }
+
+    private byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static List<ByteBuf> buffers(byte[] data) {
+        List<ByteBuf> buffers = new ArrayList<>();
+        buffers.add(Unpooled.wrappedBuffer(data));
+        ByteBuf direct = Unpooled.directBuffer(data.length);
+        direct.writeBytes(data);
+        buffers.add(direct);
+        // Half on the heap, half in direct memory
+        int half = data.length / 2;
+        ByteBuf directHalf = Unpooled.directBuffer(data.length - half);
+        directHalf.writeBytes(data, half, data.length - half);
+        buffers.add(Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(data, 0, half), directHalf));
+        return buffers;
+    }
+
+    private DigestManager newDigestManager() throws Exception {
+        return DigestManager.instantiate(LEDGER_ID, PASSWD, DigestType.HMAC, allocator, false);
+    }
+
+    private static byte[] macOf(ByteBuf headers, int offset) {
+        return ByteBufUtil.getBytes(headers, offset, MacDigestManager.MAC_CODE_LENGTH);
+    }
+
+    @Test
+    public void testEntryMacMatchesMac() throws Exception {
+        DigestManager digestManager = newDigestManager();
+        long entryId = 0;
+        for (int length : DATA_LENGTHS) {
+            byte[] data = randomData(length);
+            byte[] expected = expectedMac(entryMetadata(entryId, entryId - 1, 1000 + length), data);
+            for (ByteBuf buffer : buffers(data)) {
+                ByteBufList toSend = (ByteBufList) digestManager.computeDigestAndPackageForSending(entryId,
+                        entryId - 1, 1000 + length, buffer, null, 0);
+                try {
+                    ByteBuf headers = toSend.getBuffer(0);
+                    // The headers come from the allocator of the client
+                    assertSame(allocator, headers.alloc());
+                    assertArrayEquals("Mac of " + buffer, expected, macOf(headers, DigestManager.METADATA_LENGTH));
+                } finally {
+                    toSend.release();
+                }
+            }
+            entryId++;
+        }
+    }
+
+    @Test
+    public void testLacMacMatchesMac() throws Exception {
+        DigestManager digestManager = newDigestManager();
+        byte[] metadata = ByteBuffer.allocate(DigestManager.LAC_METADATA_LENGTH).putLong(LEDGER_ID).putLong(5).array();
+        ByteBufList toSend = digestManager.computeDigestAndPackageForSendingLac(5);
+        try {
+            ByteBuf headers = toSend.getBuffer(0);
+            assertSame(allocator, headers.alloc());
+            assertArrayEquals(expectedMac(metadata, new byte[0]), macOf(headers, DigestManager.LAC_METADATA_LENGTH));
+
+            ByteBuf received = ByteBufList.coalesce(toSend);
+            try {
+                assertEquals(5, digestManager.verifyDigestAndReturnLac(received));
+            } finally {
+                received.release();
+            }
+        } finally {
+            toSend.release();
+        }
+    }
+
+    @Test
+    public void testVerifyEntries() throws Exception {
+        DigestManager digestManager = newDigestManager();
+        for (int length : DATA_LENGTHS) {
+            byte[] data = randomData(length);
+            for (ByteBuf buffer : buffers(data)) {
+                ByteBufList toSend = (ByteBufList) digestManager.computeDigestAndPackageForSending(3, 2, length,
+                        buffer, null, 0);
+                // The entries are read back from direct memory
+                ByteBuf received = Unpooled.directBuffer(toSend.readableBytes());
+                for (int i = 0; i < toSend.size(); i++) {
+                    received.writeBytes(toSend.getBuffer(i), toSend.getBuffer(i).readerIndex(),
+                            toSend.getBuffer(i).readableBytes());
+                }
+                toSend.release();
+                try {
+                    ByteBuf entry = digestManager.verifyDigestAndReturnData(3, received);
+                    assertEquals(Unpooled.wrappedBuffer(data), entry);
+
+                    // A corrupted byte of the headers or of the entry fails the check
+                    int index = length == 0 ? 0 : DigestManager.METADATA_LENGTH + MacDigestManager.MAC_CODE_LENGTH
+                            + length / 2;
+                    received.readerIndex(0);
+                    received.setByte(index, received.getByte(index) ^ 1);
+                    try {
+                        digestManager.verifyDigestAndReturnData(3, received);
+                        fail("The corrupted entry should not be verified");
+                    } catch (BKDigestMatchException e) {
+                        // expected
+                    }
+                } finally {
+                    received.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMacPerThread() throws Exception {
+        DigestManager digestManager = newDigestManager();
+        byte[] data = randomData(10000);
+        byte[] expected = expectedMac(entryMetadata(1, 0, data.length), data);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> macs = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                macs.add(executor.submit(() -> {
+                    ByteBuf buffer = Unpooled.directBuffer(data.length);
+                    buffer.writeBytes(data);
+                    ByteBufList toSend = (ByteBufList) digestManager.computeDigestAndPackageForSending(1, 0,
+                            data.length, buffer, null, 0);
+                    try {
+                        return macOf(toSend.getBuffer(0), DigestManager.METADATA_LENGTH);
+                    } finally {
+                        toSend.release();
+                    }
+                }));
+            }
+            for (Future<byte[]> mac : macs) {
+                assertArrayEquals(expected, mac.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * A stats logger keeping the value of the counters and the registered gauges, by name whatever their scope.
+ */
+public class CountingStatsLogger extends NullStatsLogger {
+
+    private final Map<String, CountingCounter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Gauge<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter getCounter(String name) {
+        return counters.computeIfAbsent(name, n -> new CountingCounter());
+    }
+
+    @Override
+    public <T extends Number> void registerGauge(String name, Gauge<T> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public <T extends Number> void unregisterGauge(String name, Gauge<T> gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    @Override
+    public StatsLogger scope(String name) {
+        return this;
+    }
+
+    /**
+     * @return the value of the counter, 0 if it was never created
+     */
+    public long getCounterValue(String name) {
+        CountingCounter counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * @return the registered gauges, by name
+     */
+    public Map<String, Gauge<? extends Number>> getGauges() {
+        return gauges;
+    }
+
+    /**
+     * A counter keeping its value. The latencies are added in milliseconds.
+     */
+    private static class CountingCounter implements Counter {
+        private final LongAdder value = new LongAdder();
+
+        @Override
+        public void clear() {
+            value.reset();
+        }
+
+        @Override
+        public void inc() {
+            value.increment();
+        }
+
+        @Override
+        public void dec() {
+            value.decrement();
+        }
+
+        @Override
+        public void addCount(long delta) {
+            value.add(delta);
+        }
+
+        @Override
+        public void addLatency(long eventLatency, TimeUnit unit) {
+            value.add(unit.toMillis(eventLatency));
+        }
+
+        @Override
+        public Long get() {
+            return value.sum();
+        }
+    }
+}
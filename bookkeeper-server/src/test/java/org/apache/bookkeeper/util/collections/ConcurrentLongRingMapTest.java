@@ -0,0 +1,175 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+
+/**
+ * Test the ConcurrentLongRingMap class.
+ */
+public class ConcurrentLongRingMapTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRingSize() {
+        new ConcurrentLongRingMap<String>(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() {
+        new ConcurrentLongRingMap<String>(4).put(0, "zero");
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentLongRingMap<String> map = new ConcurrentLongRingMap<>(4);
+        assertTrue(map.isEmpty());
+
+        map.put(1, "one");
+        map.put(2, "two");
+        assertEquals(2, map.size());
+        assertEquals("one", map.get(1));
+        assertEquals("two", map.get(2));
+        assertNull(map.get(3));
+        // Same slot as key 1
+        assertNull(map.get(5));
+
+        assertEquals("one", map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals(1, map.size());
+
+        assertEquals("two", map.remove(2));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testOverflow() {
+        ConcurrentLongRingMap<String> map = new ConcurrentLongRingMap<>(4);
+        for (long key = 1; key <= 10; key++) {
+            map.put(key, "v" + key);
+        }
+        assertEquals(10, map.size());
+        for (long key = 1; key <= 10; key++) {
+            assertEquals("v" + key, map.get(key));
+        }
+
+        // Free the slot of key 1, key 9 stays in the overflow
+        assertEquals("v1", map.remove(1));
+        assertEquals("v9", map.get(9));
+        assertEquals("v9", map.remove(9));
+        assertNull(map.get(9));
+
+        // A new key can take the freed slot
+        map.put(13, "v13");
+        assertEquals("v13", map.get(13));
+        assertEquals(9, map.size());
+
+        List<Long> keys = new ArrayList<>();
+        map.forEach((key, value) -> keys.add(key));
+        assertEquals(9, keys.size());
+    }
+
+    @Test
+    public void testRemoveIf() {
+        ConcurrentLongRingMap<String> map = new ConcurrentLongRingMap<>(4);
+        for (long key = 1; key <= 10; key++) {
+            map.put(key, "v" + key);
+        }
+
+        List<Long> removedKeys = new ArrayList<>();
+        int removed = map.removeIf((key, value) -> key % 2 == 0, (key, value) -> {
+            assertEquals("v" + key, value);
+            removedKeys.add(key);
+        });
+        assertEquals(5, removed);
+        assertEquals(5, removedKeys.size());
+        assertEquals(5, map.size());
+        for (long key = 1; key <= 10; key++) {
+            if (key % 2 == 0) {
+                assertTrue(removedKeys.contains(key));
+                assertNull(map.get(key));
+            } else {
+                assertEquals("v" + key, map.get(key));
+            }
+        }
+
+        assertEquals(5, map.removeIf((key, value) -> true));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentRemoveAndRemoveIf() throws Exception {
+        final int ringSize = 64;
+        final int numKeys = 10_000;
+        final int rounds = 20;
+
+        for (int round = 0; round < rounds; round++) {
+            ConcurrentLongRingMap<Long> map = new ConcurrentLongRingMap<>(ringSize);
+            // Keys over the ring size go to the overflow
+            for (long key = 1; key <= numKeys; key++) {
+                map.put(key, key);
+            }
+
+            AtomicIntegerArray completions = new AtomicIntegerArray(numKeys + 1);
+            AtomicInteger removedByRemove = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+
+            Thread remover = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (long key = 1; key <= numKeys; key++) {
+                    if (map.remove(key) != null) {
+                        completions.incrementAndGet((int) key);
+                        removedByRemove.incrementAndGet();
+                    }
+                }
+            });
+            remover.start();
+
+            start.countDown();
+            int removedByRemoveIf = map.removeIf((key, value) -> true,
+                    (key, value) -> completions.incrementAndGet((int) key));
+            remover.join();
+            removedByRemoveIf += map.removeIf((key, value) -> true,
+                    (key, value) -> completions.incrementAndGet((int) key));
+
+            // Every entry is completed exactly once, by one of the two threads
+            for (int key = 1; key <= numKeys; key++) {
+                assertEquals("key " + key, 1, completions.get(key));
+            }
+            assertEquals(numKeys, removedByRemove.get() + removedByRemoveIf);
+            assertTrue(map.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+/**
+ * Combines the CRC-32C checksums of two consecutive sequences of bytes into the checksum of their concatenation.
+ *
+ * <p>Appending {@code n} bytes to a sequence multiplies its checksum by {@code x^(8n)} modulo the CRC polynomial,
+ * so {@code crc(A + B) = crc(A) * x^(8 * len(B)) + crc(B)} in GF(2). The power of {@code x} is computed from a
+ * table of {@code x^(2^k)}, which takes a multiplication per bit set in the length instead of going through the
+ * bytes.
+ */
+final class Crc32cCombine {
+
+    // Reversed CRC-32C polynomial
+    private static final int POLY = 0x82f63b78;
+
+    // x^(2^k) modulo the polynomial, in the reversed bit order of the CRC
+    private static final int[] X2N_TABLE = new int[32];
+
+    static {
+        int p = 1 << 30; // x^1
+        X2N_TABLE[0] = p;
+        for (int n = 1; n < X2N_TABLE.length; n++) {
+            p = multModP(p, p);
+            X2N_TABLE[n] = p;
+        }
+    }
+
+    private Crc32cCombine() {
+    }
+
+    /**
+     * Returns the checksum of the concatenation of two sequences of bytes.
+     *
+     * @param crc1 the checksum of the first sequence
+     * @param crc2 the checksum of the second sequence
+     * @param len2 the length of the second sequence
+     * @return the checksum of the first sequence followed by the second one
+     */
+    static int combine(int crc1, int crc2, long len2) {
+        return multModP(x2nModP(len2, 3), crc1) ^ crc2;
+    }
+
+    /**
+     * Multiplies two polynomials modulo the CRC polynomial, {@code a} must not be zero.
+     */
+    private static int multModP(int a, int b) {
+        int m = 1 << 31;
+        int p = 0;
+        for (;;) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0) {
+                    return p;
+                }
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ POLY : b >>> 1;
+        }
+    }
+
+    /**
+     * Returns {@code x^(n * 2^k)} modulo the CRC polynomial.
+     */
+    private static int x2nModP(long n, int k) {
+        int p = 1 << 31; // x^0
+        while (n != 0) {
+            if ((n & 1) != 0) {
+                p = multModP(X2N_TABLE[k & 31], p);
+            }
+            n >>>= 1;
+            k++;
+        }
+        return p;
+    }
+}
@@ -18,13 +18,38 @@
  */
 package com.scurrilous.circe.checksum;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.scurrilous.circe.crc.Sse42Crc32C;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * CRC-32C checksum of byte buffers.
+ *
+ * <p>The checksum of a payload of 2MB or more can be computed in lanes of at least 1MB, whose checksums are then
+ * combined. Lanes are off by default. They are enabled by setting the system property
+ * {@value #LANES_PROPERTY} to the maximum number of lanes, which is capped by the number of processors. The lanes
+ * other than the first one are computed by a dedicated pool of daemon threads, never by the common pool.
+ */
 public class Crc32cIntChecksum {
 
+    public final static String LANES_PROPERTY = "circe.checksum.crc32c.lanes";
+
     private final static IntHash CRC32C_HASH;
 
+    // Large buffers are split in lanes of at least this size, which are computed in parallel and then combined.
+    // Smaller lanes would spend more time in handing them over to other threads than in computing them.
+    private final static int MIN_LANE_SIZE = 1024 * 1024;
+    private final static int MAX_LANES = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+            Integer.getInteger(LANES_PROPERTY, 1)));
+
     static {
         if (Sse42Crc32C.isSupported()) {
             CRC32C_HASH = new JniIntHash();
@@ -43,7 +68,7 @@ public class Crc32cIntChecksum {
      * @return
      */
     public static int computeChecksum(ByteBuf payload) {
-        return CRC32C_HASH.calculate(payload);
+        return resumeChecksum(0, payload, payload.readerIndex(), payload.readableBytes());
     }
 
     /**
@@ -54,7 +79,7 @@ public class Crc32cIntChecksum {
      * @return
      */
     public static int computeChecksum(ByteBuf payload, int offset, int len) {
-        return CRC32C_HASH.calculate(payload, offset, len);
+        return resumeChecksum(0, payload, offset, len);
     }
 
     /**
@@ -65,7 +90,7 @@ public class Crc32cIntChecksum {
      * @return
      */
     public static int resumeChecksum(int previousChecksum, ByteBuf payload) {
-        return CRC32C_HASH.resume(previousChecksum, payload);
+        return resumeChecksum(previousChecksum, payload, payload.readerIndex(), payload.readableBytes());
     }
 
     /**
@@ -78,7 +103,10 @@ public class Crc32cIntChecksum {
      * @return the updated checksum
      */
     public static int resumeChecksum(int previousChecksum, ByteBuf payload, int offset, int len) {
-        return CRC32C_HASH.resume(previousChecksum, payload, offset, len);
+        if (MAX_LANES > 1 && len >= 2 * MIN_LANE_SIZE) {
+            return resumeInLanes(previousChecksum, payload, offset, len, Math.min(MAX_LANES, len / MIN_LANE_SIZE));
+        }
+        return resumeComponents(previousChecksum, payload, offset, len);
     }
 
     /**
@@ -94,7 +122,121 @@ public class Crc32cIntChecksum {
         return CRC32C_HASH.resume(previousChecksum, payload, offset, len);
     }
 
+    /**
+     * Combines the checksums of two consecutive sequences of bytes
+     *
+     * @param checksum the checksum of the first sequence
+     * @param nextChecksum the checksum of the second sequence
+     * @param nextLen the length of the second sequence
+     * @return the checksum of the first sequence followed by the second one, which is the same as
+     *         {@code resumeChecksum(checksum, second)}
+     */
+    public static int combineChecksums(int checksum, int nextChecksum, long nextLen) {
+        return Crc32cCombine.combine(checksum, nextChecksum, nextLen);
+    }
+
     public static boolean acceptsMemoryAddressBuffer() {
         return CRC32C_HASH.acceptsMemoryAddressBuffer();
     }
+
+    /**
+     * Computes the checksum of a large payload in lanes: the first lane is computed by the calling thread while
+     * the other ones are computed by the lane pool, then the checksums of the lanes are combined.
+     */
+    @VisibleForTesting
+    static int resumeInLanes(int previousChecksum, ByteBuf payload, int offset, int len, int lanes) {
+        int laneSize = len / lanes;
+        Lane[] otherLanes = new Lane[lanes];
+        for (int i = 1; i < lanes; i++) {
+            int laneLen = i == lanes - 1 ? len - i * laneSize : laneSize;
+            otherLanes[i] = new Lane(payload, offset + i * laneSize, laneLen);
+            try {
+                LanePool.EXECUTOR.execute(otherLanes[i]);
+            } catch (RejectedExecutionException e) {
+                // The lane is computed by the calling thread when joined
+            }
+        }
+        int checksum = resumeComponents(previousChecksum, payload, offset, laneSize);
+        // Join the lanes in the reverse order of their submission, so that the calling thread computes itself the
+        // lanes the pool didn't pick up yet instead of waiting for them
+        int[] laneChecksums = new int[lanes];
+        for (int i = lanes - 1; i > 0; i--) {
+            laneChecksums[i] = otherLanes[i].join();
+        }
+        for (int i = 1; i < lanes; i++) {
+            checksum = Crc32cCombine.combine(checksum, laneChecksums[i], otherLanes[i].len);
+        }
+        return checksum;
+    }
+
+    /**
+     * A lane of a payload, computed by whichever of the lane pool and the calling thread starts it first.
+     */
+    private static final class Lane implements Runnable {
+        private final ByteBuf payload;
+        private final int offset;
+        private final int len;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<Integer> checksum = new CompletableFuture<>();
+
+        Lane(ByteBuf payload, int offset, int len) {
+            this.payload = payload;
+            this.offset = offset;
+            this.len = len;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                checksum.complete(resumeComponents(0, payload, offset, len));
+            } catch (Throwable t) {
+                checksum.completeExceptionally(t);
+            }
+        }
+
+        int join() {
+            run();
+            try {
+                return checksum.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The threads computing the lanes, only created once lanes are used.
+     */
+    private static final class LanePool {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(1, MAX_LANES - 1),
+                new ThreadFactoryBuilder().setNameFormat("crc32c-lane-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Computes the checksum of a composite payload component by component, the hashes would otherwise copy the
+     * payload in a contiguous buffer.
+     */
+    private static int resumeComponents(int previousChecksum, ByteBuf payload, int offset, int len) {
+        if (!(payload instanceof CompositeByteBuf) || len == 0) {
+            return CRC32C_HASH.resume(previousChecksum, payload, offset, len);
+        }
+        CompositeByteBuf composite = (CompositeByteBuf) payload;
+        int checksum = previousChecksum;
+        int end = offset + len;
+        for (int i = composite.toComponentIndex(offset); offset < end; i++) {
+            ByteBuf component = composite.internalComponent(i);
+            int componentOffset = offset - composite.toByteIndex(i);
+            int componentLen = Math.min(component.readableBytes() - componentOffset, end - offset);
+            checksum = resumeComponents(checksum, component, component.readerIndex() + componentOffset,
+                    componentLen);
+            offset += componentLen;
+        }
+        return checksum;
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package com.scurrilous.circe.checksum;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Random;
+import java.util.zip.CRC32C;
+import org.junit.Test;
+
+/**
+ * Test that combining CRC-32C checksums gives the checksum computed sequentially.
+ */
+public class Crc32cCombineTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static int reference(byte[] data, int offset, int len) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, len);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Split the data in components of uneven sizes, alternating direct and heap buffers, so that the lane
+     * boundaries fall in the middle of components.
+     */
+    private static CompositeByteBuf composite(byte[] data) {
+        CompositeByteBuf composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        int componentSize = 64 * 1024 + 7;
+        boolean direct = true;
+        for (int offset = 0; offset < data.length; offset += componentSize) {
+            int length = Math.min(componentSize, data.length - offset);
+            ByteBuf component = direct ? Unpooled.directBuffer(length) : Unpooled.buffer(length);
+            composite.addComponent(true, component.writeBytes(data, offset, length));
+            direct = !direct;
+        }
+        return composite;
+    }
+
+    @Test
+    public void testCombineAtBoundaries() {
+        byte[] data = randomBytes(2 * MB + 13);
+        int expected = reference(data, 0, data.length);
+        int[] splits = {0, 1, 7, MB - 1, MB, MB + 1, data.length - 1, data.length};
+        for (int split : splits) {
+            int first = reference(data, 0, split);
+            int second = reference(data, split, data.length - split);
+            assertEquals("split at " + split, expected, Crc32cCombine.combine(first, second, data.length - split));
+        }
+    }
+
+    @Test
+    public void testCombineMatchesResume() {
+        byte[] data = randomBytes(100_000);
+        int first = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data, 0, 40_000));
+        int second = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data, 40_000, 60_000));
+        int resumed = Crc32cIntChecksum.resumeChecksum(first, Unpooled.wrappedBuffer(data, 40_000, 60_000));
+        assertEquals(resumed, Crc32cIntChecksum.combineChecksums(first, second, 60_000));
+        assertEquals(reference(data, 0, data.length), resumed);
+    }
+
+    @Test
+    public void testCompositeBuffer() {
+        byte[] data = randomBytes(MB + 5);
+        CompositeByteBuf composite = composite(data);
+        try {
+            assertEquals(reference(data, 0, data.length), Crc32cIntChecksum.computeChecksum(composite));
+            // Ranges starting and ending in the middle of components
+            int offset = 64 * 1024 + 100;
+            int len = 3 * 64 * 1024;
+            assertEquals(reference(data, offset, len), Crc32cIntChecksum.computeChecksum(composite, offset, len));
+            int previous = reference(data, 0, offset);
+            assertEquals(reference(data, 0, offset + len),
+                    Crc32cIntChecksum.resumeChecksum(previous, composite, offset, len));
+        } finally {
+            composite.release();
+        }
+    }
+
+    @Test
+    public void testLanes() {
+        byte[] data = randomBytes(4 * MB + 3);
+        int expected = reference(data, 0, data.length);
+        ByteBuf direct = Unpooled.directBuffer(data.length).writeBytes(data);
+        CompositeByteBuf composite = composite(data);
+        try {
+            for (int lanes = 1; lanes <= 5; lanes++) {
+                assertEquals("heap, lanes " + lanes, expected,
+                        Crc32cIntChecksum.resumeInLanes(0, Unpooled.wrappedBuffer(data), 0, data.length, lanes));
+                assertEquals("direct, lanes " + lanes, expected,
+                        Crc32cIntChecksum.resumeInLanes(0, direct, 0, data.length, lanes));
+                assertEquals("composite, lanes " + lanes, expected,
+                        Crc32cIntChecksum.resumeInLanes(0, composite, 0, data.length, lanes));
+            }
+
+            // Resume from a previous checksum, on a range of the buffer
+            int offset = 1000;
+            int len = 3 * MB + 1;
+            int previous = reference(data, 0, offset);
+            assertEquals(reference(data, 0, offset + len),
+                    Crc32cIntChecksum.resumeInLanes(previous, composite, offset, len, 3));
+        } finally {
+            direct.release();
+            composite.release();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the synchronous entry log read path with the native asynchronous one.
+ *
+ * <p>Each operation reads a batch of random entries. In "sync" mode the entries are read one after the
+ * other through the buffered read channels, in "async" mode all the reads of the batch are submitted
+ * at once and then awaited. The entry logs are in the page cache after the setup, so drop the caches
+ * between setup and measurement to compare the paths against the storage device.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EntryLogReadBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"sync", "async"})
+        private String mode;
+
+        @Param({"1024", "16384"})
+        private int entrySize;
+
+        @Param({"100000"})
+        private int entriesCount;
+
+        private File ledgerDir;
+        private DefaultEntryLogger entryLogger;
+        private long[] locations;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            ledgerDir = Files.createTempDirectory("entry-log-read-benchmark").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+            conf.setEntryLogAsyncReadEnabled("async".equals(mode));
+            File curDir = BookieImpl.getCurrentDirectory(ledgerDir);
+            BookieImpl.checkDirectoryStructure(curDir);
+
+            LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+            entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, NullStatsLogger.INSTANCE,
+                    PooledByteBufAllocator.DEFAULT);
+
+            locations = new long[entriesCount];
+            byte[] payload = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(payload);
+            for (int i = 0; i < entriesCount; i++) {
+                ByteBuf entry = Unpooled.buffer(16 + entrySize);
+                entry.writeLong(1L);
+                entry.writeLong(i);
+                entry.writeBytes(payload);
+                locations[i] = entryLogger.addEntry(1L, entry);
+                entry.release();
+            }
+
+            // Roll the current log so that all the entries are read from flushed logs
+            ((EntryLogManagerBase) entryLogger.getEntryLogManager()).createNewLog(EntryLogger.UNASSIGNED_LEDGERID);
+            entryLogger.flush();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            entryLogger.close();
+            FileUtils.deleteDirectory(ledgerDir);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void readEntries(TestState s) throws Exception {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        if ("sync".equals(s.mode)) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                int entryId = r.nextInt(s.entriesCount);
+                s.entryLogger.readEntry(1L, entryId, s.locations[entryId]).release();
+            }
+        } else {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<ByteBuf>[] futures = new CompletableFuture[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                int entryId = r.nextInt(s.entriesCount);
+                futures[i] = s.entryLogger.readEntryAsync(1L, entryId, s.locations[entryId]);
+            }
+            for (CompletableFuture<ByteBuf> future : futures) {
+                future.get().release();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.util.collections.ConcurrentLongPairMultiMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongRingMap;
+import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarking the tracking of the pending requests of a channel: each operation registers the completion of a
+ * new request, and removes the completion of the request sent {@code outstanding} operations before, as when its
+ * response is received.
+ */
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+public class CompletionTrackingBenchmark {
+
+    private static final Object COMPLETION = new Object();
+
+    /**
+     * The completions of a channel, shared by the threads.
+     */
+    @State(Scope.Benchmark)
+    public static class ChannelState {
+        final AtomicLong txnIdGenerator = new AtomicLong(0);
+
+        final ConcurrentOpenHashMap<TxnKey, Object> txnMap =
+                ConcurrentOpenHashMap.<TxnKey, Object>newBuilder().autoShrink(true).build();
+        final ConcurrentLongRingMap<Object> txnRing = new ConcurrentLongRingMap<>(1024);
+
+        final ConcurrentOpenHashMap<EntryKey, Object> entryMap =
+                ConcurrentOpenHashMap.<EntryKey, Object>newBuilder().autoShrink(true).build();
+        final ConcurrentLongPairMultiMap<Object> entryMultiMap = new ConcurrentLongPairMultiMap<>();
+    }
+
+    /**
+     * The requests in flight of a thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        @Param({"16", "128"})
+        int outstanding;
+
+        long ledgerId;
+        long nextEntryId;
+        long[] pending;
+        int next;
+
+        @Setup
+        public void setup(ChannelState channel) {
+            ledgerId = channel.txnIdGenerator.incrementAndGet();
+            pending = new long[outstanding];
+        }
+
+        long swap(long id) {
+            long previous = pending[next];
+            pending[next] = id;
+            next = (next + 1) % outstanding;
+            return previous;
+        }
+    }
+
+    static final class TxnKey {
+        final long txnId;
+
+        TxnKey(long txnId) {
+            this.txnId = txnId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TxnKey && ((TxnKey) obj).txnId == txnId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) txnId;
+        }
+    }
+
+    static final class EntryKey {
+        final long ledgerId;
+        final long entryId;
+
+        EntryKey(long ledgerId, long entryId) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey that = (EntryKey) obj;
+            return ledgerId == that.ledgerId && entryId == that.entryId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId);
+        }
+    }
+
+    @Benchmark
+    public Object txnHashMap(ChannelState channel, ThreadState thread) {
+        long txnId = channel.txnIdGenerator.incrementAndGet();
+        channel.txnMap.put(new TxnKey(txnId), COMPLETION);
+        long completed = thread.swap(txnId);
+        return completed > 0 ? channel.txnMap.remove(new TxnKey(completed)) : null;
+    }
+
+    @Benchmark
+    public Object txnRing(ChannelState channel, ThreadState thread) {
+        long txnId = channel.txnIdGenerator.incrementAndGet();
+        channel.txnRing.put(txnId, COMPLETION);
+        long completed = thread.swap(txnId);
+        return completed > 0 ? channel.txnRing.remove(completed) : null;
+    }
+
+    @Benchmark
+    public Object v2HashMap(ChannelState channel, ThreadState thread) {
+        long entryId = ++thread.nextEntryId;
+        channel.entryMap.put(new EntryKey(thread.ledgerId, entryId), COMPLETION);
+        long completed = thread.swap(entryId);
+        return completed > 0 ? channel.entryMap.remove(new EntryKey(thread.ledgerId, completed)) : null;
+    }
+
+    @Benchmark
+    public Object v2MultiMap(ChannelState channel, ThreadState thread) {
+        long entryId = ++thread.nextEntryId;
+        channel.entryMultiMap.put(thread.ledgerId, entryId, COMPLETION);
+        long completed = thread.swap(entryId);
+        return completed > 0 ? channel.entryMultiMap.remove(thread.ledgerId, completed) : null;
+    }
+}
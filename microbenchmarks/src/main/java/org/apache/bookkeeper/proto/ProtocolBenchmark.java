@@ -20,8 +20,11 @@ package org.apache.bookkeeper.proto;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.UnsafeByteOperations;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
 import java.util.concurrent.ThreadLocalRandom;
@@ -29,11 +32,16 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.EnDecoder;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDeCoderPreV3;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.ResponseEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -43,6 +51,7 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.slf4j.MDC;
 
 /**
@@ -53,16 +62,19 @@ import org.slf4j.MDC;
 @State(Scope.Thread)
 public class ProtocolBenchmark {
 
-    @Param({"10", "100", "1000", "10000"})
+    @Param({"10", "100", "1000", "10000", "65536"})
     int size;
 
     byte[] masterKey;
     ByteBuf entry;
+    ByteBuf directEntry;
+    ByteBuf readResponsePacket;
     long ledgerId;
     long entryId;
     short flags;
     EnDecoder reqEnDeV2;
     EnDecoder reqEnDeV3;
+    EnDecoder respEnDeV3;
 
     @Setup
     public void prepare() {
@@ -70,6 +82,8 @@ public class ProtocolBenchmark {
         byte[] data = new byte[this.size];
         ThreadLocalRandom.current().nextBytes(data);
         this.entry = Unpooled.wrappedBuffer(data);
+        this.directEntry = PooledByteBufAllocator.DEFAULT.directBuffer(this.size);
+        this.directEntry.writeBytes(data);
         this.ledgerId = ThreadLocalRandom.current().nextLong();
         this.entryId = ThreadLocalRandom.current().nextLong();
         this.flags = 1;
@@ -77,6 +91,77 @@ public class ProtocolBenchmark {
         // prepare the encoder
         this.reqEnDeV2 = new RequestEnDeCoderPreV3(null);
         this.reqEnDeV3 = new RequestEnDecoderV3(null);
+        this.respEnDeV3 = new ResponseEnDecoderV3(ExtensionRegistry.newInstance());
+
+        // prepare a read response as received from a bookie
+        Response response = Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(0L))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(ReadResponse.newBuilder()
+                        .setStatus(StatusCode.EOK)
+                        .setLedgerId(ledgerId)
+                        .setEntryId(entryId)
+                        .setBody(ByteString.copyFrom(data)))
+                .build();
+        byte[] serialized = response.toByteArray();
+        this.readResponsePacket = PooledByteBufAllocator.DEFAULT.directBuffer(serialized.length);
+        this.readResponsePacket.writeBytes(serialized);
+    }
+
+    @TearDown
+    public void teardown() {
+        this.directEntry.release();
+        this.readResponsePacket.release();
+    }
+
+    @Benchmark
+    public void testAddEntryV2() throws Exception {
+        // The v2 add request is framed by the client, the encoder passes it through
+        ByteBuf header = ByteBufAllocator.DEFAULT.buffer(4 + 4 + BookieProtocol.MASTER_KEY_LENGTH + 16);
+        header.writeInt(4 + BookieProtocol.MASTER_KEY_LENGTH + 16 + directEntry.readableBytes());
+        header.writeInt(PacketHeader.toInt(BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.ADDENTRY, flags));
+        header.writeBytes(masterKey);
+        header.writeZero(BookieProtocol.MASTER_KEY_LENGTH - masterKey.length);
+        header.writeLong(ledgerId);
+        header.writeLong(entryId);
+        ByteBufList toSend = ByteBufList.get(header, directEntry.retainedSlice());
+
+        Object res = this.reqEnDeV2.encode(toSend, ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    @Benchmark
+    public void testAddEntryV3ZeroCopy() throws Exception {
+        // Build the request the way the client does, with the body wrapping the entry instead of a copy of it
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.ADD_ENTRY)
+                .setTxnId(0L);
+
+        AddRequest.Builder addBuilder = AddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
+                .setBody(UnsafeByteOperations.unsafeWrap(directEntry.nioBuffer()))
+                .setFlag(AddRequest.Flag.RECOVERY_ADD);
+
+        Request request = Request.newBuilder()
+                .setHeader(headerBuilder)
+                .setAddRequest(addBuilder)
+                .build();
+
+        Object res = this.reqEnDeV3.encode(request, ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    @Benchmark
+    public Object testReadResponseV3Decode() throws Exception {
+        Object res = this.respEnDeV3.decode(readResponsePacket.duplicate());
+        ReferenceCountUtil.release(res);
+        return res;
     }
 
     @Benchmark
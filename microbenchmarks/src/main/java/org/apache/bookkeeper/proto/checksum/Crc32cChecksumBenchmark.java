@@ -0,0 +1,112 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto.checksum;
+
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the CRC-32C checksum of large entries, computed in lanes by
+ * {@link Crc32cIntChecksum#computeChecksum(ByteBuf)} or sequentially. The lanes are enabled in the forked JVM.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-D" + Crc32cIntChecksum.LANES_PROPERTY + "=4")
+@State(Scope.Thread)
+public class Crc32cChecksumBenchmark {
+
+    // Below the size the checksum is computed in lanes from
+    private static final int SEQUENTIAL_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * BufferType.
+     */
+    public enum BufferType {
+        DIRECT,
+        // an entry received in several network reads
+        DIRECT_COMPOSITE
+    }
+
+    @Param
+    public BufferType bufferType;
+    @Param({"65536", "1048576", "4194304"})
+    public int entrySize;
+
+    private ByteBuf buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] data = new byte[entrySize];
+        ThreadLocalRandom.current().nextBytes(data);
+        if (bufferType == BufferType.DIRECT) {
+            buffer = PooledByteBufAllocator.DEFAULT.directBuffer(entrySize).writeBytes(data);
+        } else {
+            CompositeByteBuf composite = PooledByteBufAllocator.DEFAULT.compositeDirectBuffer(Integer.MAX_VALUE);
+            int componentSize = 64 * 1024;
+            for (int offset = 0; offset < entrySize; offset += componentSize) {
+                int length = Math.min(componentSize, entrySize - offset);
+                composite.addComponent(true, PooledByteBufAllocator.DEFAULT.directBuffer(length)
+                        .writeBytes(data, offset, length));
+            }
+            buffer = composite;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public int computeChecksum() {
+        return Crc32cIntChecksum.computeChecksum(buffer);
+    }
+
+    @Benchmark
+    public int computeChecksumSequentially() {
+        int checksum = 0;
+        for (int offset = 0; offset < entrySize; offset += SEQUENTIAL_CHUNK_SIZE) {
+            int length = Math.min(SEQUENTIAL_CHUNK_SIZE, entrySize - offset);
+            checksum = Crc32cIntChecksum.resumeChecksum(checksum, buffer, offset, length);
+        }
+        return checksum;
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto.checksum;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +39,7 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 
@@ -100,4 +102,57 @@ public class DigestManagerBenchmark {
         state.digestBuf.readerIndex(0);
         state.dm.verifyDigestAndReturnData(1234, state.digestBuf);
     }
+
+    /**
+     * PackageState.
+     */
+    @State(Scope.Thread)
+    public static class PackageState {
+
+        @Param({"CRC32C", "HMAC"})
+        public DigestType digestType;
+
+        @Param({"true", "false"})
+        public boolean useV2Protocol;
+
+        @Param({"64", "1024", "65536"})
+        public int entrySize;
+
+        private DigestManager dm;
+
+        private byte[] masterKey;
+
+        public ByteBuf data;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws Exception {
+            final byte[] password = "password".getBytes(StandardCharsets.UTF_8);
+
+            dm = DigestManager.instantiate(ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE),
+                    password, digestType, PooledByteBufAllocator.DEFAULT, useV2Protocol);
+            masterKey = DigestManager.generateMasterKey(password);
+
+            data = PooledByteBufAllocator.DEFAULT.directBuffer(entrySize, entrySize);
+            data.writeBytes(randomBytes(entrySize));
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            data.release();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(1)
+    public void computeDigestAndPackageForSending(PackageState state) {
+        // the packaged entry takes ownership of the data
+        state.data.retain();
+        ReferenceCountUtil.release(state.dm.computeDigestAndPackageForSending(1234, 1233, state.entrySize,
+                state.data, state.masterKey, 0));
+    }
 }
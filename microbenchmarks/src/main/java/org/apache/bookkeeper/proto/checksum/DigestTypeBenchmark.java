@@ -61,7 +61,8 @@ public class DigestTypeBenchmark {
     public enum BufferType {
         ARRAY_BACKED,
         NOT_ARRAY_BACKED,
-        BYTE_BUF_DEFAULT_ALLOC
+        BYTE_BUF_DEFAULT_ALLOC,
+        DIRECT_COMPOSITE
     }
 
     /**
@@ -99,6 +100,7 @@ public class DigestTypeBenchmark {
         private ByteBuf arrayBackedBuffer;
         private CompositeByteBuf notArrayBackedBuffer;
         private ByteBuf byteBufDefaultAlloc;
+        private CompositeByteBuf directCompositeBuffer;
 
         public ByteBuf digestBuf;
 
@@ -126,6 +128,13 @@ public class DigestTypeBenchmark {
             byteBufDefaultAlloc = ByteBufAllocator.DEFAULT.buffer(entrySize, entrySize);
             byteBufDefaultAlloc.writeBytes(randomBytes(entrySize));
 
+            // header and payload of an entry being sent, in direct memory
+            directCompositeBuffer = new CompositeByteBuf(PooledByteBufAllocator.DEFAULT, true, 2);
+            directCompositeBuffer.addComponent(true, PooledByteBufAllocator.DEFAULT.directBuffer(headerSize)
+                    .writeBytes(randomBytes(headerSize)));
+            directCompositeBuffer.addComponent(true, PooledByteBufAllocator.DEFAULT.directBuffer(entrySize - headerSize)
+                    .writeBytes(randomBytes(entrySize - headerSize)));
+
             if (!arrayBackedBuffer.hasArray() || notArrayBackedBuffer.hasArray()) {
                 throw new IllegalStateException("buffers in invalid state");
             }
@@ -133,6 +142,7 @@ public class DigestTypeBenchmark {
 
         @TearDown(Level.Trial)
         public void doTearDown() {
+            directCompositeBuffer.release();
         }
 
         public ByteBuf getByteBuff(BufferType bType) {
@@ -143,6 +153,8 @@ public class DigestTypeBenchmark {
                     return notArrayBackedBuffer;
                 case BYTE_BUF_DEFAULT_ALLOC:
                     return byteBufDefaultAlloc;
+                case DIRECT_COMPOSITE:
+                    return directCompositeBuffer;
                 default:
                     throw new IllegalArgumentException("unknown buffer type " + bType);
             }
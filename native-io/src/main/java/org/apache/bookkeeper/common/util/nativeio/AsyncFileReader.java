@@ -0,0 +1,334 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous positional file reader backed by io_uring, or by the kernel AIO interface when io_uring is
+ * not available.
+ *
+ * <p>Reads are queued by any thread and handed to the kernel in batches by a single I/O thread, which also
+ * reaps the completions. Any number of reads can be outstanding, up to the queue depth, without holding a
+ * thread per read. The returned futures are completed on the I/O thread, so callers should hand off any
+ * non trivial work to their own executor.
+ *
+ * <p>The kernel AIO interface only reads asynchronously from files opened with O_DIRECT. On buffered file
+ * descriptors the reads are done when they are submitted, so the AIO engine serializes them on the I/O
+ * thread instead of overlapping them.
+ */
+public class AsyncFileReader implements Closeable {
+
+    /**
+     * The kernel interface used to issue the reads.
+     */
+    public enum Engine {
+        IO_URING, AIO
+    }
+
+    private static final int REQUEST_SIZE = 32;
+    private static final int COMPLETION_SIZE = 16;
+
+    private static final class Request {
+        final int fd;
+        final long address;
+        final int length;
+        final long offset;
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        Request(int fd, long address, int length, long offset) {
+            this.fd = fd;
+            this.address = address;
+            this.length = length;
+            this.offset = offset;
+        }
+    }
+
+    private final long context;
+    private final Engine engine;
+    private final int queueDepth;
+
+    private final ConcurrentLinkedQueue<Request> submissionQueue = new ConcurrentLinkedQueue<>();
+
+    // Only accessed by the I/O thread
+    private final ArrayDeque<Request> notSubmitted = new ArrayDeque<>();
+    private final Request[] inFlight;
+    private final Request[] batch;
+    private final int[] freeSlots;
+    private int freeSlotsCount;
+    private final ByteBuffer requests;
+    private final ByteBuffer completions;
+
+    private final Thread ioThread;
+    // Cleared on close, or by the I/O thread when the context fails
+    private volatile boolean running = true;
+    private volatile boolean waiting = false;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Create a new reader.
+     *
+     * @param queueDepth maximum number of reads in flight in the kernel
+     * @param preferIoUring whether to try io_uring before falling back to the kernel AIO interface
+     * @throws NativeIOException if the native library or both kernel interfaces are not available
+     */
+    public static AsyncFileReader create(int queueDepth, boolean preferIoUring) throws NativeIOException {
+        long context;
+        try {
+            context = NativeIOJni.async_create(queueDepth, preferIoUring);
+        } catch (NativeIOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new NativeIOException("Native async io is not available: " + t.getMessage());
+        }
+        return new AsyncFileReader(context, queueDepth);
+    }
+
+    private AsyncFileReader(long context, int queueDepth) {
+        this.context = context;
+        this.engine = NativeIOJni.async_engine(context) == 1 ? Engine.IO_URING : Engine.AIO;
+        this.queueDepth = queueDepth;
+        this.inFlight = new Request[queueDepth];
+        this.batch = new Request[queueDepth];
+        this.freeSlots = new int[queueDepth];
+        for (int i = 0; i < queueDepth; i++) {
+            freeSlots[i] = queueDepth - 1 - i;
+        }
+        this.freeSlotsCount = queueDepth;
+        this.requests = ByteBuffer.allocateDirect(queueDepth * REQUEST_SIZE).order(ByteOrder.nativeOrder());
+        this.completions = ByteBuffer.allocateDirect(queueDepth * COMPLETION_SIZE).order(ByteOrder.nativeOrder());
+
+        this.ioThread = new Thread(this::run, "native-async-reader-" + engine.name().toLowerCase());
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Read up to {@code length} bytes from the file at {@code offset} into native memory.
+     *
+     * @param fd file descriptor, which must stay open until the returned future is completed
+     * @param address address of a native buffer of at least {@code length} bytes, which callers get with
+     *                {@code ByteBuf.memoryAddress()} after checking {@code ByteBuf.hasMemoryAddress()}
+     * @param length number of bytes to read
+     * @param offset position in the file
+     * @return future completed with the number of bytes read, which is short at the end of the file
+     */
+    public CompletableFuture<Integer> read(int fd, long address, int length, long offset) {
+        Request request = new Request(fd, address, length, offset);
+        if (!running) {
+            request.future.completeExceptionally(new NativeIOException("Async file reader is closed"));
+            return request.future;
+        }
+        submissionQueue.add(request);
+        if (!running) {
+            // The I/O thread might have drained the queue for the last time before the request was added. Either
+            // this thread or the I/O thread removes it from the queue, whichever does fails it.
+            if (submissionQueue.remove(request)) {
+                request.future.completeExceptionally(new NativeIOException("Async file reader is closed"));
+            }
+            return request.future;
+        }
+        if (waiting) {
+            LockSupport.unpark(ioThread);
+        }
+        return request.future;
+    }
+
+    private void run() {
+        while (running || freeSlotsCount < queueDepth) {
+            try {
+                submitPending();
+
+                int inFlightCount = queueDepth - freeSlotsCount;
+                if (inFlightCount == 0) {
+                    waitForRequests();
+                    continue;
+                }
+
+                // Only block in the kernel when there is nothing else to hand to it
+                boolean hasPending = freeSlotsCount > 0 && (!notSubmitted.isEmpty() || !submissionQueue.isEmpty());
+                int min = hasPending ? 0 : 1;
+                completions.clear();
+                int n = NativeIOJni.async_poll(context, completions, queueDepth, min);
+                for (int i = 0; i < n; i++) {
+                    int slot = (int) completions.getLong(i * COMPLETION_SIZE);
+                    long result = completions.getLong(i * COMPLETION_SIZE + 8);
+                    Request request = inFlight[slot];
+                    inFlight[slot] = null;
+                    freeSlots[freeSlotsCount++] = slot;
+                    if (result >= 0) {
+                        request.future.complete((int) result);
+                    } else {
+                        request.future.completeExceptionally(
+                                new NativeIOException("Failed to read from file", (int) -result));
+                    }
+                }
+            } catch (Throwable t) {
+                // The context is not usable anymore
+                running = false;
+                failAll(t);
+            }
+        }
+        failQueued(new NativeIOException("Async file reader is closed"));
+    }
+
+    private void submitPending() throws NativeIOException {
+        if (!running) {
+            return;
+        }
+        requests.clear();
+        int count = 0;
+        int maxCount = freeSlotsCount;
+        while (count < maxCount) {
+            Request request = notSubmitted.pollFirst();
+            if (request == null) {
+                request = submissionQueue.poll();
+            }
+            if (request == null) {
+                break;
+            }
+
+            int slot = freeSlots[--freeSlotsCount];
+            inFlight[slot] = request;
+            batch[count] = request;
+
+            int base = count * REQUEST_SIZE;
+            requests.putLong(base, slot);
+            requests.putLong(base + 8, request.address);
+            requests.putLong(base + 16, request.offset);
+            requests.putInt(base + 24, request.fd);
+            requests.putInt(base + 28, request.length);
+            count++;
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        int submitted = 0;
+        try {
+            submitted = NativeIOJni.async_submit(context, requests, count);
+        } catch (NativeIOException e) {
+            // Fail the requests that the kernel rejected, the others are still tracked as in flight
+            for (int i = count - 1; i >= 0; i--) {
+                releaseSlot(batch[i]);
+                batch[i].future.completeExceptionally(e);
+                batch[i] = null;
+            }
+            return;
+        }
+
+        // Whatever the kernel did not accept is retried, in order, on the next round
+        for (int i = count - 1; i >= submitted; i--) {
+            releaseSlot(batch[i]);
+            notSubmitted.addFirst(batch[i]);
+        }
+        Arrays.fill(batch, 0, count, null);
+    }
+
+    private void releaseSlot(Request request) {
+        for (int slot = 0; slot < queueDepth; slot++) {
+            if (inFlight[slot] == request) {
+                inFlight[slot] = null;
+                freeSlots[freeSlotsCount++] = slot;
+                return;
+            }
+        }
+    }
+
+    private void waitForRequests() {
+        waiting = true;
+        try {
+            if (running && submissionQueue.isEmpty() && notSubmitted.isEmpty()) {
+                LockSupport.park(this);
+            }
+        } finally {
+            waiting = false;
+        }
+    }
+
+    private void failAll(Throwable t) {
+        for (int slot = 0; slot < queueDepth; slot++) {
+            Request request = inFlight[slot];
+            if (request != null) {
+                inFlight[slot] = null;
+                freeSlots[freeSlotsCount++] = slot;
+                request.future.completeExceptionally(t);
+            }
+        }
+        failQueued(t);
+    }
+
+    private void failQueued(Throwable t) {
+        Request request;
+        while ((request = notSubmitted.poll()) != null) {
+            request.future.completeExceptionally(t);
+        }
+        while ((request = submissionQueue.poll()) != null) {
+            request.future.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * Stop accepting new reads, wait for the in flight ones to complete and release the kernel resources.
+     *
+     * <p>The kernel resources are released even if the I/O thread already stopped after a failure of the context.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(ioThread);
+        // The context can only be destroyed once the I/O thread stopped using it
+        boolean interrupted = false;
+        while (ioThread.isAlive()) {
+            try {
+                ioThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // Fail the reads which were still queued after the last drain of the I/O thread
+        failQueued(new NativeIOException("Async file reader is closed"));
+        NativeIOJni.async_destroy(context);
+    }
+}
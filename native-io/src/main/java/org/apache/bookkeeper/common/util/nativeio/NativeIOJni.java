@@ -20,6 +20,7 @@
  */
 package org.apache.bookkeeper.common.util.nativeio;
 
+import java.nio.ByteBuffer;
 import org.apache.commons.lang3.SystemUtils;
 
 class NativeIOJni {
@@ -48,6 +49,16 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    static native long async_create(int depth, boolean allowIoUring) throws NativeIOException;
+
+    static native int async_engine(long context);
+
+    static native int async_submit(long context, ByteBuffer requests, int count) throws NativeIOException;
+
+    static native int async_poll(long context, ByteBuffer completions, int max, int min) throws NativeIOException;
+
+    static native void async_destroy(long context);
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
@@ -311,3 +311,433 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+
+/*
+ * Asynchronous read engine.
+ *
+ * Requests are passed from Java in a direct buffer, each one laid out (in native byte order) as
+ * { int64 userData, int64 bufferAddress, int64 fileOffset, int32 fd, int32 length }.
+ * Completions are returned as { int64 userData, int64 result } where a negative result is -errno.
+ *
+ * On Linux the engine uses io_uring when the running kernel supports IORING_OP_READ, and falls back
+ * to the kernel AIO interface otherwise. Both are driven through raw syscalls so there is no
+ * runtime dependency on liburing or libaio. The kernel AIO interface only reads asynchronously
+ * from files opened with O_DIRECT: on buffered file descriptors io_submit does the read before
+ * returning, so the AIO fallback does not overlap the reads.
+ */
+#define ASYNC_REQUEST_SIZE 32
+#define ASYNC_COMPLETION_SIZE 16
+
+#define ASYNC_ENGINE_IO_URING 1
+#define ASYNC_ENGINE_AIO 2
+
+#if defined(__linux__) && defined(__has_include)
+#if __has_include(<linux/aio_abi.h>)
+#define HAVE_ASYNC_IO 1
+#endif
+#endif
+
+#ifdef HAVE_ASYNC_IO
+
+#include <stdint.h>
+#include <sys/syscall.h>
+#include <linux/aio_abi.h>
+
+#if __has_include(<linux/io_uring.h>)
+#include <linux/io_uring.h>
+/*
+ * IORING_OP_READ and IORING_REGISTER_PROBE are enum values, so they can't be checked with the
+ * preprocessor. They were added along with the IO_URING_OP_SUPPORTED probe flag, which is a macro.
+ */
+#ifdef IO_URING_OP_SUPPORTED
+#define HAVE_IO_URING 1
+#endif
+#endif
+
+#ifdef HAVE_IO_URING
+
+#include <sys/mman.h>
+
+typedef struct {
+    int ring_fd;
+    unsigned sq_entries;
+    unsigned *sq_head;
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+    struct io_uring_sqe *sqes;
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_cqe *cqes;
+    void *sq_ring_ptr;
+    size_t sq_ring_size;
+    void *cq_ring_ptr;
+    size_t cq_ring_size;
+    size_t sqes_size;
+} uring_t;
+
+#endif /* HAVE_IO_URING */
+
+typedef struct {
+    int engine;
+    int depth;
+    union {
+#ifdef HAVE_IO_URING
+        uring_t uring;
+#endif
+        aio_context_t aio;
+    } u;
+    struct io_event *events;
+    struct iocb *iocbs;
+    struct iocb **iocb_ptrs;
+} async_ctx_t;
+
+#ifdef HAVE_IO_URING
+
+static void uring_unmap(uring_t *r) {
+    if (r->sqes != NULL && r->sqes != MAP_FAILED) {
+        munmap(r->sqes, r->sqes_size);
+    }
+    if (r->cq_ring_ptr != NULL && r->cq_ring_ptr != MAP_FAILED && r->cq_ring_ptr != r->sq_ring_ptr) {
+        munmap(r->cq_ring_ptr, r->cq_ring_size);
+    }
+    if (r->sq_ring_ptr != NULL && r->sq_ring_ptr != MAP_FAILED) {
+        munmap(r->sq_ring_ptr, r->sq_ring_size);
+    }
+    if (r->ring_fd >= 0) {
+        close(r->ring_fd);
+    }
+}
+
+static int uring_supports_read(int ring_fd) {
+    size_t size = sizeof(struct io_uring_probe) + 256 * sizeof(struct io_uring_probe_op);
+    struct io_uring_probe *probe = calloc(1, size);
+    if (probe == NULL) {
+        return 0;
+    }
+    int supported = 0;
+    if (syscall(__NR_io_uring_register, ring_fd, IORING_REGISTER_PROBE, probe, 256) == 0
+            && probe->last_op >= IORING_OP_READ) {
+        supported = (probe->ops[IORING_OP_READ].flags & IO_URING_OP_SUPPORTED) != 0;
+    }
+    free(probe);
+    return supported;
+}
+
+static int uring_setup(uring_t *r, unsigned entries) {
+    struct io_uring_params p;
+    memset(&p, 0, sizeof(p));
+    memset(r, 0, sizeof(*r));
+    r->ring_fd = syscall(__NR_io_uring_setup, entries, &p);
+    if (r->ring_fd < 0) {
+        return -1;
+    }
+    if (!uring_supports_read(r->ring_fd)) {
+        close(r->ring_fd);
+        errno = EOPNOTSUPP;
+        return -1;
+    }
+
+    r->sq_ring_size = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    r->cq_ring_size = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        if (r->cq_ring_size > r->sq_ring_size) {
+            r->sq_ring_size = r->cq_ring_size;
+        }
+        r->cq_ring_size = r->sq_ring_size;
+    }
+
+    r->sq_ring_ptr = mmap(NULL, r->sq_ring_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                          r->ring_fd, IORING_OFF_SQ_RING);
+    if (r->sq_ring_ptr == MAP_FAILED) {
+        uring_unmap(r);
+        return -1;
+    }
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        r->cq_ring_ptr = r->sq_ring_ptr;
+    } else {
+        r->cq_ring_ptr = mmap(NULL, r->cq_ring_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                              r->ring_fd, IORING_OFF_CQ_RING);
+        if (r->cq_ring_ptr == MAP_FAILED) {
+            uring_unmap(r);
+            return -1;
+        }
+    }
+    r->sqes_size = p.sq_entries * sizeof(struct io_uring_sqe);
+    r->sqes = mmap(NULL, r->sqes_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                   r->ring_fd, IORING_OFF_SQES);
+    if (r->sqes == MAP_FAILED) {
+        uring_unmap(r);
+        return -1;
+    }
+
+    char *sq = (char *) r->sq_ring_ptr;
+    char *cq = (char *) r->cq_ring_ptr;
+    r->sq_entries = p.sq_entries;
+    r->sq_head = (unsigned *) (sq + p.sq_off.head);
+    r->sq_tail = (unsigned *) (sq + p.sq_off.tail);
+    r->sq_mask = (unsigned *) (sq + p.sq_off.ring_mask);
+    r->sq_array = (unsigned *) (sq + p.sq_off.array);
+    r->cq_head = (unsigned *) (cq + p.cq_off.head);
+    r->cq_tail = (unsigned *) (cq + p.cq_off.tail);
+    r->cq_mask = (unsigned *) (cq + p.cq_off.ring_mask);
+    r->cqes = (struct io_uring_cqe *) (cq + p.cq_off.cqes);
+    return 0;
+}
+
+static int uring_submit(uring_t *r, const char *requests, int count) {
+    unsigned tail = *r->sq_tail;
+    unsigned head = __atomic_load_n(r->sq_head, __ATOMIC_ACQUIRE);
+    unsigned mask = *r->sq_mask;
+    unsigned free_slots = r->sq_entries - (tail - head);
+    int n = count < (int) free_slots ? count : (int) free_slots;
+
+    for (int i = 0; i < n; i++) {
+        const char *req = requests + (size_t) i * ASYNC_REQUEST_SIZE;
+        unsigned idx = tail & mask;
+        struct io_uring_sqe *sqe = &r->sqes[idx];
+        memset(sqe, 0, sizeof(*sqe));
+        sqe->opcode = IORING_OP_READ;
+        sqe->fd = *(const int32_t *) (req + 24);
+        sqe->addr = *(const uint64_t *) (req + 8);
+        sqe->len = *(const uint32_t *) (req + 28);
+        sqe->off = *(const uint64_t *) (req + 16);
+        sqe->user_data = *(const uint64_t *) (req);
+        r->sq_array[idx] = idx;
+        tail++;
+    }
+    __atomic_store_n(r->sq_tail, tail, __ATOMIC_RELEASE);
+
+    int submitted = 0;
+    while (submitted < n) {
+        int res = syscall(__NR_io_uring_enter, r->ring_fd, n - submitted, 0, 0, NULL, 0);
+        if (res < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            if (errno == EAGAIN || errno == EBUSY) {
+                // The entries stay queued in the ring and are picked up by the next io_uring_enter call
+                break;
+            }
+            return -1;
+        }
+        submitted += res;
+    }
+    return n;
+}
+
+static int uring_poll(uring_t *r, char *completions, int max, int min) {
+    unsigned head = *r->cq_head;
+    unsigned tail = __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE);
+    // The entries left in the ring by an EAGAIN or EBUSY on submit are handed to the kernel again,
+    // even when not waiting for completions, otherwise they would stay there until the next submit
+    unsigned pending = *r->sq_tail - __atomic_load_n(r->sq_head, __ATOMIC_ACQUIRE);
+    unsigned wait = (head == tail && min > 0) ? (unsigned) min : 0;
+    if (pending > 0 || wait > 0) {
+        int res;
+        do {
+            res = syscall(__NR_io_uring_enter, r->ring_fd, pending, wait,
+                          wait > 0 ? IORING_ENTER_GETEVENTS : 0, NULL, 0);
+        } while (res < 0 && errno == EINTR);
+        if (res < 0 && errno != EAGAIN && errno != EBUSY) {
+            return -1;
+        }
+        // On EAGAIN or EBUSY, reap the completions that are there and retry on the next poll
+        tail = __atomic_load_n(r->cq_tail, __ATOMIC_ACQUIRE);
+    }
+
+    unsigned mask = *r->cq_mask;
+    int n = 0;
+    while (head != tail && n < max) {
+        struct io_uring_cqe *cqe = &r->cqes[head & mask];
+        char *c = completions + (size_t) n * ASYNC_COMPLETION_SIZE;
+        *(uint64_t *) c = cqe->user_data;
+        *(int64_t *) (c + 8) = cqe->res;
+        head++;
+        n++;
+    }
+    __atomic_store_n(r->cq_head, head, __ATOMIC_RELEASE);
+    return n;
+}
+
+#endif /* HAVE_IO_URING */
+
+static int aio_engine_submit(async_ctx_t *ctx, const char *requests, int count) {
+    int n = count < ctx->depth ? count : ctx->depth;
+    for (int i = 0; i < n; i++) {
+        const char *req = requests + (size_t) i * ASYNC_REQUEST_SIZE;
+        struct iocb *cb = &ctx->iocbs[i];
+        memset(cb, 0, sizeof(*cb));
+        cb->aio_lio_opcode = IOCB_CMD_PREAD;
+        cb->aio_data = *(const uint64_t *) (req);
+        cb->aio_buf = *(const uint64_t *) (req + 8);
+        cb->aio_offset = *(const int64_t *) (req + 16);
+        cb->aio_fildes = *(const int32_t *) (req + 24);
+        cb->aio_nbytes = *(const uint32_t *) (req + 28);
+        ctx->iocb_ptrs[i] = cb;
+    }
+    int res;
+    do {
+        res = syscall(__NR_io_submit, ctx->u.aio, n, ctx->iocb_ptrs);
+    } while (res < 0 && errno == EINTR);
+    return res;
+}
+
+static int aio_engine_poll(async_ctx_t *ctx, char *completions, int max, int min) {
+    int n = max < ctx->depth ? max : ctx->depth;
+    int res;
+    do {
+        res = syscall(__NR_io_getevents, ctx->u.aio, min, n, ctx->events, NULL);
+    } while (res < 0 && errno == EINTR);
+    for (int i = 0; i < res; i++) {
+        char *c = completions + (size_t) i * ASYNC_COMPLETION_SIZE;
+        *(uint64_t *) c = ctx->events[i].data;
+        *(int64_t *) (c + 8) = ctx->events[i].res;
+    }
+    return res;
+}
+
+#endif /* HAVE_ASYNC_IO */
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    async_create
+ * Signature: (IZ)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_async_1create
+    (JNIEnv * env, jclass clazz, jint depth, jboolean allowIoUring) {
+#ifdef HAVE_ASYNC_IO
+    async_ctx_t *ctx = calloc(1, sizeof(async_ctx_t));
+    if (ctx == NULL) {
+        throwExceptionWithErrno(env, "Failed to allocate async io context");
+        return 0;
+    }
+    ctx->depth = depth;
+
+#ifdef HAVE_IO_URING
+    if (allowIoUring && uring_setup(&ctx->u.uring, depth) == 0) {
+        ctx->engine = ASYNC_ENGINE_IO_URING;
+        return (jlong) ctx;
+    }
+#endif
+
+    memset(&ctx->u, 0, sizeof(ctx->u));
+    ctx->events = calloc(depth, sizeof(struct io_event));
+    ctx->iocbs = calloc(depth, sizeof(struct iocb));
+    ctx->iocb_ptrs = calloc(depth, sizeof(struct iocb *));
+    if (ctx->events == NULL || ctx->iocbs == NULL || ctx->iocb_ptrs == NULL
+            || syscall(__NR_io_setup, depth, &ctx->u.aio) < 0) {
+        throwExceptionWithErrno(env, "Failed to setup async io context");
+        free(ctx->events);
+        free(ctx->iocbs);
+        free(ctx->iocb_ptrs);
+        free(ctx);
+        return 0;
+    }
+    ctx->engine = ASYNC_ENGINE_AIO;
+    return (jlong) ctx;
+#else
+    throwException(env, "async io is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    async_engine
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_async_1engine
+    (JNIEnv * env, jclass clazz, jlong context) {
+#ifdef HAVE_ASYNC_IO
+    return ((async_ctx_t *) context)->engine;
+#else
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    async_submit
+ * Signature: (JLjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_async_1submit
+    (JNIEnv * env, jclass clazz, jlong context, jobject requests, jint count) {
+#ifdef HAVE_ASYNC_IO
+    async_ctx_t *ctx = (async_ctx_t *) context;
+    const char *reqs = (const char *) (*env)->GetDirectBufferAddress(env, requests);
+    int res;
+#ifdef HAVE_IO_URING
+    if (ctx->engine == ASYNC_ENGINE_IO_URING) {
+        res = uring_submit(&ctx->u.uring, reqs, count);
+    } else
+#endif
+    {
+        res = aio_engine_submit(ctx, reqs, count);
+    }
+    if (res < 0) {
+        throwExceptionWithErrno(env, "Failed to submit async reads");
+    }
+    return res;
+#else
+    throwException(env, "async io is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    async_poll
+ * Signature: (JLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_async_1poll
+    (JNIEnv * env, jclass clazz, jlong context, jobject completions, jint max, jint min) {
+#ifdef HAVE_ASYNC_IO
+    async_ctx_t *ctx = (async_ctx_t *) context;
+    char *comps = (char *) (*env)->GetDirectBufferAddress(env, completions);
+    int res;
+#ifdef HAVE_IO_URING
+    if (ctx->engine == ASYNC_ENGINE_IO_URING) {
+        res = uring_poll(&ctx->u.uring, comps, max, min);
+    } else
+#endif
+    {
+        res = aio_engine_poll(ctx, comps, max, min);
+    }
+    if (res < 0) {
+        throwExceptionWithErrno(env, "Failed to poll async read completions");
+    }
+    return res;
+#else
+    throwException(env, "async io is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    async_destroy
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_async_1destroy
+    (JNIEnv * env, jclass clazz, jlong context) {
+#ifdef HAVE_ASYNC_IO
+    async_ctx_t *ctx = (async_ctx_t *) context;
+    if (ctx == NULL) {
+        return;
+    }
+#ifdef HAVE_IO_URING
+    if (ctx->engine == ASYNC_ENGINE_IO_URING) {
+        uring_unmap(&ctx->u.uring);
+    } else
+#endif
+    {
+        syscall(__NR_io_destroy, ctx->u.aio);
+        free(ctx->events);
+        free(ctx->iocbs);
+        free(ctx->iocb_ptrs);
+    }
+    free(ctx);
+#endif
+}
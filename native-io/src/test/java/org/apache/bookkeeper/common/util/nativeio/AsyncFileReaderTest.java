@@ -0,0 +1,254 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Test the AsyncFileReader class with both kernel interfaces. The tests are skipped when the native library or
+ * the kernel interfaces are not available.
+ */
+@RunWith(Parameterized.class)
+public class AsyncFileReaderTest {
+
+    private static final int QUEUE_DEPTH = 8;
+    private static final int BLOCK_SIZE = 4096;
+    private static final int NUM_BLOCKS = 64;
+
+    private final boolean preferIoUring;
+    private final NativeIO nativeIO = new NativeIOImpl();
+    private File file;
+    private int fd = -1;
+    private AsyncFileReader reader;
+
+    @Parameterized.Parameters(name = "preferIoUring={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {{true}, {false}});
+    }
+
+    public AsyncFileReaderTest(boolean preferIoUring) {
+        this.preferIoUring = preferIoUring;
+    }
+
+    private void startReader() throws Exception {
+        try {
+            reader = AsyncFileReader.create(QUEUE_DEPTH, preferIoUring);
+        } catch (NativeIOException e) {
+            Assume.assumeNoException("Native async io is not available", e);
+        }
+
+        file = File.createTempFile("async-reader", ".dat");
+        byte[] data = new byte[BLOCK_SIZE * NUM_BLOCKS];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i / BLOCK_SIZE);
+        }
+        Files.write(file.toPath(), data);
+        fd = nativeIO.open(file.getPath(), NativeIO.O_RDONLY, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (reader != null) {
+            reader.close();
+        }
+        if (fd >= 0) {
+            nativeIO.close(fd);
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private static void checkBlock(ByteBuf buf, int block) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            assertEquals((byte) block, buf.getByte(i));
+        }
+    }
+
+    private static void assertReadFailure(CompletableFuture<Integer> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The read should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NativeIOException);
+        }
+    }
+
+    @Test
+    public void testEngine() throws Exception {
+        startReader();
+        if (!preferIoUring) {
+            assertEquals(AsyncFileReader.Engine.AIO, reader.getEngine());
+        }
+        assertEquals(QUEUE_DEPTH, reader.getQueueDepth());
+    }
+
+    @Test
+    public void testReadsBeyondQueueDepth() throws Exception {
+        startReader();
+        List<ByteBuf> bufs = new ArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        try {
+            // More reads than the queue depth are queued at once, in reverse order of the blocks
+            for (int block = NUM_BLOCKS - 1; block >= 0; block--) {
+                ByteBuf buf = Unpooled.directBuffer(BLOCK_SIZE, BLOCK_SIZE);
+                assertTrue(buf.hasMemoryAddress());
+                bufs.add(buf);
+                futures.add(reader.read(fd, buf.memoryAddress(), BLOCK_SIZE, (long) block * BLOCK_SIZE));
+            }
+            for (int i = 0; i < NUM_BLOCKS; i++) {
+                assertEquals(BLOCK_SIZE, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+                checkBlock(bufs.get(i), NUM_BLOCKS - 1 - i);
+            }
+        } finally {
+            bufs.forEach(ByteBuf::release);
+        }
+    }
+
+    @Test
+    public void testShortReadAtEndOfFile() throws Exception {
+        startReader();
+        ByteBuf buf = Unpooled.directBuffer(2 * BLOCK_SIZE, 2 * BLOCK_SIZE);
+        try {
+            long lastBlock = (long) (NUM_BLOCKS - 1) * BLOCK_SIZE;
+            assertEquals(BLOCK_SIZE, reader.read(fd, buf.memoryAddress(), 2 * BLOCK_SIZE, lastBlock)
+                    .get(10, TimeUnit.SECONDS).intValue());
+            checkBlock(buf, NUM_BLOCKS - 1);
+
+            assertEquals(0, reader.read(fd, buf.memoryAddress(), BLOCK_SIZE, lastBlock + BLOCK_SIZE)
+                    .get(10, TimeUnit.SECONDS).intValue());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        startReader();
+        ByteBuf buf = Unpooled.directBuffer(BLOCK_SIZE, BLOCK_SIZE);
+        try {
+            // Not an open file descriptor
+            assertReadFailure(reader.read(Integer.MAX_VALUE, buf.memoryAddress(), BLOCK_SIZE, 0));
+
+            // The reader is still usable after a failed read
+            assertEquals(BLOCK_SIZE, reader.read(fd, buf.memoryAddress(), BLOCK_SIZE, BLOCK_SIZE)
+                    .get(10, TimeUnit.SECONDS).intValue());
+            checkBlock(buf, 1);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testReadAfterClose() throws Exception {
+        startReader();
+        reader.close();
+        // Closing again is a no-op
+        reader.close();
+
+        ByteBuf buf = Unpooled.directBuffer(BLOCK_SIZE, BLOCK_SIZE);
+        try {
+            assertReadFailure(reader.read(fd, buf.memoryAddress(), BLOCK_SIZE, 0));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testCloseConcurrentWithReads() throws Exception {
+        startReader();
+        ByteBuf buf = Unpooled.directBuffer(BLOCK_SIZE, BLOCK_SIZE);
+        Queue<CompletableFuture<Integer>> futures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                for (int n = 1; !stop.get(); n++) {
+                    CompletableFuture<Integer> future = reader.read(fd, buf.memoryAddress(), BLOCK_SIZE, 0);
+                    futures.add(future);
+                    if (n % QUEUE_DEPTH == 0) {
+                        // Keep the number of queued reads bounded
+                        future.handle((result, exception) -> null).join();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        try {
+            Thread.sleep(100);
+            reader.close();
+            Thread.sleep(100);
+        } finally {
+            stop.set(true);
+            for (Thread thread : readers) {
+                thread.join();
+            }
+        }
+
+        // Every read is completed, either before the close or with a failure
+        try {
+            for (CompletableFuture<Integer> future : futures) {
+                try {
+                    assertEquals(BLOCK_SIZE, future.get(10, TimeUnit.SECONDS).intValue());
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof NativeIOException);
+                }
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testCreateFailureIsNativeIOException() throws Exception {
+        // Callers fall back to synchronous reads on this exception, whether the native library, the kernel
+        // interfaces or the resources are missing
+        try {
+            AsyncFileReader.create(0, preferIoUring).close();
+            fail("A reader without queue depth should not be created");
+        } catch (NativeIOException e) {
+            // expected
+        }
+    }
+}
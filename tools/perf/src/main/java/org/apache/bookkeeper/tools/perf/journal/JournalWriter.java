@@ -145,6 +145,14 @@ public class JournalWriter implements Runnable {
         )
         public boolean journalSyncEnabled = false;
 
+        @Parameter(
+            names = {
+                "--direct-io"
+            },
+            description = "Write the journal with direct I/O, bypassing the page cache"
+        )
+        public boolean journalDirectIOEnabled = false;
+
         @Parameter(
             names = {
                 "-gci", "--group-commit-interval-ms"
@@ -476,6 +484,7 @@ public class JournalWriter implements Runnable {
         conf.setNumJournalCallbackThreads(flags.numJournalCallbackThreads);
         conf.setJournalQueueSize(flags.journalQueueSize);
         conf.setJournalSyncData(flags.journalSyncEnabled);
+        conf.setJournalDirectIOEnabled(flags.journalDirectIOEnabled);
         conf.setLedgerDirNames(flags.journalDirs.toArray(new String[0]));
         conf.setStatsProviderClass(PrometheusMetricsProvider.class);
         File[] currentDirs = BookieImpl.getCurrentDirectories(conf.getLedgerDirs());